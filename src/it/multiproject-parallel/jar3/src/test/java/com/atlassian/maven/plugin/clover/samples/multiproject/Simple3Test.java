@@ -0,0 +1,33 @@
+/*
+ * Copyright 2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.atlassian.maven.plugin.clover.samples.multiproject;
+
+import junit.framework.TestCase;
+
+import java.net.URLClassLoader;
+
+public class Simple3Test extends TestCase
+{
+    public void testSomeMethod()
+    {
+        Simple3 simple3 = new Simple3();
+        simple3.someMethod3();
+
+        Simple1 simple1 = new Simple1();
+        simple1.someMethod2();
+    }
+}
+ 
\ No newline at end of file
@@ -20,6 +20,9 @@ package com.atlassian.maven.plugin.clover;
  */
 
 import com.atlassian.maven.plugin.clover.internal.AbstractCloverMojo;
+import com.atlassian.maven.plugin.clover.internal.CloverDatabaseFragments;
+import com.atlassian.maven.plugin.clover.internal.MergeTreeIndex;
+import com.atlassian.maven.plugin.clover.internal.ParallelCloverMerge;
 import com.atlassian.clover.CloverMerge;
 import com.atlassian.clover.cfg.Interval;
 import org.apache.maven.plugin.MojoExecutionException;
@@ -28,6 +31,7 @@ import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -35,7 +39,7 @@ import java.util.List;
  * Aggregate children module Clover databases if there are any. This mojo should not exist. It's only there because
  * the site plugin doesn't handle @aggregators properly at the moment...
  */
-@Mojo(name = "aggregate", aggregator = true)
+@Mojo(name = "aggregate", aggregator = true, threadSafe = true)
 public class CloverAggregateMojo extends AbstractCloverMojo {
     /**
      * Time span that will be used when generating aggregated database. Check
@@ -45,6 +49,19 @@ public class CloverAggregateMojo extends AbstractCloverMojo {
     @Parameter(property = "maven.clover.span")
     private String span = Interval.DEFAULT_SPAN.toString();
 
+    /**
+     * <p>If true, the aggregated database is merged incrementally: databases are merged pairwise in a tree (see
+     * <code>mergeWorkers</code>, at least one worker is used) and intermediate databases are kept in a directory next
+     * to the merged database, e.g. <code>cloverMerge-tree</code>. An index in this directory records the size,
+     * modification date and content hash of every child database. In the next build, only the intermediate databases
+     * which contain a changed child database or its changed coverage recordings are merged again, and nothing is
+     * merged if no child database has changed.</p>
+     *
+     * @since 4.6.0
+     */
+    @Parameter(property = "maven.clover.incrementalMerge", defaultValue = "false")
+    private boolean incrementalMerge;
+
     /**
      * {@inheritDoc}
      *
@@ -62,10 +79,19 @@ public class CloverAggregateMojo extends AbstractCloverMojo {
             getLog().debug("Project " + getProject().getId() + " (" + getProject().getBasedir()
                     + ") has " + getProject().getModules().size() + " child modules");
 
+            final List<String> childrenDatabases = getChildrenCloverDatabases();
+
             // Ensure all databases are flushed
-            AbstractCloverMojo.waitForFlush(getWaitForFlush(), getFlushInterval());
+            AbstractCloverMojo.waitForFlush(getWaitForFlush(), getFlushInterval(), childrenDatabases,
+                    getSessionState().getTestRunTracker());
+
+            // Databases instrumented in shards must be merged first
+            for (String childDatabase : childrenDatabases) {
+                if (CloverDatabaseFragments.hasFragments(childDatabase)) {
+                    CloverDatabaseFragments.merge(childDatabase, getLog());
+                }
+            }
 
-            final List<String> childrenDatabases = getChildrenCloverDatabases();
             if (childrenDatabases.size() > 0) {
                 // Ensure the merged database output directory exists
                 new File(getCloverMergeDatabase()).getParentFile().mkdirs();
@@ -101,7 +127,7 @@ public class CloverAggregateMojo extends AbstractCloverMojo {
         for (MavenProject childProject : projects) {
             getLog().debug("Looking for Clover database for module " + childProject.getId() + " (" + childProject.getBasedir() + ")");
             final File cloverDb = new File(childProject.getBasedir(), relativeCloverDatabasePath);
-            if (cloverDb.exists()) {
+            if (cloverDb.exists() || CloverDatabaseFragments.hasFragments(cloverDb.getPath())) {
                 getLog().debug("Database found at " + cloverDb.getAbsolutePath() + " . Adding for merge.");
                 dbFiles.add(cloverDb.getPath());
             } else {
@@ -113,6 +139,19 @@ public class CloverAggregateMojo extends AbstractCloverMojo {
     }
 
     private void mergeCloverDatabases(final List<String> dbFiles) throws MojoExecutionException {
+        if (getMergeWorkers() > 0 || incrementalMerge) {
+            try {
+                final MergeTreeIndex index = incrementalMerge
+                        ? MergeTreeIndex.load(MergeTreeIndex.getTreeDirectory(getCloverMergeDatabase()), span)
+                        : null;
+                new ParallelCloverMerge(Math.max(1, getMergeWorkers()), getMergeWorkerJvmArgs(), getLog()).merge(
+                        ParallelCloverMerge.sortDatabases(dbFiles), span, getCloverMergeDatabase(), index);
+            } catch (IOException e) {
+                throw new MojoExecutionException("Clover has failed to merge the children module databases", e);
+            }
+            return;
+        }
+
         final List<String> parameters = new ArrayList<>();
 
         parameters.add("-s");
@@ -37,7 +37,7 @@ import java.util.List;
  * Verify Test Percentage Coverage (TPC) from an existing Clover database and fail the build if it is below the defined
  * threshold. The check is done on main Clover databases and also on merged Clover databases when they exist.
  */
-@Mojo(name = "check", defaultPhase = LifecyclePhase.VERIFY)
+@Mojo(name = "check", defaultPhase = LifecyclePhase.VERIFY, threadSafe = true)
 public class CloverCheckMojo extends AbstractCloverMojo
 {
     /**
@@ -145,11 +145,13 @@ public class CloverCheckMojo extends AbstractCloverMojo
 
         if ( !isInCloverForkedLifecycle() )
         {
+            mergeCloverDatabaseFragments();
             if ( areCloverDatabasesAvailable() )
             {
                 super.execute();
 
-                AbstractCloverMojo.waitForFlush( getWaitForFlush(), getFlushInterval() );
+                AbstractCloverMojo.waitForFlush( getWaitForFlush(), getFlushInterval(), getCloverDatabases(),
+                        getSessionState().getTestRunTracker() );
 
                 check();
             }
@@ -261,7 +263,7 @@ public class CloverCheckMojo extends AbstractCloverMojo
     }
 
     private void setTestSourceRoots(final CloverPassTask cloverPassTask) {
-        final String originalSrcTestDir = CloverSetupMojo.getOriginalSrcTestDir(getProject().getId());
+        final String originalSrcTestDir = getSessionState().getOriginalSrcTestDir(getProject().getId());
         if (originalSrcTestDir != null) {
             addTestSrcDir(cloverPassTask, originalSrcTestDir);
         }
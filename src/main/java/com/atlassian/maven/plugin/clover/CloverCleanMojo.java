@@ -17,7 +17,7 @@ import java.io.File;
  *
  * This mojo deletes the {@link #cloverOutputDirectory} contents and the {@link #snapshot} file used for test optimization.
  */
-@Mojo(name = "clean", defaultPhase = LifecyclePhase.INITIALIZE)
+@Mojo(name = "clean", defaultPhase = LifecyclePhase.INITIALIZE, threadSafe = true)
 public class CloverCleanMojo extends AbstractCloverMojo {
 
     /**
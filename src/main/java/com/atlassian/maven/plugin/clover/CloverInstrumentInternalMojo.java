@@ -23,6 +23,8 @@ import com.atlassian.clover.ant.groovy.GroovycSupport;
 import com.atlassian.clover.cfg.instr.InstrumentationConfig;
 import com.atlassian.clover.remote.DistributedConfig;
 import com.atlassian.maven.plugin.clover.internal.AbstractCloverInstrumentMojo;
+import com.atlassian.maven.plugin.clover.internal.CloverSessionState;
+import com.atlassian.maven.plugin.clover.internal.CloveredArtifactCache;
 import com.atlassian.maven.plugin.clover.internal.CompilerConfiguration;
 import com.atlassian.maven.plugin.clover.internal.instrumentation.MainInstrumenter;
 import com.atlassian.maven.plugin.clover.internal.instrumentation.TestInstrumenter;
@@ -30,9 +32,9 @@ import com.atlassian.maven.plugin.clover.internal.scanner.LanguageFileExtensionF
 import com.atlassian.maven.plugin.clover.internal.scanner.MainSourceScanner;
 import com.atlassian.maven.plugin.clover.internal.scanner.TestSourceScanner;
 import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.ArtifactUtils;
 import org.apache.maven.artifact.handler.ArtifactHandler;
 import org.apache.maven.artifact.repository.ArtifactRepository;
-import org.apache.maven.execution.MavenSession;
 import org.apache.maven.model.Resource;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.Component;
@@ -41,6 +43,7 @@ import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.plugins.annotations.ResolutionScope;
 import org.apache.maven.project.DefaultProjectBuildingRequest;
+import org.apache.maven.project.MavenProject;
 import org.apache.maven.project.ProjectBuildingRequest;
 import org.apache.maven.repository.RepositorySystem;
 import org.apache.maven.shared.transfer.artifact.resolve.ArtifactResolver;
@@ -51,13 +54,14 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.locks.ReentrantLock;
 
 /*
  * TRICKY PART HOW JAVA AND GROOVY SOURCE FOLDERS ARE HANDLED
@@ -202,7 +206,7 @@ import java.util.Set;
  * Clover plugin MOJOs.</b></p>
  * <p><b>Note 2: We bind this mojo to the "validate" phase so that it executes prior to any other mojos</b></p>
  */
-@Mojo(name = "instrumentInternal", defaultPhase = LifecyclePhase.VALIDATE, requiresDependencyResolution = ResolutionScope.TEST)
+@Mojo(name = "instrumentInternal", defaultPhase = LifecyclePhase.VALIDATE, requiresDependencyResolution = ResolutionScope.TEST, threadSafe = true)
 public class CloverInstrumentInternalMojo extends AbstractCloverInstrumentMojo {
 
     public static final String CLOVER_CORE_GROUP_ID = "org.openclover";
@@ -216,10 +220,6 @@ public class CloverInstrumentInternalMojo extends AbstractCloverInstrumentMojo {
     @Parameter(defaultValue = "${plugin.artifacts}", required = true)
     private List<Artifact> pluginArtifacts;
 
-    @Parameter(defaultValue = "${session}", readonly = true)
-    //@TestOnly
-    MavenSession mavenSession;
-
     @Component
     //@TestOnly
     ArtifactResolver artifactResolver;
@@ -234,18 +234,6 @@ public class CloverInstrumentInternalMojo extends AbstractCloverInstrumentMojo {
     @Parameter(defaultValue = "${project.remoteArtifactRepositories}")
     protected List<ArtifactRepository> repositories;
 
-    // HACK: this allows us to reset the source directories to the originals
-    private static final Map<String, String> originalSrcMap = new HashMap<>();
-    private static final Map<String, String> originalSrcTestMap = new HashMap<>();
-
-    public static String getOriginalSrcDir(final String module) {
-        return originalSrcMap.get(module);
-    }
-
-    public static String getOriginalSrcTestDir(final String module) {
-        return originalSrcTestMap.get(module);
-    }
-
     /**
      * {@inheritDoc}
      *
@@ -261,12 +249,12 @@ public class CloverInstrumentInternalMojo extends AbstractCloverInstrumentMojo {
         super.execute();
 
         configureTestFailureIgnore();
-        resetSrcDirsOriginal(getProject().getArtifact(), this);
+        resetSrcDirsOriginal(getProject().getArtifact(), this, getSessionState());
 
         final File outDir = new File(this.cloverOutputDirectory, getSrcName());
         final String cloverOutputSourceDirectory = outDir.getPath();
         final String cloverOutputTestSourceDirectory = new File(this.cloverOutputDirectory, getSrcTestName()).getPath();
-        new File(resolveCloverDatabase()).getParentFile().mkdirs();
+        new File(resolveInstrumentationDatabase()).getParentFile().mkdirs();
 
         logArtifacts("before changes");
 
@@ -275,9 +263,16 @@ public class CloverInstrumentInternalMojo extends AbstractCloverInstrumentMojo {
         final TestInstrumenter testInstrumenter = new TestInstrumenter(this, cloverOutputTestSourceDirectory);
 
         if (isJavaProject()) {
-            mainInstrumenter.instrument();
-            if (this.includesTestSourceRoots) {
-                testInstrumenter.instrument();
+            // modules built in parallel may share the database
+            final ReentrantLock databaseLock = getSessionState().getDatabaseLock(resolveInstrumentationDatabase());
+            databaseLock.lock();
+            try {
+                mainInstrumenter.instrument();
+                if (this.includesTestSourceRoots) {
+                    testInstrumenter.instrument();
+                }
+            } finally {
+                databaseLock.unlock();
             }
         }
 
@@ -290,10 +285,10 @@ public class CloverInstrumentInternalMojo extends AbstractCloverInstrumentMojo {
         // Modify Maven model so that it points to the new source directories and to the clovered
         // artifacts instead of the original values.
         final String originalSrcDir = mainInstrumenter.redirectSourceDirectories();
-        originalSrcMap.put(getProject().getArtifact().getId(), originalSrcDir);
+        getSessionState().setOriginalSrcDir(getProject().getArtifact().getId(), originalSrcDir);
         if (this.includesTestSourceRoots) {
             final String originalSrcTestDir = testInstrumenter.redirectSourceDirectories();
-            originalSrcTestMap.put(getProject().getArtifact().getId(), originalSrcTestDir);
+            getSessionState().setOriginalSrcTestDir(getProject().getArtifact().getId(), originalSrcTestDir);
         }
 
         // add instrumentation of groovy sources
@@ -301,6 +296,7 @@ public class CloverInstrumentInternalMojo extends AbstractCloverInstrumentMojo {
 
         redirectOutputDirectories();
         redirectArtifact();
+        registerReactorModule();
 
         logArtifacts("after changes");
     }
@@ -343,7 +339,7 @@ public class CloverInstrumentInternalMojo extends AbstractCloverInstrumentMojo {
         // create the groovy config for Clover's ASTTransformer
         InstrumentationConfig config = new InstrumentationConfig();
         config.setProjectName(this.getProject().getName());
-        config.setInitstring(this.resolveCloverDatabase());
+        config.setInitstring(this.resolveInstrumentationDatabase());
         config.setTmpDir(outDir);
 
         final List<File> includeFiles = calcIncludedFilesForGroovy();
@@ -407,15 +403,16 @@ public class CloverInstrumentInternalMojo extends AbstractCloverInstrumentMojo {
         return includeFiles;
     }
 
-    public static void resetSrcDirsOriginal(final Artifact artifact, final CompilerConfiguration config) {
-        if (originalSrcMap.containsKey(artifact.getId())) {
-            final String sourceDirectory = originalSrcMap.get(artifact.getId());
+    public static void resetSrcDirsOriginal(final Artifact artifact, final CompilerConfiguration config,
+                                            final CloverSessionState sessionState) {
+        final String sourceDirectory = sessionState.getOriginalSrcDir(artifact.getId());
+        if (sourceDirectory != null) {
             MainInstrumenter mainInstrumenter = new MainInstrumenter(config, sourceDirectory);
             mainInstrumenter.redirectSourceDirectories();
 
         }
-        if (originalSrcTestMap.containsKey(artifact.getId())) {
-            final String testDirectory = originalSrcTestMap.get(artifact.getId());
+        final String testDirectory = sessionState.getOriginalSrcTestDir(artifact.getId());
+        if (testDirectory != null) {
             TestInstrumenter instrumenter = new TestInstrumenter(config, testDirectory);
             instrumenter.redirectSourceDirectories();
         }
@@ -438,6 +435,13 @@ public class CloverInstrumentInternalMojo extends AbstractCloverInstrumentMojo {
         return true;
     }
 
+    @Override
+    public String getInstrumentedClassesDirectory() {
+        return shouldRedirectOutputDirectories()
+                ? new File(this.cloverOutputDirectory, "classes").getPath()
+                : super.getInstrumentedClassesDirectory();
+    }
+
     protected void redirectOutputDirectories() {
         if (shouldRedirectOutputDirectories()) {
             // Explicitly set the output directory to be the Clover one so that all other plugins executing
@@ -446,11 +450,23 @@ public class CloverInstrumentInternalMojo extends AbstractCloverInstrumentMojo {
 
             // TODO: Ugly hack below. Changing the directory should be enough for changing the values of all other
             // properties depending on it!
-            getProject().getBuild().setOutputDirectory(new File(this.cloverOutputDirectory, "classes").getPath());
+            getProject().getBuild().setOutputDirectory(getInstrumentedClassesDirectory());
             getProject().getBuild().setTestOutputDirectory(new File(this.cloverOutputDirectory, "test-classes").getPath());
         }
     }
 
+    /**
+     * Makes clovered classes of this module available to downstream modules of the reactor, see
+     * {@link #swizzleCloverDependency(Artifact, CloveredArtifactCache)}. Without the redirection, classes are
+     * compiled into the main output directory, which is already used by Maven for reactor dependencies.
+     */
+    private void registerReactorModule() {
+        if (shouldRedirectOutputDirectories()) {
+            getSessionState().getCloveredArtifactCache().addReactorModule(getProject().getGroupId(),
+                    getProject().getArtifactId(), getProject().getVersion(), new File(getInstrumentedClassesDirectory()));
+        }
+    }
+
     /**
      * Modify main artifact to add a "clover" classifier to it so that it's not mixed with the main artifact of
      * a normal build.
@@ -494,17 +510,20 @@ public class CloverInstrumentInternalMojo extends AbstractCloverInstrumentMojo {
         getProject().setArtifacts(swizzledArtifacts);
     }
 
+    /**
+     * Looks up clovered versions of artifacts in parallel. Results of lookups are shared by all modules of the
+     * session, see {@link CloveredArtifactCache}.
+     */
     protected Set<Artifact> swizzleCloverDependencies(final Set<Artifact> artifacts) {
-        final Set<Artifact> resolvedArtifacts = new LinkedHashSet<>();
-
+        final CloveredArtifactCache cache = getSessionState().getCloveredArtifactCache();
+        final List<Callable<Artifact>> tasks = new ArrayList<>(artifacts.size());
         for (Artifact artifact : artifacts) {
-            resolvedArtifacts.add(swizzleCloverDependency(artifact));
+            tasks.add(() -> swizzleCloverDependency(artifact, cache));
         }
-
-        return resolvedArtifacts;
+        return new LinkedHashSet<>(cache.invokeAll(tasks));
     }
 
-    private Artifact swizzleCloverDependency(final Artifact artifact) {
+    private Artifact swizzleCloverDependency(final Artifact artifact, final CloveredArtifactCache cache) {
         // Do not try to find Clovered versions for artifacts with classifiers. This is because Maven only
         // supports a single classifier per artifact and thus if we replace the original classifier with
         // a Clover classifier the artifact will fail to perform properly as intended originally. This is a
@@ -514,32 +533,42 @@ public class CloverInstrumentInternalMojo extends AbstractCloverInstrumentMojo {
             return artifact;
         }
 
+        // A module of this reactor which has been instrumented in this build, use its classes; they're up to date
+        // as the module has been built before this one
+        if ("jar".equals(artifact.getType())) {
+            final File reactorClassesDir = cache.getReactorModuleClasses(artifact);
+            if (reactorClassesDir != null) {
+                getLog().debug("Using clovered classes of reactor module [" + artifact.getId() + "] from "
+                        + reactorClassesDir);
+                final Artifact reactorArtifact = ArtifactUtils.copyArtifact(artifact);
+                reactorArtifact.setFile(reactorClassesDir);
+                return reactorArtifact;
+            }
+        }
+
         // An artifact we want to find
         final Artifact cloveredArtifact = repositorySystem.createArtifactWithClassifier(
                 artifact.getGroupId(), artifact.getArtifactId(), artifact.getVersion(),
                 artifact.getType(), "clover");
         cloveredArtifact.setScope(artifact.getScope()); // set the same scope as the main artifact
 
-        Artifact resolvedCloveredArtifact;
-
-        // Try to resolve the artifact with a clover classifier. If it doesn't exist, simply add the original
-        // artifact. If found, use the clovered artifact.
-        try {
-            // copy object to avoid modification of session's settings, resolve artifact but only locally,
-            // so let's clear remote repositories
-            final ProjectBuildingRequest projectBuildingRequest =
-                    new DefaultProjectBuildingRequest(mavenSession.getProjectBuildingRequest());
-            projectBuildingRequest.setRemoteRepositories(null);
-
-            final ArtifactResult resolveResult = artifactResolver.resolveArtifact(projectBuildingRequest, cloveredArtifact);
-            resolvedCloveredArtifact = resolveResult.getArtifact();
-            resolvedCloveredArtifact.setScope(artifact.getScope()); // it's null, set the same scope as the main artifact
-
-        } catch (ArtifactResolverException e) {
-            getLog().debug("Skipped dependency [" + cloveredArtifact.getId() + "] as it is unresolved", e);
+        // Try to resolve the artifact with a clover classifier (or take it from the cache). If it doesn't exist,
+        // simply add the original artifact. If found, use the clovered artifact. Modules of the reactor may not be
+        // built yet, so missing clovered versions of them are not cached.
+        final String key = artifact.getGroupId() + ":" + artifact.getArtifactId() + ":" + artifact.getType()
+                + ":" + artifact.getVersion();
+        final CloveredArtifactCache.Lookup lookup = cache.resolve(key, !isReactorProject(artifact),
+                () -> resolveCloveredArtifact(cloveredArtifact));
+        if (lookup.getArtifact() == null) {
             return artifact;
         }
 
+        // the resolved artifact is shared by modules, use a copy in other ones as the scope may differ
+        final Artifact resolvedCloveredArtifact = lookup.isCached()
+                ? ArtifactUtils.copyArtifact(lookup.getArtifact())
+                : lookup.getArtifact();
+        resolvedCloveredArtifact.setScope(artifact.getScope()); // set the same scope as the main artifact
+
         // Check the timestamp of the artifact. If the found clovered version is older than the
         // non-clovered one we need to use the non-clovered version. This is to handle use case such as:
         // - Say you have a module B that depends on a module A
@@ -563,6 +592,40 @@ public class CloverInstrumentInternalMojo extends AbstractCloverInstrumentMojo {
     }
 
 
+    /**
+     * Resolves the artifact, but only locally.
+     *
+     * @return Artifact resolved artifact or <code>null</code> if it does not exist
+     */
+    private Artifact resolveCloveredArtifact(final Artifact cloveredArtifact) {
+        try {
+            // copy object to avoid modification of session's settings, resolve artifact but only locally,
+            // so let's clear remote repositories
+            final ProjectBuildingRequest projectBuildingRequest =
+                    new DefaultProjectBuildingRequest(getMavenSession().getProjectBuildingRequest());
+            projectBuildingRequest.setRemoteRepositories(null);
+
+            final ArtifactResult resolveResult = artifactResolver.resolveArtifact(projectBuildingRequest, cloveredArtifact);
+            return resolveResult.getArtifact();
+        } catch (ArtifactResolverException e) {
+            getLog().debug("Skipped dependency [" + cloveredArtifact.getId() + "] as it is unresolved", e);
+            return null;
+        }
+    }
+
+    private boolean isReactorProject(final Artifact artifact) {
+        if (getReactorProjects() != null) {
+            for (MavenProject project : getReactorProjects()) {
+                if (project.getGroupId().equals(artifact.getGroupId())
+                        && project.getArtifactId().equals(artifact.getArtifactId())
+                        && project.getVersion().equals(artifact.getVersion())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     protected Artifact findCloverArtifact(final List<Artifact> pluginArtifacts) {
         Artifact cloverArtifact = null;
         Iterator<Artifact> artifactsIterator = pluginArtifacts.iterator();
@@ -591,7 +654,7 @@ public class CloverInstrumentInternalMojo extends AbstractCloverInstrumentMojo {
                 cloverArtifact.getVersion(), jarScope, cloverArtifact.getType());
 
         try {
-            artifactResolver.resolveArtifact(mavenSession.getProjectBuildingRequest(), cloverArtifact);
+            artifactResolver.resolveArtifact(getMavenSession().getProjectBuildingRequest(), cloverArtifact);
             addArtifactDependency(cloverArtifact);
         } catch (ArtifactResolverException ex) {
             throw new MojoExecutionException("Could not resolve the clover artifact ( " +
@@ -53,7 +53,7 @@ import org.apache.maven.plugins.annotations.Mojo;
  * the <code>test</code> phase.</p>
  */
 @Execute(phase = LifecyclePhase.INSTALL, goal = "instrument", lifecycle = "clover")
-@Mojo(name = "instrument")
+@Mojo(name = "instrument", threadSafe = true)
 public class CloverInstrumentMojo extends AbstractCloverInstrumentMojo {
 
     @Override
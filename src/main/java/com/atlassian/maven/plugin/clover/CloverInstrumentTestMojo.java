@@ -14,7 +14,7 @@ import org.apache.maven.plugins.annotations.Mojo;
  * so that a Clover database is created.</p>
  */
 @Execute(phase = LifecyclePhase.TEST, goal = "instrument-test", lifecycle = "clover")
-@Mojo(name = "instrument-test")
+@Mojo(name = "instrument-test", threadSafe = true)
 public class CloverInstrumentTestMojo extends CloverInstrumentMojo {
     /**
      * {@inheritDoc}
@@ -12,7 +12,7 @@ import java.util.List;
  * Sets the 'test' property on the project which is used by the maven-surefire-plugin to determine which tests are run.
  * If a snapshot file from a previous build, is found, that will be used to determine what tests should be run.
  */
-@Mojo(name = "optimizeIntegration", defaultPhase = LifecyclePhase.PRE_INTEGRATION_TEST)
+@Mojo(name = "optimizeIntegration", defaultPhase = LifecyclePhase.PRE_INTEGRATION_TEST, threadSafe = true)
 public class CloverIntegrationOptimizerMojo extends CloverOptimizerMojo {
 
     protected List<String> extractNestedStrings(final String elementName, final Plugin surefirePlugin) {
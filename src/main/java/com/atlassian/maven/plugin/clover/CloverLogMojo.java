@@ -36,7 +36,7 @@ import java.util.List;
 /**
  * Provides information on the current Clover database.
  */
-@Mojo(name = "log", defaultPhase = LifecyclePhase.POST_INTEGRATION_TEST)
+@Mojo(name = "log", defaultPhase = LifecyclePhase.POST_INTEGRATION_TEST, threadSafe = true)
 public class CloverLogMojo extends AbstractCloverMojo {
     /**
      * Comma or space separated list of Clover contexts (block, statement or method filers) to exclude before
@@ -52,10 +52,12 @@ public class CloverLogMojo extends AbstractCloverMojo {
             return;
         }
 
+        mergeCloverDatabaseFragments();
         if (areCloverDatabasesAvailable()) {
             super.execute();
 
-            AbstractCloverMojo.waitForFlush(getWaitForFlush(), getFlushInterval());
+            AbstractCloverMojo.waitForFlush(getWaitForFlush(), getFlushInterval(), getCloverDatabases(),
+                    getSessionState().getTestRunTracker());
 
             log();
         } else {
@@ -121,7 +123,7 @@ public class CloverLogMojo extends AbstractCloverMojo {
      */
     private void setTestSourceRootsForProject(final CloverLogTask cloverLogTask, final MavenProject project) {
         // original src/test directory
-        String originalSrcTestDir = CloverSetupMojo.getOriginalSrcTestDir(project.getId());
+        String originalSrcTestDir = getSessionState().getOriginalSrcTestDir(project.getId());
         if (originalSrcTestDir != null) {
             addTestSrcDir(cloverLogTask, originalSrcTestDir);
         }
@@ -24,10 +24,15 @@ import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.DirectoryScanner;
 import com.atlassian.maven.plugin.clover.internal.AbstractCloverMojo;
+import com.atlassian.maven.plugin.clover.internal.ParallelCloverMerge;
 
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import com.atlassian.clover.cfg.Interval;
 import com.atlassian.clover.ant.tasks.CloverMergeTask;
@@ -36,7 +41,7 @@ import com.atlassian.clover.ant.tasks.CloverMergeTask;
  * Merge arbitrary number of clover databases into one.
  * All databases must share a common root directory.
  */
-@Mojo(name = "merge")
+@Mojo(name = "merge", threadSafe = true)
 public class CloverMergeMojo extends AbstractCloverMojo
 {
 
@@ -68,13 +73,46 @@ public class CloverMergeMojo extends AbstractCloverMojo
     {
 
         // Ensure all databases are flushed
-        AbstractCloverMojo.waitForFlush(getWaitForFlush(), getFlushInterval());
+        AbstractCloverMojo.waitForFlush(getWaitForFlush(), getFlushInterval(), findCloverDatabases());
         mergeCloverDatabases();
 
     }
 
+    /**
+     * Databases to merge, the same as selected by the CloverDbSet
+     */
+    List<String> findCloverDatabases() {
+        final List<String> databases = new ArrayList<>();
+        if (baseDir.isDirectory()) {
+            final DirectoryScanner scanner = new DirectoryScanner();
+            scanner.setBasedir(baseDir);
+            scanner.setIncludes(includes.split("[, ]+"));
+            // like the FileSet, skip files of version control systems etc.
+            scanner.addDefaultExcludes();
+            scanner.scan();
+            for (String database : scanner.getIncludedFiles()) {
+                databases.add(new File(baseDir, database).getPath());
+            }
+        }
+        return databases;
+    }
+
     private void mergeCloverDatabases() throws MojoExecutionException
     {
+        if (getMergeWorkers() > 0) {
+            final List<String> databases = findCloverDatabases();
+            if (databases.isEmpty()) {
+                throw new MojoExecutionException("No Clover databases found in " + baseDir);
+            }
+            try {
+                new ParallelCloverMerge(getMergeWorkers(), getMergeWorkerJvmArgs(), getLog()).merge(databases,
+                        span != null ? span : Interval.DEFAULT_SPAN.toString(), getCloverMergeDatabase());
+            } catch (IOException e) {
+                throw new MojoExecutionException(e.getMessage(), e);
+            }
+            return;
+        }
+
         try {
             final Project antProject = new Project();
             antProject.init();
@@ -27,7 +27,7 @@ import java.util.regex.Pattern;
  * Sets the 'test' property on the project which is used by the maven-surefire-plugin to determine which tests are run.
  * If a snapshot file from a previous build, is found, that will be used to determine what tests should be run.
  */
-@Mojo(name = "optimize", defaultPhase = LifecyclePhase.PROCESS_TEST_CLASSES)
+@Mojo(name = "optimize", defaultPhase = LifecyclePhase.PROCESS_TEST_CLASSES, threadSafe = true)
 public class CloverOptimizerMojo extends AbstractCloverMojo {
 
     /**
@@ -101,7 +101,7 @@ public class CloverOptimizerMojo extends AbstractCloverMojo {
     private static final String REGEX_END = "]";
 
     @Override
-    public void execute() {
+    public void execute() throws MojoExecutionException {
         if (skip) {
             getLog().info("Skipping build optimization.");
             return;
@@ -116,6 +116,8 @@ public class CloverOptimizerMojo extends AbstractCloverMojo {
             return;
         }
 
+        mergeCloverDatabaseFragments();
+
         final Project antProj = new Project();
         antProj.init();
         antProj.addBuildListener(new MvnLogBuildListener(getLog()));
@@ -19,11 +19,26 @@ package com.atlassian.maven.plugin.clover;
  * under the License.
  */
 
+import com.atlassian.clover.CloverStartup;
+import com.atlassian.clover.Logger;
+import com.atlassian.clover.api.CloverException;
 import com.atlassian.clover.cfg.Interval;
+import com.atlassian.clover.reporters.CloverReportConfig;
+import com.atlassian.clover.reporters.CloverReporter;
+import com.atlassian.clover.reporters.Columns;
+import com.atlassian.clover.reporters.Format;
+import com.atlassian.clover.reporters.Historical;
+import com.atlassian.clover.reporters.Type;
 import com.atlassian.maven.plugin.clover.internal.AbstractCloverMojo;
 import com.atlassian.maven.plugin.clover.internal.AntPropertyHelper;
 import com.atlassian.maven.plugin.clover.internal.CloverConfiguration;
+import com.atlassian.maven.plugin.clover.internal.CloverDatabaseFragments;
+import com.atlassian.maven.plugin.clover.internal.CloverSessionState;
 import com.atlassian.maven.plugin.clover.internal.ConfigUtil;
+import com.atlassian.maven.plugin.clover.internal.HtmlReportIndex;
+import com.atlassian.maven.plugin.clover.internal.ReportDatabases;
+import com.atlassian.maven.plugin.clover.internal.SharedDatabaseReportTask;
+import com.atlassian.maven.plugin.clover.internal.SummaryPagesFormat;
 import org.apache.maven.artifact.Artifact;
 import org.apache.maven.artifact.repository.ArtifactRepository;
 import org.apache.maven.execution.MavenSession;
@@ -39,15 +54,24 @@ import org.apache.maven.repository.RepositorySystem;
 import org.apache.maven.shared.transfer.artifact.resolve.ArtifactResolver;
 import org.apache.maven.shared.transfer.artifact.resolve.ArtifactResolverException;
 import org.apache.maven.shared.transfer.artifact.resolve.ArtifactResult;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.DirectoryScanner;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.ProjectHelper;
 import org.apache.tools.ant.PropertyHelper;
 
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.ResourceBundle;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Generate a Clover report from existing Clover databases. The generated report
@@ -57,7 +81,7 @@ import java.util.ResourceBundle;
  * <p>Note: This report mojo should be an @aggregator and the <code>clover:aggregate</code> mojo shouldn't exist. This
  * is a limitation of the site plugin which doesn't support @aggregator reports...</p>
  */
-@Mojo(name = "clover")
+@Mojo(name = "clover", threadSafe = true)
 public class CloverReportMojo extends AbstractMojo implements MavenReport, CloverConfiguration {
 
     @Component
@@ -75,6 +99,9 @@ public class CloverReportMojo extends AbstractMojo implements MavenReport, Clove
      * task. For a complete reference, please consult the:
      *  <a href="https://openclover.org/doc/manual/latest/maven--creating-custom-reports.html">Creating custom reports</a> and
      *  <a href="https://openclover.org/doc/manual/latest/ant--clover-report.html">clover-report documentation</a>
+     *
+     * If neither this nor <code>resolveReportDescriptor</code> is set, reports equal to those of the default
+     * descriptor are generated by calling Clover reporters directly, without Ant.
      */
     @Parameter(property = "maven.clover.reportDescriptor")
     private File reportDescriptor;
@@ -105,6 +132,15 @@ public class CloverReportMojo extends AbstractMojo implements MavenReport, Clove
      */
     @Parameter(property = "maven.clover.singleCloverDatabase", defaultValue = "false")
     private boolean singleCloverDatabase;
+
+    /**
+     * If true and a singleCloverDatabase is used, then fragments of the database written by modules are merged into
+     * it before the report is generated.
+     *
+     * @since 4.6.0
+     */
+    @Parameter(property = "maven.clover.cloverDatabaseFragments", defaultValue = "false")
+    private boolean cloverDatabaseFragments;
     
     /**
      * The location of the merged clover database to create when running a report in a multimodule build.
@@ -137,6 +173,8 @@ public class CloverReportMojo extends AbstractMojo implements MavenReport, Clove
      * If true we'll wait 2*flushInterval to ensure coverage data is flushed to the Clover database before running
      * any query on it.
      * <p/>
+     * <p>The wait ends as soon as tests run earlier in the same build by the maven-surefire-plugin or the
+     * maven-failsafe-plugin in forked JVMs have ended, as the JVMs flush coverage data when they exit.</p>
      * <p>Note: The only use case where you would want to turn this off is if you're running your tests in a separate
      * JVM. In that case the coverage data will be flushed by default upon the JVM shutdown and there would be no need
      * to wait for the data to be flushed. As we can't control whether users want to fork their tests or not, we're
@@ -169,6 +207,53 @@ public class CloverReportMojo extends AbstractMojo implements MavenReport, Clove
     @Parameter(property = "maven.clover.generateJson", defaultValue = "false")
     private boolean generateJson;
 
+    /**
+     * <p>Number of threads rendering pages of the HTML report. Default is 2, like the <code>numThreads</code>
+     * attribute of the <code>current</code> element of the <code>clover-report</code> task.</p>
+     * <p>Formats requested for a database (the module one and the merged one) are rendered one after another from
+     * a single load of the database, see <code>ReportDatabases</code>. The value is also passed to the report
+     * descriptor as the <code>reportThreads</code> property.</p>
+     *
+     * @since 4.6.0
+     */
+    @Parameter(property = "maven.clover.reportThreads", defaultValue = "2")
+    private int reportThreads = 2;
+
+    /**
+     * <p>If set to true, the HTML report is not rendered again if neither the Clover databases and their coverage
+     * recordings nor the report settings have changed since the previous HTML report in the output directory.</p>
+     * <p>If the databases have changed, but the report settings have not, only pages of source files whose
+     * content, coverage or tests have changed are rendered again, while package, project and test pages are
+     * rendered from the whole database. Pages of unchanged source files keep the date of the report which
+     * rendered them. Reports using a report descriptor are always rendered completely.</p>
+     * <p>Inputs of the report are recorded in <code>clover-html-index.properties</code> in the output directory.</p>
+     *
+     * @since 4.6.0
+     */
+    @Parameter(property = "maven.clover.incrementalHtml", defaultValue = "false")
+    private boolean incrementalHtml;
+
+    /**
+     * Whether the HTML report in the output directory is up to date, see {@link #incrementalHtml}.
+     */
+    private boolean htmlUpToDate;
+
+    /**
+     * Index of the HTML report in the output directory, <code>null</code> if the report is always rendered
+     * completely, see {@link #incrementalHtml}.
+     */
+    private HtmlReportIndex htmlIndex;
+
+    /**
+     * Whether reports are generated without the report descriptor, see {@link #reportDescriptor}.
+     */
+    private boolean directReports;
+
+    /**
+     * Test sources of the project, used by reports generated without the report descriptor.
+     */
+    private List<File> testSourceFiles;
+
     /**
      * Decide whether to generate a Clover historical report or not.
      */
@@ -326,31 +411,83 @@ public class CloverReportMojo extends AbstractMojo implements MavenReport, Clove
         // Ensure the output directory exists
         this.outputDirectory.mkdirs();
 
-        if (reportDescriptor == null) {
-            reportDescriptor = resolveCloverDescriptor();
-        } else if (!reportDescriptor.exists()){ // try finding this as a resource
-            try {
-                reportDescriptor = AbstractCloverMojo.getResourceAsFile(reportDescriptor.getPath(), getLog(), this.getClass().getClassLoader());
-            } catch (MojoExecutionException e) {
-                throw new MavenReportException("Could not resolve report descriptor: " + reportDescriptor.getPath(), e);
+        // the default descriptor is not parsed, the same reports are generated by calling Clover reporters directly
+        directReports = reportDescriptor == null && !resolveReportDescriptor;
+        if (directReports) {
+            getLog().info("Using default Clover report configuration.");
+        } else {
+            if (reportDescriptor == null) {
+                reportDescriptor = resolveCloverDescriptor();
+            } else if (!reportDescriptor.exists()) { // try finding this as a resource
+                try {
+                    reportDescriptor = AbstractCloverMojo.getResourceAsFile(reportDescriptor.getPath(), getLog(), this.getClass().getClassLoader());
+                } catch (MojoExecutionException e) {
+                    throw new MavenReportException("Could not resolve report descriptor: " + reportDescriptor.getPath(), e);
+                }
             }
-        }
 
-        getLog().info("Using Clover report descriptor: " + reportDescriptor.getAbsolutePath());
+            getLog().info("Using Clover report descriptor: " + reportDescriptor.getAbsolutePath());
+        }
 
         if(title != null && title.startsWith("Unnamed")) { // no project.name on the project
             title = project.getArtifactId() + " " + project.getVersion();
         }
 
+        // database -> title; reports of the merged database overwrite those of the module one
+        final Map<String, String> databases = new LinkedHashMap<>();
         File singleModuleCloverDatabase = new File(resolveCloverDatabase());
         if (singleModuleCloverDatabase.exists()) {
-            createAllReportTypes(resolveCloverDatabase(), title);
+            databases.put(resolveCloverDatabase(), title);
         }
 
         File mergedCloverDatabase = new File(this.cloverMergeDatabase);
         if (mergedCloverDatabase.exists()) {
-            createAllReportTypes(this.cloverMergeDatabase, title + " (Aggregated)");
+            databases.put(this.cloverMergeDatabase, title + " (Aggregated)");
+        }
+
+        try {
+            htmlIndex = generateHtml && incrementalHtml ? loadHtmlReportIndex(databases) : null;
+            htmlUpToDate = htmlIndex != null && htmlIndex.isUpToDate();
+            if (htmlUpToDate) {
+                getLog().info("Clover HTML report in " + outputDirectory + " is up to date, skipping it.");
+            } else if (htmlIndex != null) {
+                htmlIndex.invalidate();
+            }
+
+            for (Map.Entry<String, String> database : databases.entrySet()) {
+                createAllReportTypes(database.getKey(), database.getValue());
+            }
+
+            if (htmlIndex != null && !htmlUpToDate) {
+                htmlIndex.save();
+            }
+        } catch (IOException e) {
+            throw new MavenReportException("Failed to update the index of the Clover HTML report", e);
+        }
+    }
+
+    private HtmlReportIndex loadHtmlReportIndex(final Map<String, String> databases) throws IOException {
+        final List<String> settings = new ArrayList<>(Arrays.asList(
+                directReports ? "" : reportDescriptor.getAbsolutePath() + ":" + reportDescriptor.lastModified(),
+                nullToEmpty(titleAnchor), orderBy, nullToEmpty(contextFilters), charset, span,
+                Boolean.toString(alwaysReport), Boolean.toString(showInnerFunctions),
+                Boolean.toString(showLambdaFunctions), Boolean.toString(showUniqueCoverage),
+                Boolean.toString(includeFailedTestCoverage), Boolean.toString(generateHistorical)));
+        if (generateHistorical) {
+            final File[] historyFiles = new File(historyDir).listFiles();
+            if (historyFiles != null) {
+                Arrays.sort(historyFiles);
+                for (File historyFile : historyFiles) {
+                    settings.add(historyFile.getName() + ":" + historyFile.length() + ":" + historyFile.lastModified());
+                }
+            }
         }
+
+        final HtmlReportIndex htmlIndex = HtmlReportIndex.load(outputDirectory, String.join("\n", settings));
+        for (Map.Entry<String, String> database : databases.entrySet()) {
+            htmlIndex.addDatabase(database.getKey(), database.getValue());
+        }
+        return htmlIndex;
     }
 
     /**
@@ -359,26 +496,213 @@ public class CloverReportMojo extends AbstractMojo implements MavenReport, Clove
     private void createAllReportTypes(final String database, final String titlePrefix) {
 
         final String outpath = outputDirectory.getAbsolutePath();
-        if (this.generateHtml) {
-            createReport(database, "html", titlePrefix, outpath, outpath, false);
+        // the database is loaded by the first format and shared by the other ones
+        final ReportDatabases databases = new ReportDatabases();
+        // HTML and JSON reports both write project.js to the output directory, so the JSON one shall remain second
+        final List<Runnable> reports = new ArrayList<>();
+        if (this.generateHtml && !this.htmlUpToDate) {
+            reports.add(() -> createHtmlReport(databases, database, titlePrefix, outpath));
+        }
+        if (this.generateJson) {
+            reports.add(() -> createReport(databases, database, "json", titlePrefix, outpath, null, false));
         }
         if (this.generatePdf) {
-            createReport(database, "pdf", titlePrefix, outpath + "/clover.pdf", outpath + "/historical.pdf", true);
+            reports.add(() -> createReport(databases, database, "pdf", titlePrefix, outpath + "/clover.pdf", outpath + "/historical.pdf", true));
         }
         if (this.generateXml) {
-            createReport(database, "xml", titlePrefix, outpath + "/clover.xml", null, false);
+            reports.add(() -> createReport(databases, database, "xml", titlePrefix, outpath + "/clover.xml", null, false));
         }
-        if (this.generateJson) {
-            createReport(database, "json", titlePrefix, outpath, null, false);
+
+        // a failed format does not stop the other ones, the first failure is rethrown
+        RuntimeException failure = null;
+        for (Runnable report : reports) {
+            try {
+                report.run();
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
         }
-    } 
+    }
+
+    /**
+     * Renders the HTML report, only pages of changed source files are rendered if the report is incremental.
+     */
+    private void createHtmlReport(final ReportDatabases databases, final String database, final String title,
+                                  final String output) {
+        if (directReports && htmlIndex != null) {
+            createDirectReport(databases, database, "html", title, output, output, false, htmlIndex);
+        } else {
+            createReport(databases, database, "html", title, output, output, false);
+        }
+    }
+
+    private void createReport(final ReportDatabases databases, final String database, final String format,
+                              final String title, final String output, final String historyOut,
+                              final boolean summary) {
+        if (directReports) {
+            createDirectReport(databases, database, format, title, output, historyOut, summary, null);
+        } else {
+            createDescriptorReport(databases, database, format, title, output, historyOut, summary);
+        }
+    }
+
+    /**
+     * Generates the reports of the default report descriptor (<code>default-clover-report.xml</code>) using Clover
+     * reporters directly. Keep both in sync.
+     *
+     * @param htmlIndex if not null, only pages of source files changed since the previous HTML report are rendered
+     */
+    private void createDirectReport(final ReportDatabases databases, final String database, final String format,
+                                    final String title, final String output, final String historyOut,
+                                    final boolean summary, final HtmlReportIndex htmlIndex) {
+        Logger.setInstance(new MvnLogger(getLog()));
+        CloverStartup.loadLicense(Logger.getInstance());
+
+        final ReportDatabases.SharedDatabaseCurrent current = new ReportDatabases.SharedDatabaseCurrent(databases);
+        current.setInitString(database);
+        current.setOutFile(new File(output));
+        current.setSummary(summary);
+        current.setCharset(charset);
+        current.setTitle(nullToEmpty(title));
+        current.setTitleAnchor(nullToEmpty(titleAnchor));
+        current.setSpan(new Interval(span));
+        current.setAlwaysReport(alwaysReport);
+        current.setShowInnerFunctions(showInnerFunctions);
+        current.setShowLambdaFunctions(showLambdaFunctions);
+        current.setShowUniqueCoverage(showUniqueCoverage);
+        current.setIncludeFailedTestCoverage(includeFailedTestCoverage);
+        current.setNumThreads(reportThreads);
+        current.setFormat(createReportFormat(format));
+        current.setColumns(createReportColumns());
+        final boolean html = current.getFormat().in(Type.HTML);
+        current.setMainFileName(html ? "index.html" : "");
+        current.setNeedsNewFrame(html);
+        for (File testSource : getTestSourceFiles()) {
+            current.addTestSourceFile(testSource);
+        }
+        current.setUniqueTitle(current.getTitle());
+        current.setFirstCurrentConfig(html ? current : null);
+
+        Historical historical = null;
+        if (generateHistorical && isHistoricalDirectoryValid(output) && historyOut != null) {
+            historical = new HistoricalReportConfig(new File(historyDir));
+            historical.setOutFile(new File(historyOut));
+            historical.setCharset(charset);
+            historical.setTitle(nullToEmpty(title));
+            historical.setTitleAnchor(nullToEmpty(titleAnchor));
+            historical.setSpan(new Interval(span));
+            historical.setFormat(createReportFormat(format));
+            historical.setMainFileName(html ? "historical.html" : "");
+            historical.setNeedsNewFrame(false);
+            historical.setUniqueTitle(historical.getTitle() + "-Historical");
+            historical.setFirstCurrentConfig(current.getFirstCurrentConfig());
+            historical.setLinkedReports(Collections.<String, CloverReportConfig>singletonMap(current.getUniqueTitle(), current));
+            current.setLinkedReports(Collections.<String, CloverReportConfig>singletonMap(historical.getUniqueTitle(), historical));
+        }
+
+        getLog().info("Generating " + format + " report of the coverage database: '" + database + "'");
+        try {
+            if (htmlIndex != null) {
+                final Set<String> changedFiles = htmlIndex.selectChangedFiles(database, current.getCoverageDatabase());
+                if (changedFiles != null) {
+                    getLog().info("Rendering pages of " + changedFiles.size() + " changed source files");
+                    if (!changedFiles.isEmpty()) {
+                        current.setFiles(changedFiles);
+                        CloverReporter.buildReporter(current).execute();
+                        current.setFiles(null);
+                    }
+                    // summaries of the changed files are replaced by those of the whole database
+                    current.setFormat(new SummaryPagesFormat(current.getFormat()));
+                }
+            }
+            CloverReporter.buildReporter(current).execute();
+            if (historical != null) {
+                CloverReporter.buildReporter(historical).execute();
+            }
+        } catch (CloverException e) {
+            // fail like the clover-report task does
+            throw new BuildException(e);
+        }
+    }
+
+    /**
+     * Equivalent of the <code>clover-format</code> element of the default report descriptor.
+     */
+    private Format createReportFormat(final String format) {
+        final Format reportFormat = new Format();
+        reportFormat.setType(format);
+        reportFormat.setOrderby(orderBy);
+        reportFormat.setFilter(nullToEmpty(contextFilters));
+        return reportFormat;
+    }
+
+    /**
+     * Equivalent of the <code>clover-columns</code> element of the default report descriptor.
+     */
+    private static Columns createReportColumns() {
+        final Columns columns = new Columns();
+        columns.addConfiguredTotalChildren(new Columns.TotalChildren());
+        columns.addFilteredElements(new Columns.FilteredElements());
+        columns.addConfiguredAvgMethodComplexity(new Columns.AvgMethodComplexity());
+        final Columns.UncoveredElements uncoveredElements = new Columns.UncoveredElements();
+        uncoveredElements.setFormat("raw");
+        columns.addConfiguredUncoveredElements(uncoveredElements);
+        final Columns.TotalPercentageCovered totalPercentageCovered = new Columns.TotalPercentageCovered();
+        totalPercentageCovered.setFormat("longbar");
+        columns.addConfiguredTotalPercentageCovered(totalPercentageCovered);
+        return columns;
+    }
+
+    /**
+     * Equivalent of the <code>test.sources</code> file set of the default report descriptor. Scanned once for all
+     * reports of the module.
+     */
+    private synchronized List<File> getTestSourceFiles() {
+        if (testSourceFiles == null) {
+            testSourceFiles = scanFiles(project.getBasedir(), "**/src/test/**");
+        }
+        return testSourceFiles;
+    }
+
+    private static List<File> scanFiles(final File directory, final String includes) {
+        final List<File> files = new ArrayList<>();
+        if (directory.isDirectory()) {
+            final DirectoryScanner scanner = new DirectoryScanner();
+            scanner.setBasedir(directory);
+            scanner.setIncludes(new String[] { includes });
+            scanner.addDefaultExcludes();
+            scanner.scan();
+            for (String file : scanner.getIncludedFiles()) {
+                files.add(new File(directory, file));
+            }
+        }
+        return files;
+    }
+
+    /**
+     * A historical report of all history points found in the directory, like the <code>historical</code> element
+     * of the report descriptor without the <code>historyIncludes</code> attribute.
+     */
+    private static class HistoricalReportConfig extends Historical {
+        HistoricalReportConfig(final File historyDir) {
+            setHistoryDir(historyDir);
+            final List<File> files = scanFiles(historyDir, "clover-*.xml.gz");
+            historyFiles = files.toArray(new File[0]);
+        }
+    }
 
     /**
      * Note: We use Clover's <code>clover-report</code> Ant task instead of the Clover CLI APIs because the CLI
      * APIs are limited and do not support historical reports.
      */
-    private void createReport(final String database, final String format, final String title,
-                              final String output, final String historyOut, final boolean summary) {
+    private void createDescriptorReport(final ReportDatabases databases, final String database, final String format,
+                                        final String title, final String output, final String historyOut,
+                                        final boolean summary) {
         final Project antProject = new Project();
         antProject.init();
 
@@ -410,11 +734,14 @@ public class CloverReportMojo extends AbstractMojo implements MavenReport, Clove
         antProject.setProperty("showLambdaFunctions", Boolean.toString(showLambdaFunctions));
         antProject.setProperty("showUniqueCoverage", Boolean.toString(showUniqueCoverage));
         antProject.setProperty("includeFailedTestCoverage", Boolean.toString(includeFailedTestCoverage));
+        antProject.setProperty("reportThreads", Integer.toString(reportThreads));
         if (historyOut != null) {
             antProject.setProperty("historyout", historyOut);
         }
 
-        AbstractCloverMojo.registerCloverAntTasks(antProject, getLog());
+        antProject.addReference(SharedDatabaseReportTask.DATABASES_REFERENCE, databases);
+        AbstractCloverMojo.registerCloverAntTasks(antProject, getLog(),
+                Collections.<String, Class<?>>singletonMap("clover-report", SharedDatabaseReportTask.class));
         ProjectHelper.configureProject(antProject, reportDescriptor);
         antProject.setBaseDir(project.getBasedir());
         String target = (generateHistorical && isHistoricalDirectoryValid(output) && historyOut != null)
@@ -504,7 +831,27 @@ public class CloverReportMojo extends AbstractMojo implements MavenReport, Clove
     public boolean canGenerateReport() {
         boolean canGenerate = false;
 
-        AbstractCloverMojo.waitForFlush(this.waitForFlush, this.flushInterval);
+        AbstractCloverMojo.waitForFlush(this.waitForFlush, this.flushInterval,
+                Arrays.asList(resolveCloverDatabase(), this.cloverMergeDatabase),
+                CloverSessionState.getInstance(mavenSession).getTestRunTracker());
+
+        // fragments of the single database are merged once, for the report of the very last project; shards of
+        // a module database are merged for the report of the module
+        final MavenProject lastProject = getReactorProjects().get(getReactorProjects().size() - 1);
+        final String database = resolveCloverDatabase();
+        if (new ConfigUtil(this).useCloverDatabaseFragments()
+                ? getProject().equals(lastProject)
+                : CloverDatabaseFragments.hasFragments(database)) {
+            final ReentrantLock databaseLock = CloverSessionState.getInstance(mavenSession).getDatabaseLock(database);
+            databaseLock.lock();
+            try {
+                CloverDatabaseFragments.merge(database, getLog());
+            } catch (MojoExecutionException e) {
+                getLog().warn(e.getMessage(), e);
+            } finally {
+                databaseLock.unlock();
+            }
+        }
 
         File singleModuleCloverDatabase = new File(resolveCloverDatabase());
         File mergedCloverDatabase = new File(this.cloverMergeDatabase);
@@ -592,4 +939,9 @@ public class CloverReportMojo extends AbstractMojo implements MavenReport, Clove
         return this.singleCloverDatabase;
     }
 
+    @Override
+    public boolean isCloverDatabaseFragments() {
+        return this.cloverDatabaseFragments;
+    }
+
 }
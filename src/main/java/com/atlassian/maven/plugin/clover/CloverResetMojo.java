@@ -6,12 +6,12 @@ import org.apache.maven.plugins.annotations.Mojo;
 /**
  * Reset source directories to original ones.
  */
-@Mojo(name = "reset")
+@Mojo(name = "reset", threadSafe = true)
 public class CloverResetMojo extends CloverInstrumentInternalMojo {
 
     @Override
     public void execute() {
         getLog().info("Resetting directories for artifact: " + getProject().getId());
-        CloverInstrumentInternalMojo.resetSrcDirsOriginal(getProject().getArtifact(), this);
+        CloverInstrumentInternalMojo.resetSrcDirsOriginal(getProject().getArtifact(), this, getSessionState());
     }
 }
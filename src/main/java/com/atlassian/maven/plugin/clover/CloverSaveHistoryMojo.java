@@ -31,7 +31,7 @@ import java.io.File;
 /**
  * Save a <a href="https://openclover.org/doc/manual/latest/ant--tutorial-part-2-historical-reporting.html">Clover history point</a>.
  */
-@Mojo(name = "save-history")
+@Mojo(name = "save-history", threadSafe = true)
 public class CloverSaveHistoryMojo extends AbstractCloverMojo
 {
     /**
@@ -60,12 +60,14 @@ public class CloverSaveHistoryMojo extends AbstractCloverMojo
             getLog().info("Skipping Clover history point save until the final project in the reactor.");
             return;
         }
-        
+
+        mergeCloverDatabaseFragments();
         if ( areCloverDatabasesAvailable() )
         {
             super.execute();
 
-            AbstractCloverMojo.waitForFlush( getWaitForFlush(), getFlushInterval() );
+            AbstractCloverMojo.waitForFlush( getWaitForFlush(), getFlushInterval(), getCloverDatabases(),
+                    getSessionState().getTestRunTracker() );
 
             save();
         }
@@ -2,11 +2,8 @@ package com.atlassian.maven.plugin.clover;
 
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
-import org.apache.maven.project.MavenProject;
 import org.apache.maven.plugin.MojoExecutionException;
 
-import java.util.Date;
-
 /**
  * <p>This mojo is to be used mainly for incremental instrumentation and compilation of Java source code.</p>
  *
@@ -16,18 +13,13 @@ import java.util.Date;
  * to ${build.directory}/clover/src-instrumented and test-src-instrumented respectively. These directories are then set as the
  * project's source and test source directories that subsequently get compiled by the compiler MOJO.</p>
  */
-@Mojo(name = "setup", defaultPhase = LifecyclePhase.PROCESS_SOURCES)
+@Mojo(name = "setup", defaultPhase = LifecyclePhase.PROCESS_SOURCES, threadSafe = true)
 public class CloverSetupMojo extends CloverInstrumentInternalMojo {
 
-    static Date START_DATE; 
-
     @Override
     public void execute() throws MojoExecutionException {
         // store the start time of the build. ie - the very first compilation with clover.
-        final MavenProject firstProject = getReactorProjects().get(0);
-        if (firstProject == getProject()) {
-            START_DATE = new Date();
-        }
+        getSessionState().markBuildStarted();
         super.execute();
     }
 
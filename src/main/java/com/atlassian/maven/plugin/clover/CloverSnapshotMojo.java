@@ -28,7 +28,7 @@ import java.util.Date;
  * clover:clean goal. clover:clean will delete everything the clean plugin does, however will ensure that the snapshot
  * file does not get deleted.
  */
-@Mojo(name = "snapshot", defaultPhase = LifecyclePhase.TEST)
+@Mojo(name = "snapshot", defaultPhase = LifecyclePhase.TEST, threadSafe = true)
 public class CloverSnapshotMojo extends AbstractCloverMojo {
 
     @Parameter(property = "maven.clover.span")
@@ -42,7 +42,7 @@ public class CloverSnapshotMojo extends AbstractCloverMojo {
     private boolean forceSnapshot;
 
     @Override
-    public void execute() {
+    public void execute() throws MojoExecutionException {
         // only run the snapshot once, on the very last project.
         if (isSingleCloverDatabase() && !isLastProjectInReactor() && !forceSnapshot) {
             getLog().info("Skipping snapshot until the final project in the reactor.");
@@ -54,6 +54,8 @@ public class CloverSnapshotMojo extends AbstractCloverMojo {
             return;
         }
 
+        mergeCloverDatabaseFragments();
+
          // if there is no database, do not save a snapshot
         if (!new File(resolveCloverDatabase()).exists()) {
             getLog().info(resolveCloverDatabase() + " does not exist. Skipping snapshot creation.");
@@ -64,10 +66,11 @@ public class CloverSnapshotMojo extends AbstractCloverMojo {
         task.setInitString(resolveCloverDatabase());
         task.setDebug(debug);
 
+        final Date startDate = getSessionState().getStartDate();
         if (span != null) {
             task.setSpan(span);
-        } else if (CloverSetupMojo.START_DATE != null) {
-            final long timeSinceStart = new Date().getTime() - CloverSetupMojo.START_DATE.getTime();
+        } else if (startDate != null) {
+            final long timeSinceStart = new Date().getTime() - startDate.getTime();
             final String interval = ((timeSinceStart + 1000)/ 1000) + "s";
             getLog().info("No span specified, using span of: " + interval);
             task.setSpan(interval);
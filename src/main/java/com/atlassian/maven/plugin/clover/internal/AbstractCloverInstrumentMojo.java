@@ -5,8 +5,11 @@ import com.atlassian.clover.util.IOStreamUtils;
 import com.atlassian.maven.plugin.clover.DistributedCoverage;
 import com.atlassian.maven.plugin.clover.MethodWithMetricsContext;
 import com.atlassian.maven.plugin.clover.TestSources;
+import com.atlassian.maven.plugin.clover.internal.instrumentation.InstrumentationManifest;
+import com.atlassian.maven.plugin.clover.internal.instrumentation.SourceFileCopier;
 import com.atlassian.maven.plugin.clover.internal.lifecycle.BuildLifecycleAnalyzer;
-import org.apache.maven.execution.MavenSession;
+import com.atlassian.maven.plugin.clover.internal.scanner.ChangedFileSet;
+import com.atlassian.maven.plugin.clover.internal.scanner.SourceScanCache;
 import org.apache.maven.lifecycle.LifecycleExecutor;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugins.annotations.Component;
@@ -24,6 +27,32 @@ import java.util.*;
  */
 public abstract class AbstractCloverInstrumentMojo extends AbstractCloverMojo implements CompilerConfiguration {
 
+    /**
+     * <p>A file with a list of changed source files, one path per line. Relative paths are resolved against the
+     * directory containing the list, so the output of <code>git diff --name-only</code> saved in the root of
+     * a working tree can be used directly. Empty lines and lines starting with '#' are ignored.</p>
+     * <p>If set, only listed files are instrumented, all other source files are copied to the instrumented sources
+     * directory as they are. See also {@link #changedSince}.</p>
+     *
+     * @since 4.6.0
+     */
+    @Parameter(property = "maven.clover.changedFilesList")
+    protected String changedFilesList = null;
+
+    /**
+     * <p>A git revision (a commit hash, a branch or a tag name). If set, only source files changed on the current
+     * branch since it forked from this revision (as listed by <code>git diff revision...HEAD</code>), as well as
+     * uncommitted and untracked files, are instrumented; all other source files are copied to the instrumented
+     * sources directory as they are. This way, pull request builds can measure coverage of changed code only,
+     * at a fraction of the instrumentation cost and of the runtime overhead. See also {@link #changedFilesList}.</p>
+     * <p>Copied files are recorded and instrumented by the next build which is not limited to changed files,
+     * even if their copies are up to date.</p>
+     *
+     * @since 4.6.0
+     */
+    @Parameter(property = "maven.clover.changedSince")
+    protected String changedSince = null;
+
     /**
      * <p>The difference (in milliseconds) that a -clover classified artifact can have to a non-clover classified artifact.</p>
      * <p>If the -clover classified artifact is more than cloveredArtifactExpiryInMillis older than the non-clover classified
@@ -33,6 +62,23 @@ public abstract class AbstractCloverInstrumentMojo extends AbstractCloverMojo im
     @Parameter(property = "maven.clover.cloveredArtifactExpiryInMillis", defaultValue = "2000")
     protected long cloveredArtifactExpiryInMillis;
 
+    /**
+     * <p>Experimental. If set to true, instrumented main Java sources are compiled by the plugin directly from memory
+     * into the output directory, instead of being written to <code>src-instrumented</code> and compiled by the
+     * compiler plugin. Compilation starts before instrumentation and parses files as soon as they're instrumented.
+     * Default is false.</p>
+     * <p>Requires a JDK. Compiler settings (release, source, target, debug, parameters, proc, annotationProcessors,
+     * compilerArgs) are taken from the configuration of the default-compile execution of the compiler plugin or from
+     * its <code>maven.compiler.*</code> properties; a warning is logged for settings which can't be applied, such
+     * as annotationProcessorPaths or a forked compiler. Remaining sources (excluded, generated, test) are compiled by the compiler
+     * plugin as usual. The instrumentation manifest and cache and worker JVMs are not used
+     * for in-memory compiled sources, they're instrumented and compiled in every build.</p>
+     *
+     * @since 4.6.0
+     */
+    @Parameter(property = "maven.clover.compileInMemory", defaultValue = "false")
+    protected boolean compileInMemory = false;
+
     /**
      * If set, then the clover-maven-plugin will not copy files that were excluded, across to the target/clover directory.
      * This is useful if the build is also using plugins such as the maven-gwt-plugin, that scans for resources, and
@@ -41,6 +87,37 @@ public abstract class AbstractCloverInstrumentMojo extends AbstractCloverMojo im
     @Parameter(property = "maven.clover.copyExcludedFiles", defaultValue = "true")
     protected boolean copyExcludedFiles = true;
 
+    /**
+     * <p>If set to <code>true</code>, files in the directory with instrumented sources which were not written by
+     * the current build and whose original sources no longer exist (e.g. after a source file was deleted or
+     * renamed) are deleted, so that they're not compiled anymore. Default is <code>false</code>, i.e. such files
+     * are removed only by <code>mvn clean</code>.</p>
+     * <p>A file is considered to have a source if a file exists at the same relative path in any of the compile
+     * source roots. Any other files placed in the directory by other plugins are deleted too.</p>
+     *
+     * @since 4.6.0
+     */
+    @Parameter(property = "maven.clover.deleteOrphanedInstrumentedSources", defaultValue = "false")
+    protected boolean deleteOrphanedInstrumentedSources = false;
+
+    /**
+     * <p>How source files which are not instrumented (excluded files and Groovy files) are put into the directory
+     * with instrumented sources. Valid values are:</p>
+     * <ul>
+     * <li>copy - files are copied</li>
+     * <li>link - hard links to original files are created; if a link can't be created (e.g. the build directory
+     * is on a different file system), the file is copied</li>
+     * </ul>
+     * <p>Default is 'copy'. In both cases files are processed in parallel and files which are already up-to-date
+     * are skipped. The 'link' strategy avoids writing excluded sources again, which is useful for modules with large
+     * generated or excluded source trees. Note that in this case files in the target directory share content with
+     * the original ones, so they must not be modified by other build plugins.</p>
+     *
+     * @since 4.6.0
+     */
+    @Parameter(property = "maven.clover.copyStrategy", defaultValue = SourceFileCopier.STRATEGY_COPY)
+    protected String copyStrategy = SourceFileCopier.STRATEGY_COPY;
+
     /**
      * <p>The configuration for distributed coverage collection by Clover.</p>
      * <p>If present, default values will be used and coverage will be collected across JVMs.</p>
@@ -155,6 +232,85 @@ public abstract class AbstractCloverInstrumentMojo extends AbstractCloverMojo im
     @Parameter(property = "maven.clover.instrumentation", defaultValue = "statement")
     protected String instrumentation;
 
+    /**
+     * <p>Maximum number of source files instrumented in a single Clover instrumentation session. Default is 0, i.e.
+     * all files of a source root are instrumented in one session.</p>
+     * <p>If greater than 0, every batch of files is saved to the Clover database as soon as it's instrumented and
+     * the instrumenter of the batch is released. The registry model of all files is kept in memory until the last
+     * batch, so batching does not bound the heap used by instrumentation of large modules, which is dominated by
+     * the registry. The database contains the same files; every batch gets its own registry version.</p>
+     *
+     * @since 4.6.0
+     */
+    @Parameter(property = "maven.clover.instrumentationBatchSize", defaultValue = "0")
+    protected int instrumentationBatchSize = 0;
+
+    /**
+     * <p>Location of a persistent cache of instrumentation results, for instance
+     * <code>${user.home}/.m2/clover-instr-cache</code>. Not set by default, i.e. the cache is disabled.</p>
+     * <p>The cache stores instrumented sources and the Clover database, keyed by content of source files,
+     * instrumentation settings and versions of the plugin and Clover. When the same sources are instrumented again
+     * (e.g. after <code>mvn clean</code> or in another build of the same workspace), the result is restored from
+     * the cache instead. Paths under the module's base directory are a part of the key relative to it, so that
+     * a result can be restored in another workspace too; the location of the Clover database embedded in the
+     * instrumented code and locations of source files in the database are relocated then. The cache can be shared
+     * by concurrent builds.</p>
+     *
+     * @since 4.6.0
+     */
+    @Parameter(property = "maven.clover.instrumentationCacheDirectory")
+    protected String instrumentationCacheDirectory;
+
+    /**
+     * Maximum size of the instrumentation cache in megabytes. The least recently used entries are removed when
+     * the cache grows bigger. Default is 1024.
+     *
+     * @see #instrumentationCacheDirectory
+     * @since 4.6.0
+     */
+    @Parameter(property = "maven.clover.instrumentationCacheSize", defaultValue = "1024")
+    protected int instrumentationCacheSize = 1024;
+
+    /**
+     * <p>JVM arguments of forked instrumentation workers, for instance <code>-Xmx2g -XX:+UseParallelGC</code>.
+     * Not set by default.</p>
+     *
+     * @see #instrumentationWorkers
+     * @since 4.6.0
+     */
+    @Parameter(property = "maven.clover.instrumentationWorkerJvmArgs")
+    protected String instrumentationWorkerJvmArgs;
+
+    /**
+     * <p>Number of forked JVMs used to instrument sources. Default is 0, i.e. sources are instrumented in the Maven
+     * JVM.</p>
+     * <p>If greater than 0, sources are instrumented in a pool of worker JVMs having their own heap, so that
+     * instrumentation does not compete for memory with the rest of the build. Workers are started on demand and
+     * reused by all modules of the build; in parallel builds (<code>mvn -T</code>) up to this number of modules
+     * are instrumented at the same time. The <code>instrumentationBatchSize</code> setting applies within
+     * a worker.</p>
+     *
+     * @see #instrumentationWorkerJvmArgs
+     * @since 4.6.0
+     */
+    @Parameter(property = "maven.clover.instrumentationWorkers", defaultValue = "0")
+    protected int instrumentationWorkers = 0;
+
+    /**
+     * <p>Number of shards instrumented in parallel. Default is 1, i.e. all source files of a module are instrumented
+     * in one session.</p>
+     * <p>If greater than 1, source files are split into this number of shards, each one instrumented in a worker JVM
+     * (see {@link #instrumentationWorkers}; if workers are not enabled, a pool of this size is used) to its own
+     * registry located in the 'fragments' directory next to the Clover database. Shards are merged into the
+     * database before it's read, e.g. by clover:check or clover:clover. A file always belongs to the same shard,
+     * so that shards can be instrumented incrementally. The instrumentation cache is not used with shards, and
+     * shards are not used with the in-memory compilation.</p>
+     *
+     * @since 4.6.0
+     */
+    @Parameter(property = "maven.clover.instrumentationThreads", defaultValue = "1")
+    protected int instrumentationThreads = 1;
+
     /**
      * <p>Define whether lambda functions shall be instrumented: Valid values are:</p>
      * <ul>
@@ -277,6 +433,21 @@ public abstract class AbstractCloverInstrumentMojo extends AbstractCloverMojo im
     @Parameter(property = "maven.clover.skipGroverJar", defaultValue = "false")
     protected boolean skipGroverJar = false;
 
+    /**
+     * <p>Which implementation is used to scan source roots for files to be instrumented. Valid values are:</p>
+     * <ul>
+     * <li>ant - Ant's DirectoryScanner</li>
+     * <li>nio - a scanner based on java.nio.file, which walks directories in parallel; if excluded files are not
+     * copied (copyExcludedFiles=false), it does not enter directories which can't contain included files</li>
+     * </ul>
+     * <p>Both implementations use the same include/exclude pattern semantics (including default excludes). Default
+     * is 'ant'. The 'nio' scanner is faster on large source trees, especially on network file systems.</p>
+     *
+     * @since 4.6.0
+     */
+    @Parameter(property = "maven.clover.sourceScanner", defaultValue = SourceScanCache.SCANNER_ANT)
+    protected String sourceScanner = SourceScanCache.SCANNER_ANT;
+
     /**
      * Specifies the custom statement contexts to use for filtering specific statements from Clover reports.
      * e.g.<pre>&lt;log&gt;^LOG\..*&lt;/log&gt;</pre>
@@ -287,10 +458,32 @@ public abstract class AbstractCloverInstrumentMojo extends AbstractCloverMojo im
 
     /**
      * Sets the granularity in milliseconds of the last modification date for testing whether a source needs reinstrumentation.
+     * Used by the 'mtime' and 'both' {@link #staleness} modes. With 'mtime', 0 means the default granularity of the
+     * file system.
      */
     @Parameter(property = "maven.clover.staleMillis", defaultValue = "0")
     protected int staleMillis;
 
+    /**
+     * <p>How to decide which sources need to be instrumented again. Valid values are:</p>
+     * <ul>
+     * <li>mtime - a source file is instrumented again if it's newer than the instrumented file by more than
+     * {@link #staleMillis}</li>
+     * <li>hash - a source file is instrumented again if its content has changed</li>
+     * <li>both - a source file is instrumented again if it's newer than the instrumented file and its content
+     * has changed; content is checked only for files with a newer modification date</li>
+     * </ul>
+     * <p>Default is 'mtime'. For 'hash' and 'both', Clover keeps a manifest next to the instrumented sources directory,
+     * which contains a hash of every instrumented source file and a fingerprint of the instrumentation settings.
+     * All files are instrumented again if instrumentation settings have changed or if the Clover database is missing.
+     * This makes builds after a fresh checkout, a <code>touch</code> or a regeneration of sources (e.g. by JAXB
+     * or protobuf code generators with <code>includesAllSourceRoots=true</code>) much faster.</p>
+     *
+     * @since 4.6.0
+     */
+    @Parameter(property = "maven.clover.staleness", defaultValue = InstrumentationManifest.STALENESS_MTIME)
+    protected String staleness = InstrumentationManifest.STALENESS_MTIME;
+
     /**
      * Specifies a custom test detector configuration. Useful in case your tests are not following JUnit/TestNG
      * naming convention. Example:
@@ -353,39 +546,123 @@ public abstract class AbstractCloverInstrumentMojo extends AbstractCloverMojo im
     private LifecycleExecutor lifecycleExecutor;
 
     /**
-     * Used to learn about current build session.
      */
-    @Parameter(defaultValue = "${session}", readonly = true)
-    private MavenSession mavenSession;
+    @Parameter(defaultValue = "${project}", readonly = true)
+    private MavenProject mavenProject;
 
     /**
+     * Results of scanning source roots, shared by all source scanners during this execution
      */
-    @Parameter(defaultValue = "${project}", readonly = true)
-    private MavenProject mavenProject;
+    private SourceScanCache sourceScanCache;
+
+    /**
+     * Changed files resolved from changedSince/changedFilesList, <code>null</code> if all files are in scope
+     */
+    private ChangedFileSet changedFileSet;
+
+    /**
+     * Include patterns resolved from includes/includesList/includesFile, read once per execution
+     */
+    private Set<String> resolvedIncludes;
+
+    /**
+     * Exclude patterns resolved from excludes/excludesList/excludesFile, read once per execution
+     */
+    private Set<String> resolvedExcludes;
 
     ///////////////////////////////////////////////////////////////////////////
 
     @Override
     public void execute() throws MojoExecutionException {
         super.execute();
+        try {
+            getSourceScanCache();
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
+        }
+        if (!InstrumentationManifest.STALENESS_MTIME.equals(staleness)
+                && !InstrumentationManifest.STALENESS_HASH.equals(staleness)
+                && !InstrumentationManifest.STALENESS_BOTH.equals(staleness)) {
+            throw new MojoExecutionException("Unknown staleness '" + staleness + "', valid values are: "
+                    + InstrumentationManifest.STALENESS_MTIME + ", " + InstrumentationManifest.STALENESS_HASH
+                    + ", " + InstrumentationManifest.STALENESS_BOTH);
+        }
+        changedFileSet = resolveChangedFileSet();
         if (repositoryPollutionProtection) {
             final BuildLifecycleAnalyzer lifecycleAnalyzer = new BuildLifecycleAnalyzer(
-                    getLog(), lifecycleExecutor, mavenProject, mavenSession);
+                    getLog(), lifecycleExecutor, mavenProject, getMavenSession());
             failIfDeployPhaseIsPresent(lifecycleAnalyzer);
             failIfInstallPhaseIsPresent(lifecycleAnalyzer);
             failIfCustomClassifierIsPresent();
         }
     }
 
+    private ChangedFileSet resolveChangedFileSet() throws MojoExecutionException {
+        if (changedSince == null && changedFilesList == null) {
+            return null;
+        }
+        final ChangedFileSet changedFiles = new ChangedFileSet();
+        if (changedSince != null) {
+            try {
+                changedFiles.addFromGit(getProject().getBasedir(), changedSince);
+            } catch (IOException e) {
+                throw new MojoExecutionException("Could not find files changed since revision '" + changedSince + "'", e);
+            }
+        }
+        if (changedFilesList != null) {
+            try {
+                changedFiles.addFromFile(new File(changedFilesList));
+            } catch (IOException e) {
+                throw new MojoExecutionException("Could not read changedFilesList: " + changedFilesList, e);
+            }
+        }
+        getLog().info("Clover instrumentation is limited to " + changedFiles.size() + " changed file(s)");
+        return changedFiles;
+    }
+
     protected abstract boolean shouldRedirectArtifacts();
 
     protected abstract boolean shouldRedirectOutputDirectories();
 
+    @Override
+    public ChangedFileSet getChangedFileSet() {
+        return changedFileSet;
+    }
+
+    @Override
+    public boolean isCompileInMemory() {
+        return compileInMemory;
+    }
+
+    @Override
+    public String resolveInstrumentationDatabase() {
+        return new ConfigUtil(this).resolveInstrumentationDatabase();
+    }
+
+    /**
+     * Returns the output directory of the project's main classes. It's overridden by mojos which redirect output
+     * directories, so that it returns the directory used after the redirection.
+     */
+    @Override
+    public String getInstrumentedClassesDirectory() {
+        return getProject().getBuild().getOutputDirectory();
+    }
+
     @Override
     public boolean isCopyExcludedFiles() {
         return copyExcludedFiles;
     }
 
+    @Override
+    public boolean isDeleteOrphanedInstrumentedSources() {
+        return deleteOrphanedInstrumentedSources;
+    }
+
+    @Override
+    public String getCopyStrategy() {
+        return copyStrategy;
+    }
+
     @Override
     public String getEncoding() {
         return encoding;
@@ -398,6 +675,13 @@ public abstract class AbstractCloverInstrumentMojo extends AbstractCloverMojo im
 
     @Override
     public Set<String> getExcludes() {
+        if (resolvedExcludes == null) {
+            resolvedExcludes = resolveExcludes();
+        }
+        return resolvedExcludes;
+    }
+
+    private Set<String> resolveExcludes() {
         if (excludesList == null && excludesFile == null) {
             return excludes;
         } else if (excludesFile != null) {
@@ -420,6 +704,13 @@ public abstract class AbstractCloverInstrumentMojo extends AbstractCloverMojo im
 
     @Override
     public Set<String> getIncludes() {
+        if (resolvedIncludes == null) {
+            resolvedIncludes = resolveIncludes();
+        }
+        return resolvedIncludes;
+    }
+
+    private Set<String> resolveIncludes() {
         if (includesList == null && includesFile == null) {
             return this.includes;
         } else if (includesFile != null) {
@@ -439,6 +730,36 @@ public abstract class AbstractCloverInstrumentMojo extends AbstractCloverMojo im
         return instrumentation;
     }
 
+    @Override
+    public int getInstrumentationBatchSize() {
+        return instrumentationBatchSize;
+    }
+
+    @Override
+    public String getInstrumentationCacheDirectory() {
+        return instrumentationCacheDirectory;
+    }
+
+    @Override
+    public int getInstrumentationCacheSize() {
+        return instrumentationCacheSize;
+    }
+
+    @Override
+    public String getInstrumentationWorkerJvmArgs() {
+        return instrumentationWorkerJvmArgs;
+    }
+
+    @Override
+    public int getInstrumentationWorkers() {
+        return instrumentationWorkers;
+    }
+
+    @Override
+    public int getInstrumentationThreads() {
+        return instrumentationThreads;
+    }
+
     @Override
     public String getInstrumentLambda() {
         return instrumentLambda;
@@ -479,6 +800,19 @@ public abstract class AbstractCloverInstrumentMojo extends AbstractCloverMojo im
         return useFullyQualifiedJavaLang;
     }
 
+    @Override
+    public String getStaleness() {
+        return staleness;
+    }
+
+    @Override
+    public SourceScanCache getSourceScanCache() {
+        if (sourceScanCache == null) {
+            sourceScanCache = new SourceScanCache(sourceScanner, copyExcludedFiles);
+        }
+        return sourceScanCache;
+    }
+
     @Override
     public TestSources getTestSources() {
         return testSources;
@@ -20,6 +20,7 @@ package com.atlassian.maven.plugin.clover.internal;
  */
 
 import com.atlassian.clover.util.FileUtils;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.plugin.logging.Log;
@@ -29,9 +30,13 @@ import org.apache.tools.ant.Project;
 import org.apache.tools.ant.taskdefs.Taskdef;
 
 import java.io.File;
-import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
 
 import com.atlassian.maven.plugin.clover.MvnLogBuildListener;
 
@@ -66,12 +71,46 @@ public abstract class AbstractCloverMojo extends AbstractMojo implements CloverC
     @Parameter(property = "maven.clover.singleCloverDatabase", defaultValue = "false")
     private boolean singleCloverDatabase;
 
+    /**
+     * <p>If true and a singleCloverDatabase is used, then every module is instrumented into its own fragment of the
+     * database (in the 'fragments' directory next to it) instead of appending to the single database. Modules built
+     * in parallel don't contend for the single database then. Fragments are merged into the single database when
+     * it's read, e.g. by the check, log, snapshot or clover goals.</p>
+     *
+     * @since 4.6.0
+     */
+    @Parameter(property = "maven.clover.cloverDatabaseFragments", defaultValue = "false")
+    private boolean cloverDatabaseFragments;
+
     /**
      * The location of the merged clover database to create when running a report in a multimodule build.
      */
     @Parameter(property = "maven.clover.cloverMergeDatabase", defaultValue = "${project.build.directory}/clover/cloverMerge.db", required = true)
     private String cloverMergeDatabase;
 
+    /**
+     * <p>Number of forked JVMs used by the aggregate and merge goals to merge Clover databases. Default is 0, i.e.
+     * all databases are merged at once in the Maven JVM.</p>
+     * <p>If greater than 0, databases are merged pairwise in a tree: neighbouring databases are merged into
+     * intermediate ones, which are merged again until one database is left. Up to this number of merges run in
+     * parallel, each in a worker JVM which reads two databases only. The merged database is the same as the one
+     * merged at once. This is useful for builds with hundreds of modules.</p>
+     *
+     * @see #mergeWorkerJvmArgs
+     * @since 4.6.0
+     */
+    @Parameter(property = "maven.clover.mergeWorkers", defaultValue = "0")
+    private int mergeWorkers;
+
+    /**
+     * <p>JVM arguments of forked merge workers, for instance <code>-Xmx1g</code>. Not set by default.</p>
+     *
+     * @see #mergeWorkers
+     * @since 4.6.0
+     */
+    @Parameter(property = "maven.clover.mergeWorkerJvmArgs")
+    private String mergeWorkerJvmArgs;
+
     /**
      * A Clover license file to be used by the plugin. The plugin tries to resolve this parameter first as a resource,
      * then as a URL, and then as a file location on the filesystem. If not provided, Clover will use a bundled
@@ -101,6 +140,8 @@ public abstract class AbstractCloverMojo extends AbstractMojo implements CloverC
     /**
      * <p>If true we'll wait 2*flushInterval to ensure coverage data is flushed to the Clover database before running
      * any query on it.</p>
+     * <p>The wait ends as soon as tests run earlier in the same build by the maven-surefire-plugin or the
+     * maven-failsafe-plugin in forked JVMs have ended, as the JVMs flush coverage data when they exit.</p>
      * <p>Note: The only use case where you would want to turn this off is if you're running your tests in a separate
      * JVM. In that case the coverage data will be flushed by default upon the JVM shutdown and there would be no need
      * to wait for the data to be flushed. As we can't control whether users want to fork their tests or not, we're
@@ -136,6 +177,12 @@ public abstract class AbstractCloverMojo extends AbstractMojo implements CloverC
     @Parameter(defaultValue = "${reactorProjects}", readonly = true)
     private List<MavenProject> reactorProjects;
 
+    /**
+     * <p>The current build session, its {@link CloverSessionState} is shared by all modules.</p>
+     * <p>Note: This is passed by Maven and must not be configured by the user.</p>
+     */
+    @Parameter(defaultValue = "${session}", readonly = true)
+    private MavenSession mavenSession;
 
     /**
      * {@inheritDoc}
@@ -175,29 +222,60 @@ public abstract class AbstractCloverMojo extends AbstractMojo implements CloverC
      * @param log logger
      */
     public static void registerCloverAntTasks(final Project antProject, final Log log) {
-        antProject.addBuildListener(new MvnLogBuildListener(log));
+        registerCloverAntTasks(antProject, log, Collections.<String, Class<?>>emptyMap());
+    }
+
+    /**
+     * Register the Clover Ant tasks like {@link #registerCloverAntTasks(Project, Log)} does, but with some of them
+     * replaced by other implementations. Tasks are replaced before the logger is attached, so that Ant does not warn
+     * about overridden definitions.
+     *
+     * @param antProject project
+     * @param log logger
+     * @param taskOverrides task name to task class
+     */
+    public static void registerCloverAntTasks(final Project antProject, final Log log,
+                                              final Map<String, Class<?>> taskOverrides) {
         final Taskdef taskdef = (Taskdef) antProject.createTask("taskdef");
         taskdef.init();
         taskdef.setResource("cloverlib.xml");
         taskdef.execute();
+        for (Map.Entry<String, Class<?>> override : taskOverrides.entrySet()) {
+            antProject.addTaskDefinition(override.getKey(), override.getValue());
+        }
+        antProject.addBuildListener(new MvnLogBuildListener(log));
     }
 
     /**
-     * Wait 2*'flush interval' milliseconds to ensure that the coverage data have been flushed to the Clover database.
+     * Wait until coverage recordings of the databases have not been modified for 2*'flush interval' milliseconds
+     * (but no longer than that) to ensure that the coverage data have been flushed to the Clover database.
+     * See {@link CoverageRecordings}.
      *
      * This method should not be static, but we need it static here because we cannot share code
      * between non report mojos and main build mojos.
      *
      * @param waitForFlush whether to pause until flush occurs
      * @param flushInterval current interval
+     * @param databases databases which are about to be read
      */
-    public static void waitForFlush(final boolean waitForFlush, final int flushInterval) {
+    public static void waitForFlush(final boolean waitForFlush, final int flushInterval,
+                                    final Collection<String> databases) {
+        waitForFlush(waitForFlush, flushInterval, databases, null);
+    }
+
+    /**
+     * Like {@link #waitForFlush(boolean, int, Collection)}, but the wait ends as soon as test JVMs of the build
+     * have ended.
+     *
+     * @param waitForFlush whether to pause until flush occurs
+     * @param flushInterval current interval
+     * @param databases databases which are about to be read
+     * @param testRuns test runs of the build, see {@link CloverSessionState#getTestRunTracker()}
+     */
+    public static void waitForFlush(final boolean waitForFlush, final int flushInterval,
+                                    final Collection<String> databases, final TestRunTracker testRuns) {
         if (waitForFlush) {
-            try {
-                Thread.sleep(2L * flushInterval);
-            } catch (InterruptedException e) {
-                // Nothing to do... Just go on and try to check for coverage.
-            }
+            CoverageRecordings.awaitFlush(databases, flushInterval, testRuns);
         }
     }
 
@@ -238,10 +316,25 @@ public abstract class AbstractCloverMojo extends AbstractMojo implements CloverC
         return this.cloverMergeDatabase;
     }
 
+    /**
+     * @return List the module database and the merged database, both of them may not exist
+     */
+    protected List<String> getCloverDatabases() {
+        return Arrays.asList(resolveCloverDatabase(), getCloverMergeDatabase());
+    }
+
     public int getFlushInterval() {
         return this.flushInterval;
     }
 
+    public int getMergeWorkers() {
+        return this.mergeWorkers;
+    }
+
+    public String getMergeWorkerJvmArgs() {
+        return this.mergeWorkerJvmArgs;
+    }
+
     public void setProject(final MavenProject project) {
         this.project = project;
     }
@@ -258,10 +351,50 @@ public abstract class AbstractCloverMojo extends AbstractMojo implements CloverC
         return reactorProjects;
     }
 
+    public MavenSession getMavenSession() {
+        return mavenSession;
+    }
+
+    public void setMavenSession(final MavenSession mavenSession) {
+        this.mavenSession = mavenSession;
+    }
+
+    /**
+     * @return CloverSessionState state shared by all modules of the current session
+     */
+    protected CloverSessionState getSessionState() {
+        return CloverSessionState.getInstance(mavenSession);
+    }
+
     public boolean isSingleCloverDatabase() {
         return this.singleCloverDatabase;
     }
 
+    public boolean isCloverDatabaseFragments() {
+        return this.cloverDatabaseFragments;
+    }
+
+    /**
+     * Merges fragments of the single database written by modules, if they're enabled, or shards of the database,
+     * so that the database can be read. See {@link CloverDatabaseFragments}.
+     *
+     * @throws MojoExecutionException if fragments can't be merged
+     */
+    protected void mergeCloverDatabaseFragments() throws MojoExecutionException {
+        final String database = resolveCloverDatabase();
+        if (new ConfigUtil(this).useCloverDatabaseFragments() || CloverDatabaseFragments.hasFragments(database)) {
+            waitForFlush(getWaitForFlush(), getFlushInterval(), Collections.singletonList(database),
+                    getSessionState().getTestRunTracker());
+            final ReentrantLock databaseLock = getSessionState().getDatabaseLock(database);
+            databaseLock.lock();
+            try {
+                CloverDatabaseFragments.merge(database, getLog());
+            } finally {
+                databaseLock.unlock();
+            }
+        }
+    }
+
     protected boolean isLastProjectInReactor() {
         final MavenProject lastProject = getReactorProjects().get(getReactorProjects().size() - 1);
         final MavenProject thisProject = getProject();
@@ -278,39 +411,19 @@ public abstract class AbstractCloverMojo extends AbstractMojo implements CloverC
      *         parent project.
      */
     protected boolean isModuleOfProject(final MavenProject parentProject, final MavenProject potentialModule) {
-        boolean result = false;
-        final List<String> modules = parentProject.getModules();
-
-        if (modules != null) {
-            final File parentBaseDir = parentProject.getBasedir();
-
-            for (final String module : modules) {
-                File moduleBaseDir = new File(parentBaseDir, module);
-
-                try {
-                    // need these to be canonical paths, so we can perform a true equality
-                    // operation and remember <module> is a path and for flat multi-module project
-                    // structures they will be like this: <module>../a-project<module>
-                    final String lhs = potentialModule.getBasedir().getCanonicalPath();
-                    final String rhs = moduleBaseDir.getCanonicalPath();
-
-                    if (lhs.equals(rhs)) {
-                        getLog().debug("isModuleOfProject: lhs=" + lhs + " rhs=" + rhs + " MATCH FOUND");
-                        result = true;
-                        break;
-                    } else {
-                        getLog().debug("isModuleOfProject: lhs=" + lhs + " rhs=" + rhs);
-                    }
-                } catch (IOException e) {
-                    // suppress the exception (?)
-                    getLog().error("error encountered trying to resolve canonical module paths");
-                }
-            }
-        }
-
+        final boolean result = getReactorModuleIndex().isModuleOf(parentProject, potentialModule);
+        getLog().debug("isModuleOfProject: " + potentialModule.getId() + " of " + parentProject.getId() + "=" + result);
         return result;
     }
 
+    /**
+     * @return ReactorModuleIndex index of the reactor shared by all modules of the current session
+     */
+    protected ReactorModuleIndex getReactorModuleIndex() {
+        return getSessionState().getReactorModuleIndex(getReactorProjects() != null
+                ? getReactorProjects() : Collections.emptyList());
+    }
+
     /**
      * Returns all the projects that are modules, or modules of modules, of the
      * specified project found within the reactor.
@@ -338,19 +451,14 @@ public abstract class AbstractCloverMojo extends AbstractMojo implements CloverC
                 + " infinite=" + infinite + " levels=" + levels);
 
         if ((getReactorProjects() != null) && (infinite || levels > 0)) {
-            for (final MavenProject reactorProject : getReactorProjects()) {
-                getLog().debug("getModuleProjects: checking " + reactorProject.getId() + " against " + project.getId());
-                if (isModuleOfProject(project, reactorProject)) {
-                    getLog().debug("getModuleProjects: reactor project " + reactorProject.getId() + " is a module of " + project.getId());
-                    projects.add(reactorProject);
-                    if (project == reactorProject) {
-                        projects.add(project); //CLMVN-78 don't recurse if project is the same as reactorProject.
-                    } else {
-                        projects.addAll(getModuleProjects(reactorProject,
-                                infinite ? levels : levels - 1));
-                    }
+            for (final MavenProject reactorProject : getReactorModuleIndex().getModules(project)) {
+                getLog().debug("getModuleProjects: reactor project " + reactorProject.getId() + " is a module of " + project.getId());
+                projects.add(reactorProject);
+                if (project == reactorProject) {
+                    projects.add(project); //CLMVN-78 don't recurse if project is the same as reactorProject.
                 } else {
-                    getLog().debug("getModuleProjects: reactor project " + reactorProject.getId() + " is not a module of " + project.getId());
+                    projects.addAll(getModuleProjects(reactorProject,
+                            infinite ? levels : levels - 1));
                 }
             }
         }
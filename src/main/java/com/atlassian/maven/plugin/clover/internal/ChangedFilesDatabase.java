@@ -0,0 +1,192 @@
+package com.atlassian.maven.plugin.clover.internal;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.atlassian.clover.CloverDatabase;
+import com.atlassian.clover.CodeType;
+import com.atlassian.clover.CoverageData;
+import com.atlassian.clover.CoverageDataSpec;
+import com.atlassian.clover.ProgressListener;
+import com.atlassian.clover.api.registry.PackageInfo;
+import com.atlassian.clover.context.ContextSet;
+import com.atlassian.clover.context.ContextStore;
+import com.atlassian.clover.registry.CoverageDataRange;
+import com.atlassian.clover.registry.entities.BaseFileInfo;
+import com.atlassian.clover.registry.entities.FullFileInfo;
+import com.atlassian.clover.registry.entities.FullPackageInfo;
+import com.atlassian.clover.registry.entities.FullProjectInfo;
+import com.atlassian.clover.registry.entities.TestCaseInfo;
+import com.atlassian.clover.registry.metrics.HasMetricsFilter;
+import com.atlassian.clover.util.Path;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>A view of a loaded database whose models contain only some of the source files, used to render pages of
+ * changed files only (see {@link HtmlReportIndex}). Coverage data and tests are those of the whole database, so
+ * pages of the files are the same as in a report of the whole database.</p>
+ *
+ * <p>Package and project pages rendered from the view summarize the files of the view only, they have to be
+ * rendered again from the whole database.</p>
+ *
+ * <p>Source file pages show the coverage distribution of all source files, which the HTML reporter takes from
+ * {@link FullProjectInfo#getFiles(HasMetricsFilter)} of the full model. Files of the full model of the view are
+ * therefore those of the whole database, while its packages contain only the files of the view.</p>
+ */
+public class ChangedFilesDatabase extends CloverDatabase {
+
+    @NotNull
+    private final CloverDatabase database;
+
+    @NotNull
+    private final FullProjectInfo fullModel;
+
+    @NotNull
+    private final FullProjectInfo appOnlyModel;
+
+    @NotNull
+    private final FullProjectInfo testOnlyModel;
+
+    /**
+     * @param database loaded database
+     * @param files    package paths of the files of the view, see {@link BaseFileInfo#getPackagePath()}
+     */
+    public ChangedFilesDatabase(@NotNull final CloverDatabase database, @NotNull final Set<String> files) {
+        super(database.getRegistry());
+        this.database = database;
+        final HasMetricsFilter filter = hasMetrics ->
+                !(hasMetrics instanceof BaseFileInfo) || files.contains(((BaseFileInfo) hasMetrics).getPackagePath());
+        this.fullModel = new ChangedFilesProject(database.getFullModel(), filter);
+        this.appOnlyModel = database.getAppOnlyModel().copy(filter);
+        this.testOnlyModel = database.getTestOnlyModel().copy(filter);
+    }
+
+    @Override
+    public CoverageData loadCoverageData(final CoverageDataSpec spec, final ProgressListener progressListener) {
+        // loaded by the database
+        return database.getCoverageData();
+    }
+
+    @Override
+    public FullProjectInfo getModel(final CodeType codeType) {
+        switch (codeType) {
+            case APPLICATION:
+                return appOnlyModel;
+            case TEST:
+                return testOnlyModel;
+            default:
+                return fullModel;
+        }
+    }
+
+    @Override
+    public FullProjectInfo getFullModel() {
+        return fullModel;
+    }
+
+    @Override
+    public FullProjectInfo getAppOnlyModel() {
+        return appOnlyModel;
+    }
+
+    @Override
+    public FullProjectInfo getTestOnlyModel() {
+        return testOnlyModel;
+    }
+
+    @Override
+    public void resolve(final Path sourcePath) {
+        // resolved by the database
+    }
+
+    @Override
+    public ContextSet getContextSet(final String filter) {
+        return database.getContextSet(filter);
+    }
+
+    @Override
+    public ContextStore getContextStore() {
+        return database.getContextStore();
+    }
+
+    @Override
+    public Set<TestCaseInfo> getTestHits(final CoverageDataRange range) {
+        return database.getTestHits(range);
+    }
+
+    @Override
+    public Map<TestCaseInfo, BitSet> mapTestsAndCoverageForFile(final FullFileInfo fileInfo) {
+        return database.mapTestsAndCoverageForFile(fileInfo);
+    }
+
+    @Override
+    public CoverageData getCoverageData() {
+        return database.getCoverageData();
+    }
+
+    @Override
+    public TestCaseInfo getTestCase(final int id) {
+        return database.getTestCase(id);
+    }
+
+    @Override
+    public boolean hasCoverage() {
+        return database.hasCoverage();
+    }
+
+    @Override
+    public long getRecordingTimestamp() {
+        return database.getRecordingTimestamp();
+    }
+
+    /**
+     * A copy of a project with packages of the view, like {@link FullProjectInfo#copy(HasMetricsFilter)}, whose
+     * files are still those of the project.
+     */
+    private static class ChangedFilesProject extends FullProjectInfo {
+        @NotNull
+        private final FullProjectInfo project;
+
+        ChangedFilesProject(@NotNull final FullProjectInfo project, @NotNull final HasMetricsFilter filter) {
+            super(project.getName());
+            this.project = project;
+            setContextFilter(project.getContextFilter());
+            setDataProvider(project.getDataProvider());
+            setVersion(project.getVersion());
+            for (PackageInfo packageInfo : project.getAllPackages()) {
+                final FullPackageInfo packageCopy = ((FullPackageInfo) packageInfo).copy(this, filter);
+                if (!packageCopy.isEmpty()) {
+                    addPackage(packageCopy);
+                }
+            }
+            setDataLength(project.getDataLength());
+            setHasTestResults(project.hasTestResults());
+        }
+
+        @Override
+        public List getFiles(final HasMetricsFilter filter) {
+            return project.getFiles(filter);
+        }
+    }
+}
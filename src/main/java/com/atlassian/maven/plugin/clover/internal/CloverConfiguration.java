@@ -41,4 +41,9 @@ public interface CloverConfiguration {
 
     boolean isSingleCloverDatabase();
 
+    /**
+     * @return whether modules write fragments of the single database instead of the database itself
+     */
+    boolean isCloverDatabaseFragments();
+
 }
@@ -0,0 +1,208 @@
+package com.atlassian.maven.plugin.clover.internal;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.atlassian.clover.CloverMerge;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * <p>Fragments of a Clover database. Fragments are merged into the database by {@link #merge(String, Log)} when
+ * it's about to be read. There are two kinds of fragments:</p>
+ * <ul>
+ *     <li>fragments of a single database (see {@link CloverConfiguration#isSingleCloverDatabase()}) - every module
+ *     writes its own registry and coverage recordings to a fragment located next to the single database, so that
+ *     modules instrumented in parallel don't contend for one registry file</li>
+ *     <li>shards of a module database - source files of a module are split into shards which are instrumented
+ *     in parallel, each one to its own registry</li>
+ * </ul>
+ *
+ * <pre>
+ * target/clover/clover.db                                                      - the single database
+ * target/clover/fragments/groupId_artifactId/clover.db                         - fragment of a module
+ * target/clover/fragments/groupId_artifactId/fragments/shard-1-of-4/clover.db  - shard of the fragment
+ * </pre>
+ */
+public class CloverDatabaseFragments {
+
+    static final String FRAGMENTS_DIRECTORY = "fragments";
+
+    private static final String SHARD_PREFIX = "shard-";
+
+    private CloverDatabaseFragments() {
+    }
+
+    /**
+     * Returns location of the fragment of the single database written by the module.
+     *
+     * @param database path to the single database
+     * @param project  module
+     * @return String path to the fragment
+     */
+    @NotNull
+    public static String getFragment(@NotNull final String database, @NotNull final MavenProject project) {
+        final File databaseFile = new File(database);
+        final File moduleDir = new File(new File(databaseFile.getParentFile(), FRAGMENTS_DIRECTORY),
+                project.getGroupId() + "_" + project.getArtifactId());
+        return new File(moduleDir, databaseFile.getName()).getPath();
+    }
+
+    /**
+     * Returns location of a shard of the database.
+     *
+     * @param database path to the database
+     * @param shard    number of the shard, from 1 to <code>shards</code>
+     * @param shards   number of shards
+     * @return String path to the shard
+     */
+    @NotNull
+    public static String getShard(@NotNull final String database, final int shard, final int shards) {
+        final File databaseFile = new File(database);
+        final File shardDir = new File(new File(databaseFile.getParentFile(), FRAGMENTS_DIRECTORY),
+                SHARD_PREFIX + shard + "-of-" + shards);
+        return new File(shardDir, databaseFile.getName()).getPath();
+    }
+
+    /**
+     * Deletes shards of the database which were written with a different number of shards, so that they're not
+     * merged into the database anymore.
+     *
+     * @param database path to the database
+     * @param shards   current number of shards, 0 or 1 if the database is not split into shards
+     * @throws IOException if shards can't be deleted
+     */
+    public static void deleteStaleShards(@NotNull final String database, final int shards) throws IOException {
+        final File fragmentsDir = new File(new File(database).getParentFile(), FRAGMENTS_DIRECTORY);
+        final String suffix = "-of-" + shards;
+        final File[] shardDirs = fragmentsDir.listFiles(file -> file.isDirectory()
+                && file.getName().startsWith(SHARD_PREFIX)
+                && (shards <= 1 || !file.getName().endsWith(suffix)));
+        if (shardDirs != null) {
+            for (File shardDir : shardDirs) {
+                try (Stream<Path> files = Files.walk(shardDir.toPath())) {
+                    for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                        Files.delete(file);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param database path to the database
+     * @return true if the database has fragments which shall be merged before reading it
+     */
+    public static boolean hasFragments(@NotNull final String database) {
+        final File databaseFile = new File(database);
+        return !findFragments(new File(databaseFile.getParentFile(), FRAGMENTS_DIRECTORY), databaseFile.getName()).isEmpty();
+    }
+
+    /**
+     * Merges all fragments into the database, unless the database is newer than all fragments and their
+     * coverage recordings. Fragments which have fragments on their own (shards) are merged first.
+     *
+     * @param database path to the database
+     * @param log      logger
+     * @throws MojoExecutionException if fragments can't be merged
+     */
+    public static void merge(@NotNull final String database, @NotNull final Log log) throws MojoExecutionException {
+        final File databaseFile = new File(database);
+        final File fragmentsDir = new File(databaseFile.getParentFile(), FRAGMENTS_DIRECTORY);
+        final File[] fragmentDirs = fragmentsDir.listFiles(File::isDirectory);
+        if (fragmentDirs != null) {
+            for (File fragmentDir : fragmentDirs) {
+                final File nestedFragmentsDir = new File(fragmentDir, FRAGMENTS_DIRECTORY);
+                if (nestedFragmentsDir.isDirectory()) {
+                    merge(new File(fragmentDir, databaseFile.getName()).getPath(), log);
+                }
+            }
+        }
+
+        final List<String> fragments = findFragments(fragmentsDir, databaseFile.getName());
+        if (fragments.isEmpty()) {
+            log.debug("No Clover database fragments found in " + fragmentsDir);
+            return;
+        }
+
+        final long lastModified;
+        try {
+            lastModified = getLastModified(fragmentsDir.toPath());
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to read Clover database fragments in " + fragmentsDir, e);
+        }
+        if (databaseFile.exists() && databaseFile.lastModified() > lastModified) {
+            log.debug("Clover database " + database + " is up to date with its " + fragments.size() + " fragment(s)");
+            return;
+        }
+
+        log.info("Merging " + fragments.size() + " Clover database fragment(s) into " + database);
+        final List<String> parameters = new ArrayList<>();
+        parameters.add("-i");
+        parameters.add(database);
+        if (log.isDebugEnabled()) {
+            parameters.add("-d");
+        }
+        parameters.addAll(fragments);
+
+        if (CloverMerge.mainImpl(parameters.toArray(new String[0])) != 0) {
+            throw new MojoExecutionException("Clover has failed to merge database fragments into " + database);
+        }
+    }
+
+    @NotNull
+    private static List<String> findFragments(@NotNull final File fragmentsDir, @NotNull final String databaseName) {
+        final List<String> fragments = new ArrayList<>();
+        final File[] moduleDirs = fragmentsDir.listFiles(File::isDirectory);
+        if (moduleDirs != null) {
+            for (File moduleDir : moduleDirs) {
+                final File fragment = new File(moduleDir, databaseName);
+                if (fragment.isFile()) {
+                    fragments.add(fragment.getPath());
+                }
+            }
+        }
+        fragments.sort(null);
+        return fragments;
+    }
+
+    /**
+     * Newest modification time of registries and coverage recordings of all fragments.
+     */
+    private static long getLastModified(@NotNull final Path fragmentsDir) throws IOException {
+        try (Stream<Path> files = Files.walk(fragmentsDir)) {
+            return files.filter(Files::isRegularFile)
+                    .mapToLong(file -> file.toFile().lastModified())
+                    .max()
+                    .orElse(0L);
+        }
+    }
+}
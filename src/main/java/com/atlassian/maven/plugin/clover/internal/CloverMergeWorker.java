@@ -0,0 +1,91 @@
+package com.atlassian.maven.plugin.clover.internal;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.atlassian.clover.CloverDatabase;
+import com.atlassian.clover.CloverDatabaseSpec;
+import com.atlassian.clover.Logger;
+import com.atlassian.clover.ProgressListener;
+import com.atlassian.clover.cfg.Interval;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * <p>Merges Clover databases in a JVM forked by {@link ParallelCloverMerge}. It takes the same arguments as
+ * {@link com.atlassian.clover.CloverMerge} (<code>-i merged.db [-s span] [-d] db1 db2 ...</code>), but unlike
+ * <code>CloverMerge</code>, which keeps databases in a hash map, it reads databases in the order they're given.
+ * This way, a database merged from merged databases is the same as the one merged from all of them at once.</p>
+ *
+ * <p>A separate JVM is used for every merge, as Clover keeps state of a merge in static fields.</p>
+ */
+public final class CloverMergeWorker {
+
+    private CloverMergeWorker() {
+    }
+
+    public static void main(final String[] args) {
+        System.exit(mainImpl(args));
+    }
+
+    /**
+     * @param args arguments in the CloverMerge format
+     * @return int 0 if merge succeeded, 1 otherwise (like <code>CloverMerge.mainImpl</code>)
+     */
+    static int mainImpl(final String[] args) {
+        final Logger log = Logger.getInstance();
+        String initString = null;
+        Interval span = Interval.DEFAULT_SPAN;
+        final List<CloverDatabaseSpec> databases = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-i":
+                        initString = args[++i];
+                        break;
+                    case "-s":
+                        span = new Interval(args[++i]);
+                        break;
+                    case "-d":
+                        Logger.setDebug(true);
+                        break;
+                    default:
+                        databases.add(new CloverDatabaseSpec(args[i], span));
+                        break;
+                }
+            }
+        } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+            log.error("Invalid arguments: " + String.join(" ", args));
+            return 1;
+        }
+        if (initString == null || databases.isEmpty()) {
+            log.error("Usage: " + CloverMergeWorker.class.getName() + " -i merged.db [-s span] [-d] db1 db2 ...");
+            return 1;
+        }
+
+        try {
+            CloverDatabase.merge(databases, initString, false, Interval.DEFAULT_SPAN, ProgressListener.NOOP_LISTENER);
+            return 0;
+        } catch (Exception e) {
+            log.error("Error writing new clover db '" + initString + "'", e);
+            return 1;
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.atlassian.maven.plugin.clover.internal;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * <p>State shared by Clover mojos of all modules of a Maven session. Modules can be built in parallel (mvn -T),
+ * so all the state is kept in concurrent structures and there is one instance per session, not per JVM (which
+ * could be reused by several builds).</p>
+ *
+ * <p>Maven 3.0 - 3.3.1 gives every module its own clone of the session, so the state is kept per execution request,
+ * which all the clones share.</p>
+ */
+public class CloverSessionState {
+
+    private static final Map<MavenExecutionRequest, CloverSessionState> STATES =
+            Collections.synchronizedMap(new WeakHashMap<>());
+
+    /**
+     * Module id -&gt; original source directory, before it was redirected to instrumented sources
+     */
+    private final Map<String, String> originalSrcDirs = new ConcurrentHashMap<>();
+
+    /**
+     * Module id -&gt; original test source directory, before it was redirected to instrumented sources
+     */
+    private final Map<String, String> originalSrcTestDirs = new ConcurrentHashMap<>();
+
+    /**
+     * Canonical path of a Clover database -&gt; lock guarding its writes
+     */
+    private final Map<String, ReentrantLock> databaseLocks = new ConcurrentHashMap<>();
+
+    private final AtomicReference<Date> startDate = new AtomicReference<>();
+
+    private final AtomicReference<ReactorModuleIndex> reactorModuleIndex = new AtomicReference<>();
+
+    private final CloveredArtifactCache cloveredArtifactCache = new CloveredArtifactCache();
+
+    private final TestRunTracker testRunTracker = new TestRunTracker();
+
+    /**
+     * Returns the state for the session, creating it if needed. A new state starts tracking test runs of the
+     * session, see {@link TestRunTracker}.
+     *
+     * @param session current session
+     * @return CloverSessionState
+     */
+    @NotNull
+    public static CloverSessionState getInstance(@Nullable final MavenSession session) {
+        return STATES.computeIfAbsent(session != null ? session.getRequest() : null, request -> {
+            final CloverSessionState state = new CloverSessionState();
+            if (request != null) {
+                state.testRunTracker.install(request);
+            }
+            return state;
+        });
+    }
+
+    CloverSessionState() {
+    }
+
+    @Nullable
+    public String getOriginalSrcDir(@NotNull final String module) {
+        return originalSrcDirs.get(module);
+    }
+
+    public void setOriginalSrcDir(@NotNull final String module, @NotNull final String srcDir) {
+        originalSrcDirs.put(module, srcDir);
+    }
+
+    @Nullable
+    public String getOriginalSrcTestDir(@NotNull final String module) {
+        return originalSrcTestDirs.get(module);
+    }
+
+    public void setOriginalSrcTestDir(@NotNull final String module, @NotNull final String srcTestDir) {
+        originalSrcTestDirs.put(module, srcTestDir);
+    }
+
+    /**
+     * Records the start of the build, i.e. the very first compilation with Clover. Subsequent calls are ignored.
+     */
+    public void markBuildStarted() {
+        startDate.compareAndSet(null, new Date());
+    }
+
+    /**
+     * @return Date start of the build or <code>null</code> if no module was set up
+     */
+    @Nullable
+    public Date getStartDate() {
+        return startDate.get();
+    }
+
+    /**
+     * Returns a lock which must be held while a Clover database is written, so that modules sharing a single
+     * database (see {@link CloverConfiguration#isSingleCloverDatabase()}) don't write it concurrently.
+     *
+     * @param database path to a Clover database
+     * @return ReentrantLock the same lock for the same database
+     */
+    @NotNull
+    public ReentrantLock getDatabaseLock(@NotNull final String database) {
+        return databaseLocks.computeIfAbsent(new File(database).getAbsolutePath(), path -> new ReentrantLock());
+    }
+
+    /**
+     * Returns an index of modules of the reactor, building it on the first call.
+     *
+     * @param reactorProjects projects of the reactor
+     * @return ReactorModuleIndex the same index for the same reactor
+     */
+    @NotNull
+    public ReactorModuleIndex getReactorModuleIndex(@NotNull final List<MavenProject> reactorProjects) {
+        return reactorModuleIndex.updateAndGet(index -> index != null && index.isIndexOf(reactorProjects)
+                ? index
+                : new ReactorModuleIndex(reactorProjects));
+    }
+
+    /**
+     * @return CloveredArtifactCache lookups of clovered artifacts and instrumented reactor modules of the session
+     */
+    @NotNull
+    public CloveredArtifactCache getCloveredArtifactCache() {
+        return cloveredArtifactCache;
+    }
+
+    /**
+     * @return TestRunTracker test runs of the session
+     */
+    @NotNull
+    public TestRunTracker getTestRunTracker() {
+        return testRunTracker;
+    }
+}
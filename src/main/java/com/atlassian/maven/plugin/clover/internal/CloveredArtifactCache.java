@@ -0,0 +1,218 @@
+package com.atlassian.maven.plugin.clover.internal;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.maven.artifact.Artifact;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Results of lookups of '-clover' classified artifacts, shared by all modules of a Maven session. Every artifact
+ * is looked up once, even if modules are built in parallel; artifacts which were not found are remembered too
+ * (unless told otherwise, e.g. for modules of the reactor which may be built later).</p>
+ *
+ * <p>It also keeps output directories of reactor modules instrumented in the session, so that downstream modules
+ * can use their clovered classes directly, like Maven's workspace reader does for non-clovered ones, and a thread
+ * pool, so that a module can look up its dependencies in parallel.</p>
+ *
+ * <p>There is one instance per session, see {@link CloverSessionState#getCloveredArtifactCache()}.</p>
+ */
+public class CloveredArtifactCache {
+
+    /**
+     * Resolves a '-clover' classified artifact.
+     */
+    public interface Resolver {
+        /**
+         * @return Artifact resolved artifact or <code>null</code> if it does not exist
+         */
+        @Nullable
+        Artifact resolve();
+    }
+
+    /**
+     * Result of a lookup of a '-clover' classified artifact.
+     */
+    public static final class Lookup {
+        @Nullable
+        private final Artifact artifact;
+
+        private final boolean cached;
+
+        Lookup(@Nullable final Artifact artifact, final boolean cached) {
+            this.artifact = artifact;
+            this.cached = cached;
+        }
+
+        /**
+         * @return Artifact resolved artifact or <code>null</code> if it does not exist
+         */
+        @Nullable
+        public Artifact getArtifact() {
+            return artifact;
+        }
+
+        /**
+         * @return boolean <code>true</code> if the result was resolved by an earlier lookup and is thus shared
+         * with other modules, <code>false</code> if it was resolved by this lookup
+         */
+        public boolean isCached() {
+            return cached;
+        }
+    }
+
+    private static final long THREAD_KEEP_ALIVE_SECONDS = 30;
+
+    /**
+     * Key of an artifact -&gt; future result of its resolution (<code>null</code> if it was not found)
+     */
+    private final Map<String, CompletableFuture<Artifact>> results = new ConcurrentHashMap<>();
+
+    /**
+     * groupId:artifactId:version of a reactor module -&gt; directory with its clovered classes
+     */
+    private final Map<String, File> reactorModules = new ConcurrentHashMap<>();
+
+    private final ExecutorService executor;
+
+    CloveredArtifactCache() {
+        final AtomicInteger threadNumber = new AtomicInteger();
+        final int threads = Runtime.getRuntime().availableProcessors();
+        final ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+                THREAD_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "clover-swizzle-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        // don't keep idle threads when the session is over
+        pool.allowCoreThreadTimeOut(true);
+        this.executor = pool;
+    }
+
+    /**
+     * Returns a cached result or resolves the artifact. If the same artifact is being resolved by another thread,
+     * waits for its result.
+     *
+     * @param key         identity of the artifact, e.g. groupId:artifactId:type:version
+     * @param cacheMisses whether to remember that the artifact does not exist
+     * @param resolver    resolution of the artifact
+     * @return Lookup result of the lookup
+     */
+    @NotNull
+    public Lookup resolve(@NotNull final String key, final boolean cacheMisses, @NotNull final Resolver resolver) {
+        final CompletableFuture<Artifact> future = new CompletableFuture<>();
+        final CompletableFuture<Artifact> existing = results.putIfAbsent(key, future);
+        if (existing != null) {
+            return new Lookup(existing.join(), true);
+        }
+
+        final Artifact artifact;
+        try {
+            artifact = resolver.resolve();
+        } catch (RuntimeException | Error e) {
+            results.remove(key, future);
+            future.completeExceptionally(e);
+            throw e;
+        }
+        if (artifact == null && !cacheMisses) {
+            results.remove(key, future);
+        }
+        future.complete(artifact);
+        return new Lookup(artifact, false);
+    }
+
+    /**
+     * Records that a reactor module has been instrumented and its classes are compiled into the given directory.
+     *
+     * @param groupId    group id of the module
+     * @param artifactId artifact id of the module
+     * @param version    version of the module
+     * @param classesDir directory with clovered classes
+     */
+    public void addReactorModule(@NotNull final String groupId, @NotNull final String artifactId,
+                                 @NotNull final String version, @NotNull final File classesDir) {
+        reactorModules.put(groupId + ":" + artifactId + ":" + version, classesDir);
+    }
+
+    /**
+     * Returns the directory with clovered classes of a reactor module instrumented in this session.
+     *
+     * @param artifact dependency on a reactor module
+     * @return File directory with classes or <code>null</code> if the module was not instrumented
+     * or it has no classes
+     */
+    @Nullable
+    public File getReactorModuleClasses(@NotNull final Artifact artifact) {
+        final File classesDir = reactorModules.get(
+                artifact.getGroupId() + ":" + artifact.getArtifactId() + ":" + artifact.getVersion());
+        return classesDir != null && classesDir.isDirectory() ? classesDir : null;
+    }
+
+    /**
+     * Runs tasks in the thread pool and returns their results in the same order.
+     *
+     * @param tasks tasks to run
+     * @param <T>   type of results
+     * @return List&lt;T&gt; results
+     */
+    @NotNull
+    public <T> List<T> invokeAll(@NotNull final List<Callable<T>> tasks) {
+        final List<Future<T>> futures = new ArrayList<>(tasks.size());
+        for (Callable<T> task : tasks) {
+            futures.add(executor.submit(task));
+        }
+
+        final List<T> results = new ArrayList<>(tasks.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while resolving clovered artifacts", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return results;
+    }
+}
@@ -3,6 +3,8 @@ package com.atlassian.maven.plugin.clover.internal;
 import com.atlassian.maven.plugin.clover.DistributedCoverage;
 import com.atlassian.maven.plugin.clover.MethodWithMetricsContext;
 import com.atlassian.maven.plugin.clover.TestSources;
+import com.atlassian.maven.plugin.clover.internal.scanner.ChangedFileSet;
+import com.atlassian.maven.plugin.clover.internal.scanner.SourceScanCache;
 
 import java.util.Map;
 import java.util.Set;
@@ -39,9 +41,53 @@ public interface CompilerConfiguration extends CloverConfiguration {
 
     String getInstrumentLambda();
 
+    boolean isCompileInMemory();
+
+    /**
+     * @return Clover database to which the current module is instrumented, it differs from
+     * {@link #resolveCloverDatabase()} if the module writes a fragment of the single database
+     */
+    String resolveInstrumentationDatabase();
+
+    /**
+     * @return directory to which instrumented main classes are compiled
+     */
+    String getInstrumentedClassesDirectory();
+
     boolean isCopyExcludedFiles();
 
+    boolean isDeleteOrphanedInstrumentedSources();
+
+    String getCopyStrategy();
+
+    /**
+     * @return changed files to which instrumentation is limited, <code>null</code> if all files are instrumented
+     */
+    ChangedFileSet getChangedFileSet();
+
     TestSources getTestSources();
 
     boolean isRecordTestResults();
+
+    int getInstrumentationBatchSize();
+
+    String getInstrumentationCacheDirectory();
+
+    int getInstrumentationCacheSize();
+
+    String getInstrumentationWorkerJvmArgs();
+
+    int getInstrumentationWorkers();
+
+    int getInstrumentationThreads();
+
+    /**
+     * @return how stale source files are found, one of InstrumentationManifest.STALENESS_* values
+     */
+    String getStaleness();
+
+    /**
+     * @return cache of source root scans, shared by all scanners used in a mojo execution
+     */
+    SourceScanCache getSourceScanCache();
 }
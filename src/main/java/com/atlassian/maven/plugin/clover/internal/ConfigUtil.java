@@ -25,6 +25,26 @@ public class ConfigUtil {
         return project.getBuild().getDirectory() + "/clover/clover.db";
     }
 
+    /**
+     * Returns the database to which the current module shall be instrumented. It's the fragment of the single
+     * database written by the module if fragments are enabled, otherwise the same as {@link #resolveCloverDatabase()}.
+     * @return the database path
+     */
+    public String resolveInstrumentationDatabase() {
+        if (useCloverDatabaseFragments()) {
+            return CloverDatabaseFragments.getFragment(resolveCloverDatabase(), config.getProject());
+        }
+        return resolveCloverDatabase();
+    }
+
+    /**
+     * Fragments are used only for the default location of a single database, like singleCloverDatabase itself.
+     * @return true if modules write fragments of the single database
+     */
+    public boolean useCloverDatabaseFragments() {
+        return config.getCloverDatabase() == null && config.isSingleCloverDatabase() && config.isCloverDatabaseFragments();
+    }
+
     /**
      * If a singleCloverDatabase is configured, return the first project in the reactor.
      * Otherwise, return the current project.
@@ -0,0 +1,146 @@
+package com.atlassian.maven.plugin.clover.internal;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.atlassian.clover.recorder.RecordingTranscripts;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.Collection;
+
+/**
+ * <p>Detects when coverage recordings of Clover databases are flushed. Instrumented code writes recordings to files
+ * named after the database, in the same directory (e.g. <code>clover.db1a2b3c_4d5e</code>, or
+ * <code>clover.db1a2b3c_4d5e_6f7a_8b9c.s</code> for per-test recordings), periodically or when the JVM exits,
+ * depending on the flush policy.</p>
+ *
+ * <p>Recordings are considered flushed when none of them has been modified for two flush intervals, so if tests
+ * finished earlier than that, e.g. in another module of the reactor, there's no need to wait at all. If there are no
+ * recordings yet, the first ones may be just being written, so the wait takes two flush intervals. Writes seen
+ * while waiting postpone the end of the wait, but it never takes longer than two flush intervals.</p>
+ *
+ * <p>If the tests of the build have run in forked JVMs which have exited (see {@link TestRunTracker}), recordings
+ * are complete and the wait ends immediately; the timed wait remains for recordings written by other processes,
+ * e.g. tests run in the Maven JVM or in an application server.</p>
+ */
+public class CoverageRecordings {
+
+    /**
+     * How often the end of test JVMs is checked while waiting, in milliseconds
+     */
+    private static final long TEST_RUNS_POLL_INTERVAL = 50;
+
+    private CoverageRecordings() {
+    }
+
+    /**
+     * Waits until coverage recordings of the databases are stable, at most 2 * flushInterval milliseconds.
+     *
+     * @param databases     paths to Clover databases
+     * @param flushInterval flush interval of instrumented code
+     */
+    public static void awaitFlush(@NotNull final Collection<String> databases, final int flushInterval) {
+        awaitFlush(databases, flushInterval, null);
+    }
+
+    /**
+     * Waits until coverage recordings of the databases are stable, at most 2 * flushInterval milliseconds, or until
+     * test JVMs of the build have ended.
+     *
+     * @param databases     paths to Clover databases
+     * @param flushInterval flush interval of instrumented code
+     * @param testRuns      test runs of the build, null to wait for stable recordings only
+     */
+    public static void awaitFlush(@NotNull final Collection<String> databases, final int flushInterval,
+                                  @Nullable final TestRunTracker testRuns) {
+        final long window = 2L * flushInterval;
+        final long timeout = System.currentTimeMillis() + window;
+        try {
+            while (true) {
+                if (testRuns != null && testRuns.haveTestJvmsEnded()) {
+                    return;
+                }
+                final long now = System.currentTimeMillis();
+                final long lastModified = getLastModified(databases);
+                final long stableAt = lastModified == 0 ? timeout : Math.min(lastModified + window, timeout);
+                if (stableAt <= now) {
+                    return;
+                }
+                Thread.sleep(testRuns != null ? Math.min(stableAt - now, TEST_RUNS_POLL_INTERVAL) : stableAt - now);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // Nothing to do... Just go on and try to check for coverage.
+        }
+    }
+
+    /**
+     * Returns the newest modification time of coverage recordings of the databases, including recordings of their
+     * fragments (see {@link CloverDatabaseFragments}).
+     *
+     * @param databases paths to Clover databases
+     * @return long time in milliseconds, 0 if there are no recordings
+     */
+    static long getLastModified(@NotNull final Collection<String> databases) {
+        long lastModified = 0;
+        for (String database : databases) {
+            final File databaseFile = new File(database);
+            final File dir = databaseFile.getAbsoluteFile().getParentFile();
+            lastModified = Math.max(lastModified, getLastModified(dir, databaseFile.getName()));
+        }
+        return lastModified;
+    }
+
+    /**
+     * Newest coverage recording in the directory and in directories of its fragments, which may have fragments
+     * on their own (shards).
+     */
+    private static long getLastModified(@NotNull final File dir, @NotNull final String databaseName) {
+        long lastModified = 0;
+        final File[] fragmentDirs = new File(dir, CloverDatabaseFragments.FRAGMENTS_DIRECTORY).listFiles(File::isDirectory);
+        if (fragmentDirs != null) {
+            for (File fragmentDir : fragmentDirs) {
+                lastModified = Math.max(lastModified, getLastModified(fragmentDir, databaseName));
+            }
+        }
+        final File[] recordings = dir.listFiles(file -> isRecording(file, databaseName));
+        if (recordings != null) {
+            for (File recording : recordings) {
+                lastModified = Math.max(lastModified, recording.lastModified());
+            }
+        }
+        return lastModified;
+    }
+
+    /**
+     * Whether the file is a global or per-test coverage recording of the database, and not e.g. its lock file or
+     * a directory named after it.
+     */
+    static boolean isRecording(@NotNull final File file, @NotNull final String databaseName) {
+        final String name = file.getName();
+        if (!name.startsWith(databaseName) || !file.isFile()) {
+            return false;
+        }
+        final String suffix = name.substring(databaseName.length());
+        return RecordingTranscripts.stdRecordingSuffix.matcher(suffix).matches()
+                || RecordingTranscripts.sliceRecordingSuffix.matcher(suffix).matches();
+    }
+}
@@ -0,0 +1,92 @@
+package com.atlassian.maven.plugin.clover.internal;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.codehaus.plexus.util.cli.CommandLineUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.security.CodeSource;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Command lines of worker JVMs forked by the plugin, e.g. for instrumentation or merging of databases. Workers run
+ * with the Java of the Maven JVM and with the class path of the plugin and Clover.
+ */
+public class ForkedJvm {
+
+    private ForkedJvm() {
+    }
+
+    /**
+     * Returns the command starting a JVM which runs the main class.
+     *
+     * @param mainClass   class with the <code>main</code> method
+     * @param classPath   classes whose locations (jars or directories) form the class path of the JVM
+     * @param jvmArgs     arguments of the JVM, e.g. "-Xmx1g", can be null
+     * @param description what the JVM is for, e.g. "merge workers", used in error messages
+     * @return List&lt;String&gt; the command, to which arguments of the main class can be appended
+     * @throws IOException if JVM arguments can't be parsed or the class path can't be determined
+     */
+    @NotNull
+    public static List<String> createCommand(@NotNull final Class<?> mainClass,
+                                             @NotNull final List<Class<?>> classPath,
+                                             @Nullable final String jvmArgs,
+                                             @NotNull final String description) throws IOException {
+        final List<String> command = new ArrayList<>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        if (jvmArgs != null && !jvmArgs.trim().isEmpty()) {
+            try {
+                command.addAll(Arrays.asList(CommandLineUtils.translateCommandline(jvmArgs)));
+            } catch (Exception e) {
+                throw new IOException("Invalid JVM arguments of " + description + ": " + jvmArgs, e);
+            }
+        }
+        final StringBuilder path = new StringBuilder();
+        for (Class<?> clazz : classPath) {
+            if (path.length() > 0) {
+                path.append(File.pathSeparator);
+            }
+            path.append(getClassPath(clazz));
+        }
+        command.add("-cp");
+        command.add(path.toString());
+        command.add(mainClass.getName());
+        return command;
+    }
+
+    @NotNull
+    private static String getClassPath(@NotNull final Class<?> clazz) throws IOException {
+        final CodeSource codeSource = clazz.getProtectionDomain().getCodeSource();
+        if (codeSource == null) {
+            throw new IOException("Unable to find location of " + clazz.getName());
+        }
+        try {
+            return new File(codeSource.getLocation().toURI()).getPath();
+        } catch (URISyntaxException e) {
+            throw new IOException("Unable to find location of " + clazz.getName(), e);
+        }
+    }
+}
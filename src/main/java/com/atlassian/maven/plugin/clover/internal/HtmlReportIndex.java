@@ -0,0 +1,416 @@
+package com.atlassian.maven.plugin.clover.internal;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import clover.org.apache.commons.codec.digest.DigestUtils;
+import com.atlassian.clover.CloverDatabase;
+import com.atlassian.clover.CoverageData;
+import com.atlassian.clover.api.registry.ClassInfo;
+import com.atlassian.clover.registry.entities.FullClassInfo;
+import com.atlassian.clover.registry.entities.FullFileInfo;
+import com.atlassian.clover.registry.entities.TestCaseInfo;
+import com.atlassian.clover.registry.metrics.HasMetricsFilter;
+import com_atlassian_clover.CloverVersionInfo;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * <p>Remembers inputs of the HTML report written to an output directory, so that the report is not rendered again
+ * if none of them has changed. The index is kept in the output directory:</p>
+ *
+ * <pre>
+ * target/site/clover/index.html                    - the HTML report
+ * target/site/clover/clover-html-index.properties  - the index
+ * </pre>
+ *
+ * <p>Inputs are the report settings, the Clover version and, for every database rendered into the directory, its
+ * path, title, content and names, sizes and modification dates of its coverage recordings. A database stores
+ * checksums of instrumented sources, so a changed source file changes the database too. The content hash of a
+ * database is computed only if its size or modification date has changed since the previous report.</p>
+ *
+ * <p>If some inputs have changed, but the report settings and the list of databases have not, only pages of
+ * changed source files are rendered again, see {@link #selectChangedFiles(String, CloverDatabase)}. The index keeps
+ * a digest of every source file page of the previous report: the checksum of the source file, hit counts of its
+ * elements and the tests covering it, their results and the lines they cover. Source file pages also show the
+ * distribution of coverage of all source files, so all of them are rendered again if it changes. Package, project
+ * and test pages summarize many files, so they're always rendered again.</p>
+ */
+public class HtmlReportIndex {
+
+    static final String INDEX_FILE = "clover-html-index.properties";
+
+    /**
+     * Keys of the index; they can't clash with absolute paths.
+     */
+    private static final String REPORT_KEY = "clover.report";
+    private static final String SETTINGS_KEY = "clover.settings";
+    private static final String DATABASE_PREFIX = "database.";
+    private static final String FILE_PREFIX = "file.";
+    private static final String DISTRIBUTION_PREFIX = "distribution.";
+
+    /**
+     * Separates the database path from the package path of a file in keys of file digests
+     */
+    private static final char FILE_SEPARATOR = '!';
+
+    @NotNull
+    private final File outputDirectory;
+
+    /**
+     * Database path -&gt; "size:lastModified:contentHash", as loaded from the index
+     */
+    @NotNull
+    private final Map<String, String> recordedDatabases;
+
+    /**
+     * Key of the report, as loaded from the index
+     */
+    @Nullable
+    private final String recordedReport;
+
+    /**
+     * Key of the report settings, as loaded from the index
+     */
+    @Nullable
+    private final String recordedSettings;
+
+    /**
+     * "database!packagePath" -&gt; digest of the source file page, as loaded from the index
+     */
+    @NotNull
+    private final Map<String, String> recordedFiles;
+
+    /**
+     * Database path -&gt; digest of the coverage distribution of source files, as loaded from the index
+     */
+    @NotNull
+    private final Map<String, String> recordedDistributions;
+
+    /**
+     * Database path -&gt; "size:lastModified:contentHash", for databases of the current report
+     */
+    @NotNull
+    private final Map<String, String> currentDatabases = new HashMap<>();
+
+    /**
+     * Inputs of the current report, see {@link #getReportKey()}
+     */
+    @NotNull
+    private final StringBuilder currentReport;
+
+    /**
+     * Settings and databases of the current report, without contents of the databases
+     */
+    @NotNull
+    private final StringBuilder currentSettings;
+
+    /**
+     * "database!packagePath" -&gt; digest of the source file page, for databases of the current report
+     */
+    @NotNull
+    private final Map<String, String> currentFiles = new HashMap<>();
+
+    /**
+     * Database path -&gt; digest of the coverage distribution of source files, for databases of the current report
+     */
+    @NotNull
+    private final Map<String, String> currentDistributions = new HashMap<>();
+
+    /**
+     * Package paths of source files whose pages are rendered by the current report. Databases rendered later
+     * overwrite pages of the earlier ones, so they must render these files too.
+     */
+    @NotNull
+    private final Set<String> renderedFiles = new HashSet<>();
+
+    private HtmlReportIndex(@NotNull final File outputDirectory,
+                            @NotNull final String fingerprint,
+                            @NotNull final Map<String, String> recordedDatabases,
+                            @NotNull final Map<String, String> recordedFiles,
+                            @NotNull final Map<String, String> recordedDistributions,
+                            @Nullable final String recordedReport,
+                            @Nullable final String recordedSettings) {
+        this.outputDirectory = outputDirectory;
+        this.recordedDatabases = recordedDatabases;
+        this.recordedFiles = recordedFiles;
+        this.recordedDistributions = recordedDistributions;
+        this.recordedReport = recordedReport;
+        this.recordedSettings = recordedSettings;
+        this.currentReport = new StringBuilder(fingerprint);
+        this.currentSettings = new StringBuilder(fingerprint);
+    }
+
+    /**
+     * Reads the index of the HTML report in the output directory. If it does not exist, an empty index is returned.
+     *
+     * @param outputDirectory report output directory
+     * @param settings        report settings which affect the content of the HTML report
+     * @return HtmlReportIndex
+     * @throws IOException if the index can't be read
+     */
+    @NotNull
+    public static HtmlReportIndex load(@NotNull final File outputDirectory, @NotNull final String settings)
+            throws IOException {
+        final String fingerprint = DigestUtils.sha256Hex(CloverVersionInfo.getReleaseNum() + "\n" + settings);
+        final Map<String, String> recordedDatabases = new HashMap<>();
+        final Map<String, String> recordedFiles = new HashMap<>();
+        final Map<String, String> recordedDistributions = new HashMap<>();
+        String recordedReport = null;
+        String recordedSettings = null;
+
+        final File indexFile = new File(outputDirectory, INDEX_FILE);
+        if (indexFile.isFile()) {
+            final Properties properties = new Properties();
+            try (InputStream in = new FileInputStream(indexFile)) {
+                properties.load(in);
+            }
+            recordedReport = properties.getProperty(REPORT_KEY);
+            recordedSettings = properties.getProperty(SETTINGS_KEY);
+            for (String key : properties.stringPropertyNames()) {
+                if (key.startsWith(DATABASE_PREFIX)) {
+                    recordedDatabases.put(key.substring(DATABASE_PREFIX.length()), properties.getProperty(key));
+                } else if (key.startsWith(FILE_PREFIX)) {
+                    recordedFiles.put(key.substring(FILE_PREFIX.length()), properties.getProperty(key));
+                } else if (key.startsWith(DISTRIBUTION_PREFIX)) {
+                    recordedDistributions.put(key.substring(DISTRIBUTION_PREFIX.length()), properties.getProperty(key));
+                }
+            }
+        }
+
+        return new HtmlReportIndex(outputDirectory, fingerprint, recordedDatabases, recordedFiles,
+                recordedDistributions, recordedReport, recordedSettings);
+    }
+
+    /**
+     * Adds a database rendered into the output directory. Databases shall be added in the order of rendering.
+     *
+     * @param database path to the database
+     * @param title    title of the report
+     * @throws IOException if the database can't be read
+     */
+    public void addDatabase(@NotNull final String database, @NotNull final String title) throws IOException {
+        final File databaseFile = new File(database).getAbsoluteFile();
+        final String path = databaseFile.getPath();
+        final String sizeAndDate = databaseFile.length() + ":" + databaseFile.lastModified();
+        final String recorded = recordedDatabases.get(path);
+        final String current = recorded != null && recorded.startsWith(sizeAndDate + ":")
+                ? recorded
+                : sizeAndDate + ":" + hash(databaseFile);
+        currentDatabases.put(path, current);
+        currentSettings.append('\n').append(path).append('\n').append(title);
+
+        // the content hash only, a database written again with the same content does not change the report
+        currentReport.append('\n').append(path).append('\n').append(title)
+                .append('\n').append(current.substring(sizeAndDate.length() + 1));
+        final String name = databaseFile.getName();
+        final File[] recordings = databaseFile.getParentFile().listFiles(
+                file -> CoverageRecordings.isRecording(file, name));
+        if (recordings != null) {
+            Arrays.sort(recordings);
+            for (File recording : recordings) {
+                currentReport.append('\n').append(recording.getName())
+                        .append(':').append(recording.length())
+                        .append(':').append(recording.lastModified());
+            }
+        }
+    }
+
+    /**
+     * @return boolean true if the HTML report in the output directory was rendered from the same inputs
+     */
+    public boolean isUpToDate() {
+        return getReportKey().equals(recordedReport) && new File(outputDirectory, "index.html").isFile();
+    }
+
+    /**
+     * <p>Returns source files of the database whose pages have to be rendered again. A page is rendered again if
+     * the digest of the file has changed since the previous report, or if an earlier database of the report
+     * renders the same page.</p>
+     *
+     * <p>All pages have to be rendered if the previous report had other settings or databases, if the coverage
+     * distribution of source files has changed, or if the report is not in the output directory any more.</p>
+     *
+     * @param database       path to the database, as passed to {@link #addDatabase(String, String)}
+     * @param cloverDatabase the loaded database
+     * @return Set&lt;String&gt; package paths of changed files, or <code>null</code> if all pages have to be
+     * rendered
+     */
+    @Nullable
+    public Set<String> selectChangedFiles(@NotNull final String database, @NotNull final CloverDatabase cloverDatabase) {
+        final String path = new File(database).getAbsolutePath();
+        final Map<String, String> digests = digestFiles(cloverDatabase);
+        final String distribution = digestDistribution(cloverDatabase);
+        currentDistributions.put(path, distribution);
+        final boolean samePages = getSettingsKey().equals(recordedSettings)
+                && distribution.equals(recordedDistributions.get(path))
+                && new File(outputDirectory, "index.html").isFile();
+        final Set<String> changedFiles = samePages ? new LinkedHashSet<>() : null;
+        for (Map.Entry<String, String> file : digests.entrySet()) {
+            final String key = path + FILE_SEPARATOR + file.getKey();
+            currentFiles.put(key, file.getValue());
+            if (changedFiles != null
+                    && (!file.getValue().equals(recordedFiles.get(key)) || renderedFiles.contains(file.getKey()))) {
+                changedFiles.add(file.getKey());
+            }
+        }
+        renderedFiles.addAll(changedFiles != null ? changedFiles : digests.keySet());
+        return changedFiles;
+    }
+
+    /**
+     * Deletes the index before the report is rendered, so that a report which failed half-way is never considered
+     * up to date.
+     *
+     * @throws IOException if the index can't be deleted
+     */
+    public void invalidate() throws IOException {
+        final File indexFile = new File(outputDirectory, INDEX_FILE);
+        if (indexFile.exists() && !indexFile.delete()) {
+            throw new IOException("Failed to delete " + indexFile);
+        }
+    }
+
+    /**
+     * Writes the index after the report has been rendered.
+     *
+     * @throws IOException if the index can't be written
+     */
+    public void save() throws IOException {
+        final Properties properties = new Properties();
+        properties.setProperty(REPORT_KEY, getReportKey());
+        properties.setProperty(SETTINGS_KEY, getSettingsKey());
+        for (Map.Entry<String, String> database : currentDatabases.entrySet()) {
+            properties.setProperty(DATABASE_PREFIX + database.getKey(), database.getValue());
+        }
+        for (Map.Entry<String, String> file : currentFiles.entrySet()) {
+            properties.setProperty(FILE_PREFIX + file.getKey(), file.getValue());
+        }
+        for (Map.Entry<String, String> distribution : currentDistributions.entrySet()) {
+            properties.setProperty(DISTRIBUTION_PREFIX + distribution.getKey(), distribution.getValue());
+        }
+
+        try (OutputStream out = new FileOutputStream(new File(outputDirectory, INDEX_FILE))) {
+            properties.store(out, "Clover HTML report index");
+        }
+    }
+
+    @NotNull
+    private String getReportKey() {
+        return DigestUtils.sha256Hex(currentReport.toString());
+    }
+
+    @NotNull
+    private String getSettingsKey() {
+        return DigestUtils.sha256Hex(currentSettings.toString());
+    }
+
+    /**
+     * Digests of the inputs of source file pages: the source file, hit counts of its elements, tests covering it
+     * with their results and lines they cover, and results of tests declared in the file. Times and durations of
+     * tests are shown on test pages only, so they're left out.
+     *
+     * @param database loaded database
+     * @return Map&lt;String, String&gt; package path of the file -&gt; digest
+     */
+    @NotNull
+    static Map<String, String> digestFiles(@NotNull final CloverDatabase database) {
+        final Map<String, String> digests = new HashMap<>();
+        final CoverageData coverageData = database.getCoverageData();
+        for (Object file : database.getFullModel().getFiles(HasMetricsFilter.ACCEPT_ALL)) {
+            final FullFileInfo fileInfo = (FullFileInfo) file;
+            final StringBuilder content = new StringBuilder();
+            content.append(fileInfo.getChecksum()).append(':').append(fileInfo.getFilesize())
+                    .append(':').append(fileInfo.getLineCount()).append('\n');
+            final int end = Math.min(fileInfo.getDataIndex() + fileInfo.getDataLength(),
+                    coverageData.getCoverageSize());
+            for (int index = fileInfo.getDataIndex(); index < end; index++) {
+                content.append(coverageData.getHitCount(index)).append(',');
+            }
+
+            final Map<TestCaseInfo, BitSet> coveringTests = new TreeMap<>(
+                    Comparator.comparing(test -> test.getId() + ":" + test.getKey()));
+            coveringTests.putAll(database.mapTestsAndCoverageForFile(fileInfo));
+            for (Map.Entry<TestCaseInfo, BitSet> test : coveringTests.entrySet()) {
+                appendTest(content, test.getKey()).append(test.getValue());
+            }
+            for (ClassInfo classInfo : fileInfo.getAllClasses()) {
+                for (TestCaseInfo test : ((FullClassInfo) classInfo).getTestCases()) {
+                    appendTest(content, test);
+                }
+            }
+            digests.put(fileInfo.getPackagePath(), DigestUtils.sha256Hex(content.toString()));
+        }
+        return digests;
+    }
+
+    /**
+     * Digest of the coverage of all application source files, which is shown as a histogram on source file pages.
+     *
+     * @param database loaded database
+     * @return String digest
+     */
+    @NotNull
+    static String digestDistribution(@NotNull final CloverDatabase database) {
+        final List<String> coverage = new ArrayList<>();
+        for (Object file : database.getFullModel().getFiles(HasMetricsFilter.ACCEPT_ALL)) {
+            final FullFileInfo fileInfo = (FullFileInfo) file;
+            if (!fileInfo.isTestFile()) {
+                coverage.add(Float.toString(fileInfo.getMetrics().getPcCoveredElements()));
+            }
+        }
+        Collections.sort(coverage);
+        return DigestUtils.sha256Hex(String.join(",", coverage));
+    }
+
+    @NotNull
+    private static StringBuilder appendTest(@NotNull final StringBuilder content, @NotNull final TestCaseInfo test) {
+        return content.append('\n').append(test.getId()).append(':').append(test.getKey())
+                .append(':').append(test.isResolved()).append(':').append(test.isHasResult())
+                .append(':').append(test.isError()).append(':').append(test.isFailure())
+                .append(':').append(test.getFailFullMessage()).append(':');
+    }
+
+    @NotNull
+    private static String hash(@NotNull final File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return DigestUtils.sha256Hex(in);
+        }
+    }
+}
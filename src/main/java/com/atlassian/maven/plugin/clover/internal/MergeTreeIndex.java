@@ -0,0 +1,303 @@
+package com.atlassian.maven.plugin.clover.internal;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import clover.org.apache.commons.codec.digest.DigestUtils;
+import com_atlassian_clover.CloverVersionInfo;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Remembers intermediate databases of a {@link ParallelCloverMerge}, so that a subsequent merge re-merges only
+ * those parts of the tree which contain changed databases. Intermediate databases are kept in a directory next to
+ * the merged database, together with an index:</p>
+ *
+ * <pre>
+ * target/clover/cloverMerge.db                      - the merged database
+ * target/clover/cloverMerge-tree/index.properties   - the index
+ * target/clover/cloverMerge-tree/&lt;key&gt;.db            - intermediate databases
+ * </pre>
+ *
+ * <p>Every node of the tree has a key. A key of a database being merged is a SHA-256 hash of its path, its content
+ * and names, sizes and modification dates of its coverage recordings. The content hash is computed only if the size
+ * or the modification date of the database has changed since the previous merge. A key of an intermediate database
+ * is a hash of keys of its inputs and of the merge settings (the span and the Clover version). An intermediate
+ * database with the same key as in the previous merge is reused.</p>
+ */
+public class MergeTreeIndex {
+
+    static final String INDEX_FILE = "index.properties";
+
+    /**
+     * Keys of the index; they can't clash with node keys or absolute paths.
+     */
+    private static final String FINGERPRINT_KEY = "clover.fingerprint";
+    private static final String ROOT_KEY = "clover.root";
+    private static final String DATABASE_PREFIX = "database.";
+    private static final String NODE_PREFIX = "node.";
+
+    @NotNull
+    private final File treeDir;
+
+    @NotNull
+    private final String fingerprint;
+
+    /**
+     * Database path -&gt; "size:lastModified:contentHash", as loaded from the index
+     */
+    @NotNull
+    private final Map<String, String> recordedDatabases;
+
+    /**
+     * Keys of intermediate databases, as loaded from the index
+     */
+    @NotNull
+    private final Set<String> recordedNodes;
+
+    /**
+     * "rootKey:size:lastModified" of the merged database, as loaded from the index
+     */
+    @Nullable
+    private final String recordedRoot;
+
+    /**
+     * Database path -&gt; "size:lastModified:contentHash", for databases of the current merge
+     */
+    @NotNull
+    private final Map<String, String> currentDatabases = new HashMap<>();
+
+    /**
+     * Keys of intermediate databases of the current merge which are up to date; updated by merge workers
+     */
+    @NotNull
+    private final Set<String> currentNodes = ConcurrentHashMap.newKeySet();
+
+    private MergeTreeIndex(@NotNull final File treeDir,
+                           @NotNull final String fingerprint,
+                           @NotNull final Map<String, String> recordedDatabases,
+                           @NotNull final Set<String> recordedNodes,
+                           @Nullable final String recordedRoot) {
+        this.treeDir = treeDir;
+        this.fingerprint = fingerprint;
+        this.recordedDatabases = recordedDatabases;
+        this.recordedNodes = recordedNodes;
+        this.recordedRoot = recordedRoot;
+    }
+
+    /**
+     * Returns the directory with intermediate databases of the merged database.
+     *
+     * @param mergedDatabase path to the merged database
+     * @return File directory, e.g. <code>cloverMerge-tree</code> for <code>cloverMerge.db</code>
+     */
+    @NotNull
+    public static File getTreeDirectory(@NotNull final String mergedDatabase) {
+        final File databaseFile = new File(mergedDatabase).getAbsoluteFile();
+        final String name = databaseFile.getName();
+        final int extension = name.lastIndexOf('.');
+        return new File(databaseFile.getParentFile(), (extension > 0 ? name.substring(0, extension) : name) + "-tree");
+    }
+
+    /**
+     * Reads the index. If it does not exist or if it was created for different merge settings, an empty index is
+     * returned.
+     *
+     * @param treeDir directory with intermediate databases
+     * @param span    span used when reading coverage recordings of databases
+     * @return MergeTreeIndex
+     * @throws IOException if the index can't be read
+     */
+    @NotNull
+    public static MergeTreeIndex load(@NotNull final File treeDir, @NotNull final String span) throws IOException {
+        final String fingerprint = DigestUtils.sha256Hex(CloverVersionInfo.getReleaseNum() + "\n" + span);
+        final Map<String, String> recordedDatabases = new HashMap<>();
+        final Set<String> recordedNodes = new HashSet<>();
+        String recordedRoot = null;
+
+        final File indexFile = new File(treeDir, INDEX_FILE);
+        if (indexFile.isFile()) {
+            final Properties properties = new Properties();
+            try (InputStream in = new FileInputStream(indexFile)) {
+                properties.load(in);
+            }
+            if (fingerprint.equals(properties.getProperty(FINGERPRINT_KEY))) {
+                recordedRoot = properties.getProperty(ROOT_KEY);
+                for (String key : properties.stringPropertyNames()) {
+                    if (key.startsWith(DATABASE_PREFIX)) {
+                        recordedDatabases.put(key.substring(DATABASE_PREFIX.length()), properties.getProperty(key));
+                    } else if (key.startsWith(NODE_PREFIX)) {
+                        recordedNodes.add(key.substring(NODE_PREFIX.length()));
+                    }
+                }
+            }
+        }
+
+        return new MergeTreeIndex(treeDir, fingerprint, recordedDatabases, recordedNodes, recordedRoot);
+    }
+
+    /**
+     * @return File directory with intermediate databases and the index
+     */
+    @NotNull
+    public File getDirectory() {
+        return treeDir;
+    }
+
+    /**
+     * Returns a key of a database being merged.
+     *
+     * @param database path to the database
+     * @return String key
+     * @throws IOException if the database can't be read
+     */
+    @NotNull
+    public String getDatabaseKey(@NotNull final String database) throws IOException {
+        final File databaseFile = new File(database).getAbsoluteFile();
+        final String path = databaseFile.getPath();
+        final String sizeAndDate = databaseFile.length() + ":" + databaseFile.lastModified();
+        final String recorded = recordedDatabases.get(path);
+        final String current = recorded != null && recorded.startsWith(sizeAndDate + ":")
+                ? recorded
+                : sizeAndDate + ":" + hash(databaseFile);
+        currentDatabases.put(path, current);
+
+        final StringBuilder key = new StringBuilder(path).append('\n').append(current);
+        final String name = databaseFile.getName();
+        final File[] recordings = databaseFile.getParentFile().listFiles(
+                file -> CoverageRecordings.isRecording(file, name));
+        if (recordings != null) {
+            Arrays.sort(recordings);
+            for (File recording : recordings) {
+                key.append('\n').append(recording.getName())
+                        .append(':').append(recording.length())
+                        .append(':').append(recording.lastModified());
+            }
+        }
+        return DigestUtils.sha256Hex(key.toString());
+    }
+
+    /**
+     * Returns a key of a database merged from the given inputs.
+     *
+     * @param inputKeys keys of inputs, in the order of merging
+     * @return String key
+     */
+    @NotNull
+    public String getNodeKey(@NotNull final List<String> inputKeys) {
+        return DigestUtils.sha256Hex(fingerprint + "\n" + String.join("\n", inputKeys));
+    }
+
+    /**
+     * @param nodeKey key of an intermediate database
+     * @return String path to the intermediate database
+     */
+    @NotNull
+    public String getNodeDatabase(@NotNull final String nodeKey) {
+        return new File(treeDir, nodeKey + ".db").getPath();
+    }
+
+    /**
+     * @param nodeKey key of an intermediate database
+     * @return boolean true if the intermediate database was written by a previous merge and can be reused
+     */
+    public boolean isMerged(@NotNull final String nodeKey) {
+        return recordedNodes.contains(nodeKey) && new File(getNodeDatabase(nodeKey)).isFile();
+    }
+
+    /**
+     * Records that the intermediate database is up to date, either reused or merged again.
+     *
+     * @param nodeKey key of an intermediate database
+     */
+    public void markMerged(@NotNull final String nodeKey) {
+        currentNodes.add(nodeKey);
+    }
+
+    /**
+     * @param rootKey        key of the merged database
+     * @param mergedDatabase path to the merged database
+     * @return boolean true if the merged database was written by a previous merge of the same inputs
+     */
+    public boolean isUpToDate(@NotNull final String rootKey, @NotNull final String mergedDatabase) {
+        return getRoot(rootKey, new File(mergedDatabase)).equals(recordedRoot);
+    }
+
+    /**
+     * Writes the index of the current merge and deletes intermediate databases which are not a part of it.
+     *
+     * @param rootKey        key of the merged database
+     * @param mergedDatabase path to the merged database
+     * @throws IOException if the index can't be written
+     */
+    public void save(@NotNull final String rootKey, @NotNull final String mergedDatabase) throws IOException {
+        final Properties properties = new Properties();
+        properties.setProperty(FINGERPRINT_KEY, fingerprint);
+        properties.setProperty(ROOT_KEY, getRoot(rootKey, new File(mergedDatabase)));
+        for (Map.Entry<String, String> database : currentDatabases.entrySet()) {
+            properties.setProperty(DATABASE_PREFIX + database.getKey(), database.getValue());
+        }
+        for (String node : currentNodes) {
+            properties.setProperty(NODE_PREFIX + node, "");
+        }
+
+        try (OutputStream out = new FileOutputStream(new File(treeDir, INDEX_FILE))) {
+            properties.store(out, "Clover merge index");
+        }
+
+        final File[] files = treeDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                final String name = file.getName();
+                final int extension = name.indexOf('.');
+                final String nodeKey = extension >= 0 ? name.substring(0, extension) : name;
+                if (!name.equals(INDEX_FILE) && !currentNodes.contains(nodeKey) && !file.delete()) {
+                    throw new IOException("Failed to delete " + file);
+                }
+            }
+        }
+    }
+
+    @NotNull
+    private static String getRoot(@NotNull final String rootKey, @NotNull final File mergedDatabase) {
+        return rootKey + ":" + mergedDatabase.length() + ":" + mergedDatabase.lastModified();
+    }
+
+    @NotNull
+    private static String hash(@NotNull final File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return DigestUtils.sha256Hex(in);
+        }
+    }
+}
@@ -0,0 +1,305 @@
+package com.atlassian.maven.plugin.clover.internal;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.atlassian.clover.CloverDatabase;
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.FileUtils;
+import org.codehaus.plexus.util.IOUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+/**
+ * <p>Merges Clover databases pairwise in a tree: neighbouring databases are merged into intermediate databases,
+ * which are merged again until the root of the tree is written to the merged database. A merge starts as soon as
+ * both of its inputs are available, so independent merges run in parallel.</p>
+ *
+ * <p>Every merge runs in a forked JVM ({@link CloverMergeWorker}) with its own heap, as Clover's merge is not
+ * thread-safe; at most <code>workers</code> JVMs run at the same time. A worker reads two databases only, so its
+ * memory is bounded by the size of the merged project rather than by the number of databases.</p>
+ *
+ * <p>Databases are combined in the order they're given, i.e. the left-to-right order of leaves of the tree, which
+ * decides the source files that win when databases contain different versions of them. Callers sort the databases
+ * with {@link #sortDatabases(Collection)}, so that the merged database does not depend on the order in which they
+ * were found.</p>
+ */
+public class ParallelCloverMerge {
+
+    @NotNull
+    private final List<String> command;
+
+    private final int workers;
+
+    @NotNull
+    private final Log log;
+
+    /**
+     * @param workers maximum number of worker JVMs running at the same time, at least 1
+     * @param jvmArgs arguments of worker JVMs, e.g. "-Xmx1g", can be null
+     * @param log     logger
+     * @throws IOException if JVM arguments can't be parsed or the class path of workers can't be determined
+     */
+    public ParallelCloverMerge(final int workers, @Nullable final String jvmArgs, @NotNull final Log log)
+            throws IOException {
+        if (workers < 1) {
+            throw new IllegalArgumentException("Number of merge workers must be at least 1, got " + workers);
+        }
+        this.workers = workers;
+        this.log = log;
+        this.command = ForkedJvm.createCommand(CloverMergeWorker.class,
+                Arrays.asList(CloverMergeWorker.class, CloverDatabase.class), jvmArgs, "merge workers");
+    }
+
+    /**
+     * Returns databases sorted by their paths, without duplicates, so that the order of merging, and thus the shape
+     * of the tree and the versions of source files which win, does not depend on the order in which databases were
+     * found.
+     *
+     * @param databases databases to merge
+     * @return List databases in the order of merging
+     */
+    @NotNull
+    public static List<String> sortDatabases(@NotNull final Collection<String> databases) {
+        return new ArrayList<>(new TreeSet<>(databases));
+    }
+
+    /**
+     * Merges databases into one.
+     *
+     * @param databases      databases to merge, in the order of merging
+     * @param span           span used when reading coverage recordings of databases
+     * @param mergedDatabase path of the merged database, overwritten if it exists
+     * @throws IOException if any of merges has failed
+     */
+    public void merge(@NotNull final List<String> databases, @NotNull final String span,
+                      @NotNull final String mergedDatabase) throws IOException {
+        merge(databases, span, mergedDatabase, null);
+    }
+
+    /**
+     * Merges databases into one. If an index is given, intermediate databases are kept in its directory and those
+     * written by a previous merge of the same inputs are reused, so that only the paths from changed databases to
+     * the root of the tree are merged again.
+     *
+     * @param databases      databases to merge, in the order of merging
+     * @param span           span used when reading coverage recordings of databases
+     * @param mergedDatabase path of the merged database, overwritten if it exists
+     * @param index          index of intermediate databases, null to merge all databases again
+     * @throws IOException if any of merges has failed
+     */
+    public void merge(@NotNull final List<String> databases, @NotNull final String span,
+                      @NotNull final String mergedDatabase, @Nullable final MergeTreeIndex index) throws IOException {
+        if (databases.isEmpty()) {
+            throw new IllegalArgumentException("No Clover databases to merge");
+        }
+        final File mergedDir = new File(mergedDatabase).getAbsoluteFile().getParentFile();
+        Files.createDirectories(mergedDir.toPath());
+        final File tempDir = Files.createTempDirectory(mergedDir.toPath(), "clover-merge").toFile();
+        if (index != null) {
+            Files.createDirectories(index.getDirectory().toPath());
+        }
+        final ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            final List<Node> inputs;
+            if (databases.size() == 1) {
+                inputs = Collections.singletonList(createTree(databases, 0, 1, index, tempDir));
+            } else {
+                final int middle = databases.size() >>> 1;
+                inputs = Arrays.asList(
+                        createTree(databases, 0, middle, index, tempDir),
+                        createTree(databases, middle, databases.size(), index, tempDir));
+            }
+            final Node root = new Node(inputs, mergedDatabase, getNodeKey(inputs, index));
+            if (index != null && index.isUpToDate(root.key, mergedDatabase)) {
+                log.info("Clover database " + mergedDatabase + " is up to date with its " + databases.size()
+                        + " input database(s)");
+                return;
+            }
+
+            log.info("Merging " + databases.size() + " Clover database(s) into " + mergedDatabase
+                    + " using " + workers + " worker(s)");
+            schedule(root, span, index, executor).get();
+            if (index != null) {
+                index.save(root.key, mergedDatabase);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while merging Clover databases", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw new IOException("Failed to merge Clover databases", e.getCause());
+        } finally {
+            executor.shutdownNow();
+            FileUtils.deleteDirectory(tempDir);
+        }
+    }
+
+    /**
+     * A database being merged (a leaf) or a database merged from its inputs.
+     */
+    private static class Node {
+        @NotNull
+        final List<Node> inputs;
+
+        @NotNull
+        final String database;
+
+        /**
+         * Key in the {@link MergeTreeIndex}, null if there's no index
+         */
+        @Nullable
+        final String key;
+
+        Node(@NotNull final List<Node> inputs, @NotNull final String database, @Nullable final String key) {
+            this.inputs = inputs;
+            this.database = database;
+            this.key = key;
+        }
+    }
+
+    /**
+     * Creates a tree merging databases[from, to), or a leaf for a single database.
+     */
+    @NotNull
+    private static Node createTree(@NotNull final List<String> databases, final int from, final int to,
+                                   @Nullable final MergeTreeIndex index, @NotNull final File tempDir)
+            throws IOException {
+        if (to - from == 1) {
+            final String database = databases.get(from);
+            return new Node(Collections.emptyList(), database, index != null ? index.getDatabaseKey(database) : null);
+        }
+        final int middle = (from + to) >>> 1;
+        final List<Node> inputs = Arrays.asList(
+                createTree(databases, from, middle, index, tempDir),
+                createTree(databases, middle, to, index, tempDir));
+        final String key = getNodeKey(inputs, index);
+        return new Node(inputs,
+                key != null ? index.getNodeDatabase(key) : new File(tempDir, "merge_" + from + "_" + to + ".db").getPath(),
+                key);
+    }
+
+    @Nullable
+    private static String getNodeKey(@NotNull final List<Node> inputs, @Nullable final MergeTreeIndex index) {
+        return index != null
+                ? index.getNodeKey(inputs.stream().map(input -> input.key).collect(Collectors.toList()))
+                : null;
+    }
+
+    /**
+     * Merges inputs of the node as soon as they're available, unless it's an intermediate database which can be
+     * reused. Returns the node's database.
+     */
+    @NotNull
+    private CompletableFuture<String> schedule(@NotNull final Node node,
+                                               @NotNull final String span,
+                                               @Nullable final MergeTreeIndex index,
+                                               @NotNull final ExecutorService executor) {
+        if (node.inputs.isEmpty()) {
+            return CompletableFuture.completedFuture(node.database);
+        }
+        final boolean intermediate = index != null && node.database.equals(index.getNodeDatabase(node.key));
+        if (intermediate && index.isMerged(node.key)) {
+            keepSubtree(node, index);
+            return CompletableFuture.completedFuture(node.database);
+        }
+
+        final List<CompletableFuture<String>> inputs = new ArrayList<>();
+        for (Node input : node.inputs) {
+            inputs.add(schedule(input, span, index, executor));
+        }
+        return CompletableFuture.allOf(inputs.toArray(new CompletableFuture<?>[0]))
+                .thenApplyAsync(ignored -> {
+                    runWorker(inputs.stream().map(CompletableFuture::join).collect(Collectors.toList()),
+                            span, node.database);
+                    if (intermediate) {
+                        index.markMerged(node.key);
+                    }
+                    return node.database;
+                }, executor);
+    }
+
+    /**
+     * Keeps a reused intermediate database and its own intermediate inputs, which will be needed when any of
+     * databases below them changes.
+     */
+    private static void keepSubtree(@NotNull final Node node, @NotNull final MergeTreeIndex index) {
+        if (!node.inputs.isEmpty() && index.isMerged(node.key)) {
+            index.markMerged(node.key);
+            for (Node input : node.inputs) {
+                keepSubtree(input, index);
+            }
+        }
+    }
+
+    private void runWorker(@NotNull final List<String> inputs, @NotNull final String span,
+                           @NotNull final String target) {
+        final List<String> args = new ArrayList<>(command);
+        args.add("-i");
+        args.add(target);
+        args.add("-s");
+        args.add(span);
+        if (log.isDebugEnabled()) {
+            args.add("-d");
+        }
+        args.addAll(inputs);
+
+        Process process = null;
+        try {
+            process = new ProcessBuilder(args).redirectErrorStream(true).start();
+            final String output;
+            try (InputStream in = process.getInputStream()) {
+                output = IOUtil.toString(in);
+            }
+            final int result = process.waitFor();
+            if (log.isDebugEnabled()) {
+                log.debug("Merged " + inputs + " into " + target + System.lineSeparator() + output);
+            }
+            if (result != 0) {
+                throw new IOException("Clover has failed to merge " + inputs + " into " + target
+                        + System.lineSeparator() + output);
+            }
+        } catch (InterruptedException e) {
+            process.destroy();
+            Thread.currentThread().interrupt();
+            throw new UncheckedIOException(new IOException("Interrupted while merging into " + target, e));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
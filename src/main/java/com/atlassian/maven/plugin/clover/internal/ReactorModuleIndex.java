@@ -0,0 +1,162 @@
+package com.atlassian.maven.plugin.clover.internal;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.maven.project.MavenProject;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Index of modules of the reactor, built once per session (see {@link CloverSessionState}). It maps canonical
+ * base directories to reactor projects and parent projects to their modules, so that finding modules of a project
+ * does not compare every pair of reactor projects.</p>
+ *
+ * <p>A project is a module of a parent if its base directory is the same (after canonicalization, as module paths
+ * can be like <code>../a-project</code> in flat multi-module structures) as a directory listed in parent's
+ * <code>&lt;modules&gt;</code>. Modules are returned in the reactor order.</p>
+ */
+public class ReactorModuleIndex {
+
+    @NotNull
+    private final List<MavenProject> reactorProjects;
+
+    /**
+     * Reactor project -&gt; position in the reactor
+     */
+    @NotNull
+    private final Map<MavenProject, Integer> reactorOrder = new IdentityHashMap<>();
+
+    /**
+     * Canonical base directory -&gt; reactor projects located in it, in the reactor order
+     */
+    @NotNull
+    private final Map<String, List<MavenProject>> projectsByBaseDir = new HashMap<>();
+
+    /**
+     * Reactor project -&gt; its modules found in the reactor, in the reactor order
+     */
+    @NotNull
+    private final Map<MavenProject, List<MavenProject>> modulesByProject = new IdentityHashMap<>();
+
+    /**
+     * Path -&gt; canonical path, for directories canonicalized so far
+     */
+    @NotNull
+    private final Map<String, String> canonicalPaths = new ConcurrentHashMap<>();
+
+    /**
+     * @param reactorProjects projects of the reactor
+     */
+    public ReactorModuleIndex(@NotNull final List<MavenProject> reactorProjects) {
+        this.reactorProjects = reactorProjects;
+        for (int i = 0; i < reactorProjects.size(); i++) {
+            final MavenProject project = reactorProjects.get(i);
+            reactorOrder.put(project, i);
+            projectsByBaseDir.computeIfAbsent(getCanonicalPath(project.getBasedir()), dir -> new ArrayList<>())
+                    .add(project);
+        }
+        for (MavenProject project : reactorProjects) {
+            modulesByProject.put(project, findModules(project));
+        }
+    }
+
+    /**
+     * @param reactorProjects projects of the reactor
+     * @return boolean true if this index was built for the same reactor
+     */
+    public boolean isIndexOf(@NotNull final List<MavenProject> reactorProjects) {
+        return this.reactorProjects == reactorProjects || this.reactorProjects.equals(reactorProjects);
+    }
+
+    /**
+     * Returns reactor projects which are modules of the project.
+     *
+     * @param project a reactor project or a copy of it
+     * @return List modules in the reactor order, may include the project itself if it's its own module
+     */
+    @NotNull
+    public List<MavenProject> getModules(@NotNull final MavenProject project) {
+        final List<MavenProject> modules = modulesByProject.get(project);
+        return modules != null ? modules : findModules(project);
+    }
+
+    /**
+     * @param parentProject   the parent project
+     * @param potentialModule the potential module project
+     * @return boolean true if the potentialModule is a module of the parentProject
+     */
+    public boolean isModuleOf(@NotNull final MavenProject parentProject, @NotNull final MavenProject potentialModule) {
+        final String moduleBaseDir = getCanonicalPath(potentialModule.getBasedir());
+        for (String moduleDir : getModuleDirs(parentProject)) {
+            if (moduleDir.equals(moduleBaseDir)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @NotNull
+    private List<MavenProject> findModules(@NotNull final MavenProject project) {
+        final List<MavenProject> modules = new ArrayList<>();
+        for (String moduleDir : getModuleDirs(project)) {
+            for (MavenProject module : projectsByBaseDir.getOrDefault(moduleDir, Collections.emptyList())) {
+                if (!modules.contains(module)) {
+                    modules.add(module);
+                }
+            }
+        }
+        modules.sort((p1, p2) -> Integer.compare(reactorOrder.get(p1), reactorOrder.get(p2)));
+        return modules;
+    }
+
+    @NotNull
+    private List<String> getModuleDirs(@NotNull final MavenProject project) {
+        final List<String> moduleDirs = new ArrayList<>();
+        if (project.getModules() != null) {
+            for (String module : project.getModules()) {
+                moduleDirs.add(getCanonicalPath(new File(project.getBasedir(), module)));
+            }
+        }
+        return moduleDirs;
+    }
+
+    /**
+     * Returns a canonical path of the directory, or its absolute path if it can't be canonicalized.
+     */
+    @NotNull
+    private String getCanonicalPath(@NotNull final File dir) {
+        return canonicalPaths.computeIfAbsent(dir.getPath(), path -> {
+            try {
+                return dir.getCanonicalPath();
+            } catch (IOException e) {
+                return dir.getAbsolutePath();
+            }
+        });
+    }
+}
@@ -0,0 +1,111 @@
+package com.atlassian.maven.plugin.clover.internal;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.atlassian.clover.CloverDatabase;
+import com.atlassian.clover.api.CloverException;
+import com.atlassian.clover.reporters.CloverReportConfig;
+import com.atlassian.clover.reporters.Current;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Coverage databases loaded for the reports of one database. All formats of a database (HTML, JSON, PDF, XML)
+ * are rendered one after another from a single load of the database, instead of every reporter loading it
+ * again.</p>
+ *
+ * <p>A loaded database is reused by reports of the same &lt;current&gt; element (see {@link SharedDatabaseReportTask})
+ * with the same database, context filter and span. Reporters only read the database, but they are not safe to run
+ * concurrently on the same one, so reports sharing a database must be rendered in sequence.</p>
+ */
+public class ReportDatabases {
+
+    /**
+     * Loads a database, like {@link CloverReportConfig#getCoverageDatabase()} does.
+     */
+    public interface Loader {
+        CloverDatabase load() throws CloverException;
+    }
+
+    /**
+     * Key -&gt; loaded database
+     */
+    private final Map<String, CloverDatabase> databases = new HashMap<>();
+
+    /**
+     * Returns the database for the report, it's loaded if no previous report has loaded the same one.
+     *
+     * @param config  the report
+     * @param element identifies the &lt;current&gt; element of the report, reports of different elements never
+     *                share a database as they may use different file sets
+     * @param loader  loads the database
+     * @return CloverDatabase the database with coverage data
+     * @throws CloverException if the database can't be loaded
+     */
+    @NotNull
+    public synchronized CloverDatabase get(@NotNull final CloverReportConfig config, @NotNull final String element,
+                                           @NotNull final Loader loader) throws CloverException {
+        final String key = element
+                + '\n' + config.getInitString()
+                + '\n' + config.getFormat().getFilter()
+                + '\n' + config.getSpan().getValueInMillis()
+                + '\n' + config.getSourcepath()
+                + '\n' + config.isLoadPerTestData();
+        CloverDatabase database = databases.get(key);
+        if (database == null) {
+            database = loader.load();
+            databases.put(key, database);
+        }
+        return database;
+    }
+
+    /**
+     * A &lt;current&gt; report which takes its database from the shared ones, used by reports generated without
+     * the report descriptor.
+     */
+    public static class SharedDatabaseCurrent extends Current {
+        @NotNull
+        private final ReportDatabases databases;
+
+        /**
+         * Package paths of source files of the report, see {@link ChangedFilesDatabase}; all files if null
+         */
+        @Nullable
+        private Set<String> files;
+
+        public SharedDatabaseCurrent(@NotNull final ReportDatabases databases) {
+            this.databases = databases;
+        }
+
+        public void setFiles(@Nullable final Set<String> files) {
+            this.files = files;
+        }
+
+        @Override
+        public CloverDatabase getCoverageDatabase() throws CloverException {
+            final CloverDatabase database = databases.get(this, "", super::getCoverageDatabase);
+            return files != null ? new ChangedFilesDatabase(database, files) : database;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.atlassian.maven.plugin.clover.internal;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.atlassian.clover.CloverDatabase;
+import com.atlassian.clover.api.CloverException;
+import com.atlassian.clover.ant.tasks.CloverReportTask;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * <p>The <code>clover-report</code> task which takes coverage databases from the {@link ReportDatabases} shared by
+ * all formats of a report, so that the formats, each rendered by its own execution of the report descriptor, load
+ * a database only once.</p>
+ *
+ * <p>Shared databases are passed as the {@link #DATABASES_REFERENCE} reference of the Ant project. If there's no
+ * such reference, every report loads its database like the <code>clover-report</code> task does.</p>
+ */
+public class SharedDatabaseReportTask extends CloverReportTask {
+
+    public static final String DATABASES_REFERENCE = "maven.clover.reportDatabases";
+
+    private int currentCount;
+
+    /**
+     * Replaces {@link CloverReportTask#addCurrent(CurrentEx)}, Ant prefers <code>addConfigured</code> methods.
+     *
+     * @param current nested &lt;current&gt; element
+     */
+    public void addConfiguredCurrent(final SharedDatabaseCurrent current) {
+        current.databases = getProject().getReference(DATABASES_REFERENCE);
+        // the same element of the descriptor is at the same location for all formats
+        current.element = getLocation() + "#" + currentCount++;
+        addCurrent(current);
+    }
+
+    /**
+     * A &lt;current&gt; report which takes its database from the shared ones.
+     */
+    public static class SharedDatabaseCurrent extends CurrentEx {
+        @Nullable
+        private ReportDatabases databases;
+
+        private String element;
+
+        @Override
+        public CloverDatabase getCoverageDatabase() throws CloverException {
+            return databases != null
+                    ? databases.get(this, element, super::getCoverageDatabase)
+                    : super.getCoverageDatabase();
+        }
+    }
+}
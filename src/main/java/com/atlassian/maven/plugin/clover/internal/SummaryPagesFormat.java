@@ -0,0 +1,49 @@
+package com.atlassian.maven.plugin.clover.internal;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.atlassian.clover.reporters.Format;
+import com.atlassian.clover.reporters.html.HtmlReporter;
+
+/**
+ * <p>A HTML report format which renders all pages except those of source files, which are kept from the previous
+ * report (see {@link HtmlReportIndex}).</p>
+ *
+ * <p>The HTML reporter asks for the source level both to render source file pages and to link to them from other
+ * pages. Only the former is turned off, so that other pages are the same as in a complete report. If the reporter
+ * is changed so that the caller is not recognized, source file pages are rendered as usual.</p>
+ */
+public class SummaryPagesFormat extends Format {
+
+    private static final String RENDER_SOURCE_FILE_PAGE = "renderSourceFilePage";
+
+    public SummaryPagesFormat(final Format format) {
+        super(format);
+    }
+
+    @Override
+    public boolean getSrcLevel() {
+        final StackTraceElement[] stack = new Throwable().getStackTrace();
+        final boolean sourceFilePage = stack.length > 1
+                && HtmlReporter.class.getName().equals(stack[1].getClassName())
+                && RENDER_SOURCE_FILE_PAGE.equals(stack[1].getMethodName());
+        return !sourceFilePage && super.getSrcLevel();
+    }
+}
@@ -0,0 +1,258 @@
+package com.atlassian.maven.plugin.clover.internal;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.ExecutionListener;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.PluginParameterExpressionEvaluator;
+import org.codehaus.plexus.component.configurator.expression.ExpressionEvaluationException;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>Tracks test runs of the maven-surefire-plugin and the maven-failsafe-plugin in a Maven session, so that
+ * coverage recordings can be read as soon as no test JVM can write them anymore (see {@link CoverageRecordings}).
+ * Test mojos wait for their forked JVMs to exit and a JVM flushes its recordings before it exits, so recordings are
+ * complete once all test mojos which have started have ended.</p>
+ *
+ * <p>Test mojos are observed by an {@link ExecutionListener} installed on the execution request, which passes all
+ * events to the listener it replaces. Tests running in the Maven JVM (<code>forkCount=0</code>) flush their
+ * recordings when Maven exits, so once they've run, test JVMs are never considered ended.</p>
+ */
+public class TestRunTracker {
+
+    private final AtomicInteger runningTests = new AtomicInteger();
+
+    private final AtomicInteger endedTests = new AtomicInteger();
+
+    private volatile boolean inProcessTests;
+
+    /**
+     * Starts tracking test mojos executed for the request.
+     *
+     * @param request execution request of the session
+     */
+    public void install(@NotNull final MavenExecutionRequest request) {
+        request.setExecutionListener(new Listener(request.getExecutionListener()));
+    }
+
+    /**
+     * @return boolean true if tests have run in forked JVMs in this session and none of them is running now
+     */
+    public boolean haveTestJvmsEnded() {
+        return endedTests.get() > 0 && runningTests.get() == 0 && !inProcessTests;
+    }
+
+    void testsStarted(@NotNull final ExecutionEvent event) {
+        if (isTestMojo(event.getMojoExecution())) {
+            if (!isForked(event)) {
+                inProcessTests = true;
+            }
+            runningTests.incrementAndGet();
+        }
+    }
+
+    void testsEnded(@NotNull final ExecutionEvent event) {
+        if (isTestMojo(event.getMojoExecution())) {
+            endedTests.incrementAndGet();
+            runningTests.decrementAndGet();
+        }
+    }
+
+    private static boolean isTestMojo(@Nullable final MojoExecution execution) {
+        return execution != null
+                && ("maven-surefire-plugin".equals(execution.getArtifactId()) && "test".equals(execution.getGoal())
+                || "maven-failsafe-plugin".equals(execution.getArtifactId()) && "integration-test".equals(execution.getGoal()));
+    }
+
+    private static boolean isForked(@NotNull final ExecutionEvent event) {
+        return !"0".equals(getParameter(event, "forkCount")) && !"never".equals(getParameter(event, "forkMode"));
+    }
+
+    /**
+     * Value of a parameter of the mojo, from its configuration or default value.
+     */
+    @Nullable
+    private static String getParameter(@NotNull final ExecutionEvent event, @NotNull final String name) {
+        final Xpp3Dom config = event.getMojoExecution().getConfiguration();
+        final Xpp3Dom child = config != null ? config.getChild(name) : null;
+        if (child == null) {
+            return null;
+        }
+        final String value = evaluate(event, child.getValue());
+        return value != null ? value : evaluate(event, child.getAttribute("default-value"));
+    }
+
+    @Nullable
+    private static String evaluate(@NotNull final ExecutionEvent event, @Nullable final String expression) {
+        if (expression == null || !expression.contains("${")) {
+            return expression != null ? expression.trim() : null;
+        }
+        if (event.getSession() == null) {
+            return null;
+        }
+        try {
+            final Object value = new PluginParameterExpressionEvaluator(event.getSession(), event.getMojoExecution())
+                    .evaluate(expression);
+            return value != null ? value.toString().trim() : null;
+        } catch (ExpressionEvaluationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Passes events to the original listener and to the tracker.
+     */
+    private class Listener implements ExecutionListener {
+        @Nullable
+        private final ExecutionListener delegate;
+
+        Listener(@Nullable final ExecutionListener delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void projectDiscoveryStarted(final ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.projectDiscoveryStarted(event);
+            }
+        }
+
+        @Override
+        public void sessionStarted(final ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.sessionStarted(event);
+            }
+        }
+
+        @Override
+        public void sessionEnded(final ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.sessionEnded(event);
+            }
+        }
+
+        @Override
+        public void projectSkipped(final ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.projectSkipped(event);
+            }
+        }
+
+        @Override
+        public void projectStarted(final ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.projectStarted(event);
+            }
+        }
+
+        @Override
+        public void projectSucceeded(final ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.projectSucceeded(event);
+            }
+        }
+
+        @Override
+        public void projectFailed(final ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.projectFailed(event);
+            }
+        }
+
+        @Override
+        public void mojoSkipped(final ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.mojoSkipped(event);
+            }
+        }
+
+        @Override
+        public void mojoStarted(final ExecutionEvent event) {
+            testsStarted(event);
+            if (delegate != null) {
+                delegate.mojoStarted(event);
+            }
+        }
+
+        @Override
+        public void mojoSucceeded(final ExecutionEvent event) {
+            testsEnded(event);
+            if (delegate != null) {
+                delegate.mojoSucceeded(event);
+            }
+        }
+
+        @Override
+        public void mojoFailed(final ExecutionEvent event) {
+            testsEnded(event);
+            if (delegate != null) {
+                delegate.mojoFailed(event);
+            }
+        }
+
+        @Override
+        public void forkStarted(final ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.forkStarted(event);
+            }
+        }
+
+        @Override
+        public void forkSucceeded(final ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.forkSucceeded(event);
+            }
+        }
+
+        @Override
+        public void forkFailed(final ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.forkFailed(event);
+            }
+        }
+
+        @Override
+        public void forkedProjectStarted(final ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.forkedProjectStarted(event);
+            }
+        }
+
+        @Override
+        public void forkedProjectSucceeded(final ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.forkedProjectSucceeded(event);
+            }
+        }
+
+        @Override
+        public void forkedProjectFailed(final ExecutionEvent event) {
+            if (delegate != null) {
+                delegate.forkedProjectFailed(event);
+            }
+        }
+    }
+}
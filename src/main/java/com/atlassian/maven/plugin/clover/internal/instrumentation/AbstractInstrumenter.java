@@ -20,7 +20,6 @@ package com.atlassian.maven.plugin.clover.internal.instrumentation;
  */
 
 import clover.org.apache.commons.lang3.StringUtils;
-import com.atlassian.clover.CloverInstr;
 import com.atlassian.clover.Logger;
 import com.atlassian.clover.cfg.instr.java.SourceLevel;
 import com.atlassian.clover.spi.lang.Language;
@@ -29,19 +28,28 @@ import com.atlassian.maven.plugin.clover.MvnLogger;
 import com.atlassian.maven.plugin.clover.TestClass;
 import com.atlassian.maven.plugin.clover.TestMethod;
 import com.atlassian.maven.plugin.clover.TestSources;
+import com.atlassian.maven.plugin.clover.internal.CloverDatabaseFragments;
 import com.atlassian.maven.plugin.clover.internal.CompilerConfiguration;
+import com.atlassian.maven.plugin.clover.internal.scanner.ChangedFileSet;
 import com.atlassian.maven.plugin.clover.internal.scanner.CloverSourceScanner;
 import com.atlassian.maven.plugin.clover.internal.scanner.LanguageFileExtensionFilter;
 import org.apache.maven.plugin.MojoExecutionException;
-import org.codehaus.plexus.util.FileUtils;
 import org.jetbrains.annotations.TestOnly;
 
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static clover.org.apache.commons.lang3.StringUtils.defaultString;
 
@@ -71,14 +79,44 @@ public abstract class AbstractInstrumenter {
      */
     public void instrument() throws MojoExecutionException {
         final CloverSourceScanner scanner = getSourceScanner();
-        // get source files to be instrumented, but only for Java as they will be instrumented by CloverInstr
-        final Map<String, String[]> javaFilesToInstrument = scanner.getSourceFilesToInstrument(LanguageFileExtensionFilter.JAVA_LANGUAGE, true);
+        final InstrumentationOutput output = createOutput();
+        // get source files to be instrumented, but only for Java as they will be instrumented by CloverInstr;
+        // staleness is checked later, as files copied by a build with a limited scope are never up to date
+        final Map<String, String[]> allJavaFiles = scanner.getAllSourceFilesToInstrument(LanguageFileExtensionFilter.JAVA_LANGUAGE, true);
+        Map<String, String[]> javaFilesToInstrument = allJavaFiles;
+        final Set<String> copiedFiles = loadCopiedFiles();
+
+        // with a limited scope, unchanged files are not instrumented, but they must be compiled, so copy them
+        final ChangedFileSet changedFiles = getConfiguration().getChangedFileSet();
+        if (changedFiles != null) {
+            final Map<String, String[]> unchangedFiles;
+            try {
+                unchangedFiles = changedFiles.selectUnchanged(allJavaFiles);
+                javaFilesToInstrument = changedFiles.selectChanged(allJavaFiles);
+            } catch (IOException e) {
+                throw new MojoExecutionException("Failed to select changed files", e);
+            }
+            copyExcludedFiles(unchangedFiles, outputSourceDirectory);
+            copiedFiles.addAll(toAbsolutePaths(unchangedFiles));
+        }
+
+        // copies of files which were never instrumented look up to date, so they're added to the stale ones
+        final Map<String, String[]> copiedFilesToInstrument = selectFiles(javaFilesToInstrument, copiedFiles);
+        // all files are stale if the database is missing, e.g. after the number of shards has changed
+        final Map<String, String[]> staleFiles = isDatabaseMissing(javaFilesToInstrument, getShardCount())
+                ? javaFilesToInstrument
+                : scanner.selectStaleFiles(javaFilesToInstrument);
+        javaFilesToInstrument = addFiles(staleFiles, copiedFilesToInstrument);
+
         if (javaFilesToInstrument.isEmpty()) {
             getConfiguration().getLog().info("No Clover instrumentation done on source files in: "
                     + getCompileSourceRoots() + " as no matching sources files found (JAVA_LANGUAGE)");
         } else {
-            instrumentSources(javaFilesToInstrument, outputSourceDirectory);
+            instrumentSources(javaFilesToInstrument, copiedFilesToInstrument, output);
+            copiedFiles.removeAll(toAbsolutePaths(javaFilesToInstrument));
         }
+        copiedFiles.retainAll(toAbsolutePaths(allJavaFiles));
+        saveCopiedFiles(copiedFiles);
 
         // find groovy files in all compilation roots and copy them
         //
@@ -106,6 +144,101 @@ public abstract class AbstractInstrumenter {
             // 'src/(main|test)/groovy' is already filtered-out in getExcludedFiles()
             copyExcludedFiles(explicitlyExcludedFiles, outputSourceDirectory);
         }
+
+        // remove instrumented or copied files whose sources are gone, so that they're not compiled anymore
+        if (getConfiguration().isDeleteOrphanedInstrumentedSources()) {
+            try {
+                output.deleteOrphans(getCompileSourceRoots());
+            } catch (IOException e) {
+                throw new MojoExecutionException("Failed to clean up the [" + outputSourceDirectory + "] directory", e);
+            }
+        }
+        output.logStatistics();
+
+        // files were written into the output directory, it must be scanned again if it becomes a source root
+        getConfiguration().getSourceScanCache().invalidate(outputSourceDirectory);
+    }
+
+    private InstrumentationOutput createOutput() throws MojoExecutionException {
+        final InstrumentationOutput output = new InstrumentationOutput(new File(outputSourceDirectory), configuration.getLog());
+        if (getConfiguration().isDeleteOrphanedInstrumentedSources()) {
+            try {
+                output.recordExistingFiles();
+            } catch (IOException e) {
+                throw new MojoExecutionException("Failed to list files in the [" + outputSourceDirectory + "] directory", e);
+            }
+        }
+        return output;
+    }
+
+    private Set<String> loadCopiedFiles() throws MojoExecutionException {
+        try {
+            return InstrumentationManifest.loadCopiedFiles(new File(outputSourceDirectory));
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to read the list of copied files of the ["
+                    + outputSourceDirectory + "] directory", e);
+        }
+    }
+
+    private void saveCopiedFiles(final Set<String> copiedFiles) throws MojoExecutionException {
+        try {
+            InstrumentationManifest.saveCopiedFiles(new File(outputSourceDirectory), copiedFiles);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to write the list of copied files of the ["
+                    + outputSourceDirectory + "] directory", e);
+        }
+    }
+
+    private static Set<String> toAbsolutePaths(final Map<String, String[]> files) {
+        final Set<String> paths = new HashSet<>();
+        for (Map.Entry<String, String[]> entry : files.entrySet()) {
+            for (String fileName : entry.getValue()) {
+                paths.add(new File(entry.getKey(), fileName).getAbsolutePath());
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * @return files whose absolute paths are in the given set
+     */
+    private static Map<String, String[]> selectFiles(final Map<String, String[]> files, final Set<String> paths) {
+        final Map<String, String[]> selected = new HashMap<>();
+        for (Map.Entry<String, String[]> entry : files.entrySet()) {
+            final List<String> fileNames = new ArrayList<>();
+            for (String fileName : entry.getValue()) {
+                if (paths.contains(new File(entry.getKey(), fileName).getAbsolutePath())) {
+                    fileNames.add(fileName);
+                }
+            }
+            if (!fileNames.isEmpty()) {
+                selected.put(entry.getKey(), fileNames.toArray(new String[0]));
+            }
+        }
+        return selected;
+    }
+
+    /**
+     * @return union of both maps, with file names of each source root in their original order
+     */
+    private static Map<String, String[]> addFiles(final Map<String, String[]> files, final Map<String, String[]> moreFiles) {
+        if (moreFiles.isEmpty()) {
+            return files;
+        }
+        final Map<String, String[]> union = new HashMap<>();
+        final Set<String> sourceRoots = new LinkedHashSet<>(files.keySet());
+        sourceRoots.addAll(moreFiles.keySet());
+        for (String sourceRoot : sourceRoots) {
+            final Set<String> fileNames = new LinkedHashSet<>();
+            if (files.containsKey(sourceRoot)) {
+                fileNames.addAll(Arrays.asList(files.get(sourceRoot)));
+            }
+            if (moreFiles.containsKey(sourceRoot)) {
+                fileNames.addAll(Arrays.asList(moreFiles.get(sourceRoot)));
+            }
+            union.put(sourceRoot, fileNames.toArray(new String[0]));
+        }
+        return union;
     }
 
     public String redirectSourceDirectories() {
@@ -124,6 +257,15 @@ public abstract class AbstractInstrumenter {
 
     protected abstract boolean isGeneratedSourcesDirectory(final String sourceRoot);
 
+    /**
+     * @return compiler for in-memory compilation of instrumented sources, <code>null</code> if sources shall be
+     * written to the output directory
+     * @throws MojoExecutionException if the compiler can't be configured
+     */
+    protected InMemoryCompiler createInMemoryCompiler() throws MojoExecutionException {
+        return null;
+    }
+
     private String redirectSourceDirectories(final String targetDirectory) {
         final String oldSourceDirectory = getSourceDirectory();
         if (new File(oldSourceDirectory).exists()) {
@@ -180,39 +322,346 @@ public abstract class AbstractInstrumenter {
      * @throws MojoExecutionException if a failure happens during the copy
      */
     private void copyExcludedFiles(final Map<String, String[]> excludedFiles, final String targetDirectory) throws MojoExecutionException {
-        for (String sourceRoot : excludedFiles.keySet()) {
-            final String[] filesInSourceRoot = excludedFiles.get(sourceRoot);
-
-            for (String fileName : filesInSourceRoot) {
-                final File srcFile = new File(sourceRoot, fileName);
-                try {
-                    configuration.getLog().debug("Copying excluded file: " + srcFile.getAbsolutePath() + " to " + targetDirectory);
-                    FileUtils.copyFile(srcFile, new File(targetDirectory,
-                            srcFile.getPath().substring(sourceRoot.length())));
-                } catch (IOException e) {
-                    throw new MojoExecutionException("Failed to copy excluded file [" + srcFile + "] to ["
-                            + targetDirectory + "]", e);
-                }
-            }
+        final SourceFileCopier copier;
+        try {
+            copier = new SourceFileCopier(configuration.getCopyStrategy(), configuration.getLog());
+        } catch (IllegalArgumentException e) {
+            throw new MojoExecutionException(e.getMessage(), e);
         }
+
+        try {
+            copier.copyFiles(excludedFiles, targetDirectory);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to copy excluded files to [" + targetDirectory + "]", e);
+        }
+        copier.logStatistics();
     }
 
-    private void instrumentSources(final Map<String, String[]> filesToInstrument, final String outputDir) throws MojoExecutionException {
+    /**
+     * @param filesToInstrument files which are out of date
+     * @param copiedFiles       subset of files which were copied as they are, they're instrumented even if the
+     *                          manifest considers them up to date
+     * @param output            output directory with instrumented sources
+     */
+    private void instrumentSources(final Map<String, String[]> filesToInstrument,
+                                   final Map<String, String[]> copiedFiles,
+                                   final InstrumentationOutput output) throws MojoExecutionException {
+        final String outputDir = outputSourceDirectory;
 
         Logger.setInstance(new MvnLogger(configuration.getLog()));
+        final List<String> instrumentationArgs = createInstrumentationArgs(outputDir);
+
+        final InMemoryCompiler compiler = createInMemoryCompiler();
+        final int shards = getShardCount();
+        deleteStaleShards(shards);
+        if (compiler != null) {
+            compileInMemory(compiler, instrumentationArgs, filesToInstrument, outputDir);
+            return;
+        }
+
+        Map<String, String[]> staleFiles = filesToInstrument;
+        InstrumentationManifest manifest = null;
+        final String staleness = getConfiguration().getStaleness();
+        if (!InstrumentationManifest.STALENESS_MTIME.equals(staleness)) {
+            final File manifestFile = getManifestFile(outputDir);
+            try {
+                manifest = InstrumentationManifest.load(manifestFile, instrumentationArgs);
+                final boolean databaseMissing = isDatabaseMissing(filesToInstrument, shards);
+                staleFiles = addFiles(manifest.selectStaleFiles(filesToInstrument, new File(outputDir), databaseMissing,
+                        InstrumentationManifest.STALENESS_BOTH.equals(staleness) ? getConfiguration().getStaleMillis() : -1),
+                        copiedFiles);
+            } catch (IOException e) {
+                throw new MojoExecutionException("Failed to read instrumentation manifest [" + manifestFile + "]", e);
+            }
+
+            if (staleFiles.isEmpty()) {
+                getConfiguration().getLog().info("Clover " + getSourceType()
+                        + " sources are up to date, no Clover instrumentation done in the [" + outputDir + "] directory");
+                saveManifest(manifest, manifestFile);
+                return;
+            }
+        }
+
         // only make dirs when there is src to instrument. see CLMVN-118
         new File(outputDir).mkdirs();
-        int result = CloverInstr.mainImpl(createCliArgs(filesToInstrument, outputDir));
+        try {
+            output.prepareWrite(staleFiles);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to delete instrumented files in the [" + outputDir + "] directory", e);
+        }
+        if (shards > 1) {
+            instrumentShards(instrumentationArgs, staleFiles, outputDir, shards);
+        } else {
+            instrumentOrRestoreFromCache(instrumentationArgs, staleFiles, outputDir);
+        }
+        try {
+            output.completeWrite();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to read instrumented files in the [" + outputDir + "] directory", e);
+        }
+
+        if (manifest != null) {
+            manifest.markInstrumented(staleFiles);
+            saveManifest(manifest, getManifestFile(outputDir));
+        }
+    }
+
+    /**
+     * Instruments and compiles sources without writing them to the output directory. Instrumented copies left
+     * by previous builds are deleted, so that the compiler plugin does not compile them again.
+     */
+    private void compileInMemory(final InMemoryCompiler compiler, final List<String> instrumentationArgs,
+                                 final Map<String, String[]> filesToInstrument,
+                                 final String outputDir) throws MojoExecutionException {
+        deleteManifest(outputDir);
+        deleteInstrumentedFiles(filesToInstrument, outputDir);
+
+        logInstrumentationArgs(instrumentationArgs, filesToInstrument);
+        if (!compiler.instrumentAndCompile(instrumentationArgs, filesToInstrument,
+                getConfiguration().getInstrumentationBatchSize())) {
+            throw new MojoExecutionException("Clover has failed to instrument and compile the source files "
+                    + "from " + filesToInstrument.keySet());
+        }
+    }
+
+    /**
+     * Deletes the current copies of files in the output directory, as they're compiled in memory.
+     */
+    private static void deleteInstrumentedFiles(final Map<String, String[]> files, final String outputDir) throws MojoExecutionException {
+        for (String[] fileNames : files.values()) {
+            for (String fileName : fileNames) {
+                final File instrumentedFile = new File(outputDir, fileName);
+                if (instrumentedFile.exists() && !instrumentedFile.delete()) {
+                    throw new MojoExecutionException("Failed to delete instrumented file [" + instrumentedFile + "]");
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of shards instrumented in parallel, 1 if files are instrumented in one session; main and test
+     * sources must use the same number, as they're instrumented to the same database
+     */
+    private int getShardCount() {
+        return getConfiguration().isCompileInMemory() ? 1 : Math.max(1, getConfiguration().getInstrumentationThreads());
+    }
+
+    private void deleteStaleShards(final int shards) throws MojoExecutionException {
+        try {
+            CloverDatabaseFragments.deleteStaleShards(getConfiguration().resolveInstrumentationDatabase(), shards);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to delete shards of Clover database "
+                    + getConfiguration().resolveInstrumentationDatabase(), e);
+        }
+    }
+
+    /**
+     * @return true if the database or a shard which shall contain some of the files does not exist
+     */
+    private boolean isDatabaseMissing(final Map<String, String[]> files, final int shards) {
+        final String database = getConfiguration().resolveInstrumentationDatabase();
+        if (shards <= 1) {
+            return !new File(database).exists();
+        }
+        final List<Map<String, String[]>> filesPerShard = splitIntoShards(files, shards);
+        for (int i = 0; i < shards; i++) {
+            if (!filesPerShard.get(i).isEmpty()
+                    && !new File(CloverDatabaseFragments.getShard(database, i + 1, shards)).exists()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Instruments shards of files in parallel in worker JVMs, each shard to its own registry. Shards are merged into
+     * the database when it's read, see {@link CloverDatabaseFragments#merge(String, org.apache.maven.plugin.logging.Log)}.
+     */
+    private void instrumentShards(final List<String> instrumentationArgs,
+                                  final Map<String, String[]> filesToInstrument,
+                                  final String outputDir,
+                                  final int shards) throws MojoExecutionException {
+        final String database = getConfiguration().resolveInstrumentationDatabase();
+        final int workers = getConfiguration().getInstrumentationWorkers() > 0
+                ? getConfiguration().getInstrumentationWorkers()
+                : shards;
+        final InstrumentationWorkerPool pool;
+        try {
+            pool = InstrumentationWorkerPool.getInstance(workers, getConfiguration().getInstrumentationWorkerJvmArgs());
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to configure Clover instrumentation workers", e);
+        }
+
+        logInstrumentationArgs(instrumentationArgs, filesToInstrument);
+        final List<Map<String, String[]>> filesPerShard = splitIntoShards(filesToInstrument, shards);
+        final int batchSize = getConfiguration().getInstrumentationBatchSize();
+        final ExecutorService executor = Executors.newFixedThreadPool(shards);
+        try {
+            final List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < shards; i++) {
+                final Map<String, String[]> shardFiles = filesPerShard.get(i);
+                if (!shardFiles.isEmpty()) {
+                    final List<String> shardArgs = replaceDatabase(instrumentationArgs,
+                            CloverDatabaseFragments.getShard(database, i + 1, shards));
+                    results.add(executor.submit(() ->
+                            pool.instrument(shardArgs, shardFiles, batchSize, getConfiguration().getLog())));
+                }
+            }
+            for (Future<Integer> result : results) {
+                if (result.get() != 0) {
+                    throw new MojoExecutionException("Clover has failed to instrument the source files "
+                            + "in the [" + outputDir + "] directory");
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while instrumenting the source files "
+                    + "in the [" + outputDir + "] directory", e);
+        } catch (ExecutionException e) {
+            throw new MojoExecutionException("Clover instrumentation worker has failed to instrument the source "
+                    + "files in the [" + outputDir + "] directory", e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Splits files into shards by a hash of their path relative to the source root, so that a file always belongs
+     * to the same shard and shards can be instrumented incrementally.
+     *
+     * @param files  Map(source root, files)
+     * @param shards number of shards
+     * @return List of Map(source root, files), one per shard, some of them may be empty
+     */
+    static List<Map<String, String[]>> splitIntoShards(final Map<String, String[]> files, final int shards) {
+        final List<Map<String, List<String>>> fileLists = new ArrayList<>();
+        for (int i = 0; i < shards; i++) {
+            fileLists.add(new HashMap<>());
+        }
+        for (Map.Entry<String, String[]> sourceRoot : files.entrySet()) {
+            for (String fileName : sourceRoot.getValue()) {
+                final int shard = Math.floorMod(fileName.replace(File.separatorChar, '/').hashCode(), shards);
+                fileLists.get(shard).computeIfAbsent(sourceRoot.getKey(), root -> new ArrayList<>()).add(fileName);
+            }
+        }
+
+        final List<Map<String, String[]>> filesPerShard = new ArrayList<>();
+        for (Map<String, List<String>> fileList : fileLists) {
+            final Map<String, String[]> shardFiles = new HashMap<>();
+            for (Map.Entry<String, List<String>> sourceRoot : fileList.entrySet()) {
+                shardFiles.put(sourceRoot.getKey(), sourceRoot.getValue().toArray(new String[0]));
+            }
+            filesPerShard.add(shardFiles);
+        }
+        return filesPerShard;
+    }
+
+    /**
+     * @return copy of CloverInstr arguments with a different database ('-i')
+     */
+    private static List<String> replaceDatabase(final List<String> instrumentationArgs, final String database) {
+        final List<String> args = new ArrayList<>(instrumentationArgs);
+        args.set(args.indexOf("-i") + 1, database);
+        return args;
+    }
+
+    private void instrumentOrRestoreFromCache(final List<String> instrumentationArgs,
+                                              final Map<String, String[]> filesToInstrument,
+                                              final String outputDir) throws MojoExecutionException {
+        final File databaseFile = new File(getConfiguration().resolveInstrumentationDatabase());
+        final InstrumentationCache cache = getConfiguration().getInstrumentationCacheDirectory() != null
+                ? new InstrumentationCache(new File(getConfiguration().getInstrumentationCacheDirectory()),
+                        getConfiguration().getInstrumentationCacheSize() * 1024L * 1024L,
+                        getConfiguration().getProject().getBasedir())
+                : null;
+
+        // the key must be computed before instrumentation, as it depends on the current content of the database
+        String cacheKey = null;
+        if (cache != null) {
+            try {
+                cacheKey = cache.computeKey(instrumentationArgs, filesToInstrument, databaseFile);
+                if (cache.restore(cacheKey, filesToInstrument, new File(outputDir), databaseFile)) {
+                    getConfiguration().getLog().info("Clover " + getSourceType() + " sources restored from the "
+                            + "instrumentation cache [" + getConfiguration().getInstrumentationCacheDirectory() + "]");
+                    return;
+                }
+            } catch (IOException e) {
+                getConfiguration().getLog().warn("Failed to read Clover instrumentation cache: " + e.getMessage());
+            }
+        }
+
+        logInstrumentationArgs(instrumentationArgs, filesToInstrument);
+        final int batchSize = getConfiguration().getInstrumentationBatchSize();
+        final int result;
+        if (getConfiguration().getInstrumentationWorkers() > 0) {
+            try {
+                result = InstrumentationWorkerPool.getInstance(getConfiguration().getInstrumentationWorkers(),
+                                getConfiguration().getInstrumentationWorkerJvmArgs())
+                        .instrument(instrumentationArgs, filesToInstrument, batchSize, getConfiguration().getLog());
+            } catch (IOException e) {
+                throw new MojoExecutionException("Clover instrumentation worker has failed to instrument the source "
+                        + "files in the [" + outputDir + "] directory", e);
+            }
+        } else {
+            result = new StreamingInstrumenter(batchSize).instrument(instrumentationArgs, filesToInstrument);
+        }
         if (result != 0) {
             throw new MojoExecutionException("Clover has failed to instrument the source files "
                     + "in the [" + outputDir + "] directory");
         }
+
+        if (cacheKey != null) {
+            try {
+                if (!cache.store(cacheKey, filesToInstrument, new File(outputDir), databaseFile)) {
+                    getConfiguration().getLog().debug("Instrumented sources not stored in Clover instrumentation "
+                            + "cache as their package names do not match directories");
+                }
+            } catch (IOException e) {
+                getConfiguration().getLog().warn("Failed to write Clover instrumentation cache: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Manifest is stored next to the directory with instrumented sources, e.g. 'target/clover/src-instrumented.manifest'
+     */
+    private static File getManifestFile(final String outputDir) {
+        return new File(outputDir + ".manifest");
+    }
+
+    private static void deleteManifest(final String outputDir) throws MojoExecutionException {
+        final File manifestFile = getManifestFile(outputDir);
+        if (manifestFile.exists() && !manifestFile.delete()) {
+            throw new MojoExecutionException("Failed to delete instrumentation manifest [" + manifestFile + "]");
+        }
+    }
+
+    private static void saveManifest(final InstrumentationManifest manifest, final File manifestFile) throws MojoExecutionException {
+        try {
+            manifest.save();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to write instrumentation manifest [" + manifestFile + "]", e);
+        }
+    }
+
+    /**
+     * Logs instrumentation settings and the number of files per source root. Files are not listed one by one,
+     * as there can be hundreds of thousands of them.
+     */
+    private void logInstrumentationArgs(final List<String> instrumentationArgs, final Map<String, String[]> filesToInstrument) {
+        if (getConfiguration().getLog().isDebugEnabled()) {
+            getConfiguration().getLog().debug("Parameters being passed to Clover instrumenter: " + instrumentationArgs);
+            for (Map.Entry<String, String[]> sourceRoot : filesToInstrument.entrySet()) {
+                getConfiguration().getLog().debug("  " + sourceRoot.getValue().length + " file(s) from " + sourceRoot.getKey());
+            }
+        }
     }
 
     /**
-     * @return the CLI args to be passed to CloverInstr
+     * @return the CLI args to be passed to CloverInstr which define instrumentation settings (i.e. excluding source
+     * files and verbosity)
      */
-    private String[] createCliArgs(final Map<String, String[]> filesToInstrument, final String outputDir) {
+    private List<String> createInstrumentationArgs(final String outputDir) {
         final List<String> parameters = new ArrayList<>();
 
         parameters.add("-p");
@@ -221,15 +670,11 @@ public abstract class AbstractInstrumenter {
         parameters.add("" + getConfiguration().getFlushInterval());
 
         parameters.add("-i");
-        parameters.add(getConfiguration().resolveCloverDatabase());
+        parameters.add(getConfiguration().resolveInstrumentationDatabase());
 
         parameters.add("-d");
         parameters.add(outputDir);
 
-        if (getConfiguration().getLog().isDebugEnabled()) {
-            parameters.add("-v");
-        }
-
         if (getConfiguration().getDistributedCoverage() != null && getConfiguration().getDistributedCoverage().isEnabled()) {
             parameters.add("--distributedCoverage");
             parameters.add(getConfiguration().getDistributedCoverage().toString());
@@ -268,14 +713,6 @@ public abstract class AbstractInstrumenter {
             parameters.add(getConfiguration().getInstrumentLambda());
         }
 
-        for (final String srcDir : filesToInstrument.keySet()) {
-            final String[] filesInSourceRoot = filesToInstrument.get(srcDir);
-            for (String s : filesInSourceRoot) {
-                File file = new File(srcDir, s);
-                parameters.add(file.getPath());
-            }
-        }
-
         if (getConfiguration().isRecordTestResults()) {
             parameters.add("--recordTestResults");
             parameters.add(Boolean.toString(getConfiguration().isRecordTestResults()));
@@ -289,15 +726,7 @@ public abstract class AbstractInstrumenter {
         // custom test detector
         addTestSources(parameters, getConfiguration().getTestSources(), getSourceDirectory());
 
-        // Log parameters
-        if (getConfiguration().getLog().isDebugEnabled()) {
-            getConfiguration().getLog().debug("Parameter list being passed to Clover CLI:");
-            for (String param : parameters) {
-                getConfiguration().getLog().debug("  parameter = [" + param + "]");
-            }
-        }
-
-        return parameters.toArray(new String[0]);
+        return parameters;
     }
 
     private void addCustomContexts(final List<String> parameters, final Set<Map.Entry<String, String>> contexts, final String flag) {
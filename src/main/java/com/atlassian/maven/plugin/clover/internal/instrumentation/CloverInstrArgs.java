@@ -0,0 +1,104 @@
+package com.atlassian.maven.plugin.clover.internal.instrumentation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.atlassian.clover.Logger;
+import com.atlassian.clover.api.CloverException;
+import com.atlassian.clover.api.command.ArgProcessor;
+import com.atlassian.clover.cfg.instr.java.JavaInstrumentationConfig;
+import com.atlassian.clover.cmdline.CloverInstrArgProcessors;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Parses CloverInstr arguments into an instrumentation configuration, the same way as CloverInstr does.
+ */
+final class CloverInstrArgs {
+
+    /**
+     * Argument processors used by CloverInstr, in the same order.
+     */
+    private static final List<ArgProcessor<JavaInstrumentationConfig>> ARG_PROCESSORS = Arrays.asList(
+            CloverInstrArgProcessors.SrcDir,
+            CloverInstrArgProcessors.DestDir,
+            CloverInstrArgProcessors.InitString,
+            CloverInstrArgProcessors.DistributedCoverage,
+            CloverInstrArgProcessors.Relative,
+            CloverInstrArgProcessors.FlushPolicy,
+            CloverInstrArgProcessors.FlushInterval,
+            CloverInstrArgProcessors.Encoding,
+            CloverInstrArgProcessors.InstrStrategy,
+            CloverInstrArgProcessors.InstrLevel,
+            CloverInstrArgProcessors.InstrLambda,
+            CloverInstrArgProcessors.SourceLevelArg,
+            CloverInstrArgProcessors.RecordTestResults,
+            CloverInstrArgProcessors.DontQualifyJavaLang,
+            CloverInstrArgProcessors.MethodContext,
+            CloverInstrArgProcessors.MethodWithMetricsContext,
+            CloverInstrArgProcessors.StatementContext,
+            CloverInstrArgProcessors.TestSourceRoot,
+            CloverInstrArgProcessors.TestSourceIncludes,
+            CloverInstrArgProcessors.TestSourceExcludes,
+            CloverInstrArgProcessors.TestSourceClass,
+            CloverInstrArgProcessors.TestSourceMethod,
+            CloverInstrArgProcessors.Verbose,
+            CloverInstrArgProcessors.JavaSourceFile);
+
+    private CloverInstrArgs() {
+    }
+
+    /**
+     * @param args             arguments in the CloverInstr format
+     * @param withSourceFiles  whether source files are among arguments; if not, they're expected to be passed to
+     *                         the Instrumenter directly, and only the destination directory and the database
+     *                         location are validated
+     * @return JavaInstrumentationConfig
+     * @throws CloverException if arguments are not valid
+     */
+    @NotNull
+    static JavaInstrumentationConfig parse(@NotNull final String[] args, final boolean withSourceFiles) throws CloverException {
+        final JavaInstrumentationConfig config = new JavaInstrumentationConfig();
+        int i = 0;
+        while (i < args.length) {
+            boolean matched = false;
+            for (ArgProcessor<JavaInstrumentationConfig> argProcessor : ARG_PROCESSORS) {
+                if (argProcessor.matches(args, i)) {
+                    i = argProcessor.process(args, i, config);
+                    matched = true;
+                    break;
+                }
+            }
+            if (!matched) {
+                Logger.getInstance().warn("Unknown option: " + args[i]);
+            }
+            i++;
+        }
+        if (withSourceFiles) {
+            if (!config.validate()) {
+                throw new CloverException(config.getValidationFailureReason());
+            }
+        } else if (config.getDestDir() == null || config.getInitString() == null) {
+            throw new CloverException("Both destination directory and initstring must be specified");
+        }
+        return config;
+    }
+}
@@ -0,0 +1,173 @@
+package com.atlassian.maven.plugin.clover.internal.instrumentation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * <p>Options of the <code>javax.tools</code> compiler used by {@link InMemoryCompiler}, taken from the effective
+ * configuration of the <code>default-compile</code> execution of the maven-compiler-plugin, or from the properties
+ * of the compiler plugin (<code>maven.compiler.*</code>) where the configuration doesn't set a value.</p>
+ *
+ * <p>Settings of the compiler plugin which can't be applied to the in-memory compilation (e.g. annotation processor
+ * paths, which would have to be resolved, or a forked compiler) are reported as warnings.</p>
+ */
+class CompilerPluginOptions {
+
+    static final String COMPILER_PLUGIN_KEY = "org.apache.maven.plugins:maven-compiler-plugin";
+
+    static final String DEFAULT_COMPILE_EXECUTION = "default-compile";
+
+    /**
+     * Settings of the compiler plugin which aren't applied to the in-memory compilation
+     */
+    static final List<String> UNSUPPORTED_SETTINGS = Arrays.asList(
+            "annotationProcessorPaths", "compilerArgument", "compilerId", "compilerVersion", "executable", "fork");
+
+    private CompilerPluginOptions() {
+    }
+
+    /**
+     * Returns compiler options equivalent to the configuration of the compiler plugin of the project.
+     *
+     * @param project project being instrumented
+     * @param log     log for settings which aren't applied
+     * @return List&lt;String&gt; compiler options, e.g. "--release", "11", "-parameters"
+     */
+    @NotNull
+    static List<String> getCompilerOptions(@NotNull final MavenProject project, @NotNull final Log log) {
+        final Xpp3Dom config = getConfiguration(project);
+        final Properties properties = project.getProperties();
+        final List<String> options = new ArrayList<>();
+
+        final String release = getValue(config, "release", properties, "maven.compiler.release");
+        if (release != null) {
+            options.add("--release");
+            options.add(release);
+        } else {
+            final String source = getValue(config, "source", properties, "maven.compiler.source");
+            if (source != null) {
+                options.add("-source");
+                options.add(source);
+            }
+            final String target = getValue(config, "target", properties, "maven.compiler.target");
+            if (target != null) {
+                options.add("-target");
+                options.add(target);
+            }
+        }
+
+        // the compiler plugin adds debug information by default
+        if (Boolean.parseBoolean(getValue(config, "debug", properties, "maven.compiler.debug", "true"))) {
+            final String debugLevel = getValue(config, "debuglevel", properties, "maven.compiler.debuglevel");
+            options.add(debugLevel != null ? "-g:" + debugLevel : "-g");
+        } else {
+            options.add("-g:none");
+        }
+        if (Boolean.parseBoolean(getValue(config, "parameters", properties, "maven.compiler.parameters"))) {
+            options.add("-parameters");
+        }
+        if (Boolean.parseBoolean(getValue(config, "enablePreview", properties, "maven.compiler.enablePreview"))) {
+            options.add("--enable-preview");
+        }
+        final String proc = getValue(config, "proc", properties, "maven.compiler.proc");
+        if (proc != null) {
+            options.add("-proc:" + proc);
+        }
+        final List<String> processors = getValues(config, "annotationProcessors");
+        if (!processors.isEmpty()) {
+            options.add("-processor");
+            options.add(String.join(",", processors));
+        }
+        options.addAll(getValues(config, "compilerArgs"));
+
+        if (config != null) {
+            for (String setting : UNSUPPORTED_SETTINGS) {
+                if (config.getChild(setting) != null) {
+                    log.warn("The '" + setting + "' setting of the maven-compiler-plugin is not applied by "
+                            + "the in-memory compilation of instrumented sources");
+                }
+            }
+        }
+        return options;
+    }
+
+    /**
+     * Configuration of the default-compile execution merged with the configuration of the plugin, null if the
+     * plugin is not configured.
+     */
+    @Nullable
+    private static Xpp3Dom getConfiguration(@NotNull final MavenProject project) {
+        for (Plugin plugin : project.getBuildPlugins()) {
+            if (COMPILER_PLUGIN_KEY.equals(plugin.getKey())) {
+                final Xpp3Dom pluginConfig = (Xpp3Dom) plugin.getConfiguration();
+                for (PluginExecution execution : plugin.getExecutions()) {
+                    if (DEFAULT_COMPILE_EXECUTION.equals(execution.getId()) && execution.getConfiguration() != null) {
+                        return Xpp3Dom.mergeXpp3Dom(new Xpp3Dom((Xpp3Dom) execution.getConfiguration()), pluginConfig);
+                    }
+                }
+                return pluginConfig;
+            }
+        }
+        return null;
+    }
+
+    @Nullable
+    private static String getValue(@Nullable final Xpp3Dom config, @NotNull final String name,
+                                   @NotNull final Properties properties, @NotNull final String property) {
+        return getValue(config, name, properties, property, null);
+    }
+
+    @Nullable
+    private static String getValue(@Nullable final Xpp3Dom config, @NotNull final String name,
+                                   @NotNull final Properties properties, @NotNull final String property,
+                                   @Nullable final String defaultValue) {
+        final Xpp3Dom child = config != null ? config.getChild(name) : null;
+        if (child != null && child.getValue() != null && !child.getValue().trim().isEmpty()) {
+            return child.getValue().trim();
+        }
+        return properties.getProperty(property, defaultValue);
+    }
+
+    @NotNull
+    private static List<String> getValues(@Nullable final Xpp3Dom config, @NotNull final String name) {
+        final List<String> values = new ArrayList<>();
+        final Xpp3Dom child = config != null ? config.getChild(name) : null;
+        if (child != null) {
+            for (Xpp3Dom value : child.getChildren()) {
+                if (value.getValue() != null) {
+                    values.add(value.getValue().trim());
+                }
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,232 @@
+package com.atlassian.maven.plugin.clover.internal.instrumentation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.atlassian.clover.CloverInstr;
+import com.atlassian.clover.CloverStartup;
+import com.atlassian.clover.Logger;
+import com.atlassian.clover.api.CloverException;
+import com.atlassian.clover.cfg.instr.java.JavaInstrumentationConfig;
+import com.atlassian.clover.instr.java.FileInstrumentationSource;
+import org.apache.maven.plugin.logging.Log;
+import org.jetbrains.annotations.NotNull;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticListener;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * <p>Experimental: instruments Java sources and compiles them with the <code>javax.tools</code> compiler without
+ * writing instrumented sources to disk.</p>
+ *
+ * <p>The compiler is started before instrumentation. It gets all source files at once, so that classes can refer to
+ * each other, but the content of a file is passed to the compiler as soon as the file is instrumented. As the compiler
+ * parses files in the same order as they're instrumented, parsing overlaps with instrumentation of later files.</p>
+ *
+ * <p>Other sources (e.g. files excluded from instrumentation or generated ones) are found on the source path, but
+ * they're not compiled (<code>-implicit:none</code>); it's left to the compiler plugin.</p>
+ */
+public class InMemoryCompiler {
+
+    /**
+     * Instrumented content of a source file, available once the file has been instrumented.
+     */
+    private static class InstrumentedSourceObject extends SimpleJavaFileObject {
+        final CompletableFuture<String> content = new CompletableFuture<>();
+
+        InstrumentedSourceObject(@NotNull final File sourceFile) {
+            super(sourceFile.toURI(), Kind.SOURCE);
+        }
+
+        @Override
+        public CharSequence getCharContent(final boolean ignoreEncodingErrors) throws IOException {
+            try {
+                return content.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for instrumentation of " + toUri(), e);
+            } catch (ExecutionException e) {
+                throw new IOException("Instrumentation of " + toUri() + " has failed", e.getCause());
+            }
+        }
+    }
+
+    @NotNull
+    private final List<String> compilerOptions;
+
+    @NotNull
+    private final Log log;
+
+    /**
+     * @param classpath       compile classpath (the Clover jar is added automatically)
+     * @param sourcepath      source roots where other referenced sources can be found
+     * @param classesDir      output directory for class files
+     * @param extraOptions    other compiler options, e.g. -source, -target
+     * @param log             log for compiler messages
+     * @throws IOException if location of the Clover jar can't be found
+     */
+    public InMemoryCompiler(@NotNull final List<String> classpath,
+                            @NotNull final List<String> sourcepath,
+                            @NotNull final File classesDir,
+                            @NotNull final List<String> extraOptions,
+                            @NotNull final Log log) throws IOException {
+        final List<String> fullClasspath = new ArrayList<>(classpath);
+        try {
+            fullClasspath.add(new File(CloverInstr.class.getProtectionDomain().getCodeSource().getLocation().toURI()).getPath());
+        } catch (URISyntaxException e) {
+            throw new IOException("Unable to find location of the Clover jar", e);
+        }
+
+        this.compilerOptions = new ArrayList<>();
+        compilerOptions.add("-d");
+        compilerOptions.add(classesDir.getPath());
+        compilerOptions.add("-classpath");
+        compilerOptions.add(String.join(File.pathSeparator, fullClasspath));
+        compilerOptions.add("-sourcepath");
+        compilerOptions.add(String.join(File.pathSeparator, sourcepath));
+        compilerOptions.add("-implicit:none");
+        compilerOptions.addAll(extraOptions);
+        this.log = log;
+    }
+
+    /**
+     * Instruments and compiles source files.
+     *
+     * @param instrumentationArgs arguments in the CloverInstr format, excluding source files; the destination
+     *                            directory is ignored
+     * @param sourceFiles         Map(source root, files) to be instrumented
+     * @param batchSize           maximum number of files per instrumentation session
+     * @return boolean true if both instrumentation and compilation succeeded
+     */
+    public boolean instrumentAndCompile(@NotNull final List<String> instrumentationArgs,
+                                        @NotNull final Map<String, String[]> sourceFiles,
+                                        final int batchSize) {
+        final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            log.error("Java compiler is not available, in-memory compilation requires a JDK");
+            return false;
+        }
+
+        final Logger cloverLog = Logger.getInstance();
+        CloverStartup.loadLicense(cloverLog);
+        final JavaInstrumentationConfig config;
+        try {
+            config = CloverInstrArgs.parse(instrumentationArgs.toArray(new String[0]), false);
+        } catch (CloverException e) {
+            log.error(e.getMessage());
+            return false;
+        }
+
+        final List<InstrumentedSourceObject> sources = new ArrayList<>();
+        for (Map.Entry<String, String[]> sourceRoot : sourceFiles.entrySet()) {
+            for (String fileName : sourceRoot.getValue()) {
+                sources.add(new InstrumentedSourceObject(new File(sourceRoot.getKey(), fileName)));
+            }
+        }
+
+        final List<String> options = new ArrayList<>(compilerOptions);
+        if (config.getEncoding() != null) {
+            options.add("-encoding");
+            options.add(config.getEncoding());
+        }
+        final Charset charset = config.getEncoding() != null ? Charset.forName(config.getEncoding()) : null;
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try (StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, charset)) {
+            final JavaCompiler.CompilationTask task = compiler.getTask(
+                    null, fileManager, createDiagnosticListener(), options, null, sources);
+            final Future<Boolean> compilation = executor.submit(task);
+
+            final boolean instrumented = instrument(config, sources, batchSize);
+            final boolean compiled = compilation.get();
+            return instrumented && compiled;
+        } catch (IOException | ExecutionException | RuntimeException e) {
+            log.error("In-memory compilation of instrumented sources has failed", e);
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Interrupted while compiling instrumented sources", e);
+            return false;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private boolean instrument(@NotNull final JavaInstrumentationConfig config,
+                               @NotNull final List<InstrumentedSourceObject> sources,
+                               final int batchSize) {
+        final Logger cloverLog = Logger.getInstance();
+        final InstrumentationBatches batches = new InstrumentationBatches(cloverLog, config, batchSize, sources.size());
+        try {
+            batches.start();
+            for (InstrumentedSourceObject source : sources) {
+                final File sourceFile = new File(source.toUri());
+                final StringWriter out = new StringWriter((int) Math.min(sourceFile.length() * 3 / 2, Integer.MAX_VALUE));
+                batches.getInstrumenter().instrument(new FileInstrumentationSource(sourceFile, config.getEncoding()),
+                        out, config.getEncoding());
+                batches.fileInstrumented();
+                source.content.complete(out.toString());
+            }
+            batches.end();
+            return true;
+        } catch (Exception e) {
+            cloverLog.error("Instrumentation error", e);
+            // unblock the compiler
+            for (InstrumentedSourceObject source : sources) {
+                source.content.completeExceptionally(e);
+            }
+            return false;
+        }
+    }
+
+    @NotNull
+    private DiagnosticListener<JavaFileObject> createDiagnosticListener() {
+        return diagnostic -> {
+            final String message = (diagnostic.getSource() != null
+                    ? diagnostic.getSource().getName() + ":[" + diagnostic.getLineNumber() + "," + diagnostic.getColumnNumber() + "] "
+                    : "")
+                    + diagnostic.getMessage(Locale.getDefault());
+            if (diagnostic.getKind() == Diagnostic.Kind.ERROR) {
+                log.error(message);
+            } else if (diagnostic.getKind() == Diagnostic.Kind.WARNING || diagnostic.getKind() == Diagnostic.Kind.MANDATORY_WARNING) {
+                log.warn(message);
+            } else {
+                log.debug(message);
+            }
+        };
+    }
+}
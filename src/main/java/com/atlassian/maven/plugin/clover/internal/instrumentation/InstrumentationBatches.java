@@ -0,0 +1,142 @@
+package com.atlassian.maven.plugin.clover.internal.instrumentation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.atlassian.clover.Logger;
+import com.atlassian.clover.api.CloverException;
+import com.atlassian.clover.cfg.instr.java.JavaInstrumentationConfig;
+import com.atlassian.clover.context.ContextStore;
+import com.atlassian.clover.instr.java.Instrumenter;
+import com.atlassian.clover.registry.Clover2Registry;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * <p>Splits instrumentation of a large number of files into a sequence of Clover instrumentation sessions having
+ * at most <code>batchSize</code> files each.</p>
+ *
+ * <p>Every batch except the last one is appended to the database as soon as it's complete. The instrumenter and its
+ * session (file records, pending registry update, context tree) are dropped then, so only the registry model is
+ * kept between batches - it's passed to the next session instead of being loaded from the database again. The last
+ * batch overwrites the database, which compacts all sessions into one, like a non-batched run does.</p>
+ */
+final class InstrumentationBatches {
+
+    @NotNull
+    private final Logger log;
+
+    @NotNull
+    private final JavaInstrumentationConfig config;
+
+    /**
+     * Maximum number of files per session, 0 or less for a single session
+     */
+    private final int batchSize;
+
+    private final int totalFiles;
+
+    /**
+     * Registry after the previous batch, <code>null</code> before the first batch ends
+     */
+    @Nullable
+    private Clover2Registry registry;
+
+    /**
+     * Instrumenter of the current batch, <code>null</code> between batches
+     */
+    @Nullable
+    private Instrumenter current;
+
+    private int filesInBatch;
+
+    private int instrumentedFiles;
+
+    /**
+     * @param log        logger
+     * @param config     instrumentation config
+     * @param batchSize  maximum number of files per session, 0 or less to instrument all files in one session
+     * @param totalFiles number of files to be instrumented
+     */
+    InstrumentationBatches(@NotNull final Logger log, @NotNull final JavaInstrumentationConfig config,
+                           final int batchSize, final int totalFiles) {
+        this.log = log;
+        this.config = config;
+        this.batchSize = batchSize;
+        this.totalFiles = totalFiles;
+    }
+
+    /**
+     * Saves custom contexts and starts the first session.
+     *
+     * @throws CloverException if the database can't be created or loaded
+     */
+    void start() throws CloverException {
+        ContextStore.saveCustomContexts(config);
+        current = new Instrumenter(log, config);
+        current.startInstrumentation();
+    }
+
+    /**
+     * Returns the instrumenter of the current batch, starting a new session if the previous batch has been saved.
+     *
+     * @return Instrumenter
+     * @throws CloverException if a session can't be started
+     */
+    @NotNull
+    Instrumenter getInstrumenter() throws CloverException {
+        if (current == null) {
+            current = new Instrumenter(log, config);
+            current.startInstrumentation(registry);
+        }
+        return current;
+    }
+
+    /**
+     * Records that a file has been instrumented by the current instrumenter. Saves the batch if it's full and
+     * more files follow.
+     *
+     * @throws CloverException if the database can't be written
+     */
+    void fileInstrumented() throws CloverException {
+        filesInBatch++;
+        instrumentedFiles++;
+        if (batchSize > 0 && filesInBatch >= batchSize && instrumentedFiles < totalFiles) {
+            log.debug("Saving batch of " + filesInBatch + " files, instrumented " + instrumentedFiles
+                    + " of " + totalFiles + " files");
+            endBatch(true);
+        }
+    }
+
+    /**
+     * Ends the last session and overwrites the database.
+     *
+     * @throws CloverException if the database can't be written
+     */
+    void end() throws CloverException {
+        getInstrumenter();
+        endBatch(false);
+    }
+
+    private void endBatch(final boolean append) throws CloverException {
+        registry = getInstrumenter().endInstrumentation(append);
+        current = null;
+        filesInBatch = 0;
+    }
+}
@@ -0,0 +1,483 @@
+package com.atlassian.maven.plugin.clover.internal.instrumentation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import clover.org.apache.commons.codec.digest.DigestUtils;
+import com.atlassian.clover.api.CloverException;
+import com.atlassian.clover.registry.Clover2Registry;
+import com.atlassian.clover.registry.entities.FullFileInfo;
+import com.atlassian.clover.util.Path;
+import com_atlassian_clover.CloverVersionInfo;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+
+/**
+ * <p>A persistent, content-addressed cache of instrumentation results, which can be shared by many workspaces and
+ * builds running on the same machine.</p>
+ *
+ * <p>Clover allocates indexes in the database for every instrumented file, so a single file can't be cached on its
+ * own. An entry holds therefore a result of one instrumentation run: instrumented sources and the Clover database
+ * after the run. The key of an entry is computed from:</p>
+ * <ul>
+ *     <li>paths and content hashes of source files (in the order they're instrumented)</li>
+ *     <li>instrumentation settings, including the location of the Clover database</li>
+ *     <li>content of the Clover database before the run (e.g. test sources are instrumented into a database
+ *     created for main sources); a database restored from or stored to the cache is represented by the key
+ *     of its entry</li>
+ *     <li>versions of the plugin and of Clover</li>
+ * </ul>
+ *
+ * <p>Paths under the module's base directory are a part of the key relative to it, so that an entry can be
+ * restored in another workspace. Absolute paths of the Clover database in instrumented sources and of source
+ * files in the database are relocated then.</p>
+ *
+ * <p>The size of the cache is bounded, the least recently used entries are evicted. All operations are guarded by
+ * a file lock, so that concurrent builds can use the same cache directory.</p>
+ */
+public class InstrumentationCache {
+
+    private static final String LOCK_FILE_NAME = "cache.lock";
+
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private static final String DATABASE_FILE_NAME = "clover.db";
+
+    private static final String SOURCES_DIR_NAME = "src";
+
+    private static final String ENTRY_PROPERTIES_FILE_NAME = "entry.properties";
+
+    private static final String BASE_DIR_PROPERTY = "baseDir";
+
+    private static final String DATABASE_PROPERTY = "database";
+
+    private static final String KEY_PROPERTY = "key";
+
+    private static final String HASH_PROPERTY = "hash";
+
+    private static final String PLUGIN_POM_PROPERTIES = "/META-INF/maven/org.openclover/clover-maven-plugin/pom.properties";
+
+    /**
+     * File locks are held per JVM, so threads of the same JVM must be synchronized separately.
+     */
+    private static final Object JVM_LOCK = new Object();
+
+    @NotNull
+    private final File cacheDir;
+
+    private final long maxSizeBytes;
+
+    @NotNull
+    private final File baseDir;
+
+    /**
+     * @param cacheDir     root directory of the cache
+     * @param maxSizeBytes maximum total size of cache entries
+     * @param baseDir      base directory of the module, paths under it are relocatable
+     */
+    public InstrumentationCache(@NotNull final File cacheDir, final long maxSizeBytes, @NotNull final File baseDir) {
+        this.cacheDir = cacheDir;
+        this.maxSizeBytes = maxSizeBytes;
+        this.baseDir = baseDir.getAbsoluteFile();
+    }
+
+    /**
+     * Computes a key of the instrumentation run.
+     *
+     * @param instrumentationArgs CloverInstr arguments, excluding source files
+     * @param sourceFiles         Map(source root, files) to be instrumented
+     * @param databaseFile        Clover database
+     * @return String key
+     * @throws IOException if a file can't be read
+     */
+    @NotNull
+    public String computeKey(@NotNull final List<String> instrumentationArgs,
+                             @NotNull final Map<String, String[]> sourceFiles,
+                             @NotNull final File databaseFile) throws IOException {
+        final StringBuilder key = new StringBuilder()
+                .append(getPluginVersion()).append('\n')
+                .append(CloverVersionInfo.getReleaseNum()).append('\n');
+        for (String arg : instrumentationArgs) {
+            key.append(new File(arg).isAbsolute() ? relativize(arg) : arg).append('\n');
+        }
+        key.append(getDatabaseKey(databaseFile)).append('\n');
+        for (Map.Entry<String, String[]> sourceRoot : sourceFiles.entrySet()) {
+            final String relativeRoot = relativize(sourceRoot.getKey());
+            for (String fileName : sourceRoot.getValue()) {
+                final File sourceFile = new File(sourceRoot.getKey(), fileName);
+                key.append(relativeRoot).append('/').append(fileName.replace(File.separatorChar, '/'))
+                        .append('=').append(hash(sourceFile)).append('\n');
+            }
+        }
+        return DigestUtils.sha256Hex(key.toString());
+    }
+
+    /**
+     * Restores instrumented sources and the Clover database from the cache.
+     *
+     * @param key          key of the instrumentation run
+     * @param sourceFiles  Map(source root, files) to be instrumented
+     * @param outputDir    directory for instrumented sources
+     * @param databaseFile Clover database
+     * @return boolean <code>true</code> if the entry was found and restored, <code>false</code> otherwise
+     * @throws IOException if the cache can't be read
+     */
+    public boolean restore(@NotNull final String key,
+                           @NotNull final Map<String, String[]> sourceFiles,
+                           @NotNull final File outputDir,
+                           @NotNull final File databaseFile) throws IOException {
+        synchronized (JVM_LOCK) {
+            try (RandomAccessFile lockFile = openLockFile(); FileLock ignored = lockFile.getChannel().lock()) {
+                final File entryDir = new File(cacheDir, key);
+                final File cachedDatabase = new File(entryDir, DATABASE_FILE_NAME);
+                if (!cachedDatabase.isFile()) {
+                    return false;
+                }
+
+                final Properties entry = loadProperties(new File(entryDir, ENTRY_PROPERTIES_FILE_NAME));
+                final String cachedDatabasePath = entry.getProperty(DATABASE_PROPERTY, databaseFile.getPath());
+                final File cachedBaseDir = new File(entry.getProperty(BASE_DIR_PROPERTY, baseDir.getPath()));
+
+                final File cachedSourcesDir = new File(entryDir, SOURCES_DIR_NAME);
+                for (String fileName : getFileNames(sourceFiles)) {
+                    final File cachedSource = new File(cachedSourcesDir, fileName);
+                    final File outputSource = new File(outputDir, fileName);
+                    if (cachedDatabasePath.equals(databaseFile.getPath())) {
+                        copy(cachedSource, outputSource);
+                    } else {
+                        copyReplacing(cachedSource, outputSource,
+                                escape(cachedDatabasePath), escape(databaseFile.getPath()));
+                    }
+                }
+                if (cachedBaseDir.equals(baseDir)) {
+                    copy(cachedDatabase, databaseFile);
+                } else {
+                    copyRelocatingDatabase(cachedDatabase, databaseFile, cachedBaseDir);
+                }
+                saveDatabaseKey(databaseFile, key);
+
+                // mark as recently used
+                entryDir.setLastModified(System.currentTimeMillis());
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Stores instrumented sources and the Clover database in the cache and evicts the least recently used entries
+     * if the cache is too big.
+     *
+     * @param key          key of the instrumentation run
+     * @param sourceFiles  Map(source root, files) which were instrumented
+     * @param outputDir    directory with instrumented sources
+     * @param databaseFile Clover database
+     * @return boolean <code>true</code> if stored, <code>false</code> if outputs could not be found (e.g. a package
+     * name does not match a directory of a source file)
+     * @throws IOException if the cache can't be written
+     */
+    public boolean store(@NotNull final String key,
+                         @NotNull final Map<String, String[]> sourceFiles,
+                         @NotNull final File outputDir,
+                         @NotNull final File databaseFile) throws IOException {
+        final List<String> fileNames = getFileNames(sourceFiles);
+        for (String fileName : fileNames) {
+            if (!new File(outputDir, fileName).isFile()) {
+                return false;
+            }
+        }
+
+        synchronized (JVM_LOCK) {
+            try (RandomAccessFile lockFile = openLockFile(); FileLock ignored = lockFile.getChannel().lock()) {
+                final File entryDir = new File(cacheDir, key);
+                if (entryDir.isDirectory()) {
+                    entryDir.setLastModified(System.currentTimeMillis());
+                    saveDatabaseKey(databaseFile, key);
+                    return true;
+                }
+
+                // prepare an entry aside and rename it, so that a partially written entry is never visible
+                final File tempDir = new File(cacheDir, key + "-" + UUID.randomUUID() + TEMP_SUFFIX);
+                try {
+                    final File cachedSourcesDir = new File(tempDir, SOURCES_DIR_NAME);
+                    for (String fileName : fileNames) {
+                        copy(new File(outputDir, fileName), new File(cachedSourcesDir, fileName));
+                    }
+                    copy(databaseFile, new File(tempDir, DATABASE_FILE_NAME));
+                    final Properties entry = new Properties();
+                    entry.setProperty(BASE_DIR_PROPERTY, baseDir.getPath());
+                    entry.setProperty(DATABASE_PROPERTY, databaseFile.getPath());
+                    saveProperties(entry, new File(tempDir, ENTRY_PROPERTIES_FILE_NAME));
+                    move(tempDir, entryDir);
+                } finally {
+                    delete(tempDir);
+                }
+                saveDatabaseKey(databaseFile, key);
+
+                evict();
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Removes the least recently used entries until the total size fits the limit. Must be called under a lock.
+     */
+    private void evict() throws IOException {
+        final File[] entries = cacheDir.listFiles(file -> file.isDirectory() && !file.getName().endsWith(TEMP_SUFFIX));
+        if (entries == null) {
+            return;
+        }
+
+        final long[] sizes = new long[entries.length];
+        long totalSize = 0;
+        Arrays.sort(entries, Comparator.comparingLong(File::lastModified).reversed());
+        for (int i = 0; i < entries.length; i++) {
+            sizes[i] = sizeOf(entries[i]);
+            totalSize += sizes[i];
+        }
+
+        // keep the most recent entry even if it's bigger than the limit
+        for (int i = entries.length - 1; i > 0 && totalSize > maxSizeBytes; i--) {
+            delete(entries[i]);
+            totalSize -= sizes[i];
+        }
+    }
+
+    /**
+     * Returns the key of the cache entry the database was restored from or stored to, if it was not modified since,
+     * or a hash of its content otherwise. The database contains absolute paths of source files, so its content
+     * differs between workspaces even if it was restored from the same entry.
+     */
+    @NotNull
+    private static String getDatabaseKey(@NotNull final File databaseFile) throws IOException {
+        if (!databaseFile.isFile()) {
+            return "-";
+        }
+        final String hash = hash(databaseFile);
+        final Properties databaseKey = loadProperties(getDatabaseKeyFile(databaseFile));
+        return hash.equals(databaseKey.getProperty(HASH_PROPERTY))
+                ? "entry:" + databaseKey.getProperty(KEY_PROPERTY)
+                : hash;
+    }
+
+    private static void saveDatabaseKey(@NotNull final File databaseFile, @NotNull final String key) throws IOException {
+        final Properties databaseKey = new Properties();
+        databaseKey.setProperty(KEY_PROPERTY, key);
+        databaseKey.setProperty(HASH_PROPERTY, hash(databaseFile));
+        saveProperties(databaseKey, getDatabaseKeyFile(databaseFile));
+    }
+
+    /**
+     * A hidden file next to the database, it's not taken for a coverage recording as its name does not start with
+     * the name of the database.
+     */
+    @NotNull
+    private static File getDatabaseKeyFile(@NotNull final File databaseFile) {
+        return new File(databaseFile.getAbsoluteFile().getParentFile(), "." + databaseFile.getName() + ".cache");
+    }
+
+    /**
+     * Copies the database and rewrites paths of source files located under the given base directory, so that they
+     * point to the same files under the base directory of the module. The registry version is not changed, so that
+     * it still matches the instrumented sources.
+     */
+    private void copyRelocatingDatabase(@NotNull final File from, @NotNull final File to,
+                                        @NotNull final File fromBaseDir) throws IOException {
+        final File tempFile = new File(to.getPath() + TEMP_SUFFIX);
+        copy(from, tempFile);
+        try {
+            final Clover2Registry registry = Clover2Registry.fromFile(tempFile);
+            if (registry == null) {
+                throw new IOException("Failed to read cached Clover database " + from);
+            }
+            final String fromPrefix = fromBaseDir.getPath() + File.separator;
+            registry.getProject().visitFiles(fileInfo -> {
+                final FullFileInfo file = (FullFileInfo) fileInfo;
+                final String path = file.getPhysicalFile().getPath();
+                final String packagePath = file.getPackagePath().replace('/', File.separatorChar);
+                if (path.startsWith(fromPrefix) && path.endsWith(packagePath)) {
+                    final File sourceRoot = new File(baseDir,
+                            path.substring(fromPrefix.length(), path.length() - packagePath.length()));
+                    file.resolve(new Path(sourceRoot.getPath()));
+                }
+            });
+            registry.saveAndOverwriteFile();
+            Files.move(tempFile.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (CloverException ex) {
+            throw new IOException("Failed to relocate cached Clover database " + from + ": " + ex.getMessage(), ex);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    /**
+     * Returns the path relative to the base directory of the module, or the path itself if it's located elsewhere.
+     */
+    @NotNull
+    private String relativize(@NotNull final String path) {
+        final String absolutePath = new File(path).getAbsolutePath();
+        if (absolutePath.equals(baseDir.getPath())) {
+            return ".";
+        }
+        final String prefix = baseDir.getPath() + File.separator;
+        return absolutePath.startsWith(prefix)
+                ? absolutePath.substring(prefix.length()).replace(File.separatorChar, '/')
+                : path;
+    }
+
+    /**
+     * Clover writes string literals to instrumented sources as unicode escapes.
+     */
+    @NotNull
+    private static String escape(@NotNull final String value) {
+        final StringBuilder escaped = new StringBuilder();
+        for (char c : value.toCharArray()) {
+            escaped.append(String.format("\\u%04x", (int) c));
+        }
+        return escaped.toString();
+    }
+
+    @NotNull
+    private RandomAccessFile openLockFile() throws IOException {
+        if (!cacheDir.isDirectory() && !cacheDir.mkdirs() && !cacheDir.isDirectory()) {
+            throw new IOException("Failed to create cache directory " + cacheDir);
+        }
+        return new RandomAccessFile(new File(cacheDir, LOCK_FILE_NAME), "rw");
+    }
+
+    @NotNull
+    private static List<String> getFileNames(@NotNull final Map<String, String[]> sourceFiles) {
+        final List<String> fileNames = new ArrayList<>();
+        for (String[] filesInRoot : sourceFiles.values()) {
+            fileNames.addAll(Arrays.asList(filesInRoot));
+        }
+        return fileNames;
+    }
+
+    private static void copy(@NotNull final File from, @NotNull final File to) throws IOException {
+        createParentDirectory(to);
+        Files.copy(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private static void copyReplacing(@NotNull final File from, @NotNull final File to,
+                                      @NotNull final String target, @NotNull final String replacement)
+            throws IOException {
+        // ISO-8859-1 maps every byte to a char, so that content in any encoding is preserved
+        final String content = new String(Files.readAllBytes(from.toPath()), StandardCharsets.ISO_8859_1);
+        createParentDirectory(to);
+        Files.write(to.toPath(), content.replace(target, replacement).getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static void createParentDirectory(@NotNull final File file) throws IOException {
+        final File parentDir = file.getAbsoluteFile().getParentFile();
+        if (!parentDir.isDirectory() && !parentDir.mkdirs() && !parentDir.isDirectory()) {
+            throw new IOException("Failed to create directory " + parentDir);
+        }
+    }
+
+    @NotNull
+    private static Properties loadProperties(@NotNull final File file) throws IOException {
+        final Properties properties = new Properties();
+        if (file.isFile()) {
+            try (InputStream in = new FileInputStream(file)) {
+                properties.load(in);
+            }
+        }
+        return properties;
+    }
+
+    private static void saveProperties(@NotNull final Properties properties, @NotNull final File file)
+            throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            properties.store(out, null);
+        }
+    }
+
+    private static void move(@NotNull final File from, @NotNull final File to) throws IOException {
+        try {
+            Files.move(from.toPath(), to.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException ex) {
+            Files.move(from.toPath(), to.toPath());
+        } catch (FileAlreadyExistsException ex) {
+            // stored in the meantime by a process which does not respect the lock, keep the existing one
+        }
+    }
+
+    private static long sizeOf(@NotNull final File file) {
+        final File[] children = file.listFiles();
+        if (children == null) {
+            return file.length();
+        }
+        long size = 0;
+        for (File child : children) {
+            size += sizeOf(child);
+        }
+        return size;
+    }
+
+    private static void delete(@NotNull final File file) throws IOException {
+        final File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        Files.deleteIfExists(file.toPath());
+    }
+
+    @NotNull
+    private static String hash(@NotNull final File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return DigestUtils.sha256Hex(in);
+        }
+    }
+
+    @NotNull
+    private static String getPluginVersion() {
+        final Properties properties = new Properties();
+        try (InputStream in = InstrumentationCache.class.getResourceAsStream(PLUGIN_POM_PROPERTIES)) {
+            if (in != null) {
+                properties.load(in);
+            }
+        } catch (IOException ex) {
+            // ignore, use unknown version
+        }
+        return properties.getProperty("version", "unknown");
+    }
+}
@@ -0,0 +1,310 @@
+package com.atlassian.maven.plugin.clover.internal.instrumentation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import clover.org.apache.commons.codec.digest.DigestUtils;
+import com_atlassian_clover.CloverVersionInfo;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+
+/**
+ * <p>Remembers which source files were instrumented and what their content was at that time. The manifest maps
+ * an absolute path of a source file to a SHA-256 hash of its content and stores a fingerprint of instrumentation
+ * settings (CloverInstr arguments other than files and the Clover version).</p>
+ *
+ * <p>A source file is stale if it's not in the manifest, if its content has changed or if its instrumented copy is
+ * missing. All files are stale if the fingerprint has changed. Optionally, a file which is not newer than its
+ * instrumented copy is treated as unchanged without computing its hash.</p>
+ *
+ * <p>Source files which were copied to the output directory without instrumentation, because instrumentation was
+ * limited to changed files, are listed separately (see {@link #loadCopiedFiles(File)}), regardless of the staleness
+ * mode. Their copies look up to date, but they must be instrumented by the next build.</p>
+ */
+public class InstrumentationManifest {
+
+    /**
+     * Stale sources are found by comparing modification dates of source and instrumented files
+     */
+    public static final String STALENESS_MTIME = "mtime";
+
+    /**
+     * Stale sources are found by comparing content hashes with the manifest
+     */
+    public static final String STALENESS_HASH = "hash";
+
+    /**
+     * Stale sources are found by comparing modification dates first and content hashes of newer files
+     */
+    public static final String STALENESS_BOTH = "both";
+
+    /**
+     * Key of the settings' fingerprint; it can't clash with an absolute path.
+     */
+    private static final String FINGERPRINT_KEY = "clover.fingerprint";
+
+    @NotNull
+    private final File manifestFile;
+
+    @NotNull
+    private final String fingerprint;
+
+    /**
+     * Source file path -&gt; content hash, as loaded from the manifest file
+     */
+    @NotNull
+    private final Map<String, String> recordedHashes;
+
+    /**
+     * Source file path -&gt; content hash, for files present in the last call to {@link #selectStaleFiles}
+     */
+    @NotNull
+    private final Map<String, String> currentHashes = new HashMap<>();
+
+    /**
+     * Source file path -&gt; content hash, for files which will be saved
+     */
+    @NotNull
+    private final Map<String, String> upToDateHashes = new HashMap<>();
+
+    private InstrumentationManifest(@NotNull final File manifestFile,
+                                    @NotNull final String fingerprint,
+                                    @NotNull final Map<String, String> recordedHashes) {
+        this.manifestFile = manifestFile;
+        this.fingerprint = fingerprint;
+        this.recordedHashes = recordedHashes;
+    }
+
+    /**
+     * Reads the manifest. If it does not exist or if it was created for different instrumentation settings,
+     * an empty manifest is returned.
+     *
+     * @param manifestFile         location of the manifest
+     * @param instrumentationArgs  CloverInstr arguments, excluding source files
+     * @return InstrumentationManifest
+     * @throws IOException if manifest can't be read
+     */
+    @NotNull
+    public static InstrumentationManifest load(@NotNull final File manifestFile,
+                                               @NotNull final List<String> instrumentationArgs) throws IOException {
+        final String fingerprint = computeFingerprint(instrumentationArgs);
+        final Map<String, String> recordedHashes = new HashMap<>();
+
+        if (manifestFile.isFile()) {
+            final Properties properties = new Properties();
+            try (InputStream in = new FileInputStream(manifestFile)) {
+                properties.load(in);
+            }
+            if (fingerprint.equals(properties.getProperty(FINGERPRINT_KEY))) {
+                for (String key : properties.stringPropertyNames()) {
+                    if (!key.equals(FINGERPRINT_KEY)) {
+                        recordedHashes.put(key, properties.getProperty(key));
+                    }
+                }
+            }
+        }
+
+        return new InstrumentationManifest(manifestFile, fingerprint, recordedHashes);
+    }
+
+    /**
+     * Returns files which must be instrumented again.
+     *
+     * @param sourceFiles      Map(source root, files) of all source files to be instrumented
+     * @param outputDir        directory with instrumented sources
+     * @param instrumentAll    if <code>true</code> then all files are considered stale (e.g. because the Clover
+     *                         database is missing)
+     * @return Map(source root, files) - a subset of <code>sourceFiles</code>
+     * @throws IOException if a source file can't be read
+     */
+    @NotNull
+    public Map<String, String[]> selectStaleFiles(@NotNull final Map<String, String[]> sourceFiles,
+                                                  @NotNull final File outputDir,
+                                                  final boolean instrumentAll) throws IOException {
+        return selectStaleFiles(sourceFiles, outputDir, instrumentAll, -1);
+    }
+
+    /**
+     * Returns files which must be instrumented again. A file already present in the manifest, which is not newer than
+     * its instrumented copy by more than <code>staleMillis</code>, is considered unchanged without reading it.
+     *
+     * @param sourceFiles      Map(source root, files) of all source files to be instrumented
+     * @param outputDir        directory with instrumented sources
+     * @param instrumentAll    if <code>true</code> then all files are considered stale (e.g. because the Clover
+     *                         database is missing)
+     * @param staleMillis      granularity of modification dates; if negative then modification dates are ignored
+     * @return Map(source root, files) - a subset of <code>sourceFiles</code>
+     * @throws IOException if a source file can't be read
+     */
+    @NotNull
+    public Map<String, String[]> selectStaleFiles(@NotNull final Map<String, String[]> sourceFiles,
+                                                  @NotNull final File outputDir,
+                                                  final boolean instrumentAll,
+                                                  final long staleMillis) throws IOException {
+        currentHashes.clear();
+        upToDateHashes.clear();
+
+        final Map<String, String[]> staleFiles = new HashMap<>();
+        for (Map.Entry<String, String[]> sourceRoot : sourceFiles.entrySet()) {
+            final List<String> staleInRoot = new ArrayList<>();
+            for (String fileName : sourceRoot.getValue()) {
+                final File sourceFile = new File(sourceRoot.getKey(), fileName);
+                final String path = sourceFile.getAbsolutePath();
+                final File outputFile = new File(outputDir, fileName);
+                final String recordedHash = recordedHashes.get(path);
+                final String hash = recordedHash != null && staleMillis >= 0
+                        && sourceFile.lastModified() <= outputFile.lastModified() + staleMillis
+                        ? recordedHash
+                        : hash(sourceFile);
+                currentHashes.put(path, hash);
+
+                if (!instrumentAll && hash.equals(recordedHash) && outputFile.exists()) {
+                    upToDateHashes.put(path, hash);
+                } else {
+                    staleInRoot.add(fileName);
+                }
+            }
+            if (!staleInRoot.isEmpty()) {
+                staleFiles.put(sourceRoot.getKey(), staleInRoot.toArray(new String[0]));
+            }
+        }
+        return staleFiles;
+    }
+
+    /**
+     * Records that given files have been successfully instrumented. Must be called after
+     * {@link #selectStaleFiles(Map, File, boolean)}.
+     *
+     * @param instrumentedFiles Map(source root, files)
+     */
+    public void markInstrumented(@NotNull final Map<String, String[]> instrumentedFiles) {
+        for (Map.Entry<String, String[]> sourceRoot : instrumentedFiles.entrySet()) {
+            for (String fileName : sourceRoot.getValue()) {
+                final String path = new File(sourceRoot.getKey(), fileName).getAbsolutePath();
+                final String hash = currentHashes.get(path);
+                if (hash != null) {
+                    upToDateHashes.put(path, hash);
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes the manifest. Files which were not present in the last call to
+     * {@link #selectStaleFiles(Map, File, boolean)} are removed from it.
+     *
+     * @throws IOException if manifest can't be written
+     */
+    public void save() throws IOException {
+        final Properties properties = new Properties();
+        properties.putAll(upToDateHashes);
+        properties.setProperty(FINGERPRINT_KEY, fingerprint);
+
+        final File parentDir = manifestFile.getAbsoluteFile().getParentFile();
+        if (!parentDir.isDirectory() && !parentDir.mkdirs()) {
+            throw new IOException("Failed to create directory " + parentDir);
+        }
+        try (OutputStream out = new FileOutputStream(manifestFile)) {
+            properties.store(out, "Clover instrumentation manifest");
+        }
+    }
+
+    /**
+     * Reads the list of source files which were copied to the output directory as they are.
+     *
+     * @param outputDir directory with instrumented sources
+     * @return Set of absolute paths of source files, empty if the list does not exist
+     * @throws IOException if the list can't be read
+     */
+    @NotNull
+    public static Set<String> loadCopiedFiles(@NotNull final File outputDir) throws IOException {
+        final File listFile = getCopiedFilesList(outputDir);
+        final Set<String> paths = new HashSet<>();
+        if (listFile.isFile()) {
+            for (String line : Files.readAllLines(listFile.toPath(), StandardCharsets.UTF_8)) {
+                if (!line.isEmpty()) {
+                    paths.add(line);
+                }
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Writes the list of source files which were copied to the output directory as they are. The list is deleted
+     * if it's empty.
+     *
+     * @param outputDir directory with instrumented sources
+     * @param paths     absolute paths of source files
+     * @throws IOException if the list can't be written
+     */
+    public static void saveCopiedFiles(@NotNull final File outputDir, @NotNull final Set<String> paths) throws IOException {
+        final File listFile = getCopiedFilesList(outputDir);
+        if (paths.isEmpty()) {
+            Files.deleteIfExists(listFile.toPath());
+            return;
+        }
+        final List<String> lines = new ArrayList<>(paths);
+        lines.sort(null);
+        final File parentDir = listFile.getAbsoluteFile().getParentFile();
+        if (!parentDir.isDirectory() && !parentDir.mkdirs()) {
+            throw new IOException("Failed to create directory " + parentDir);
+        }
+        Files.write(listFile.toPath(), lines, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The list is stored next to the directory with instrumented sources, e.g. 'target/clover/src-instrumented.copied'
+     */
+    @NotNull
+    private static File getCopiedFilesList(@NotNull final File outputDir) {
+        return new File(outputDir.getPath() + ".copied");
+    }
+
+    @NotNull
+    private static String computeFingerprint(@NotNull final List<String> instrumentationArgs) {
+        final StringBuilder settings = new StringBuilder(CloverVersionInfo.getReleaseNum());
+        for (String arg : instrumentationArgs) {
+            settings.append('\n').append(arg);
+        }
+        return DigestUtils.sha256Hex(settings.toString());
+    }
+
+    @NotNull
+    private static String hash(@NotNull final File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return DigestUtils.sha256Hex(in);
+        }
+    }
+}
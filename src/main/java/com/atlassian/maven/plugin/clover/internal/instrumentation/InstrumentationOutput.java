@@ -0,0 +1,210 @@
+package com.atlassian.maven.plugin.clover.internal.instrumentation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import clover.org.apache.commons.codec.digest.DigestUtils;
+import org.apache.maven.plugin.logging.Log;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * <p>Keeps the output directory consistent with the original sources, so that the compiler plugin recompiles only
+ * what has changed:</p>
+ * <ul>
+ *     <li>files written again with the same content keep their previous modification times, see
+ *     {@link #prepareWrite(Map)} and {@link #completeWrite()}</li>
+ *     <li>files whose original sources were removed are deleted, see {@link #deleteOrphans(Collection)}</li>
+ * </ul>
+ *
+ * <p>Instrumented files are placed in directories matching their package names, which may differ from their
+ * locations in source roots. Files written in this execution are therefore never deleted; they're recognized by
+ * comparing the output directory with its state recorded by {@link #recordExistingFiles()}.</p>
+ */
+public class InstrumentationOutput {
+
+    @NotNull
+    private final File outputDir;
+
+    @NotNull
+    private final Log log;
+
+    /**
+     * Paths relative to the output directory of files which existed before this execution, mapped to their
+     * modification times
+     */
+    @NotNull
+    private final Map<String, Long> existingFiles = new HashMap<>();
+
+    /**
+     * Paths relative to the output directory of files which are about to be written again, mapped to their
+     * previous content hashes and modification times
+     */
+    @NotNull
+    private final Map<String, String[]> replacedFiles = new HashMap<>();
+
+    private int filesDeleted;
+
+    private int filesUnchanged;
+
+    /**
+     * @param outputDir directory with instrumented sources
+     * @param log       logger
+     */
+    public InstrumentationOutput(@NotNull final File outputDir, @NotNull final Log log) {
+        this.outputDir = outputDir;
+        this.log = log;
+    }
+
+    /**
+     * Records files in the output directory, must be called before any file is written in this execution.
+     *
+     * @throws IOException if the directory can't be listed
+     */
+    public void recordExistingFiles() throws IOException {
+        existingFiles.clear();
+        if (!outputDir.isDirectory()) {
+            return;
+        }
+        try (Stream<Path> files = Files.walk(outputDir.toPath())) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                existingFiles.put(outputDir.toPath().relativize(file).toString(),
+                        Files.getLastModifiedTime(file).toMillis());
+            }
+        }
+    }
+
+    /**
+     * Records content of files which are about to be written again and deletes them. A file is deleted rather than
+     * overwritten, because it may be a hard link to its original source (see the 'link' copy strategy).
+     *
+     * @param files Map(source root, files) - files to be written, at the same relative paths in the output directory
+     * @throws IOException if a file can't be read or deleted
+     */
+    public void prepareWrite(@NotNull final Map<String, String[]> files) throws IOException {
+        for (String[] fileNames : files.values()) {
+            for (String fileName : fileNames) {
+                final File outputFile = new File(outputDir, fileName);
+                if (outputFile.isFile()) {
+                    replacedFiles.put(fileName, new String[] { hash(outputFile), String.valueOf(outputFile.lastModified()) });
+                    Files.delete(outputFile.toPath());
+                }
+            }
+        }
+    }
+
+    /**
+     * Restores previous modification times of files recorded by {@link #prepareWrite(Map)} which were written
+     * with the same content, so that the compiler plugin does not consider them changed. It happens when sources
+     * are restored from the instrumentation cache, for instance.
+     *
+     * @throws IOException if a file can't be read
+     */
+    public void completeWrite() throws IOException {
+        for (Map.Entry<String, String[]> replacedFile : replacedFiles.entrySet()) {
+            final File outputFile = new File(outputDir, replacedFile.getKey());
+            if (outputFile.isFile() && hash(outputFile).equals(replacedFile.getValue()[0])
+                    && outputFile.setLastModified(Long.parseLong(replacedFile.getValue()[1]))) {
+                filesUnchanged++;
+            }
+        }
+        replacedFiles.clear();
+    }
+
+    /**
+     * Deletes files from the output directory which were not written in this execution and which have no
+     * counterpart at the same relative path in any of source roots. Empty directories are deleted as well.
+     *
+     * @param sourceRoots original source roots
+     * @throws IOException if a file can't be deleted
+     */
+    public void deleteOrphans(@NotNull final Collection<String> sourceRoots) throws IOException {
+        if (!outputDir.isDirectory()) {
+            return;
+        }
+        final List<Path> outputFiles;
+        try (Stream<Path> files = Files.walk(outputDir.toPath())) {
+            // deepest paths first, so that directories are visited after their content
+            outputFiles = files.sorted((p1, p2) -> p2.getNameCount() - p1.getNameCount()).collect(Collectors.toList());
+        }
+
+        for (Path outputFile : outputFiles) {
+            if (Files.isDirectory(outputFile)) {
+                if (!outputFile.equals(outputDir.toPath()) && isEmptyDirectory(outputFile)) {
+                    Files.delete(outputFile);
+                }
+            } else if (isOrphan(outputFile, sourceRoots)) {
+                log.debug("Deleting instrumented file without a source: " + outputFile);
+                Files.delete(outputFile);
+                filesDeleted++;
+            }
+        }
+    }
+
+    /**
+     * Logs how many files were unchanged and deleted.
+     */
+    public void logStatistics() {
+        if (log.isDebugEnabled()) {
+            log.debug("Clover left " + filesUnchanged + " instrumented file(s) unchanged and deleted "
+                    + filesDeleted + " instrumented file(s) without a source");
+        }
+    }
+
+    private boolean isOrphan(@NotNull final Path outputFile, @NotNull final Collection<String> sourceRoots)
+            throws IOException {
+        final String relativePath = outputDir.toPath().relativize(outputFile).toString();
+        final Long lastModified = existingFiles.get(relativePath);
+        if (lastModified == null || lastModified != Files.getLastModifiedTime(outputFile).toMillis()) {
+            // written in this execution
+            return false;
+        }
+        for (String sourceRoot : sourceRoots) {
+            if (new File(sourceRoot, relativePath).exists()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @NotNull
+    private static String hash(@NotNull final File file) throws IOException {
+        try (InputStream in = new FileInputStream(file)) {
+            return DigestUtils.sha256Hex(in);
+        }
+    }
+
+    private static boolean isEmptyDirectory(@NotNull final Path dir) throws IOException {
+        try (Stream<Path> entries = Files.list(dir)) {
+            return !entries.findAny().isPresent();
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.atlassian.maven.plugin.clover.internal.instrumentation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.atlassian.clover.Logger;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Main class of a forked instrumentation JVM, see {@link InstrumentationWorkerPool}.</p>
+ *
+ * <p>The worker reads instrumentation requests from the standard input and instruments them one by one, until the
+ * standard input is closed. Messages logged by Clover and the result of every request are written to the standard
+ * output, which is reserved for the protocol (anything printed by other code goes to the standard error).</p>
+ *
+ * <p>Request: int batchSize, boolean debug, strings instrumentation arguments, int number of source roots, and for
+ * every source root: string path, strings file names. Response: any number of log records (byte {@link #LOG},
+ * int level, string message) followed by byte {@link #RESULT}, int result. Strings are sent as int length + UTF-8
+ * bytes, lists of strings as int size + strings.</p>
+ */
+public class InstrumentationWorker {
+
+    static final byte LOG = 'L';
+
+    static final byte RESULT = 'R';
+
+    /**
+     * Forwards Clover's log messages to the parent process.
+     */
+    private static class ChannelLogger extends Logger {
+        private final DataOutputStream out;
+        private final boolean debug;
+
+        ChannelLogger(final DataOutputStream out, final boolean debug) {
+            this.out = out;
+            this.debug = debug;
+        }
+
+        @Override
+        public void log(final int level, final String msg, final Throwable t) {
+            if (!debug && level > Logger.LOG_INFO) {
+                return;
+            }
+            String message = msg;
+            if (t != null) {
+                final StringWriter stackTrace = new StringWriter();
+                t.printStackTrace(new PrintWriter(stackTrace));
+                message = msg + System.lineSeparator() + stackTrace;
+            }
+            try {
+                synchronized (out) {
+                    out.writeByte(LOG);
+                    out.writeInt(level);
+                    writeString(out, message);
+                }
+            } catch (IOException e) {
+                System.err.println(message);
+            }
+        }
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(System.in));
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(System.out));
+        // the standard output is used by the protocol only
+        System.setOut(System.err);
+
+        while (true) {
+            final int batchSize;
+            try {
+                batchSize = in.readInt();
+            } catch (EOFException e) {
+                // the parent process has closed the pipe
+                return;
+            }
+            final boolean debug = in.readBoolean();
+            final List<String> instrumentationArgs = readStrings(in);
+            final int sourceRoots = in.readInt();
+            final Map<String, String[]> sourceFiles = new LinkedHashMap<>(sourceRoots);
+            for (int i = 0; i < sourceRoots; i++) {
+                final String sourceRoot = readString(in);
+                sourceFiles.put(sourceRoot, readStrings(in).toArray(new String[0]));
+            }
+
+            Logger.setInstance(new ChannelLogger(out, debug));
+            int result;
+            try {
+                result = new StreamingInstrumenter(batchSize).instrument(instrumentationArgs, sourceFiles);
+            } catch (RuntimeException | Error e) {
+                Logger.getInstance().error("Instrumentation error", e);
+                result = 1;
+            }
+            synchronized (out) {
+                out.writeByte(RESULT);
+                out.writeInt(result);
+                out.flush();
+            }
+        }
+    }
+
+    static void writeString(@NotNull final DataOutputStream out, @NotNull final String value) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    static void writeStrings(@NotNull final DataOutputStream out, @NotNull final Iterable<String> values,
+                             final int size) throws IOException {
+        out.writeInt(size);
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    @NotNull
+    static String readString(@NotNull final DataInputStream in) throws IOException {
+        final byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @NotNull
+    private static List<String> readStrings(@NotNull final DataInputStream in) throws IOException {
+        final int size = in.readInt();
+        final List<String> values = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            values.add(readString(in));
+        }
+        return values;
+    }
+}
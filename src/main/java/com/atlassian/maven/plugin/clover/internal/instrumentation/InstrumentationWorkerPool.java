@@ -0,0 +1,259 @@
+package com.atlassian.maven.plugin.clover.internal.instrumentation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.atlassian.clover.CloverInstr;
+import com.atlassian.clover.Logger;
+import com.atlassian.maven.plugin.clover.internal.ForkedJvm;
+import org.apache.maven.plugin.logging.Log;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>A pool of forked JVMs running {@link InstrumentationWorker}, so that instrumentation does not use the heap of
+ * the Maven JVM and can run with its own heap size and GC settings. Source files are sent to a worker over its
+ * standard input and Clover's log messages are passed back to the Maven log of the module being instrumented.</p>
+ *
+ * <p>Pools are shared by all modules of a build which use the same JVM arguments. Workers are started on demand,
+ * up to the size of the pool, and reused by subsequent modules; in parallel builds, modules wait for a free worker.
+ * Workers are stopped when the Maven JVM exits.</p>
+ */
+public class InstrumentationWorkerPool {
+
+    /**
+     * JVM arguments + pool size -&gt; pool
+     */
+    private static final Map<String, InstrumentationWorkerPool> POOLS = new HashMap<>();
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(InstrumentationWorkerPool::shutdownAll,
+                "clover-instrumentation-workers-shutdown"));
+    }
+
+    private static class Worker {
+        final Process process;
+        final DataOutputStream in;
+        final DataInputStream out;
+
+        Worker(@NotNull final Process process) {
+            this.process = process;
+            this.in = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+            this.out = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+        }
+    }
+
+    @NotNull
+    private final List<String> command;
+
+    private final int size;
+
+    private final Deque<Worker> idleWorkers = new ArrayDeque<>();
+
+    private final List<Worker> allWorkers = new ArrayList<>();
+
+    private boolean shutdown;
+
+    /**
+     * Returns a pool shared within the Maven JVM.
+     *
+     * @param size    maximum number of worker JVMs, at least 1
+     * @param jvmArgs arguments of worker JVMs, e.g. "-Xmx2g -XX:+UseParallelGC", can be null
+     * @return InstrumentationWorkerPool
+     * @throws IOException if JVM arguments can't be parsed or the class path of workers can't be determined
+     */
+    @NotNull
+    public static synchronized InstrumentationWorkerPool getInstance(final int size, @Nullable final String jvmArgs)
+            throws IOException {
+        final String key = size + ":" + (jvmArgs != null ? jvmArgs : "");
+        InstrumentationWorkerPool pool = POOLS.get(key);
+        if (pool == null) {
+            pool = new InstrumentationWorkerPool(size, jvmArgs);
+            POOLS.put(key, pool);
+        }
+        return pool;
+    }
+
+    InstrumentationWorkerPool(final int size, @Nullable final String jvmArgs) throws IOException {
+        if (size < 1) {
+            throw new IllegalArgumentException("Number of instrumentation workers must be at least 1, got " + size);
+        }
+        this.size = size;
+        this.command = ForkedJvm.createCommand(InstrumentationWorker.class,
+                Arrays.asList(InstrumentationWorker.class, CloverInstr.class), jvmArgs, "instrumentation workers");
+    }
+
+    /**
+     * Instruments source files in a worker JVM, waiting for a free worker if all are busy.
+     *
+     * @param instrumentationArgs arguments in the CloverInstr format, excluding source files
+     * @param sourceFiles         Map(source root, files) to be instrumented
+     * @param batchSize           maximum number of files per instrumentation session
+     * @param log                 log of the module being instrumented
+     * @return int 0 if instrumentation succeeded, 1 otherwise (like <code>CloverInstr.mainImpl</code>)
+     * @throws IOException if the worker can't be started or it has crashed
+     */
+    public int instrument(@NotNull final List<String> instrumentationArgs,
+                          @NotNull final Map<String, String[]> sourceFiles,
+                          final int batchSize,
+                          @NotNull final Log log) throws IOException {
+        final Worker worker = acquire();
+        boolean healthy = false;
+        try {
+            final int result = instrument(worker, instrumentationArgs, sourceFiles, batchSize, log);
+            healthy = true;
+            return result;
+        } finally {
+            release(worker, healthy);
+        }
+    }
+
+    /**
+     * Stops all workers of the pool. Busy workers are stopped when they're released.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        for (Worker worker : idleWorkers) {
+            stop(worker);
+        }
+        idleWorkers.clear();
+        notifyAll();
+    }
+
+    @TestOnly
+    synchronized int getStartedWorkers() {
+        return allWorkers.size();
+    }
+
+    private static int instrument(@NotNull final Worker worker,
+                                  @NotNull final List<String> instrumentationArgs,
+                                  @NotNull final Map<String, String[]> sourceFiles,
+                                  final int batchSize,
+                                  @NotNull final Log log) throws IOException {
+        worker.in.writeInt(batchSize);
+        worker.in.writeBoolean(log.isDebugEnabled());
+        InstrumentationWorker.writeStrings(worker.in, instrumentationArgs, instrumentationArgs.size());
+        worker.in.writeInt(sourceFiles.size());
+        for (Map.Entry<String, String[]> sourceRoot : sourceFiles.entrySet()) {
+            InstrumentationWorker.writeString(worker.in, sourceRoot.getKey());
+            InstrumentationWorker.writeStrings(worker.in, Arrays.asList(sourceRoot.getValue()), sourceRoot.getValue().length);
+        }
+        worker.in.flush();
+
+        while (true) {
+            final byte type = worker.out.readByte();
+            if (type == InstrumentationWorker.LOG) {
+                final int level = worker.out.readInt();
+                log(log, level, InstrumentationWorker.readString(worker.out));
+            } else if (type == InstrumentationWorker.RESULT) {
+                return worker.out.readInt();
+            } else {
+                throw new IOException("Unexpected response from instrumentation worker: " + type);
+            }
+        }
+    }
+
+    /**
+     * Same mapping of levels as in {@link com.atlassian.maven.plugin.clover.MvnLogger}
+     */
+    private static void log(@NotNull final Log log, final int level, @NotNull final String message) {
+        switch (level) {
+            case Logger.LOG_ERR:
+                log.error(message);
+                break;
+            case Logger.LOG_WARN:
+                log.warn(message);
+                break;
+            case Logger.LOG_INFO:
+                log.info(message);
+                break;
+            default:
+                log.debug(message);
+                break;
+        }
+    }
+
+    @NotNull
+    private synchronized Worker acquire() throws IOException {
+        while (true) {
+            if (shutdown) {
+                throw new IOException("Instrumentation worker pool has been shut down");
+            }
+            if (!idleWorkers.isEmpty()) {
+                return idleWorkers.pop();
+            }
+            if (allWorkers.size() < size) {
+                final Worker worker = new Worker(new ProcessBuilder(command)
+                        .redirectError(ProcessBuilder.Redirect.INHERIT)
+                        .start());
+                allWorkers.add(worker);
+                return worker;
+            }
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted while waiting for an instrumentation worker", e);
+            }
+        }
+    }
+
+    /**
+     * Returns the worker to the pool. A worker which failed to respond is stopped, as its state is unknown;
+     * a new one will be started when needed.
+     */
+    private synchronized void release(@NotNull final Worker worker, final boolean healthy) {
+        if (healthy && !shutdown) {
+            idleWorkers.push(worker);
+        } else {
+            stop(worker);
+            allWorkers.remove(worker);
+        }
+        notifyAll();
+    }
+
+    private static void stop(@NotNull final Worker worker) {
+        try {
+            // the worker exits when its standard input is closed
+            worker.in.close();
+        } catch (IOException e) {
+            worker.process.destroy();
+        }
+    }
+
+    private static synchronized void shutdownAll() {
+        for (InstrumentationWorkerPool pool : POOLS.values()) {
+            pool.shutdown();
+        }
+    }
+}
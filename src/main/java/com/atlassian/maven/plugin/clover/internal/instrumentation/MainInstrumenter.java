@@ -23,7 +23,13 @@ import com.atlassian.maven.plugin.clover.internal.scanner.CloverSourceScanner;
 import com.atlassian.maven.plugin.clover.internal.scanner.MainSourceScanner;
 import com.atlassian.maven.plugin.clover.internal.CompilerConfiguration;
 
+import org.apache.maven.artifact.DependencyResolutionRequiredException;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.project.MavenProject;
+
 import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 
 /**
@@ -70,6 +76,39 @@ public class MainInstrumenter extends AbstractInstrumenter {
                 || sourceRoot.contains(generatedSrcDirCloverLifecycle);
     }
 
+    @Override
+    protected InMemoryCompiler createInMemoryCompiler() throws MojoExecutionException {
+        if (!getConfiguration().isCompileInMemory()) {
+            return null;
+        }
+
+        final MavenProject project = getConfiguration().getProject();
+        final List<String> classpath = new ArrayList<>();
+        try {
+            for (String element : project.getCompileClasspathElements()) {
+                // skip classes from a non-instrumented build
+                if (!element.equals(project.getBuild().getOutputDirectory())) {
+                    classpath.add(element);
+                }
+            }
+        } catch (DependencyResolutionRequiredException e) {
+            throw new MojoExecutionException("Failed to resolve the compile classpath", e);
+        }
+
+        final File classesDir = new File(getConfiguration().getInstrumentedClassesDirectory());
+        if (!classesDir.isDirectory() && !classesDir.mkdirs()) {
+            throw new MojoExecutionException("Failed to create the [" + classesDir + "] directory");
+        }
+
+        try {
+            return new InMemoryCompiler(classpath, getCompileSourceRoots(), classesDir,
+                    CompilerPluginOptions.getCompilerOptions(project, getConfiguration().getLog()),
+                    getConfiguration().getLog());
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to configure in-memory compilation", e);
+        }
+    }
+
     @Override
     protected String getSourceType() {
         return "main";
@@ -0,0 +1,148 @@
+package com.atlassian.maven.plugin.clover.internal.instrumentation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.maven.plugin.logging.Log;
+import org.codehaus.plexus.util.FileUtils;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Copies source files which are not instrumented (excluded files, Groovy files) to the directory with instrumented
+ * sources. Files are processed in parallel. A file is not copied again if the target has the same content already.
+ * The "link" strategy creates hard links instead of copies, falling back to a copy if a link can't be created
+ * (e.g. when the target is on a different file system).
+ */
+public class SourceFileCopier {
+
+    public static final String STRATEGY_COPY = "copy";
+
+    public static final String STRATEGY_LINK = "link";
+
+    @NotNull
+    private final Log log;
+
+    private final boolean link;
+
+    private final AtomicInteger filesCopied = new AtomicInteger();
+    private final AtomicInteger filesLinked = new AtomicInteger();
+    private final AtomicInteger filesSkipped = new AtomicInteger();
+    private final AtomicLong bytesWritten = new AtomicLong();
+    private final AtomicLong bytesSaved = new AtomicLong();
+
+    /**
+     * @param strategy {@link #STRATEGY_COPY} or {@link #STRATEGY_LINK}
+     * @param log      logger
+     * @throws IllegalArgumentException if strategy is unknown
+     */
+    public SourceFileCopier(@NotNull final String strategy, @NotNull final Log log) {
+        if (!STRATEGY_COPY.equals(strategy) && !STRATEGY_LINK.equals(strategy)) {
+            throw new IllegalArgumentException("Unknown copy strategy '" + strategy + "', valid values are: "
+                    + STRATEGY_COPY + ", " + STRATEGY_LINK);
+        }
+        this.link = STRATEGY_LINK.equals(strategy);
+        this.log = log;
+    }
+
+    /**
+     * Copies files keeping their location relative to a source root.
+     *
+     * @param files           Map(source root, files)
+     * @param targetDirectory where to copy files
+     * @throws IOException if a file can't be copied
+     */
+    public void copyFiles(@NotNull final Map<String, String[]> files, @NotNull final String targetDirectory) throws IOException {
+        final List<File[]> copies = new ArrayList<>();
+        for (Map.Entry<String, String[]> sourceRoot : files.entrySet()) {
+            for (String fileName : sourceRoot.getValue()) {
+                final File srcFile = new File(sourceRoot.getKey(), fileName);
+                copies.add(new File[] { srcFile,
+                        new File(targetDirectory, srcFile.getPath().substring(sourceRoot.getKey().length())) });
+            }
+        }
+
+        try {
+            copies.parallelStream().forEach(copy -> {
+                try {
+                    copyFile(copy[0], copy[1]);
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to copy file [" + copy[0] + "] to [" + copy[1] + "]", e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw new IOException(e.getMessage(), e.getCause());
+        }
+    }
+
+    /**
+     * Logs how much disk I/O was done and how much was avoided.
+     */
+    public void logStatistics() {
+        if (log.isDebugEnabled()) {
+            log.debug("Clover copied " + filesCopied + " file(s), linked " + filesLinked + " file(s), skipped "
+                    + filesSkipped + " unchanged file(s); " + bytesWritten + " bytes written, "
+                    + bytesSaved + " bytes not written");
+        }
+    }
+
+    private void copyFile(@NotNull final File srcFile, @NotNull final File targetFile) throws IOException {
+        final long size = srcFile.length();
+        if (targetFile.exists()
+                && (Files.isSameFile(srcFile.toPath(), targetFile.toPath()) || FileUtils.contentEquals(srcFile, targetFile))) {
+            log.debug("Skipping unchanged file: " + srcFile.getAbsolutePath());
+            filesSkipped.incrementAndGet();
+            bytesSaved.addAndGet(size);
+            return;
+        }
+
+        final File targetDir = targetFile.getParentFile();
+        if (!targetDir.isDirectory() && !targetDir.mkdirs() && !targetDir.isDirectory()) {
+            throw new IOException("Failed to create directory " + targetDir);
+        }
+
+        if (link) {
+            try {
+                Files.deleteIfExists(targetFile.toPath());
+                Files.createLink(targetFile.toPath(), srcFile.toPath());
+                log.debug("Linking file: " + srcFile.getAbsolutePath() + " to " + targetFile);
+                filesLinked.incrementAndGet();
+                bytesSaved.addAndGet(size);
+                return;
+            } catch (IOException | UnsupportedOperationException e) {
+                log.debug("Can't link file: " + srcFile.getAbsolutePath() + ", copying instead (" + e + ")");
+            }
+        }
+
+        log.debug("Copying file: " + srcFile.getAbsolutePath() + " to " + targetFile);
+        Files.copy(srcFile.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        filesCopied.incrementAndGet();
+        bytesWritten.addAndGet(size);
+    }
+}
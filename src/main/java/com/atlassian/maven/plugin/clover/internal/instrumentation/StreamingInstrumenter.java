@@ -0,0 +1,119 @@
+package com.atlassian.maven.plugin.clover.internal.instrumentation;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import com.atlassian.clover.CloverStartup;
+import com.atlassian.clover.Logger;
+import com.atlassian.clover.api.CloverException;
+import com.atlassian.clover.cfg.instr.java.JavaInstrumentationConfig;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>Instruments source files like {@link com.atlassian.clover.CloverInstr}, but source files are passed to the
+ * instrumenter straight from the map built by a source scanner, instead of being converted to a command line with
+ * one argument per file. This avoids building large transient arrays of paths for modules with many files.</p>
+ *
+ * <p>Progress is logged at the debug level once per batch of files instead of once per file.</p>
+ *
+ * <p>Files can be instrumented in several sessions of a limited size, see {@link InstrumentationBatches}.</p>
+ */
+public class StreamingInstrumenter {
+
+    /**
+     * How many files are instrumented between two progress messages
+     */
+    static final int PROGRESS_INTERVAL = 1000;
+
+    private final int batchSize;
+
+    /**
+     * Instruments all files in a single session.
+     */
+    public StreamingInstrumenter() {
+        this(0);
+    }
+
+    /**
+     * @param batchSize maximum number of files per instrumentation session, 0 or less for a single session
+     */
+    public StreamingInstrumenter(final int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Instruments source files.
+     *
+     * @param instrumentationArgs arguments in the CloverInstr format, excluding source files
+     * @param sourceFiles         Map(source root, files) to be instrumented
+     * @return int 0 if instrumentation succeeded, 1 otherwise (like <code>CloverInstr.mainImpl</code>)
+     */
+    public int instrument(@NotNull final List<String> instrumentationArgs, @NotNull final Map<String, String[]> sourceFiles) {
+        final Logger log = Logger.getInstance();
+        CloverStartup.loadLicense(log);
+
+        final JavaInstrumentationConfig config;
+        try {
+            config = CloverInstrArgs.parse(instrumentationArgs.toArray(new String[0]), false);
+        } catch (CloverException e) {
+            log.error(e.getMessage());
+            return 1;
+        }
+
+        final int totalFiles = countFiles(sourceFiles);
+        final InstrumentationBatches batches = new InstrumentationBatches(log, config, batchSize, totalFiles);
+        try {
+            batches.start();
+        } catch (CloverException e) {
+            log.error("Could not initialise Clover: " + e.getMessage());
+            return 1;
+        }
+
+        int instrumentedFiles = 0;
+        try {
+            for (Map.Entry<String, String[]> sourceRoot : sourceFiles.entrySet()) {
+                for (String fileName : sourceRoot.getValue()) {
+                    batches.getInstrumenter().instrument(new File(sourceRoot.getKey(), fileName), config.getDestDir(), config.getEncoding());
+                    batches.fileInstrumented();
+                    instrumentedFiles++;
+                    if (instrumentedFiles % PROGRESS_INTERVAL == 0 || instrumentedFiles == totalFiles) {
+                        log.debug("Instrumented " + instrumentedFiles + " of " + totalFiles + " files");
+                    }
+                }
+            }
+            batches.end();
+        } catch (Exception e) {
+            log.error("Instrumentation error", e);
+            return 1;
+        }
+        return 0;
+    }
+
+    static int countFiles(@NotNull final Map<String, String[]> sourceFiles) {
+        int count = 0;
+        for (String[] files : sourceFiles.values()) {
+            count += files.length;
+        }
+        return count;
+    }
+}
@@ -18,10 +18,10 @@ package com.atlassian.maven.plugin.clover.internal.scanner;
  * specific language governing permissions and limitations
  * under the License.
  */
-import org.apache.tools.ant.DirectoryScanner;
 import org.apache.tools.ant.types.selectors.FileSelector;
 import org.apache.tools.ant.types.selectors.DependSelector;
 import com.atlassian.maven.plugin.clover.internal.CompilerConfiguration;
+import com.atlassian.maven.plugin.clover.internal.instrumentation.InstrumentationManifest;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
@@ -71,7 +71,7 @@ public abstract class AbstractSourceScanner implements CloverSourceScanner {
      * @see CloverSourceScanner#getExcludedFiles()
      */
     public Map<String,String[]> getExcludedFiles() {
-        Map<String, String[]> excludedFiles = computeExcludedFiles(getDirectoryScanner());
+        Map<String, String[]> excludedFiles = computeExcludedFiles();
         // special case: don't return excludes from 'src/(main|test)/groovy'
         removeGroovySourceRoot(excludedFiles.keySet());
         return excludedFiles;
@@ -106,7 +106,7 @@ public abstract class AbstractSourceScanner implements CloverSourceScanner {
      * @return Map&lt;File,String[]&gt;
      */
     public Map<String,String[]> getSourceFilesToInstrument(LanguageFileFilter languageFileFilter, boolean skipGroovySourceDirectory) {
-        Map<String, String[]> includedFiles = computeIncludedFiles(getDirectoryScanner(), languageFileFilter);
+        Map<String, String[]> includedFiles = computeIncludedFiles(languageFileFilter, getStaleFileSelector());
         // special case: don't return includes from 'src/(main|test)/groovy'
         if (skipGroovySourceDirectory) {
             removeGroovySourceRoot(includedFiles.keySet());
@@ -114,6 +114,40 @@ public abstract class AbstractSourceScanner implements CloverSourceScanner {
         return includedFiles;
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * @see CloverSourceScanner#getAllSourceFilesToInstrument(LanguageFileFilter, boolean)
+     */
+    public Map<String,String[]> getAllSourceFilesToInstrument(LanguageFileFilter languageFileFilter, boolean skipGroovySourceDirectory) {
+        Map<String, String[]> includedFiles = computeIncludedFiles(languageFileFilter, null);
+        // special case: don't return includes from 'src/(main|test)/groovy'
+        if (skipGroovySourceDirectory) {
+            removeGroovySourceRoot(includedFiles.keySet());
+        }
+        return includedFiles;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * @see CloverSourceScanner#selectStaleFiles(Map)
+     */
+    public Map<String, String[]> selectStaleFiles(Map<String, String[]> files) {
+        final FileSelector selector = getStaleFileSelector();
+        if (selector == null) {
+            return files;
+        }
+        final Map<String, String[]> staleFiles = new HashMap<>();
+        for (Map.Entry<String, String[]> sourceRoot : files.entrySet()) {
+            final String[] staleInRoot = selectFiles(new File(sourceRoot.getKey()), sourceRoot.getValue(), selector);
+            if (staleInRoot.length > 0) {
+                staleFiles.put(sourceRoot.getKey(), staleInRoot);
+            }
+        }
+        return staleFiles;
+    }
+
     protected abstract List<String> getCompileSourceRoots();
 
     protected abstract String getSourceDirectory();
@@ -137,45 +171,43 @@ public abstract class AbstractSourceScanner implements CloverSourceScanner {
     }
 
     /**
-     * Returns a Plexus scanner object that scans a source root and filters files according to inclusion and
-     * exclusion patterns. In our case at hand we include only Java sources as these are the only files we want
-     * to instrument.
-     * @return DirectoryScanner
+     * Returns a cached result of scanning the source root with inclusion and exclusion patterns.
+     *
+     * @param sourceRoot directory to scan
+     * @return SourceScanCache.ScanResult
      */
-    private DirectoryScanner getDirectoryScanner() {
-        final Set<String> includes = getConfiguration().getIncludes();
-        final Set<String> excludes = getConfiguration().getExcludes();
-
-        configuration.getLog().debug("excludes patterns = " + excludes);
-        configuration.getLog().debug("includes patterns = " + includes);
-        final DirectoryScanner dirScan = new DirectoryScanner();
-
-        dirScan.addExcludes(excludes.toArray(new String[0]));
-        dirScan.setIncludes(includes.toArray(new String[0]));
-
-        dirScan.addDefaultExcludes();
+    private SourceScanCache.ScanResult scan(final File sourceRoot) {
+        return getConfiguration().getSourceScanCache().scan(sourceRoot,
+                getConfiguration().getIncludes(), getConfiguration().getExcludes());
+    }
 
+    /**
+     * Returns a selector which accepts source files which are newer than their counterparts in the target directory.
+     *
+     * @return FileSelector or <code>null</code> if all files shall be selected
+     */
+    private FileSelector getStaleFileSelector() {
+        // with the instrumentation manifest, stale files are found by comparing content hashes
+        if (!InstrumentationManifest.STALENESS_MTIME.equals(getConfiguration().getStaleness())) {
+            return null;
+        }
         final DependSelector selector = new DependSelector();
         selector.setTargetdir(targetDir);
-        dirScan.setSelectors(new FileSelector[]{selector});
-
-        return dirScan;
+        // zero keeps the default granularity of the file system
+        if (getConfiguration().getStaleMillis() > 0) {
+            selector.setGranularity(getConfiguration().getStaleMillis());
+        }
+        return selector;
     }
 
-    private Map<String, String[]> computeExcludedFiles(final DirectoryScanner scanner) {
+    private Map<String, String[]> computeExcludedFiles() {
         final Map<String, String[]> files = new HashMap<>();
 
+        configuration.getLog().debug("excludes patterns = " + getConfiguration().getExcludes());
+        configuration.getLog().debug("includes patterns = " + getConfiguration().getIncludes());
         visitSourceRoots(dir -> {
-            scanner.setBasedir(dir);
-
-            final Set<String> configurationIncludes = getConfiguration().getIncludes();
-            final String[] includes = concatArrays(
-                    configurationIncludes.toArray(new String[0]),
-                    DirectoryScanner.getDefaultExcludes());
-            scanner.setIncludes(includes);// ensure that .svn dirs etc. are not considered excluded
-            scanner.scan();
-
-            final String[] sourcesToAdd = concatArrays(scanner.getExcludedFiles(), scanner.getNotIncludedFiles());
+            final String[] sourcesToAdd = getConfiguration().getSourceScanCache().scanWithExcludedFiles(dir,
+                    getConfiguration().getIncludes(), getConfiguration().getExcludes()).excludedFiles;
 
             configuration.getLog().debug("excluding files from instrumentation = " + Arrays.asList(sourcesToAdd));
 
@@ -186,12 +218,13 @@ public abstract class AbstractSourceScanner implements CloverSourceScanner {
         return files;
     }
 
-    private Map<String, String[]> computeIncludedFiles(final DirectoryScanner scanner, final LanguageFileFilter languageFilter) {
+    private Map<String, String[]> computeIncludedFiles(final LanguageFileFilter languageFilter, final FileSelector selector) {
         final Map<String, String[]> files = new HashMap<>();
+
+        configuration.getLog().debug("excludes patterns = " + getConfiguration().getExcludes());
+        configuration.getLog().debug("includes patterns = " + getConfiguration().getIncludes());
         visitSourceRoots(dir -> {
-            scanner.setBasedir(dir);
-            scanner.scan();
-            final String[] sourcesToAdd = languageFilter.filter(scanner.getIncludedFiles());
+            final String[] sourcesToAdd = languageFilter.filter(selectFiles(dir, scan(dir).includedFiles, selector));
             if (sourcesToAdd.length > 0) {
                 configuration.getLog().debug("including files for instrumentation = " + Arrays.asList(sourcesToAdd));
                 files.put(dir.getAbsolutePath(), sourcesToAdd);
@@ -201,11 +234,17 @@ public abstract class AbstractSourceScanner implements CloverSourceScanner {
         return files;
     }
 
-    private String[] concatArrays(final String[] a1, final String[] a2) {
-        final String[] result = new String[a1.length + a2.length];
-        System.arraycopy(a1, 0, result, 0, a1.length);
-        System.arraycopy(a2, 0, result, a1.length, a2.length);
-        return result;
+    private static String[] selectFiles(final File dir, final String[] fileNames, final FileSelector selector) {
+        if (selector == null) {
+            return fileNames;
+        }
+        final List<String> selected = new ArrayList<>(fileNames.length);
+        for (String fileName : fileNames) {
+            if (selector.isSelected(dir, fileName, new File(dir, fileName))) {
+                selected.add(fileName);
+            }
+        }
+        return selected.toArray(new String[0]);
     }
 
     private boolean isGeneratedSourcesDirectory(final String sourceRoot) {
@@ -0,0 +1,188 @@
+package com.atlassian.maven.plugin.clover.internal.scanner;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.codehaus.plexus.util.cli.CommandLineException;
+import org.codehaus.plexus.util.cli.CommandLineUtils;
+import org.codehaus.plexus.util.cli.Commandline;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A set of changed source files, which limits the scope of instrumentation. Files are taken from the local git
+ * repository (changed or added on the current branch since it forked from a given revision, including uncommitted
+ * and untracked files) or from a list provided by a user. Paths are compared after resolving symbolic links.
+ */
+public class ChangedFileSet {
+
+    /**
+     * Canonical paths of changed files
+     */
+    @NotNull
+    private final Set<String> paths = new HashSet<>();
+
+    /**
+     * Creates an empty set, files are added by {@link #addFromGit(File, String)} and {@link #addFromFile(File)}.
+     */
+    public ChangedFileSet() {
+    }
+
+    /**
+     * Adds files changed in the git repository containing the directory: files committed since the merge base of
+     * the given revision and HEAD (like 'git diff revision...HEAD'), so that changes made on the other branch after
+     * it forked are ignored, as well as uncommitted and untracked files.
+     *
+     * @param directory any directory in a git working tree
+     * @param revision  git revision, e.g. a commit hash, a branch or a tag name
+     * @return ChangedFileSet this
+     * @throws IOException if git fails
+     */
+    @NotNull
+    public ChangedFileSet addFromGit(@NotNull final File directory, @NotNull final String revision) throws IOException {
+        final File topLevel = new File(git(directory, "rev-parse", "--show-toplevel").trim());
+        final List<String> names = new ArrayList<>();
+        names.addAll(splitNullTerminated(git(topLevel, "diff", "--name-only", "-z", revision + "...HEAD", "--")));
+        names.addAll(splitNullTerminated(git(topLevel, "diff", "--name-only", "-z", "HEAD", "--")));
+        names.addAll(splitNullTerminated(git(topLevel, "ls-files", "--others", "--exclude-standard", "-z")));
+        for (String name : names) {
+            add(new File(topLevel, name));
+        }
+        return this;
+    }
+
+    /**
+     * Adds files listed in a text file, one path per line. Relative paths are resolved against the directory
+     * containing the list, so an output of 'git diff --name-only' saved in the root of a working tree can be used.
+     * Empty lines and lines starting with '#' are ignored.
+     *
+     * @param listFile file with paths
+     * @return ChangedFileSet this
+     * @throws IOException if the file can't be read
+     */
+    @NotNull
+    public ChangedFileSet addFromFile(@NotNull final File listFile) throws IOException {
+        final File baseDir = listFile.getAbsoluteFile().getParentFile();
+        for (String line : Files.readAllLines(listFile.toPath(), StandardCharsets.UTF_8)) {
+            final String name = line.trim();
+            if (!name.isEmpty() && !name.startsWith("#")) {
+                final File file = new File(name);
+                add(file.isAbsolute() ? file : new File(baseDir, name));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * @return number of changed files
+     */
+    public int size() {
+        return paths.size();
+    }
+
+    /**
+     * Returns changed files from a map of source files.
+     *
+     * @param files Map(source root, files)
+     * @return Map(source root, files) - a subset of <code>files</code>
+     * @throws IOException if path of a source root can't be resolved
+     */
+    @NotNull
+    public Map<String, String[]> selectChanged(@NotNull final Map<String, String[]> files) throws IOException {
+        return select(files, true);
+    }
+
+    /**
+     * Returns unchanged files from a map of source files.
+     *
+     * @param files Map(source root, files)
+     * @return Map(source root, files) - a subset of <code>files</code>
+     * @throws IOException if path of a source root can't be resolved
+     */
+    @NotNull
+    public Map<String, String[]> selectUnchanged(@NotNull final Map<String, String[]> files) throws IOException {
+        return select(files, false);
+    }
+
+    @NotNull
+    private Map<String, String[]> select(@NotNull final Map<String, String[]> files, final boolean changed) throws IOException {
+        final Map<String, String[]> selected = new HashMap<>();
+        for (Map.Entry<String, String[]> sourceRoot : files.entrySet()) {
+            final String rootPath = new File(sourceRoot.getKey()).getCanonicalPath() + File.separator;
+            final List<String> selectedInRoot = new ArrayList<>();
+            for (String fileName : sourceRoot.getValue()) {
+                if (paths.contains(rootPath + fileName) == changed) {
+                    selectedInRoot.add(fileName);
+                }
+            }
+            if (!selectedInRoot.isEmpty()) {
+                selected.put(sourceRoot.getKey(), selectedInRoot.toArray(new String[0]));
+            }
+        }
+        return selected;
+    }
+
+    private void add(@NotNull final File file) throws IOException {
+        paths.add(file.getCanonicalPath());
+    }
+
+    @NotNull
+    private static List<String> splitNullTerminated(@NotNull final String output) {
+        final List<String> names = new ArrayList<>();
+        for (String name : output.split("\0")) {
+            // the output is consumed line by line, a line separator is appended at the end
+            if (!name.trim().isEmpty()) {
+                names.add(name);
+            }
+        }
+        return names;
+    }
+
+    @NotNull
+    private static String git(@NotNull final File workingDirectory, @NotNull final String... args) throws IOException {
+        final Commandline commandline = new Commandline();
+        commandline.setExecutable("git");
+        commandline.setWorkingDirectory(workingDirectory);
+        commandline.addArguments(args);
+
+        final CommandLineUtils.StringStreamConsumer out = new CommandLineUtils.StringStreamConsumer();
+        final CommandLineUtils.StringStreamConsumer err = new CommandLineUtils.StringStreamConsumer();
+        final int exitCode;
+        try {
+            exitCode = CommandLineUtils.executeCommandLine(commandline, out, err);
+        } catch (CommandLineException e) {
+            throw new IOException("Failed to run " + commandline, e);
+        }
+        if (exitCode != 0) {
+            throw new IOException("Command " + commandline + " failed with exit code " + exitCode + ": "
+                    + err.getOutput().trim());
+        }
+        return out.getOutput();
+    }
+}
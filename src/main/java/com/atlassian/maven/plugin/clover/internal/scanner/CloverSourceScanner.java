@@ -47,6 +47,26 @@ public interface CloverSourceScanner {
      */
     Map<String, String[]> getSourceFilesToInstrument(LanguageFileFilter languageFileFilter, boolean skipGroovySourceDirectory);
 
+    /**
+     * Same as {@link #getSourceFilesToInstrument(LanguageFileFilter, boolean)}, but it returns also files whose
+     * instrumented copies are up to date. Stale files can be selected by {@link #selectStaleFiles(Map)}.
+     *
+     * @param languageFileFilter extra filter (in addition to includes/excludes) based on programming language
+     * @param skipGroovySourceDirectory if <code>true</code> then don't list source files which are located in the
+     *                                  source directory 'native' for groovy language
+     * @return Map&lt;String, String[]&gt; = Map(source root, files)
+     */
+    Map<String, String[]> getAllSourceFilesToInstrument(LanguageFileFilter languageFileFilter, boolean skipGroovySourceDirectory);
+
+    /**
+     * Returns files which are newer than their instrumented copies. If stale files are not found by modification
+     * dates (see <code>staleness</code>), all files are returned.
+     *
+     * @param files Map(source root, files)
+     * @return Map&lt;String, String[]&gt; = Map(source root, files) - a subset of <code>files</code>
+     */
+    Map<String, String[]> selectStaleFiles(Map<String, String[]> files);
+
     /**
      * Returns the list of excluded files that we'll need to copy. This is required as otherwise the excluded files
      * won't be in the new Clover source directory and thus won't be compiled by the compile plugin. This will
@@ -0,0 +1,228 @@
+package com.atlassian.maven.plugin.clover.internal.scanner;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.tools.ant.types.selectors.SelectorUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * <p>A set of Ant-style path patterns compiled for matching many relative paths, with the same (case-sensitive)
+ * semantics as <code>SelectorUtils.matchPath()</code>.</p>
+ *
+ * <p>Patterns are stored in a trie of path tokens. Literal paths (e.g. from a generated excludesFile) are just
+ * nodes of the trie. Leading literal tokens of a glob pattern are nodes too, and the rest of all glob patterns
+ * sharing the same prefix are merged into a single regular expression attached to the node. Thanks to this, a path
+ * is matched by a walk along its own tokens instead of by testing every pattern, so the time depends on the number
+ * of files scanned, not on the number of patterns.</p>
+ */
+class CompiledPatternSet {
+
+    private static final String SEPARATOR = Pattern.quote(File.separator);
+
+    private static final String NOT_SEPARATOR = "[^" + (File.separatorChar == '\\' ? "\\\\" : File.separator) + "]";
+
+    private static class Node {
+        final Map<String, Node> children = new HashMap<>();
+
+        /** Whether a literal pattern ends at this node */
+        boolean literal;
+
+        /** Remainders of glob patterns having this node as their literal prefix, merged into globs */
+        final Set<String> globRegexes = new LinkedHashSet<>();
+
+        @Nullable
+        Pattern globs;
+    }
+
+    private final Node root = new Node();
+
+    private CompiledPatternSet(@NotNull final Collection<List<String>> tokenizedPatterns) {
+        final List<Node> nodesWithGlobs = new ArrayList<>();
+        for (List<String> tokens : tokenizedPatterns) {
+            Node node = root;
+            int i = 0;
+            while (i < tokens.size() && !SelectorUtils.hasWildcards(tokens.get(i))) {
+                node = node.children.computeIfAbsent(tokens.get(i), token -> new Node());
+                i++;
+            }
+            if (i == tokens.size()) {
+                node.literal = true;
+            } else {
+                if (node.globRegexes.isEmpty()) {
+                    nodesWithGlobs.add(node);
+                }
+                node.globRegexes.add(toRegex(tokens.subList(i, tokens.size())));
+            }
+        }
+        for (Node node : nodesWithGlobs) {
+            node.globs = Pattern.compile("(?:" + String.join(")|(?:", node.globRegexes) + ")");
+            node.globRegexes.clear();
+        }
+    }
+
+    /**
+     * Compiles patterns in the form accepted by Ant's DirectoryScanner.
+     *
+     * @param patterns include or exclude patterns
+     * @return CompiledPatternSet
+     */
+    @NotNull
+    static CompiledPatternSet compile(@NotNull final Collection<String> patterns) {
+        final List<List<String>> tokenized = new ArrayList<>(patterns.size());
+        for (String pattern : patterns) {
+            tokenized.add(tokenize(pattern));
+        }
+        return new CompiledPatternSet(tokenized);
+    }
+
+    /**
+     * Compiles patterns ending with '**', without their last token. A directory matching the resulting set has
+     * all its content matched by the original patterns. Other patterns are ignored.
+     *
+     * @param patterns include or exclude patterns
+     * @return CompiledPatternSet
+     */
+    @NotNull
+    static CompiledPatternSet compileDirectoryPatterns(@NotNull final Collection<String> patterns) {
+        final List<List<String>> tokenized = new ArrayList<>();
+        for (String pattern : patterns) {
+            final List<String> tokens = tokenize(pattern);
+            if (!tokens.isEmpty() && SelectorUtils.DEEP_TREE_MATCH.equals(tokens.get(tokens.size() - 1))) {
+                tokenized.add(tokens.subList(0, tokens.size() - 1));
+            }
+        }
+        return new CompiledPatternSet(tokenized);
+    }
+
+    /**
+     * Returns true if the path matches any of patterns.
+     *
+     * @param path relative path, using the platform's file separator
+     * @return boolean
+     */
+    boolean matches(@NotNull final String path) {
+        Node node = root;
+        int start = 0;
+        while (true) {
+            if (node.globs != null && node.globs.matcher(remainder(path, start)).matches()) {
+                return true;
+            }
+            if (start > path.length()) {
+                return node.literal;
+            }
+            final int end = tokenEnd(path, start);
+            node = node.children.get(path.substring(start, end));
+            if (node == null) {
+                return false;
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Returns true if any of patterns may match a path inside the directory. Same as
+     * <code>SelectorUtils.matchPatternStart()</code>, but it can return true for directories for which Ant would
+     * return false (patterns are not analysed beyond their first wildcard).
+     *
+     * @param directory relative path of a directory, using the platform's file separator
+     * @return boolean
+     */
+    boolean couldMatchInside(@NotNull final String directory) {
+        Node node = root;
+        int start = 0;
+        while (node.globs == null && start <= directory.length()) {
+            final int end = tokenEnd(directory, start);
+            node = node.children.get(directory.substring(start, end));
+            if (node == null) {
+                return false;
+            }
+            start = end + 1;
+        }
+        return true;
+    }
+
+    private static int tokenEnd(@NotNull final String path, final int start) {
+        final int end = path.indexOf(File.separatorChar, start);
+        return end < 0 ? path.length() : end;
+    }
+
+    /**
+     * Tokens of the path from the start index, each followed by a separator, as expected by glob regexes.
+     */
+    @NotNull
+    private static String remainder(@NotNull final String path, final int start) {
+        return start > path.length() ? "" : path.substring(start) + File.separator;
+    }
+
+    /**
+     * Same as DirectoryScanner.normalizePattern() followed by SelectorUtils.tokenizePath()
+     */
+    @NotNull
+    private static List<String> tokenize(@NotNull final String pattern) {
+        String normalized = pattern.replace('/', File.separatorChar).replace('\\', File.separatorChar);
+        if (normalized.endsWith(File.separator)) {
+            normalized += SelectorUtils.DEEP_TREE_MATCH;
+        }
+        return SelectorUtils.tokenizePath(normalized);
+    }
+
+    /**
+     * Converts pattern tokens to a regular expression matching a sequence of path tokens, each followed by
+     * a separator. '**' matches any number of tokens, '*' any number of characters in a token and '?' one character.
+     */
+    @NotNull
+    private static String toRegex(@NotNull final List<String> tokens) {
+        final StringBuilder regex = new StringBuilder();
+        for (String token : tokens) {
+            if (SelectorUtils.DEEP_TREE_MATCH.equals(token)) {
+                regex.append("(?:").append(NOT_SEPARATOR).append("+").append(SEPARATOR).append(")*");
+                continue;
+            }
+            final StringBuilder literal = new StringBuilder();
+            for (char c : token.toCharArray()) {
+                if (c == '*' || c == '?') {
+                    if (literal.length() > 0) {
+                        regex.append(Pattern.quote(literal.toString()));
+                        literal.setLength(0);
+                    }
+                    regex.append(NOT_SEPARATOR).append(c == '*' ? "*" : "");
+                } else {
+                    literal.append(c);
+                }
+            }
+            if (literal.length() > 0) {
+                regex.append(Pattern.quote(literal.toString()));
+            }
+            regex.append(SEPARATOR);
+        }
+        return regex.toString();
+    }
+}
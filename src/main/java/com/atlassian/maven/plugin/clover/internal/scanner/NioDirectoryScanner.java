@@ -0,0 +1,208 @@
+package com.atlassian.maven.plugin.clover.internal.scanner;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.tools.ant.DirectoryScanner;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * <p>A directory scanner based on <code>java.nio.file</code>, which walks subdirectories in parallel using
+ * the fork-join pool. It produces the same lists of files as Ant's {@link DirectoryScanner} configured in
+ * {@link SourceScanCache}, but without building intermediate collections of directories and of deselected files.
+ * Patterns are matched by a {@link CompiledPatternSet}, so huge lists of includes or excludes don't slow it down.</p>
+ *
+ * <p>If excluded files are not needed, directories which can't contain any included file (no include pattern
+ * can match anything inside or an exclude pattern ending with '**' matches the directory) are not visited at
+ * all.</p>
+ */
+class NioDirectoryScanner {
+
+    @NotNull
+    private final CompiledPatternSet includes;
+
+    @NotNull
+    private final CompiledPatternSet excludes;
+
+    /**
+     * Exclude patterns ending with '**', without the last token; a directory matching any of them has all its
+     * content excluded.
+     */
+    @NotNull
+    private final CompiledPatternSet deepExcludes;
+
+    private final boolean collectExcludedFiles;
+
+    /**
+     * @param includes             include patterns
+     * @param excludes             exclude patterns (default excludes are added automatically)
+     * @param collectExcludedFiles whether to list excluded and not included files too
+     */
+    NioDirectoryScanner(@NotNull final Collection<String> includes, @NotNull final Collection<String> excludes,
+                        final boolean collectExcludedFiles) {
+        final Set<String> allExcludes = new HashSet<>(excludes);
+        allExcludes.addAll(Arrays.asList(DirectoryScanner.getDefaultExcludes()));
+
+        this.includes = CompiledPatternSet.compile(includes);
+        this.excludes = CompiledPatternSet.compile(allExcludes);
+        this.deepExcludes = CompiledPatternSet.compileDirectoryPatterns(allExcludes);
+        this.collectExcludedFiles = collectExcludedFiles;
+    }
+
+    /**
+     * Scans the directory.
+     *
+     * @param sourceRoot directory to scan
+     * @return SourceScanCache.ScanResult, excluded files are <code>null</code> if they were not collected
+     */
+    @NotNull
+    SourceScanCache.ScanResult scan(@NotNull final File sourceRoot) {
+        final FileLists lists;
+        if (sourceRoot.isDirectory()) {
+            final Set<Path> ancestors = new HashSet<>();
+            try {
+                lists = ForkJoinPool.commonPool().invoke(
+                        new ScanTask(sourceRoot.toPath(), "", ancestors));
+            } catch (UncheckedIOException e) {
+                throw new IllegalStateException("Failed to scan directory " + sourceRoot, e.getCause());
+            }
+        } else {
+            lists = new FileLists();
+        }
+
+        return new SourceScanCache.ScanResult(
+                lists.included.toArray(new String[0]),
+                collectExcludedFiles ? lists.excluded.toArray(new String[0]) : null);
+    }
+
+    private boolean isIncluded(@NotNull final String path) {
+        return includes.matches(path) && !excludes.matches(path);
+    }
+
+    /**
+     * Same as DirectoryScanner.couldHoldIncluded() and DirectoryScanner.contentsExcluded(), used by Ant to skip
+     * directories in a "fast scan". Note that some extra checks done by Ant are omitted, i.e. we can visit a
+     * directory which Ant would skip, but never skip one which Ant would visit.
+     */
+    private boolean canSkipDirectory(@NotNull final String path) {
+        if (collectExcludedFiles) {
+            return false;
+        }
+        return !includes.couldMatchInside(path) || deepExcludes.matches(path);
+    }
+
+    private static class FileLists {
+        final List<String> included = new ArrayList<>();
+        final List<String> excluded = new ArrayList<>();
+
+        void addAll(@NotNull final FileLists other) {
+            included.addAll(other.included);
+            excluded.addAll(other.excluded);
+        }
+    }
+
+    /**
+     * Scans one directory; files are classified in place, subdirectories are forked. Results are joined in
+     * the order of directory entries, like in Ant's depth-first scan.
+     */
+    private class ScanTask extends RecursiveTask<FileLists> {
+        @NotNull
+        private final Path dir;
+
+        /**
+         * Path relative to the source root, empty for the root itself
+         */
+        @NotNull
+        private final String relativePath;
+
+        /**
+         * Real paths of this directory and its parents, to detect symbolic link cycles
+         */
+        @NotNull
+        private final Set<Path> ancestors;
+
+        ScanTask(@NotNull final Path dir, @NotNull final String relativePath, @NotNull final Set<Path> ancestors) {
+            this.dir = dir;
+            this.relativePath = relativePath;
+            this.ancestors = ancestors;
+        }
+
+        @Override
+        protected FileLists compute() {
+            final Set<Path> pathToDir = new HashSet<>(ancestors);
+            try {
+                if (!pathToDir.add(dir.toRealPath())) {
+                    return new FileLists(); // symbolic link cycle
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            // each element is either a relative file path (String) or a forked subdirectory scan (ScanTask)
+            final List<Object> entries = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                for (Path entry : stream) {
+                    final String fileName = entry.getFileName().toString();
+                    final String entryPath = relativePath.isEmpty() ? fileName : relativePath + File.separator + fileName;
+                    if (Files.isDirectory(entry)) {
+                        if (!canSkipDirectory(entryPath)) {
+                            final ScanTask subTask = new ScanTask(entry, entryPath, pathToDir);
+                            subTask.fork();
+                            entries.add(subTask);
+                        }
+                    } else if (Files.isRegularFile(entry)) {
+                        entries.add(entryPath);
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            final FileLists lists = new FileLists();
+            for (Object entry : entries) {
+                if (entry instanceof ScanTask) {
+                    lists.addAll(((ScanTask) entry).join());
+                } else {
+                    final String path = (String) entry;
+                    if (isIncluded(path)) {
+                        lists.included.add(path);
+                    } else if (collectExcludedFiles) {
+                        lists.excluded.add(path);
+                    }
+                }
+            }
+            return lists;
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.atlassian.maven.plugin.clover.internal.scanner;
+
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+import org.apache.tools.ant.DirectoryScanner;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * <p>Caches results of scanning source roots, so that every source root is walked only once during a mojo
+ * execution, no matter how many times it's queried for Java files, Groovy files or excluded files.</p>
+ *
+ * <p>Every file found in a source root is classified as included (it matches includes and does not match excludes
+ * nor default excludes) or excluded (all other files). Further filtering (programming language, staleness) is
+ * done by a {@link CloverSourceScanner} on the cached result.</p>
+ *
+ * <p>Directories are scanned by Ant's {@link DirectoryScanner} or by {@link NioDirectoryScanner}.</p>
+ */
+public class SourceScanCache {
+
+    public static final String SCANNER_ANT = "ant";
+
+    public static final String SCANNER_NIO = "nio";
+
+    /**
+     * Result of scanning a single source root. File names are relative to the source root.
+     */
+    static class ScanResult {
+        @NotNull
+        final String[] includedFiles;
+
+        /**
+         * Excluded and not included files, <code>null</code> if they were not collected
+         */
+        @Nullable
+        final String[] excludedFiles;
+
+        ScanResult(@NotNull final String[] includedFiles, @Nullable final String[] excludedFiles) {
+            this.includedFiles = includedFiles;
+            this.excludedFiles = excludedFiles;
+        }
+    }
+
+    /**
+     * Absolute path of a source root -&gt; scan result
+     */
+    private final Map<String, ScanResult> results = new ConcurrentHashMap<>();
+
+    private final boolean useNioScanner;
+
+    private final boolean collectExcludedFiles;
+
+    /**
+     * @param scanner              {@link #SCANNER_ANT} or {@link #SCANNER_NIO}
+     * @param collectExcludedFiles whether excluded files are expected to be needed; if not, the NIO scanner
+     *                             skips directories which can't contain included files (if excluded files are
+     *                             requested later, the source root is scanned again)
+     * @throws IllegalArgumentException if scanner is unknown
+     */
+    public SourceScanCache(@NotNull final String scanner, final boolean collectExcludedFiles) {
+        if (!SCANNER_ANT.equals(scanner) && !SCANNER_NIO.equals(scanner)) {
+            throw new IllegalArgumentException("Unknown source scanner '" + scanner + "', valid values are: "
+                    + SCANNER_ANT + ", " + SCANNER_NIO);
+        }
+        this.useNioScanner = SCANNER_NIO.equals(scanner);
+        this.collectExcludedFiles = collectExcludedFiles;
+    }
+
+    /**
+     * Returns the scan result for the source root, scanning it if it's not in the cache yet.
+     *
+     * @param sourceRoot directory to scan
+     * @param includes   include patterns
+     * @param excludes   exclude patterns (default excludes are added automatically)
+     * @return ScanResult
+     */
+    @NotNull
+    ScanResult scan(@NotNull final File sourceRoot, @NotNull final Set<String> includes, @NotNull final Set<String> excludes) {
+        return results.computeIfAbsent(sourceRoot.getAbsolutePath(),
+                path -> scanDirectory(sourceRoot, includes, excludes, collectExcludedFiles));
+    }
+
+    /**
+     * Returns the scan result for the source root including excluded files, scanning it if it's not in the cache
+     * yet or if excluded files were not collected.
+     *
+     * @param sourceRoot directory to scan
+     * @param includes   include patterns
+     * @param excludes   exclude patterns (default excludes are added automatically)
+     * @return ScanResult with excluded files
+     */
+    @NotNull
+    ScanResult scanWithExcludedFiles(@NotNull final File sourceRoot, @NotNull final Set<String> includes,
+                                     @NotNull final Set<String> excludes) {
+        return results.compute(sourceRoot.getAbsolutePath(),
+                (path, result) -> result != null && result.excludedFiles != null
+                        ? result
+                        : scanDirectory(sourceRoot, includes, excludes, true));
+    }
+
+    /**
+     * Removes results for the given directory, e.g. because files were written into it.
+     *
+     * @param directory directory to forget
+     */
+    public void invalidate(@NotNull final String directory) {
+        results.remove(new File(directory).getAbsolutePath());
+    }
+
+    @NotNull
+    private ScanResult scanDirectory(@NotNull final File sourceRoot, @NotNull final Set<String> includes,
+                                     @NotNull final Set<String> excludes, final boolean withExcludedFiles) {
+        return useNioScanner
+                ? new NioDirectoryScanner(includes, excludes, withExcludedFiles).scan(sourceRoot)
+                : scanWithAnt(sourceRoot, includes, excludes);
+    }
+
+    /**
+     * Scans a directory once. Default excludes are added to includes, so that they're listed as excluded files
+     * and not as not-included ones; it does not change the set of included files, because they're in excludes too.
+     */
+    @NotNull
+    private static ScanResult scanWithAnt(@NotNull final File sourceRoot, @NotNull final Set<String> includes,
+                                          @NotNull final Set<String> excludes) {
+        final DirectoryScanner dirScan = new DirectoryScanner();
+        dirScan.setBasedir(sourceRoot);
+        dirScan.addExcludes(excludes.toArray(new String[0]));
+        dirScan.setIncludes(concatArrays(includes.toArray(new String[0]), DirectoryScanner.getDefaultExcludes()));
+        dirScan.addDefaultExcludes();
+        dirScan.scan();
+
+        return new ScanResult(
+                dirScan.getIncludedFiles(),
+                concatArrays(dirScan.getExcludedFiles(), dirScan.getNotIncludedFiles()));
+    }
+
+    @NotNull
+    private static String[] concatArrays(@NotNull final String[] a1, @NotNull final String[] a2) {
+        final String[] result = new String[a1.length + a2.length];
+        System.arraycopy(a1, 0, result, 0, a1.length);
+        System.arraycopy(a2, 0, result, a1.length, a2.length);
+        return result;
+    }
+}
@@ -1,6 +1,11 @@
 package com.atlassian.maven.plugin.clover;
 
+import com.atlassian.maven.plugin.clover.internal.CloverSessionState;
 import org.apache.maven.artifact.Artifact;
+import org.apache.maven.artifact.DefaultArtifact;
+import org.apache.maven.artifact.handler.DefaultArtifactHandler;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
 import org.apache.maven.execution.MavenExecutionRequest;
 import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.logging.Log;
@@ -146,6 +151,32 @@ public class CloverInstrumentInternalMojoTest {
         assertTrue("Resulting artifact should have been the original one", resultSet.contains(artifact));
     }
 
+    @Test
+    public void testSwizzleCloverDependenciesUsesClassesOfInstrumentedReactorModule() throws ArtifactResolverException {
+        final File classesDir = new File(System.getProperty("java.io.tmpdir"));
+        final Artifact artifact = new DefaultArtifact("some.groupId", "reactorModule", "1.0-SNAPSHOT",
+                "compile", "jar", null, new DefaultArtifactHandler("jar"));
+        artifact.setFile(new File("reactorModule/target/reactorModule-1.0-SNAPSHOT.jar"));
+
+        final Log mockLog = mock(Log.class);
+        this.mojo.setLog(mockLog);
+        setUpCommonMocksForSwizzleCloverDependenciesTests(null, mock(MavenExecutionRequest.class));
+        // Maven 3.0 - 3.3.1 gives every module its own clone of the session
+        final MavenSession session = new MavenSession(null, null,
+                new DefaultMavenExecutionRequest(), new DefaultMavenExecutionResult());
+        this.mojo.setMavenSession(session);
+        CloverSessionState.getInstance(session.clone()).getCloveredArtifactCache()
+                .addReactorModule("some.groupId", "reactorModule", "1.0-SNAPSHOT", classesDir);
+
+        final Set<Artifact> resultSet = this.mojo.swizzleCloverDependencies(Collections.singleton(artifact));
+
+        assertEquals(1, resultSet.size());
+        final Artifact result = resultSet.iterator().next();
+        assertThat(result.getFile(), equalTo(classesDir));
+        assertThat(result.getScope(), equalTo("compile"));
+        verify(this.mojo.artifactResolver, never()).resolveArtifact(any(ProjectBuildingRequest.class), any(Artifact.class));
+    }
+
     private void setUpCommonMocksForSwizzleCloverDependenciesTests(final Artifact artifact,
                                                                    final MavenExecutionRequest mockExecutionRequest) throws ArtifactResolverException {
         final RepositorySystem mockRepositorySystem = mock(RepositorySystem.class);
@@ -167,7 +198,7 @@ public class CloverInstrumentInternalMojoTest {
 
         this.mojo.repositorySystem = mockRepositorySystem;
         this.mojo.artifactResolver = mockArtifactResolver;
-        this.mojo.mavenSession = mockMavenSession;
+        this.mojo.setMavenSession(mockMavenSession);
     }
 
     private static Artifact setUpMockArtifact(final String groupId, final String artifactId,
@@ -0,0 +1,46 @@
+package com.atlassian.maven.plugin.clover;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for {@link CloverMergeMojo}
+ */
+public class CloverMergeMojoTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testDatabasesInDefaultExcludesAreNotMerged() throws IOException {
+        final File baseDir = temp.newFolder("databases");
+        final File first = createFile(baseDir, "first.db");
+        final File second = createFile(baseDir, "module/second.db");
+        createFile(baseDir, ".git/objects/third.db");
+        createFile(baseDir, "module/.svn/fourth.db");
+
+        final CloverMergeMojo mojo = new CloverMergeMojo();
+        TestUtil.setPrivateField(CloverMergeMojo.class, mojo, "baseDir", baseDir);
+        TestUtil.setPrivateField(CloverMergeMojo.class, mojo, "includes", "**/*.db");
+
+        assertThat(new HashSet<>(mojo.findCloverDatabases()),
+                equalTo(new HashSet<>(Arrays.asList(first.getPath(), second.getPath()))));
+    }
+
+    private static File createFile(final File baseDir, final String path) throws IOException {
+        final File file = new File(baseDir, path);
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        assertTrue(file.createNewFile());
+        return file;
+    }
+}
@@ -0,0 +1,275 @@
+package com.atlassian.maven.plugin.clover;
+
+import com.atlassian.clover.CloverInstr;
+import com.atlassian.clover.ant.tasks.HistoryPointTask;
+import com.atlassian.maven.plugin.clover.internal.AbstractCloverMojo;
+import org.apache.maven.model.Model;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test for {@link CloverReportMojo}
+ */
+public class CloverReportMojoTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private MavenProject project;
+
+    private File cloverDatabase;
+
+    private File historyDir;
+
+    private File baseDir;
+
+    @Before
+    public void setUp() throws IOException {
+        baseDir = temp.newFolder("project");
+        writeSource(baseDir, "src/test/java/p/CalcTest.java",
+                "package p;\npublic class CalcTest {\n"
+                        + "    public void testMax() { new Calc().max(1, 2); }\n}\n");
+        // a test source only because of the test pattern of the report, it's not a test class
+        writeSource(baseDir, "src/test/java/p/CalcFixture.java",
+                "package p;\npublic class CalcFixture {\n"
+                        + "    public int max() { return new Calc().max(3, 4); }\n}\n");
+
+        final Model model = new Model();
+        model.setGroupId("com.example");
+        model.setArtifactId("calc");
+        model.setVersion("1.0");
+        project = new MavenProject(model);
+        project.setFile(new File(baseDir, "pom.xml"));
+        project.getBuild().setDirectory(new File(baseDir, "target").getPath());
+
+        cloverDatabase = new File(baseDir, "target/clover/clover.db");
+        instrument("package p;\npublic class Calc {\n"
+                + "    public int max(int a, int b) { if (a > b) { return a; } return b; }\n}\n");
+
+        historyDir = new File(baseDir, "target/clover/history");
+        final Project antProject = new Project();
+        antProject.init();
+        final HistoryPointTask historyPoint = new HistoryPointTask();
+        historyPoint.setProject(antProject);
+        historyPoint.init();
+        historyPoint.setInitString(cloverDatabase.getPath());
+        historyPoint.setHistoryDir(historyDir);
+        historyPoint.setAlwaysReport(true);
+        historyPoint.execute();
+        assertThat(historyDir.list().length, equalTo(1));
+    }
+
+    @Test
+    public void testDirectReportsAreSameAsReportsOfDefaultDescriptor() throws Exception {
+        final File descriptorOut = new File(temp.getRoot(), "descriptor");
+        final CloverReportMojo descriptorMojo = createMojo(descriptorOut);
+        setDefaultReportDescriptor(descriptorMojo);
+        descriptorMojo.execute();
+
+        final File directOut = new File(temp.getRoot(), "direct");
+        createMojo(directOut).execute();
+
+        assertSameReports(directOut, descriptorOut);
+    }
+
+    @Test
+    public void testDirectReportsRenderedByMoreThreadsAreSameAsSerialOnes() throws Exception {
+        final File serialOut = new File(temp.getRoot(), "serial");
+        final CloverReportMojo serialMojo = createMojo(serialOut);
+        TestUtil.setPrivateField(CloverReportMojo.class, serialMojo, "reportThreads", 1);
+        serialMojo.execute();
+
+        final File threadedOut = new File(temp.getRoot(), "threaded");
+        final CloverReportMojo threadedMojo = createMojo(threadedOut);
+        TestUtil.setPrivateField(CloverReportMojo.class, threadedMojo, "reportThreads", 4);
+        threadedMojo.execute();
+
+        assertSameReports(threadedOut, serialOut);
+    }
+
+    @Test
+    public void testDescriptorReportsRenderedByMoreThreadsAreSameAsSerialOnes() throws Exception {
+        final File serialOut = new File(temp.getRoot(), "serial");
+        final CloverReportMojo serialMojo = createMojo(serialOut);
+        setDefaultReportDescriptor(serialMojo);
+        TestUtil.setPrivateField(CloverReportMojo.class, serialMojo, "reportThreads", 1);
+        serialMojo.execute();
+
+        final File threadedOut = new File(temp.getRoot(), "threaded");
+        final CloverReportMojo threadedMojo = createMojo(threadedOut);
+        setDefaultReportDescriptor(threadedMojo);
+        TestUtil.setPrivateField(CloverReportMojo.class, threadedMojo, "reportThreads", 4);
+        threadedMojo.execute();
+
+        assertSameReports(threadedOut, serialOut);
+    }
+
+    @Test
+    public void testFailureOfReportIsPropagated() throws Exception {
+        final File out = new File(temp.getRoot(), "out");
+        // the XML report can't be written
+        assertTrue(new File(out, "clover.xml").mkdirs());
+        final CloverReportMojo mojo = createMojo(out);
+
+        try {
+            mojo.execute();
+            fail("Failure of the XML report should fail the mojo");
+        } catch (BuildException expected) {
+            // rendering of other formats is not interrupted
+            assertTrue(new File(out, "index.html").isFile());
+            assertTrue(new File(out, "clover.pdf").isFile());
+        }
+    }
+
+    @Test
+    public void testIncrementalHtmlReportRendersPagesOfChangedFilesOnly() throws Exception {
+        final File incrementalOut = new File(temp.getRoot(), "incremental");
+        final CloverReportMojo incrementalMojo = createMojo(incrementalOut);
+        TestUtil.setPrivateField(CloverReportMojo.class, incrementalMojo, "incrementalHtml", true);
+        incrementalMojo.execute();
+        final File unchangedPage = new File(incrementalOut, "p/CalcFixture.html");
+        final File changedPage = new File(incrementalOut, "p/Calc.html");
+        assertTrue(unchangedPage.isFile());
+        assertTrue(unchangedPage.setLastModified(unchangedPage.lastModified() - 60000));
+        assertTrue(changedPage.setLastModified(changedPage.lastModified() - 60000));
+        final long unchangedPageModified = unchangedPage.lastModified();
+        final long changedPageModified = changedPage.lastModified();
+
+        // a method is added to one source file
+        instrument("package p;\npublic class Calc {\n"
+                + "    public int max(int a, int b) { if (a > b) { return a; } return b; }\n"
+                + "    public int min(int a, int b) { return a < b ? a : b; }\n}\n");
+        incrementalMojo.execute();
+
+        assertThat(unchangedPage.lastModified(), equalTo(unchangedPageModified));
+        assertTrue(changedPage.lastModified() > changedPageModified);
+        assertTrue(new String(Files.readAllBytes(changedPage.toPath()), StandardCharsets.UTF_8).contains("min("));
+
+        final File completeOut = new File(temp.getRoot(), "complete");
+        createMojo(completeOut).execute();
+        assertTrue(new File(incrementalOut, "clover-html-index.properties").delete());
+        assertSameReports(incrementalOut, completeOut);
+    }
+
+    private void setDefaultReportDescriptor(final CloverReportMojo mojo) throws MojoExecutionException {
+        TestUtil.setPrivateField(CloverReportMojo.class, mojo, "reportDescriptor",
+                AbstractCloverMojo.getResourceAsFile("default-clover-report.xml", new SystemStreamLog(),
+                        getClass().getClassLoader()));
+    }
+
+    private CloverReportMojo createMojo(final File outputDirectory) {
+        final CloverReportMojo mojo = new CloverReportMojo();
+        mojo.setLog(new TestUtil.RecordingLogger());
+        TestUtil.setPrivateField(CloverReportMojo.class, mojo, "project", project);
+        TestUtil.setPrivateField(CloverReportMojo.class, mojo, "reactorProjects", Collections.singletonList(project));
+        TestUtil.setPrivateField(CloverReportMojo.class, mojo, "cloverDatabase", cloverDatabase.getPath());
+        TestUtil.setPrivateField(CloverReportMojo.class, mojo, "cloverMergeDatabase",
+                new File(cloverDatabase.getParentFile(), "cloverMerge.db").getPath());
+        TestUtil.setPrivateField(CloverReportMojo.class, mojo, "outputDirectory", outputDirectory);
+        TestUtil.setPrivateField(CloverReportMojo.class, mojo, "historyDir", historyDir.getPath());
+        TestUtil.setPrivateField(CloverReportMojo.class, mojo, "generateHtml", true);
+        TestUtil.setPrivateField(CloverReportMojo.class, mojo, "generateXml", true);
+        TestUtil.setPrivateField(CloverReportMojo.class, mojo, "generateJson", true);
+        TestUtil.setPrivateField(CloverReportMojo.class, mojo, "generatePdf", true);
+        TestUtil.setPrivateField(CloverReportMojo.class, mojo, "generateHistorical", true);
+        TestUtil.setPrivateField(CloverReportMojo.class, mojo, "title", "Calc 1.0");
+        TestUtil.setPrivateField(CloverReportMojo.class, mojo, "orderBy", "PcCoveredAsc");
+        TestUtil.setPrivateField(CloverReportMojo.class, mojo, "charset", "UTF-8");
+        return mojo;
+    }
+
+    private static void assertSameReports(final File actualDir, final File expectedDir) throws IOException {
+        final Map<String, String> actual = readReports(actualDir);
+        final Map<String, String> expected = readReports(expectedDir);
+        assertThat(actual.keySet(), equalTo(expected.keySet()));
+        for (Map.Entry<String, String> file : expected.entrySet()) {
+            assertThat(file.getKey(), actual.get(file.getKey()), equalTo(file.getValue()));
+        }
+    }
+
+    /**
+     * Relative path -&gt; content of text files (normalized) or size of binary ones (PDF reports are only listed).
+     */
+    private static Map<String, String> readReports(final File dir) throws IOException {
+        final Map<String, String> reports = new TreeMap<>();
+        try (Stream<Path> files = Files.walk(dir.toPath())) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                final String name = dir.toPath().relativize(file).toString().replace(File.separatorChar, '/');
+                final String content;
+                if (name.matches(".*\\.(html|xml|js|json)")) {
+                    content = normalize(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+                } else if (name.endsWith(".pdf")) {
+                    content = ""; // contains the time of generation
+                } else {
+                    content = Long.toString(Files.size(file));
+                }
+                reports.put(name, content);
+            }
+        }
+        return reports;
+    }
+
+    /**
+     * Removes times of generation of the report and of the database. Clover lists report columns in colophon.js
+     * in a random order (they're kept in a HashSet), so they're sorted.
+     */
+    private static String normalize(final String content) {
+        final String normalized = content
+                .replaceAll("generated=\"\\d+\"", "generated=\"0\"")
+                .replaceAll("\"stamp\":\\d+", "\"stamp\":0")
+                .replaceAll("on \\w{3} \\w{3} \\d{1,2} \\d{4} \\d{2}:\\d{2}:\\d{2} \\w+ using", "on DATE using")
+                .replaceAll("database \\w{3} \\w{3} \\d{1,2} \\d{4} \\d{2}:\\d{2}:\\d{2} \\w+", "database DATE");
+        final Matcher columns = Pattern.compile("\"columns\":\\[([^\\]]*)]").matcher(normalized);
+        if (!columns.find()) {
+            return normalized;
+        }
+        final List<String> names = new ArrayList<>(Arrays.asList(columns.group(1).split(",")));
+        Collections.sort(names);
+        return normalized.substring(0, columns.start(1)) + String.join(",", names) + normalized.substring(columns.end(1));
+    }
+
+    private void instrument(final String calcSource) throws IOException {
+        writeSource(baseDir, "src/main/java/p/Calc.java", calcSource);
+        final List<String> args = new ArrayList<>(Arrays.asList(
+                "-i", cloverDatabase.getPath(), "-d", new File(baseDir, "target/instrumented").getPath(), "-e", "UTF-8"));
+        for (String source : Arrays.asList("src/main/java/p/Calc.java", "src/test/java/p/CalcTest.java",
+                "src/test/java/p/CalcFixture.java")) {
+            args.add(new File(baseDir, source).getPath());
+        }
+        assertThat(CloverInstr.mainImpl(args.toArray(new String[0])), equalTo(0));
+    }
+
+    private static File writeSource(final File baseDir, final String path, final String content) throws IOException {
+        final File file = new File(baseDir, path);
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+}
@@ -1,6 +1,11 @@
 package com.atlassian.maven.plugin.clover;
 
 import com.atlassian.clover.ant.tasks.HistoryPointTask;
+import com.atlassian.maven.plugin.clover.internal.AbstractCloverMojo;
+import com.atlassian.maven.plugin.clover.internal.CloverSessionState;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.MojoExecutionException;
 import org.apache.maven.project.MavenProject;
 import org.apache.tools.ant.Project;
@@ -11,8 +16,15 @@ import org.junit.Test;
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.ReentrantLock;
 
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
@@ -114,4 +126,40 @@ public class CloverSaveHistoryMojoTest {
 
         assertTrue(log.contains("Saving Clover history point for database [" + mojo.resolveCloverDatabase() + "] in [" + historyDir + "]", TestUtil.Level.INFO));
     }
+
+    @Test
+    public void testFragmentsAreNotMergedWhileOtherModuleWritesDatabase() throws Exception {
+        // Maven 3.0 - 3.3.1 gives every module its own clone of the session
+        final MavenSession session = new MavenSession(null, null,
+                new DefaultMavenExecutionRequest(), new DefaultMavenExecutionResult());
+        mojo.setMavenSession(session);
+        TestUtil.setPrivateField(AbstractCloverMojo.class, mojo, "singleCloverDatabase", true);
+        TestUtil.setPrivateField(AbstractCloverMojo.class, mojo, "cloverDatabaseFragments", true);
+        TestUtil.setPrivateField(CloverSaveHistoryMojo.class, mojo, "historyDir", ".cloverhistory");
+
+        final ReentrantLock databaseLock = CloverSessionState.getInstance(session.clone())
+                .getDatabaseLock(mojo.resolveCloverDatabase());
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        databaseLock.lock();
+        try {
+            final Future<?> history = executor.submit(() -> {
+                mojo.execute();
+                return null;
+            });
+            try {
+                history.get(200, TimeUnit.MILLISECONDS);
+                fail("Fragments were merged while the database was locked by other module");
+            } catch (TimeoutException expected) {
+                // waits for the lock
+            }
+            databaseLock.unlock();
+            history.get();
+        } finally {
+            if (databaseLock.isHeldByCurrentThread()) {
+                databaseLock.unlock();
+            }
+            executor.shutdownNow();
+        }
+        verify(task, times(1)).init();
+    }
 }
@@ -0,0 +1,113 @@
+package com.atlassian.maven.plugin.clover.internal;
+
+import com.atlassian.clover.CloverInstr;
+import com.atlassian.clover.registry.Clover2Registry;
+import com.atlassian.clover.registry.metrics.HasMetricsFilter;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CloverDatabaseFragmentsTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testFragmentIsLocatedNextToSingleDatabase() {
+        final MavenProject project = mock(MavenProject.class);
+        when(project.getGroupId()).thenReturn("com.example");
+        when(project.getArtifactId()).thenReturn("module");
+
+        final File database = new File(temp.getRoot(), "clover.db");
+        assertThat(CloverDatabaseFragments.getFragment(database.getPath(), project),
+                equalTo(new File(temp.getRoot(), "fragments/com.example_module/clover.db").getPath()));
+    }
+
+    @Test
+    public void testFragmentsAreMergedOnlyWhenChanged() throws Exception {
+        final File database = new File(temp.getRoot(), "clover.db");
+        final File fragment1 = instrumentFragment(database, "module1", "A");
+        instrumentFragment(database, "module2", "B");
+
+        CloverDatabaseFragments.merge(database.getPath(), new SystemStreamLog());
+        assertThat(Clover2Registry.fromFile(database).getProject().getFiles(HasMetricsFilter.ACCEPT_ALL).size(),
+                equalTo(2));
+
+        // nothing changed since the last merge
+        final long merged = database.lastModified() - 10000;
+        assertTrue(database.setLastModified(merged));
+        assertTrue(fragment1.setLastModified(merged - 10000));
+        CloverDatabaseFragments.merge(database.getPath(), new SystemStreamLog());
+        assertThat(database.lastModified(), equalTo(merged));
+
+        // a fragment was instrumented again
+        assertTrue(fragment1.setLastModified(merged + 5000));
+        CloverDatabaseFragments.merge(database.getPath(), new SystemStreamLog());
+        assertFalse(database.lastModified() == merged);
+    }
+
+    @Test
+    public void testShardsOfFragmentsAreMergedFirst() throws Exception {
+        final File database = new File(temp.getRoot(), "clover.db");
+        final File fragment = new File(temp.getRoot(), "fragments/module1/clover.db");
+        instrument(new File(CloverDatabaseFragments.getShard(fragment.getPath(), 1, 2)), "shard1", "A");
+        instrument(new File(CloverDatabaseFragments.getShard(fragment.getPath(), 2, 2)), "shard2", "B");
+        instrumentFragment(database, "module2", "C");
+
+        CloverDatabaseFragments.merge(database.getPath(), new SystemStreamLog());
+        assertThat(Clover2Registry.fromFile(fragment).getProject().getFiles(HasMetricsFilter.ACCEPT_ALL).size(),
+                equalTo(2));
+        assertThat(Clover2Registry.fromFile(database).getProject().getFiles(HasMetricsFilter.ACCEPT_ALL).size(),
+                equalTo(3));
+    }
+
+    @Test
+    public void testShardsOfDifferentCountAreDeleted() throws Exception {
+        final File database = new File(temp.getRoot(), "clover.db");
+        final File oldShard = instrument(new File(CloverDatabaseFragments.getShard(database.getPath(), 1, 2)), "old", "A");
+        final File shard = instrument(new File(CloverDatabaseFragments.getShard(database.getPath(), 1, 3)), "new", "B");
+        final File module = instrumentFragment(database, "module", "C");
+
+        CloverDatabaseFragments.deleteStaleShards(database.getPath(), 3);
+        assertFalse(oldShard.getParentFile().exists());
+        assertTrue(shard.isFile());
+        assertTrue(module.isFile());
+
+        CloverDatabaseFragments.deleteStaleShards(database.getPath(), 1);
+        assertFalse(shard.getParentFile().exists());
+        assertTrue(module.isFile());
+    }
+
+    private File instrumentFragment(final File database, final String module, final String className) throws Exception {
+        return instrument(new File(temp.getRoot(),
+                CloverDatabaseFragments.FRAGMENTS_DIRECTORY + "/" + module + "/" + database.getName()), module, className);
+    }
+
+    private File instrument(final File fragment, final String module, final String className) throws Exception {
+        final File srcDir = temp.newFolder(module, "src");
+        Files.write(new File(srcDir, className + ".java").toPath(),
+                ("public class " + className + " { int get() { return 1; } }").getBytes(StandardCharsets.UTF_8));
+        final int result = CloverInstr.mainImpl(new String[] {
+                "-i", fragment.getPath(),
+                "-s", srcDir.getPath(),
+                "-d", temp.newFolder(module, "out").getPath() });
+        assertThat(result, equalTo(0));
+        for (File file : fragment.getParentFile().listFiles()) {
+            assertTrue(file.setLastModified(System.currentTimeMillis() - 60000));
+        }
+        return fragment;
+    }
+}
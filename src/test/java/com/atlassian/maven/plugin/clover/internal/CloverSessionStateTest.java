@@ -0,0 +1,113 @@
+package com.atlassian.maven.plugin.clover.internal;
+
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.project.MavenProject;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class CloverSessionStateTest {
+
+    @Test
+    public void testOriginalSourceDirectoriesOfModulesBuiltInParallel() throws Exception {
+        final CloverSessionState state = new CloverSessionState();
+        final ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                final String module = "g:module" + i + ":jar:1.0";
+                final int index = i;
+                futures.add(executor.submit(() -> {
+                    state.setOriginalSrcDir(module, "src" + index);
+                    state.setOriginalSrcTestDir(module, "test" + index);
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(state.getOriginalSrcDir("g:module" + i + ":jar:1.0"), equalTo("src" + i));
+            assertThat(state.getOriginalSrcTestDir("g:module" + i + ":jar:1.0"), equalTo("test" + i));
+        }
+        assertThat(state.getOriginalSrcDir("g:other:jar:1.0"), nullValue());
+    }
+
+    @Test
+    public void testStartDateIsSetByFirstModule() throws InterruptedException {
+        final CloverSessionState state = new CloverSessionState();
+        assertThat(state.getStartDate(), nullValue());
+
+        state.markBuildStarted();
+        final Date startDate = state.getStartDate();
+        Thread.sleep(10);
+        state.markBuildStarted();
+        assertThat(state.getStartDate(), sameInstance(startDate));
+    }
+
+    @Test
+    public void testStateIsSharedWithinSessionOnly() {
+        final MavenSession session = newSession();
+        final CloverSessionState state = CloverSessionState.getInstance(session);
+        assertThat(CloverSessionState.getInstance(session), sameInstance(state));
+        assertThat(CloverSessionState.getInstance(newSession()), not(sameInstance(state)));
+
+        assertThat(state.getDatabaseLock("target/clover/clover.db"),
+                sameInstance(state.getDatabaseLock(new File("target/clover/clover.db").getAbsolutePath())));
+    }
+
+    @Test
+    public void testStateIsSharedByClonesOfSession() {
+        // Maven 3.0 - 3.3.1 clones the session for every module
+        final MavenSession session = newSession();
+        final MavenSession moduleSession = session.clone();
+        final CloverSessionState state = CloverSessionState.getInstance(moduleSession);
+        state.setOriginalSrcDir("g:a:jar:1.0", "src/main/java");
+        state.markBuildStarted();
+
+        final CloverSessionState sessionState = CloverSessionState.getInstance(session);
+        assertThat(sessionState, sameInstance(state));
+        assertThat(sessionState.getOriginalSrcDir("g:a:jar:1.0"), equalTo("src/main/java"));
+        assertThat(sessionState.getStartDate(), sameInstance(state.getStartDate()));
+        assertThat(CloverSessionState.getInstance(session.clone()).getDatabaseLock("target/clover/clover.db"),
+                sameInstance(state.getDatabaseLock("target/clover/clover.db")));
+    }
+
+    @Test
+    public void testReactorModuleIndexIsSharedByClonesOfSession() {
+        // Maven 3.0 - 3.3.1 clones the session for every module, the index should be built once anyway
+        final MavenProject project = new MavenProject();
+        project.setFile(new File("pom.xml").getAbsoluteFile());
+        final List<MavenProject> reactorProjects = Collections.singletonList(project);
+        final MavenSession session = newSession();
+
+        final ReactorModuleIndex index = CloverSessionState.getInstance(session.clone())
+                .getReactorModuleIndex(reactorProjects);
+        assertThat(CloverSessionState.getInstance(session.clone()).getReactorModuleIndex(reactorProjects),
+                sameInstance(index));
+        assertThat(CloverSessionState.getInstance(session).getReactorModuleIndex(reactorProjects),
+                sameInstance(index));
+    }
+
+    static MavenSession newSession() {
+        return new MavenSession(null, null, new DefaultMavenExecutionRequest(), new DefaultMavenExecutionResult());
+    }
+}
@@ -0,0 +1,83 @@
+package com.atlassian.maven.plugin.clover.internal;
+
+import org.apache.maven.artifact.Artifact;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class CloveredArtifactCacheTest {
+
+    @Test
+    public void testArtifactIsResolvedOnceByConcurrentLookups() {
+        final CloveredArtifactCache cache = new CloveredArtifactCache();
+        final Artifact artifact = mock(Artifact.class);
+        final AtomicInteger resolutions = new AtomicInteger();
+
+        final List<Callable<CloveredArtifactCache.Lookup>> tasks = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            tasks.add(() -> cache.resolve("g:a:jar:1.0", true, () -> {
+                resolutions.incrementAndGet();
+                sleep();
+                return artifact;
+            }));
+        }
+        int resolvedByLookup = 0;
+        for (CloveredArtifactCache.Lookup result : cache.invokeAll(tasks)) {
+            assertThat(result.getArtifact(), sameInstance(artifact));
+            if (!result.isCached()) {
+                resolvedByLookup++;
+            }
+        }
+        assertThat(resolutions.get(), equalTo(1));
+        assertThat(resolvedByLookup, equalTo(1));
+    }
+
+    @Test
+    public void testMissesAreCachedOnlyIfRequested() {
+        final CloveredArtifactCache cache = new CloveredArtifactCache();
+        final AtomicInteger resolutions = new AtomicInteger();
+        final CloveredArtifactCache.Resolver missing = () -> {
+            resolutions.incrementAndGet();
+            return null;
+        };
+
+        assertThat(cache.resolve("g:external:jar:1.0", true, missing).getArtifact(), nullValue());
+        assertThat(cache.resolve("g:external:jar:1.0", true, missing).getArtifact(), nullValue());
+        assertThat(resolutions.get(), equalTo(1));
+
+        assertThat(cache.resolve("g:module:jar:1.0", false, missing).getArtifact(), nullValue());
+        assertThat(cache.resolve("g:module:jar:1.0", false, missing).getArtifact(), nullValue());
+        assertThat(resolutions.get(), equalTo(3));
+    }
+
+    @Test
+    public void testResultsAreInTaskOrder() {
+        final CloveredArtifactCache cache = new CloveredArtifactCache();
+        final List<Callable<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            final int value = i;
+            tasks.add(() -> value);
+        }
+        final List<Integer> results = cache.invokeAll(tasks);
+        for (int i = 0; i < 50; i++) {
+            assertThat(results.get(i), equalTo(i));
+        }
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(50);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
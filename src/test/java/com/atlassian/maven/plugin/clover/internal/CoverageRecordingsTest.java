@@ -0,0 +1,117 @@
+package com.atlassian.maven.plugin.clover.internal;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CoverageRecordingsTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testLastModifiedIncludesRecordingsOfFragmentsOnly() throws IOException {
+        final File database = temp.newFile("clover.db");
+        final File recording = temp.newFile("clover.db1a2b_3c4d");
+        final File fragmentRecording = new File(temp.newFolder("fragments", "g_a"), "clover.db5e6f_7a8b");
+        assertTrue(fragmentRecording.createNewFile());
+        final File other = temp.newFile("other.db1a2b_3c4d");
+        assertTrue(database.setLastModified(50000000));
+        assertTrue(recording.setLastModified(10000000));
+        assertTrue(fragmentRecording.setLastModified(20000000));
+        assertTrue(other.setLastModified(40000000));
+
+        final List<String> databases = Collections.singletonList(database.getPath());
+        assertThat(CoverageRecordings.getLastModified(databases), equalTo(20000000L));
+    }
+
+    @Test
+    public void testNoWaitForRecordingsFlushedBefore() throws IOException {
+        final File database = temp.newFile("clover.db");
+        final File recording = temp.newFile("clover.db1a2b_3c4d");
+        assertTrue(recording.setLastModified(System.currentTimeMillis() - 60000));
+
+        final long start = System.currentTimeMillis();
+        CoverageRecordings.awaitFlush(Collections.singletonList(database.getPath()), 5000);
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    @Test
+    public void testWaitForRecentlyModifiedRecordings() throws IOException {
+        final File database = temp.newFile("clover.db");
+        final File recording = temp.newFile("clover.db1a2b_3c4d");
+        // still being written, but the wait never takes longer than two flush intervals
+        assertTrue(recording.setLastModified(System.currentTimeMillis() + 60000));
+
+        final long start = System.currentTimeMillis();
+        CoverageRecordings.awaitFlush(Collections.singletonList(database.getPath()), 200);
+        final long elapsed = System.currentTimeMillis() - start;
+        assertTrue("waited " + elapsed + "ms", elapsed >= 390 && elapsed < 5000);
+    }
+
+    @Test
+    public void testNoWaitWhenTestJvmsHaveEnded() throws IOException {
+        final File database = temp.newFile("clover.db");
+        final File recording = temp.newFile("clover.db1a2b_3c4d");
+        assertTrue(recording.setLastModified(System.currentTimeMillis()));
+        final TestRunTracker testRuns = mock(TestRunTracker.class);
+        when(testRuns.haveTestJvmsEnded()).thenReturn(true);
+
+        final long start = System.currentTimeMillis();
+        CoverageRecordings.awaitFlush(Collections.singletonList(database.getPath()), 5000, testRuns);
+        assertTrue(System.currentTimeMillis() - start < 5000);
+    }
+
+    @Test
+    public void testWaitEndsWhenTestJvmsEnd() throws IOException {
+        final File database = temp.newFile("clover.db");
+        final File recording = temp.newFile("clover.db1a2b_3c4d");
+        assertTrue(recording.setLastModified(System.currentTimeMillis()));
+        final TestRunTracker testRuns = mock(TestRunTracker.class);
+        final long testsEnd = System.currentTimeMillis() + 500;
+        when(testRuns.haveTestJvmsEnded()).thenAnswer(invocation -> System.currentTimeMillis() >= testsEnd);
+
+        CoverageRecordings.awaitFlush(Collections.singletonList(database.getPath()), 5000, testRuns);
+        final long end = System.currentTimeMillis();
+        assertTrue("ended " + (end - testsEnd) + "ms after tests", end >= testsEnd && end < testsEnd + 5000);
+    }
+
+    @Test
+    public void testOtherFilesNamedAfterDatabaseAreNotRecordings() throws IOException {
+        final File database = temp.newFile("clover.db");
+        final File recording = temp.newFile("clover.db1a2b_3c4d");
+        final File perTestRecording = temp.newFile("clover.db1a2b_3c4d_5e6f_7a8b.s");
+        final File lock = temp.newFile("clover.db.lck");
+        final File directory = temp.newFolder("clover.db-tree");
+        assertTrue(recording.setLastModified(10000000));
+        assertTrue(perTestRecording.setLastModified(20000000));
+        assertTrue(lock.setLastModified(30000000));
+        assertTrue(directory.setLastModified(40000000));
+
+        final List<String> databases = Collections.singletonList(database.getPath());
+        assertThat(CoverageRecordings.getLastModified(databases), equalTo(20000000L));
+    }
+
+    @Test
+    public void testWaitWhenThereAreNoRecordings() throws IOException {
+        final File database = temp.newFile("clover.db");
+        // not a recording, it must not end the wait
+        assertTrue(temp.newFile("clover.db.lck").setLastModified(System.currentTimeMillis() - 60000));
+
+        final long start = System.currentTimeMillis();
+        CoverageRecordings.awaitFlush(Collections.singletonList(database.getPath()), 200);
+        final long elapsed = System.currentTimeMillis() - start;
+        assertTrue("waited " + elapsed + "ms", elapsed >= 390 && elapsed < 5000);
+    }
+}
@@ -0,0 +1,84 @@
+package com.atlassian.maven.plugin.clover.internal;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HtmlReportIndexTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File outputDirectory;
+    private File database;
+
+    @Before
+    public void setUp() throws IOException {
+        outputDirectory = temp.newFolder("site");
+        assertTrue(new File(outputDirectory, "index.html").createNewFile());
+        database = temp.newFile("clover.db");
+        write(database, "registry");
+    }
+
+    @Test
+    public void testReportWithSameInputsIsUpToDate() throws IOException {
+        assertFalse(load("settings").isUpToDate());
+        load("settings").save();
+
+        assertTrue(load("settings").isUpToDate());
+        assertFalse(load("other settings").isUpToDate());
+    }
+
+    @Test
+    public void testReportIsOutdatedWhenDatabaseOrRecordingsChange() throws IOException {
+        load("settings").save();
+
+        // the same content, only touched
+        assertTrue(database.setLastModified(database.lastModified() - 10000));
+        assertTrue(load("settings").isUpToDate());
+        load("settings").save();
+
+        final File recording = temp.newFile("clover.db1a2b_3c4d");
+        assertFalse(load("settings").isUpToDate());
+        load("settings").save();
+        assertTrue(load("settings").isUpToDate());
+
+        // files named after the database which aren't recordings
+        temp.newFile("clover.db.lck");
+        temp.newFile("clover.db.bak");
+        assertTrue(load("settings").isUpToDate());
+
+        write(database, "registry of changed sources");
+        assertFalse(load("settings").isUpToDate());
+    }
+
+    @Test
+    public void testInvalidatedReportIsOutdated() throws IOException {
+        load("settings").save();
+        load("settings").invalidate();
+        assertFalse(load("settings").isUpToDate());
+
+        load("settings").save();
+        assertTrue(new File(outputDirectory, "index.html").delete());
+        assertFalse(load("settings").isUpToDate());
+    }
+
+    private HtmlReportIndex load(final String settings) throws IOException {
+        final HtmlReportIndex index = HtmlReportIndex.load(outputDirectory, settings);
+        index.addDatabase(database.getPath(), "Project");
+        return index;
+    }
+
+    private static void write(final File file, final String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,156 @@
+package com.atlassian.maven.plugin.clover.internal;
+
+import com.atlassian.clover.CloverDatabase;
+import com.atlassian.clover.CloverInstr;
+import com.atlassian.clover.CoverageData;
+import com.atlassian.clover.cfg.Interval;
+import com.atlassian.clover.recorder.InMemPerTestCoverage;
+import com.atlassian.clover.registry.Clover2Registry;
+import com.atlassian.clover.registry.entities.FullFileInfo;
+import com.atlassian.clover.registry.metrics.HasMetricsFilter;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ParallelCloverMergeTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testTreeMergeIsSameAsSingleMergeOfSortedDatabases() throws Exception {
+        final List<String> databases = new ArrayList<>();
+        for (int i = 6; i >= 0; i--) {
+            // the same source file in the first and the last module
+            final String className = i == 6 ? "C0" : "C" + i;
+            databases.add(instrumentModule("module" + i, className, i + 1));
+        }
+        final String span = Interval.DEFAULT_SPAN.toString();
+        final List<String> sorted = ParallelCloverMerge.sortDatabases(databases);
+        assertThat(sorted.get(0), equalTo(databases.get(6)));
+
+        final File sequential = new File(temp.getRoot(), "sequential/clover.db");
+        final List<String> parameters = new ArrayList<>(Arrays.asList("-s", span, "-i", sequential.getPath()));
+        parameters.addAll(sorted);
+        assertThat(CloverMergeWorker.mainImpl(parameters.toArray(new String[0])), equalTo(0));
+
+        final File tree = new File(temp.getRoot(), "tree/clover.db");
+        new ParallelCloverMerge(3, null, new SystemStreamLog()).merge(sorted, span, tree.getPath());
+
+        assertThat(describeFiles(tree), equalTo(describeFiles(sequential)));
+        assertArrayEquals(loadHitCounts(sequential), loadHitCounts(tree));
+        // intermediate databases are deleted
+        assertThat(tree.getParentFile().list(), equalTo(new String[] { "clover.db" }));
+    }
+
+    @Test
+    public void testIncrementalMergeReusesUnchangedSubtrees() throws Exception {
+        final List<String> databases = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            databases.add(instrumentModule("module" + i, "C" + i, i + 1));
+        }
+        final String span = Interval.DEFAULT_SPAN.toString();
+        final File merged = new File(temp.getRoot(), "merged/cloverMerge.db");
+        final File treeDir = MergeTreeIndex.getTreeDirectory(merged.getPath());
+        final ParallelCloverMerge parallelMerge = new ParallelCloverMerge(2, null, new SystemStreamLog());
+
+        parallelMerge.merge(databases, span, merged.getPath(), MergeTreeIndex.load(treeDir, span));
+        // 4 merges of 5 databases, the last one into the merged database
+        final Set<String> firstTree = new HashSet<>(Arrays.asList(treeDir.list()));
+        assertThat(firstTree.size(), equalTo(3 + 1));
+        assertTrue(firstTree.contains(MergeTreeIndex.INDEX_FILE));
+
+        // nothing has changed
+        final long lastModified = merged.lastModified();
+        parallelMerge.merge(databases, span, merged.getPath(), MergeTreeIndex.load(treeDir, span));
+        assertThat(merged.lastModified(), equalTo(lastModified));
+
+        // the first module has new coverage, its sibling and the right half of the tree are reused
+        setHitCounts(databases.get(0), 10);
+        parallelMerge.merge(databases, span, merged.getPath(), MergeTreeIndex.load(treeDir, span));
+        final Set<String> secondTree = new HashSet<>(Arrays.asList(treeDir.list()));
+        assertThat(secondTree.size(), equalTo(3 + 1));
+        secondTree.retainAll(firstTree);
+        assertThat(secondTree.size(), equalTo(2 + 1));
+
+        final File full = new File(temp.getRoot(), "full/cloverMerge.db");
+        parallelMerge.merge(databases, span, full.getPath());
+        assertThat(describeFiles(merged), equalTo(describeFiles(full)));
+        assertArrayEquals(loadHitCounts(full), loadHitCounts(merged));
+    }
+
+    @Test
+    public void testFailedMergeIsReported() throws Exception {
+        final File merged = new File(temp.getRoot(), "merged/clover.db");
+        try {
+            new ParallelCloverMerge(2, null, new SystemStreamLog()).merge(
+                    Arrays.asList(instrumentModule("module", "A", 1), "-s"),
+                    Interval.DEFAULT_SPAN.toString(), merged.getPath());
+            fail("IOException expected");
+        } catch (IOException e) {
+            assertFalse(merged.exists());
+        }
+    }
+
+    private String instrumentModule(final String module, final String className, final int hits) throws Exception {
+        final File srcDir = temp.newFolder(module, "src");
+        Files.write(new File(srcDir, className + ".java").toPath(),
+                ("public class " + className + " { int get() { return 1; } }").getBytes(StandardCharsets.UTF_8));
+        final File database = new File(temp.getRoot(), module + "/clover/clover.db");
+        final int result = CloverInstr.mainImpl(new String[] {
+                "-i", database.getPath(),
+                "-s", srcDir.getPath(),
+                "-d", temp.newFolder(module, "out").getPath() });
+        assertThat(result, equalTo(0));
+        setHitCounts(database.getPath(), hits);
+        return database.getPath();
+    }
+
+    /**
+     * Stores coverage in the registry, like in a merged database.
+     */
+    private static void setHitCounts(final String database, final int hits) throws Exception {
+        final File databaseFile = new File(database);
+        final long lastModified = databaseFile.lastModified();
+        final Clover2Registry registry = Clover2Registry.fromFile(databaseFile);
+        final int dataLength = registry.getProject().getDataLength();
+        final int[] hitCounts = new int[dataLength];
+        Arrays.fill(hitCounts, hits);
+        registry.setCoverageData(new CoverageData(System.currentTimeMillis(), hitCounts,
+                new InMemPerTestCoverage(dataLength)));
+        registry.saveAndOverwriteFile();
+        assertTrue(databaseFile.setLastModified(lastModified + 1000));
+    }
+
+    private static List<String> describeFiles(final File database) throws Exception {
+        final List<String> files = new ArrayList<>();
+        for (Object file : Clover2Registry.fromFile(database).getProject().getFiles(HasMetricsFilter.ACCEPT_ALL)) {
+            final FullFileInfo fileInfo = (FullFileInfo) file;
+            files.add(fileInfo.getPackagePath() + ":" + fileInfo.getChecksum()
+                    + ":" + fileInfo.getDataIndex() + ":" + fileInfo.getDataLength());
+        }
+        return files;
+    }
+
+    private static int[] loadHitCounts(final File database) throws Exception {
+        return new CloverDatabase(database.getPath()).loadCoverageData().getHitCounts();
+    }
+}
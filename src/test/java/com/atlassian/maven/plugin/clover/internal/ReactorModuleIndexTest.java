@@ -0,0 +1,64 @@
+package com.atlassian.maven.plugin.clover.internal;
+
+import org.apache.maven.model.Model;
+import org.apache.maven.project.MavenProject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReactorModuleIndexTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testModulesAreFoundByCanonicalBaseDirectory() throws IOException {
+        // parent/pom.xml lists "b", "a" and a flat module "../flat"
+        final MavenProject parent = createProject("parent", "parent", "b", "a", "../flat");
+        final MavenProject a = createProject("a", "parent/a", "a1");
+        final MavenProject a1 = createProject("a1", "parent/a/a1");
+        final MavenProject b = createProject("b", "parent/b");
+        final MavenProject flat = createProject("flat", "flat");
+        final MavenProject other = createProject("other", "other");
+        final List<MavenProject> reactor = Arrays.asList(parent, a, a1, flat, b, other);
+
+        final ReactorModuleIndex index = new ReactorModuleIndex(reactor);
+        // in the reactor order, not in the order of <modules>
+        assertThat(index.getModules(parent), equalTo(Arrays.asList(a, flat, b)));
+        assertThat(index.getModules(a), equalTo(Collections.singletonList(a1)));
+        assertThat(index.getModules(a1), equalTo(Collections.<MavenProject>emptyList()));
+        assertTrue(index.isModuleOf(parent, flat));
+        assertFalse(index.isModuleOf(parent, a1));
+        assertFalse(index.isModuleOf(parent, other));
+
+        // a copy of a reactor project, e.g. from a forked lifecycle
+        assertThat(index.getModules(parent.clone()), equalTo(Arrays.asList(a, flat, b)));
+        assertTrue(index.isIndexOf(reactor));
+        assertFalse(index.isIndexOf(Arrays.asList(parent, a)));
+    }
+
+    private MavenProject createProject(final String artifactId, final String path, final String... modules)
+            throws IOException {
+        final File baseDir = new File(temp.getRoot(), path);
+        assertTrue(baseDir.mkdirs());
+        final Model model = new Model();
+        model.setGroupId("com.example");
+        model.setArtifactId(artifactId);
+        model.setVersion("1.0");
+        model.setModules(Arrays.asList(modules));
+        final MavenProject project = new MavenProject(model);
+        project.setFile(new File(baseDir, "pom.xml"));
+        return project;
+    }
+}
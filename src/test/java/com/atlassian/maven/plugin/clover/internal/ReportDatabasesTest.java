@@ -0,0 +1,59 @@
+package com.atlassian.maven.plugin.clover.internal;
+
+import com.atlassian.clover.CloverDatabase;
+import com.atlassian.clover.cfg.Interval;
+import com.atlassian.clover.reporters.Current;
+import com.atlassian.clover.reporters.Format;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.mock;
+
+public class ReportDatabasesTest {
+
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private final ReportDatabases.Loader loader = () -> {
+        loads.incrementAndGet();
+        return mock(CloverDatabase.class);
+    };
+
+    @Test
+    public void testDatabaseIsLoadedOnceForAllFormats() throws Exception {
+        final ReportDatabases databases = new ReportDatabases();
+        final CloverDatabase html = databases.get(createReport("html", "clover.db", ""), "", loader);
+        final CloverDatabase xml = databases.get(createReport("xml", "clover.db", ""), "", loader);
+        final CloverDatabase pdf = databases.get(createReport("pdf", "clover.db", ""), "", loader);
+
+        assertThat(loads.get(), equalTo(1));
+        assertThat(xml, sameInstance(html));
+        assertThat(pdf, sameInstance(html));
+    }
+
+    @Test
+    public void testDatabaseIsLoadedAgainForOtherInputs() throws Exception {
+        final ReportDatabases databases = new ReportDatabases();
+        final CloverDatabase database = databases.get(createReport("html", "clover.db", ""), "", loader);
+
+        assertThat(databases.get(createReport("html", "cloverMerge.db", ""), "", loader), not(sameInstance(database)));
+        assertThat(databases.get(createReport("html", "clover.db", "static"), "", loader), not(sameInstance(database)));
+        assertThat(databases.get(createReport("html", "clover.db", ""), "other", loader), not(sameInstance(database)));
+        assertThat(loads.get(), equalTo(4));
+    }
+
+    private static Current createReport(final String type, final String database, final String filter) {
+        final Format format = new Format();
+        format.setType(type);
+        format.setFilter(filter);
+        final Current current = new Current();
+        current.setInitString(database);
+        current.setSpan(new Interval("0s"));
+        current.setFormat(format);
+        return current;
+    }
+}
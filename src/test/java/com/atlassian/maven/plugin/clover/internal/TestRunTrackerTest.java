@@ -0,0 +1,83 @@
+package com.atlassian.maven.plugin.clover.internal;
+
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.ExecutionEvent;
+import org.apache.maven.execution.ExecutionListener;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.plugin.MojoExecution;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.junit.Test;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TestRunTrackerTest {
+
+    @Test
+    public void testTestJvmsHaveEndedWhenAllTestMojosHaveEnded() {
+        final ExecutionListener original = mock(ExecutionListener.class);
+        final MavenExecutionRequest request = new DefaultMavenExecutionRequest();
+        request.setExecutionListener(original);
+        final TestRunTracker tracker = new TestRunTracker();
+        tracker.install(request);
+        final ExecutionListener listener = request.getExecutionListener();
+
+        final ExecutionEvent compile = createEvent("maven-compiler-plugin", "compile", null);
+        listener.mojoStarted(compile);
+        listener.mojoSucceeded(compile);
+        assertFalse(tracker.haveTestJvmsEnded());
+
+        final ExecutionEvent unitTests = createEvent("maven-surefire-plugin", "test", null);
+        final ExecutionEvent integrationTests = createEvent("maven-failsafe-plugin", "integration-test", null);
+        listener.mojoStarted(unitTests);
+        listener.mojoStarted(integrationTests);
+        listener.mojoSucceeded(unitTests);
+        assertFalse(tracker.haveTestJvmsEnded());
+        listener.mojoFailed(integrationTests);
+        assertTrue(tracker.haveTestJvmsEnded());
+
+        // events are passed to the original listener
+        verify(original).mojoStarted(unitTests);
+        verify(original).mojoSucceeded(unitTests);
+        verify(original).mojoFailed(integrationTests);
+    }
+
+    @Test
+    public void testTestsInMavenJvmNeverEnd() {
+        final MavenExecutionRequest request = new DefaultMavenExecutionRequest();
+        final TestRunTracker tracker = new TestRunTracker();
+        tracker.install(request);
+        final ExecutionListener listener = request.getExecutionListener();
+
+        final ExecutionEvent forked = createEvent("maven-surefire-plugin", "test", "1C");
+        listener.mojoStarted(forked);
+        listener.mojoSucceeded(forked);
+        assertTrue(tracker.haveTestJvmsEnded());
+
+        final ExecutionEvent inProcess = createEvent("maven-surefire-plugin", "test", "0");
+        listener.mojoStarted(inProcess);
+        listener.mojoSucceeded(inProcess);
+        assertFalse(tracker.haveTestJvmsEnded());
+    }
+
+    private static ExecutionEvent createEvent(final String artifactId, final String goal, final String forkCount) {
+        final Plugin plugin = new Plugin();
+        plugin.setGroupId("org.apache.maven.plugins");
+        plugin.setArtifactId(artifactId);
+        final MojoExecution execution = new MojoExecution(plugin, goal, "default-" + goal);
+        final Xpp3Dom configuration = new Xpp3Dom("configuration");
+        final Xpp3Dom forkCountParameter = new Xpp3Dom("forkCount");
+        forkCountParameter.setValue(forkCount != null ? forkCount : "${forkCount}");
+        forkCountParameter.setAttribute("default-value", "1");
+        configuration.addChild(forkCountParameter);
+        execution.setConfiguration(configuration);
+
+        final ExecutionEvent event = mock(ExecutionEvent.class);
+        when(event.getMojoExecution()).thenReturn(execution);
+        return event;
+    }
+}
@@ -11,7 +11,10 @@ import org.junit.Test;
 import org.openclover.util.Lists;
 import org.openclover.util.Sets;
 
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -49,6 +52,34 @@ public class AbstractInstrumenterTest {
         ));
     }
 
+    @Test
+    public void testFileAlwaysBelongsToSameShard() {
+        final Map<String, String[]> files = new HashMap<>();
+        files.put("src/main/java", new String[] { "a/A.java", "a/B.java", "b/C.java", "b/D.java", "E.java" });
+        files.put("src/generated/java", new String[] { "a/A.java", "F.java" });
+        final List<Map<String, String[]>> shards = AbstractInstrumenter.splitIntoShards(files, 3);
+
+        // every file is in exactly one shard
+        assertThat(shards.size(), equalTo(3));
+        int count = 0;
+        for (Map<String, String[]> shard : shards) {
+            for (String[] fileNames : shard.values()) {
+                count += fileNames.length;
+            }
+        }
+        assertThat(count, equalTo(7));
+
+        // a shard of a file does not depend on other files
+        final Map<String, String[]> oneFile = new HashMap<>();
+        oneFile.put("src/main/java", new String[] { "b/C.java" });
+        final List<Map<String, String[]>> oneFileShards = AbstractInstrumenter.splitIntoShards(oneFile, 3);
+        for (int i = 0; i < 3; i++) {
+            assertThat(oneFileShards.get(i).containsKey("src/main/java"),
+                    equalTo(shards.get(i).containsKey("src/main/java")
+                            && Arrays.asList(shards.get(i).get("src/main/java")).contains("b/C.java")));
+        }
+    }
+
     @Test
     public void testAddTestSources() {
         // test that MOJO's configuration is converted to proper arg line for CloverInstr
@@ -0,0 +1,98 @@
+package com.atlassian.maven.plugin.clover.internal.instrumentation;
+
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3DomBuilder;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.Arrays;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+public class CompilerPluginOptionsTest {
+
+    @Test
+    public void testReleaseOfCompilerPluginOverridesProperties() throws Exception {
+        final MavenProject project = new MavenProject();
+        project.getProperties().setProperty("maven.compiler.source", "1.8");
+        project.getProperties().setProperty("maven.compiler.target", "1.8");
+        addCompilerPlugin(project, "<configuration><release>11</release></configuration>", null);
+        final Log log = mock(Log.class);
+
+        assertThat(CompilerPluginOptions.getCompilerOptions(project, log),
+                equalTo(Arrays.asList("--release", "11", "-g")));
+        verify(log, never()).warn(anyString());
+    }
+
+    @Test
+    public void testPropertiesAreUsedWithoutCompilerPlugin() {
+        final MavenProject project = new MavenProject();
+        project.getProperties().setProperty("maven.compiler.source", "1.8");
+        project.getProperties().setProperty("maven.compiler.target", "1.8");
+        project.getProperties().setProperty("maven.compiler.parameters", "true");
+
+        assertThat(CompilerPluginOptions.getCompilerOptions(project, mock(Log.class)),
+                equalTo(Arrays.asList("-source", "1.8", "-target", "1.8", "-g", "-parameters")));
+    }
+
+    @Test
+    public void testConfigurationOfDefaultCompileExecutionIsApplied() throws Exception {
+        final MavenProject project = new MavenProject();
+        addCompilerPlugin(project,
+                "<configuration>"
+                        + "<release>17</release>"
+                        + "<debug>false</debug>"
+                        + "<compilerArgs><arg>-Xlint:all</arg><arg>-Werror</arg></compilerArgs>"
+                        + "</configuration>",
+                "<configuration>"
+                        + "<release>21</release>"
+                        + "<parameters>true</parameters>"
+                        + "<proc>none</proc>"
+                        + "<annotationProcessors><processor>p.First</processor><processor>p.Second</processor></annotationProcessors>"
+                        + "</configuration>");
+
+        assertThat(CompilerPluginOptions.getCompilerOptions(project, mock(Log.class)),
+                equalTo(Arrays.asList("--release", "21", "-g:none", "-parameters", "-proc:none",
+                        "-processor", "p.First,p.Second", "-Xlint:all", "-Werror")));
+    }
+
+    @Test
+    public void testSettingsWhichAreNotAppliedAreReported() throws Exception {
+        final MavenProject project = new MavenProject();
+        addCompilerPlugin(project,
+                "<configuration>"
+                        + "<release>11</release>"
+                        + "<annotationProcessorPaths><path><groupId>g</groupId><artifactId>a</artifactId></path></annotationProcessorPaths>"
+                        + "</configuration>",
+                null);
+        final Log log = mock(Log.class);
+
+        assertThat(CompilerPluginOptions.getCompilerOptions(project, log),
+                equalTo(Arrays.asList("--release", "11", "-g")));
+        verify(log).warn(argThat((CharSequence message) -> message.toString().contains("annotationProcessorPaths")));
+    }
+
+    private static void addCompilerPlugin(final MavenProject project, final String configuration,
+                                          final String executionConfiguration) throws Exception {
+        final Plugin plugin = new Plugin();
+        plugin.setGroupId("org.apache.maven.plugins");
+        plugin.setArtifactId("maven-compiler-plugin");
+        plugin.setConfiguration(Xpp3DomBuilder.build(new StringReader(configuration)));
+        if (executionConfiguration != null) {
+            final PluginExecution execution = new PluginExecution();
+            execution.setId(CompilerPluginOptions.DEFAULT_COMPILE_EXECUTION);
+            execution.setConfiguration(Xpp3DomBuilder.build(new StringReader(executionConfiguration)));
+            plugin.addExecution(execution);
+        }
+        project.getBuild().addPlugin(plugin);
+    }
+}
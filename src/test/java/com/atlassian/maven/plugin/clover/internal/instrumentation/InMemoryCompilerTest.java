@@ -0,0 +1,76 @@
+package com.atlassian.maven.plugin.clover.internal.instrumentation;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InMemoryCompilerTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testSourcesAreCompiledWithoutInstrumentedFiles() throws IOException {
+        final File srcDir = temp.newFolder("src");
+        writeSource(srcDir, "p/A.java", "package p;\npublic class A { int m() { return new B().n(); } }\n");
+        writeSource(srcDir, "p/B.java", "package p;\npublic class B { int n() { return new C().o(); } }\n");
+        // not instrumented, found on the source path but left to the compiler plugin
+        writeSource(srcDir, "p/C.java", "package p;\npublic class C { int o() { return 1; } }\n");
+        final File classesDir = temp.newFolder("classes");
+        final File outDir = new File(temp.getRoot(), "out");
+
+        final InMemoryCompiler compiler = new InMemoryCompiler(Collections.<String>emptyList(),
+                Collections.singletonList(srcDir.getPath()), classesDir, Collections.<String>emptyList(),
+                new SystemStreamLog());
+        assertTrue(compiler.instrumentAndCompile(args(outDir), files(srcDir, "p/A.java", "p/B.java"), 0));
+
+        assertTrue(new File(classesDir, "p/A.class").isFile());
+        assertTrue(new File(classesDir, "p/B.class").isFile());
+        assertFalse(new File(classesDir, "p/C.class").exists());
+        final String[] recorders = new File(classesDir, "p").list((dir, name) -> name.startsWith("A$__CLR"));
+        assertTrue(recorders != null && recorders.length > 0);
+        assertFalse(outDir.exists());
+        assertTrue(new File(temp.getRoot(), "clover.db").isFile());
+    }
+
+    @Test
+    public void testCompilationErrorIsReported() throws IOException {
+        final File srcDir = temp.newFolder("src");
+        writeSource(srcDir, "p/A.java", "package p;\npublic class A { int m() { return new Missing().n(); } }\n");
+
+        final InMemoryCompiler compiler = new InMemoryCompiler(Collections.<String>emptyList(),
+                Collections.singletonList(srcDir.getPath()), temp.newFolder("classes"), Collections.<String>emptyList(),
+                new SystemStreamLog());
+        assertFalse(compiler.instrumentAndCompile(args(new File(temp.getRoot(), "out")), files(srcDir, "p/A.java"), 0));
+    }
+
+    private static void writeSource(final File srcDir, final String name, final String content) throws IOException {
+        final File file = new File(srcDir, name);
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Map<String, String[]> files(final File srcDir, final String... names) {
+        final Map<String, String[]> files = new HashMap<>();
+        files.put(srcDir.getPath(), names);
+        return files;
+    }
+
+    private List<String> args(final File outDir) {
+        return Arrays.asList("-i", new File(temp.getRoot(), "clover.db").getAbsolutePath(), "-d", outDir.getAbsolutePath());
+    }
+}
@@ -0,0 +1,101 @@
+package com.atlassian.maven.plugin.clover.internal.instrumentation;
+
+import com.atlassian.clover.Logger;
+import com.atlassian.clover.cfg.instr.java.JavaInstrumentationConfig;
+import com.atlassian.clover.instr.java.Instrumenter;
+import com.atlassian.clover.registry.Clover2Registry;
+import com.atlassian.clover.registry.metrics.HasMetricsFilter;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class InstrumentationBatchesTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testBatchedRegistryContainsAllFiles() throws Exception {
+        final File srcDir = temp.newFolder("src");
+        final List<String> names = writeSources(srcDir, 23);
+        final Map<String, String[]> files = new HashMap<>();
+        files.put(srcDir.getPath(), names.toArray(new String[0]));
+
+        final File singleDb = new File(temp.getRoot(), "single.db");
+        assertThat(new StreamingInstrumenter().instrument(args(singleDb, temp.newFolder("single")), files), equalTo(0));
+        final File batchedDb = new File(temp.getRoot(), "batched.db");
+        final File batchedOut = temp.newFolder("batched");
+        assertThat(new StreamingInstrumenter(5).instrument(args(batchedDb, batchedOut), files), equalTo(0));
+
+        final Clover2Registry single = Clover2Registry.fromFile(singleDb);
+        final Clover2Registry batched = Clover2Registry.fromFile(batchedDb);
+        assertThat(batched.getProject().getFiles(HasMetricsFilter.ACCEPT_ALL).size(), equalTo(23));
+        assertThat(batched.getProject().getDataLength(), equalTo(single.getProject().getDataLength()));
+        for (String name : names) {
+            assertTrue(name, new File(batchedOut, name).isFile());
+        }
+    }
+
+    @Test
+    public void testSessionStateIsReleasedBetweenBatches() throws Exception {
+        final File srcDir = temp.newFolder("src");
+        final List<String> names = writeSources(srcDir, 6);
+        final File outDir = temp.newFolder("out");
+        final JavaInstrumentationConfig config = CloverInstrArgs.parse(
+                args(new File(temp.getRoot(), "clover.db"), outDir).toArray(new String[0]), false);
+
+        final InstrumentationBatches batches = new InstrumentationBatches(Logger.getInstance(), config, 2, names.size());
+        batches.start();
+        final List<WeakReference<Instrumenter>> instrumenters = new ArrayList<>();
+        for (String name : names) {
+            final Instrumenter instrumenter = batches.getInstrumenter();
+            if (instrumenters.isEmpty() || instrumenters.get(instrumenters.size() - 1).get() != instrumenter) {
+                instrumenters.add(new WeakReference<>(instrumenter));
+            }
+            instrumenter.instrument(new File(srcDir, name), outDir, null);
+            batches.fileInstrumented();
+        }
+        batches.end();
+
+        assertThat(instrumenters.size(), equalTo(3));
+        for (int i = 0; i < 10 && instrumenters.get(0).get() != null; i++) {
+            System.gc();
+        }
+        assertThat(instrumenters.get(0).get(), nullValue());
+    }
+
+    private static List<String> writeSources(final File srcDir, final int count) throws IOException {
+        final List<String> names = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final String pkg = "p" + (i / 500);
+            final String name = pkg + File.separator + "C" + i + ".java";
+            final File file = new File(srcDir, name);
+            assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+            Files.write(file.toPath(), ("package " + pkg + ";\npublic class C" + i + " {\n"
+                    + "    int m(int a) { if (a > " + i + ") { return a; } return " + i + "; }\n}\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            names.add(name);
+        }
+        return names;
+    }
+
+    private static List<String> args(final File db, final File outDir) {
+        return Arrays.asList("-i", db.getAbsolutePath(), "-d", outDir.getAbsolutePath());
+    }
+}
@@ -0,0 +1,198 @@
+package com.atlassian.maven.plugin.clover.internal.instrumentation;
+
+import com.atlassian.clover.CloverInstr;
+import com.atlassian.clover.registry.Clover2Registry;
+import com.atlassian.clover.registry.entities.FullFileInfo;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InstrumentationCacheTest {
+
+    private static final List<String> ARGS = Arrays.asList("-p", "threaded", "-f", "500");
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File srcDir;
+    private File outDir;
+    private File database;
+    private Map<String, String[]> sources;
+
+    @Before
+    public void setUp() throws IOException {
+        srcDir = temp.newFolder("src");
+        outDir = temp.newFolder("out");
+        database = new File(temp.getRoot(), "clover.db");
+        sources = new HashMap<>();
+        sources.put(srcDir.getPath(), new String[] { "a/A.java" });
+        write(new File(srcDir, "a/A.java"), "package a; class A {}");
+    }
+
+    @Test
+    public void testStoreAndRestore() throws IOException {
+        final InstrumentationCache cache = new InstrumentationCache(temp.newFolder("cache"), 1024 * 1024, temp.getRoot());
+        final String key = cache.computeKey(ARGS, sources, database);
+        assertFalse(cache.restore(key, sources, outDir, database));
+
+        write(new File(outDir, "a/A.java"), "instrumented");
+        write(database, "db");
+        assertTrue(cache.store(key, sources, outDir, database));
+
+        // e.g. after 'mvn clean'
+        assertTrue(new File(outDir, "a/A.java").delete());
+        assertTrue(database.delete());
+
+        assertThat(cache.computeKey(ARGS, sources, database), equalTo(key));
+        assertTrue(cache.restore(key, sources, outDir, database));
+        assertThat(read(new File(outDir, "a/A.java")), equalTo("instrumented"));
+        assertThat(read(database), equalTo("db"));
+    }
+
+    @Test
+    public void testKeyDependsOnSourcesSettingsAndDatabase() throws IOException {
+        final InstrumentationCache cache = new InstrumentationCache(temp.newFolder("cache"), 1024 * 1024, temp.getRoot());
+        final String key = cache.computeKey(ARGS, sources, database);
+
+        assertThat(cache.computeKey(Arrays.asList("-p", "directed"), sources, database), not(equalTo(key)));
+
+        write(database, "db");
+        assertThat(cache.computeKey(ARGS, sources, database), not(equalTo(key)));
+        assertTrue(database.delete());
+
+        write(new File(srcDir, "a/A.java"), "package a; class A { int i; }");
+        assertThat(cache.computeKey(ARGS, sources, database), not(equalTo(key)));
+    }
+
+    @Test
+    public void testSourcesNotMatchingPackageAreNotStored() throws IOException {
+        final InstrumentationCache cache = new InstrumentationCache(temp.newFolder("cache"), 1024 * 1024, temp.getRoot());
+        write(database, "db");
+        assertFalse(cache.store("key", sources, outDir, database));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() throws IOException {
+        final File cacheDir = temp.newFolder("cache");
+        final InstrumentationCache cache = new InstrumentationCache(cacheDir, 2500, temp.getRoot());
+        write(new File(outDir, "a/A.java"), new String(new byte[1000], StandardCharsets.UTF_8));
+        write(database, "db");
+
+        assertTrue(cache.store("first", sources, outDir, database));
+        assertTrue(cache.store("second", sources, outDir, database));
+        assertTrue(new File(cacheDir, "first").setLastModified(System.currentTimeMillis() - 20000));
+        assertTrue(new File(cacheDir, "second").setLastModified(System.currentTimeMillis() - 10000));
+        assertTrue(cache.store("third", sources, outDir, database));
+
+        assertFalse(new File(cacheDir, "first").exists());
+        assertTrue(new File(cacheDir, "second").isDirectory());
+        assertTrue(new File(cacheDir, "third").isDirectory());
+    }
+
+    @Test
+    public void testEntryStoredInOneDirectoryIsRestoredInAnother() throws Exception {
+        final File cacheDir = temp.newFolder("cache");
+        final File first = temp.newFolder("first");
+        final File second = temp.newFolder("second");
+        for (File baseDir : Arrays.asList(first, second)) {
+            write(new File(baseDir, "src/main/java/p/C.java"), "package p; public class C { int f() { return 1; } }");
+            write(new File(baseDir, "src/test/java/p/CTest.java"), "package p; public class CTest { void t() { new C().f(); } }");
+        }
+
+        // main and test sources of the first directory are instrumented and stored in the cache
+        final InstrumentationCache firstCache = new InstrumentationCache(cacheDir, 1024 * 1024, first);
+        final File firstDatabase = new File(first, "target/clover/clover.db");
+        final String mainKey = instrument(firstCache, first, "main", "p/C.java");
+        final String testKey = instrument(firstCache, first, "test", "p/CTest.java");
+
+        // the second directory gets both from the cache
+        final InstrumentationCache secondCache = new InstrumentationCache(cacheDir, 1024 * 1024, second);
+        final File secondDatabase = new File(second, "target/clover/clover.db");
+        final Map<String, String[]> mainSources = getSources(second, "main", "p/C.java");
+        assertThat(secondCache.computeKey(getArgs(second, "main"), mainSources, secondDatabase), equalTo(mainKey));
+        assertTrue(secondCache.restore(mainKey, mainSources, getOutputDir(second, "main"), secondDatabase));
+        final Map<String, String[]> testSources = getSources(second, "test", "p/CTest.java");
+        assertThat(secondCache.computeKey(getArgs(second, "test"), testSources, secondDatabase), equalTo(testKey));
+        assertTrue(secondCache.restore(testKey, testSources, getOutputDir(second, "test"), secondDatabase));
+
+        // instrumented sources record coverage to the database of the second directory
+        final String instrumented = read(new File(getOutputDir(second, "main"), "p/C.java"));
+        assertTrue(instrumented.contains(escape(secondDatabase.getPath())));
+        assertFalse(instrumented.contains(escape(firstDatabase.getPath())));
+
+        // the database of the second directory points to its sources and matches the instrumented ones
+        final Clover2Registry registry = Clover2Registry.fromFile(secondDatabase);
+        final List<File> files = new ArrayList<>();
+        registry.getProject().visitFiles(file -> files.add(((FullFileInfo) file).getPhysicalFile()));
+        assertThat(new HashSet<>(files), equalTo(new HashSet<>(Arrays.asList(
+                new File(second, "src/main/java/p/C.java"), new File(second, "src/test/java/p/CTest.java")))));
+        assertThat(registry.getVersion(), equalTo(Clover2Registry.fromFile(firstDatabase).getVersion()));
+    }
+
+    /**
+     * Instruments sources as the plugin does on a cache miss and returns the key of the run.
+     */
+    private static String instrument(final InstrumentationCache cache, final File baseDir, final String scope,
+                                     final String fileName) throws IOException {
+        final File database = new File(baseDir, "target/clover/clover.db");
+        final List<String> args = getArgs(baseDir, scope);
+        final Map<String, String[]> sources = getSources(baseDir, scope, fileName);
+        final String key = cache.computeKey(args, sources, database);
+        assertFalse(cache.restore(key, sources, getOutputDir(baseDir, scope), database));
+
+        final List<String> instrArgs = new ArrayList<>(args);
+        instrArgs.add(new File(baseDir, "src/" + scope + "/java/" + fileName).getPath());
+        assertThat(CloverInstr.mainImpl(instrArgs.toArray(new String[0])), equalTo(0));
+        assertTrue(cache.store(key, sources, getOutputDir(baseDir, scope), database));
+        return key;
+    }
+
+    private static List<String> getArgs(final File baseDir, final String scope) {
+        return Arrays.asList("-i", new File(baseDir, "target/clover/clover.db").getPath(),
+                "-d", getOutputDir(baseDir, scope).getPath());
+    }
+
+    private static Map<String, String[]> getSources(final File baseDir, final String scope, final String fileName) {
+        return Collections.singletonMap(new File(baseDir, "src/" + scope + "/java").getPath(), new String[] { fileName });
+    }
+
+    private static File getOutputDir(final File baseDir, final String scope) {
+        return new File(baseDir, "target/clover/src-" + scope);
+    }
+
+    private static String escape(final String value) {
+        final StringBuilder escaped = new StringBuilder();
+        for (char c : value.toCharArray()) {
+            escaped.append(String.format("\\u%04x", (int) c));
+        }
+        return escaped.toString();
+    }
+
+    private static void write(final File file, final String content) throws IOException {
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(final File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
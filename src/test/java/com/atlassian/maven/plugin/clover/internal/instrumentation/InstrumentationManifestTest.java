@@ -0,0 +1,154 @@
+package com.atlassian.maven.plugin.clover.internal.instrumentation;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class InstrumentationManifestTest {
+
+    private static final List<String> ARGS = Arrays.asList("-p", "threaded", "-f", "500");
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File srcDir;
+    private File outDir;
+    private File manifestFile;
+    private Map<String, String[]> sources;
+
+    @Before
+    public void setUp() throws IOException {
+        srcDir = temp.newFolder("src");
+        outDir = temp.newFolder("out");
+        manifestFile = new File(temp.getRoot(), "out.manifest");
+        sources = new HashMap<>();
+        sources.put(srcDir.getPath(), new String[] { "A.java", "B.java" });
+        write(new File(srcDir, "A.java"), "class A {}");
+        write(new File(srcDir, "B.java"), "class B {}");
+    }
+
+    @Test
+    public void testAllFilesAreStaleWithoutManifest() throws IOException {
+        assertThat(staleFiles(InstrumentationManifest.load(manifestFile, ARGS), false),
+                equalTo(set("A.java", "B.java")));
+    }
+
+    @Test
+    public void testOnlyChangedFilesAreStale() throws IOException {
+        instrumentAll();
+
+        // touch without a change of content
+        assertTrue(new File(srcDir, "A.java").setLastModified(System.currentTimeMillis() + 10000));
+        assertThat(staleFiles(InstrumentationManifest.load(manifestFile, ARGS), false),
+                equalTo(Collections.<String>emptySet()));
+
+        write(new File(srcDir, "B.java"), "class B { int i; }");
+        assertThat(staleFiles(InstrumentationManifest.load(manifestFile, ARGS), false),
+                equalTo(set("B.java")));
+    }
+
+    @Test
+    public void testFilesNotNewerThanOutputAreNotRead() throws IOException {
+        instrumentAll();
+        assertTrue(new File(outDir, "A.java").setLastModified(2000000000000L));
+        assertTrue(new File(outDir, "B.java").setLastModified(2000000000000L));
+
+        // content changed, but the file is older than its output, so it's trusted
+        write(new File(srcDir, "A.java"), "class A { int i; }");
+        assertTrue(new File(srcDir, "A.java").setLastModified(1999999999000L));
+        // newer than output by less than staleMillis
+        assertTrue(new File(srcDir, "B.java").setLastModified(2000000000500L));
+        assertThat(staleFiles(InstrumentationManifest.load(manifestFile, ARGS), false, 1000),
+                equalTo(Collections.<String>emptySet()));
+
+        // newer, but with the same content
+        assertTrue(new File(srcDir, "B.java").setLastModified(2000000005000L));
+        assertThat(staleFiles(InstrumentationManifest.load(manifestFile, ARGS), false, 1000),
+                equalTo(Collections.<String>emptySet()));
+
+        // newer and changed
+        write(new File(srcDir, "B.java"), "class B { int i; }");
+        assertTrue(new File(srcDir, "B.java").setLastModified(2000000005000L));
+        assertThat(staleFiles(InstrumentationManifest.load(manifestFile, ARGS), false, 1000),
+                equalTo(set("B.java")));
+        assertThat(staleFiles(InstrumentationManifest.load(manifestFile, ARGS), false),
+                equalTo(set("A.java", "B.java")));
+    }
+
+    @Test
+    public void testMissingOutputIsStale() throws IOException {
+        instrumentAll();
+        assertTrue(new File(outDir, "A.java").delete());
+        assertThat(staleFiles(InstrumentationManifest.load(manifestFile, ARGS), false),
+                equalTo(set("A.java")));
+    }
+
+    @Test
+    public void testAllFilesAreStaleWhenSettingsChange() throws IOException {
+        instrumentAll();
+        assertThat(staleFiles(InstrumentationManifest.load(manifestFile, Arrays.asList("-p", "directed")), false),
+                equalTo(set("A.java", "B.java")));
+        assertThat(staleFiles(InstrumentationManifest.load(manifestFile, ARGS), true),
+                equalTo(set("A.java", "B.java")));
+    }
+
+    @Test
+    public void testRemovedFilesAreDroppedFromManifest() throws IOException {
+        instrumentAll();
+
+        final Map<String, String[]> onlyA = new HashMap<>();
+        onlyA.put(srcDir.getPath(), new String[] { "A.java" });
+        final InstrumentationManifest manifest = InstrumentationManifest.load(manifestFile, ARGS);
+        manifest.selectStaleFiles(onlyA, outDir, false);
+        manifest.save();
+
+        final String content = new String(Files.readAllBytes(manifestFile.toPath()), StandardCharsets.ISO_8859_1);
+        assertTrue(content.contains("A.java"));
+        assertTrue(!content.contains("B.java"));
+    }
+
+    private void instrumentAll() throws IOException {
+        final InstrumentationManifest manifest = InstrumentationManifest.load(manifestFile, ARGS);
+        final Map<String, String[]> stale = manifest.selectStaleFiles(sources, outDir, false);
+        for (String fileName : stale.get(srcDir.getPath())) {
+            write(new File(outDir, fileName), "instrumented");
+        }
+        manifest.markInstrumented(stale);
+        manifest.save();
+    }
+
+    private Set<String> staleFiles(final InstrumentationManifest manifest, final boolean instrumentAll) throws IOException {
+        return staleFiles(manifest, instrumentAll, -1);
+    }
+
+    private Set<String> staleFiles(final InstrumentationManifest manifest, final boolean instrumentAll,
+                                   final long staleMillis) throws IOException {
+        final String[] stale = manifest.selectStaleFiles(sources, outDir, instrumentAll, staleMillis).get(srcDir.getPath());
+        return stale == null ? Collections.<String>emptySet() : set(stale);
+    }
+
+    private static Set<String> set(final String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+
+    private static void write(final File file, final String content) throws IOException {
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,108 @@
+package com.atlassian.maven.plugin.clover.internal.instrumentation;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class InstrumentationOutputTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File srcDir;
+    private File outputDir;
+
+    @Before
+    public void setUp() throws IOException {
+        srcDir = temp.newFolder("src");
+        outputDir = temp.newFolder("src-instrumented");
+    }
+
+    @Test
+    public void testOrphansAreDeleted() throws IOException {
+        write(new File(srcDir, "a/Copied.groovy"), "class Copied {}");
+        write(new File(outputDir, "a/Copied.groovy"), "class Copied {}");
+        write(new File(outputDir, "a/Removed.java"), "class Removed {}");
+        write(new File(outputDir, "b/Removed.java"), "class Removed {}");
+
+        final InstrumentationOutput output = new InstrumentationOutput(outputDir, new SystemStreamLog());
+        output.recordExistingFiles();
+        // instrumented file in a directory matching its package, not its location in the source root
+        write(new File(outputDir, "pkg/Moved.java"), "package pkg; class Moved {}");
+        output.deleteOrphans(Collections.singletonList(srcDir.getPath()));
+
+        assertTrue(new File(outputDir, "a/Copied.groovy").exists());
+        assertTrue(new File(outputDir, "pkg/Moved.java").exists());
+        assertFalse(new File(outputDir, "a/Removed.java").exists());
+        assertFalse(new File(outputDir, "b").exists());
+        assertTrue(outputDir.isDirectory());
+    }
+
+    @Test
+    public void testFilesWrittenAgainAreNotDeleted() throws IOException {
+        final File moved = new File(outputDir, "pkg/Moved.java");
+        write(moved, "package pkg; class Moved {}");
+        assertTrue(moved.setLastModified(1000000000000L));
+
+        final InstrumentationOutput output = new InstrumentationOutput(outputDir, new SystemStreamLog());
+        output.recordExistingFiles();
+        write(moved, "package pkg; class Moved { }");
+        output.deleteOrphans(Collections.singletonList(srcDir.getPath()));
+
+        assertThat(read(moved), equalTo("package pkg; class Moved { }"));
+    }
+
+    @Test
+    public void testFilesWrittenWithSameContentKeepModificationTime() throws IOException {
+        final File same = new File(outputDir, "a/Same.java");
+        final File changed = new File(outputDir, "a/Changed.java");
+        write(same, "class Same {}");
+        write(changed, "class Changed {}");
+        assertTrue(same.setLastModified(1000000000000L));
+        assertTrue(changed.setLastModified(1000000000000L));
+
+        final InstrumentationOutput output = new InstrumentationOutput(outputDir, new SystemStreamLog());
+        final Map<String, String[]> files = new HashMap<>();
+        files.put(srcDir.getPath(), new String[] { path("a/Same.java"), path("a/Changed.java"), path("a/New.java") });
+        output.prepareWrite(files);
+        assertFalse(same.exists());
+        assertFalse(changed.exists());
+
+        write(same, "class Same {}");
+        write(changed, "class Changed { }");
+        write(new File(outputDir, "a/New.java"), "class New {}");
+        output.completeWrite();
+
+        assertThat(same.lastModified(), equalTo(1000000000000L));
+        assertThat(read(changed), equalTo("class Changed { }"));
+        assertFalse(changed.lastModified() == 1000000000000L);
+    }
+
+    private static void write(final File file, final String content) throws IOException {
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String path(final String path) {
+        return path.replace('/', File.separatorChar);
+    }
+
+    private static String read(final File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,67 @@
+package com.atlassian.maven.plugin.clover.internal.instrumentation;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class InstrumentationWorkerPoolTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testWorkerIsReusedAcrossRequests() throws IOException {
+        final InstrumentationWorkerPool pool = new InstrumentationWorkerPool(1, "-Xmx64m");
+        try {
+            for (String module : Arrays.asList("a", "b")) {
+                final File srcDir = temp.newFolder(module, "src");
+                final File file = new File(srcDir, "p" + File.separator + "C.java");
+                assertTrue(file.getParentFile().mkdirs());
+                Files.write(file.toPath(), "package p;\npublic class C { int m() { return 1; } }\n"
+                        .getBytes(StandardCharsets.UTF_8));
+                final Map<String, String[]> files = new HashMap<>();
+                files.put(srcDir.getPath(), new String[] { "p" + File.separator + "C.java" });
+
+                final File db = new File(temp.getRoot(), module + File.separator + "clover.db");
+                final File outDir = new File(temp.getRoot(), module + File.separator + "out");
+                assertThat(pool.instrument(args(db, outDir), files, 0, new SystemStreamLog()), equalTo(0));
+                assertTrue(db.isFile());
+                assertTrue(new File(outDir, "p" + File.separator + "C.java").isFile());
+            }
+            assertThat(pool.getStartedWorkers(), equalTo(1));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testFailureIsReported() throws IOException {
+        final InstrumentationWorkerPool pool = new InstrumentationWorkerPool(1, null);
+        try {
+            final Map<String, String[]> files = new HashMap<>();
+            files.put(temp.getRoot().getPath(), new String[] { "Missing.java" });
+            final File db = new File(temp.getRoot(), "clover.db");
+            assertThat(pool.instrument(args(db, temp.newFolder("out")), files, 0, new SystemStreamLog()), equalTo(1));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private static List<String> args(final File db, final File outDir) {
+        return Arrays.asList("-i", db.getAbsolutePath(), "-d", outDir.getAbsolutePath());
+    }
+}
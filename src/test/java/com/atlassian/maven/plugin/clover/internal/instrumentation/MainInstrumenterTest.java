@@ -0,0 +1,130 @@
+package com.atlassian.maven.plugin.clover.internal.instrumentation;
+
+import com.atlassian.clover.registry.Clover2Registry;
+import com.atlassian.clover.registry.metrics.HasMetricsFilter;
+import com.atlassian.maven.plugin.clover.internal.CloverDatabaseFragments;
+import com.atlassian.maven.plugin.clover.internal.CompilerConfiguration;
+import com.atlassian.maven.plugin.clover.internal.scanner.ChangedFileSet;
+import com.atlassian.maven.plugin.clover.internal.scanner.SourceScanCache;
+import org.apache.maven.model.Build;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.project.MavenProject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class MainInstrumenterTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testFilesCopiedByChangedOnlyBuildAreInstrumentedByFullBuildWithMtimeStaleness() throws Exception {
+        assertFullBuildInstrumentsAllFiles(InstrumentationManifest.STALENESS_MTIME);
+    }
+
+    @Test
+    public void testFilesCopiedByChangedOnlyBuildAreInstrumentedByFullBuildWithHashStaleness() throws Exception {
+        assertFullBuildInstrumentsAllFiles(InstrumentationManifest.STALENESS_HASH);
+    }
+
+    @Test
+    public void testShardsAreInstrumentedInWorkersAndMerged() throws Exception {
+        final File baseDir = temp.newFolder("project");
+        final File srcDir = new File(baseDir, "src/main/java");
+        final File outputDir = new File(baseDir, "target/clover/src-instrumented");
+        for (String className : Arrays.asList("A", "B", "C", "D", "E", "F")) {
+            write(new File(srcDir, "p/" + className + ".java"), "package p; public class " + className + " { void run() { } }");
+        }
+
+        final CompilerConfiguration configuration = createConfiguration(baseDir, srcDir, InstrumentationManifest.STALENESS_HASH, null);
+        when(configuration.getInstrumentationThreads()).thenReturn(2);
+        new MainInstrumenter(configuration, outputDir.getPath()).instrument();
+
+        final String database = configuration.resolveInstrumentationDatabase();
+        assertFalse(new File(database).exists());
+        assertTrue(new File(CloverDatabaseFragments.getShard(database, 1, 2)).isFile());
+        assertTrue(new File(CloverDatabaseFragments.getShard(database, 2, 2)).isFile());
+        for (String className : Arrays.asList("A", "B", "C", "D", "E", "F")) {
+            assertThat(read(new File(outputDir, "p/" + className + ".java")), containsString("__CLR"));
+        }
+
+        CloverDatabaseFragments.merge(database, mock(Log.class));
+        assertThat(Clover2Registry.fromFile(new File(database)).getProject().getFiles(HasMetricsFilter.ACCEPT_ALL).size(),
+                equalTo(6));
+    }
+
+    private void assertFullBuildInstrumentsAllFiles(final String staleness) throws IOException, MojoExecutionException {
+        final File baseDir = temp.newFolder("project");
+        final File srcDir = new File(baseDir, "src/main/java");
+        final File outputDir = new File(baseDir, "target/clover/src-instrumented");
+        write(new File(srcDir, "p/Changed.java"), "package p; public class Changed { void run() { } }");
+        write(new File(srcDir, "p/Unchanged.java"), "package p; public class Unchanged { void run() { } }");
+        final File list = new File(baseDir, "changed.txt");
+        write(list, "src/main/java/p/Changed.java");
+
+        // a build limited to changed files, followed by a full one
+        new MainInstrumenter(createConfiguration(baseDir, srcDir, staleness, new ChangedFileSet().addFromFile(list)),
+                outputDir.getPath()).instrument();
+        assertThat(read(new File(outputDir, "p/Unchanged.java")), containsString("public class Unchanged { void run() { } }"));
+
+        new MainInstrumenter(createConfiguration(baseDir, srcDir, staleness, null), outputDir.getPath()).instrument();
+        assertThat(read(new File(outputDir, "p/Changed.java")), containsString("__CLR"));
+        assertThat(read(new File(outputDir, "p/Unchanged.java")), containsString("__CLR"));
+    }
+
+    private CompilerConfiguration createConfiguration(final File baseDir, final File srcDir, final String staleness,
+                                                      final ChangedFileSet changedFiles) {
+        final MavenProject project = new MavenProject();
+        project.setFile(new File(baseDir, "pom.xml"));
+        final Build build = new Build();
+        build.setDirectory(new File(baseDir, "target").getPath());
+        build.setSourceDirectory(srcDir.getPath());
+        project.setBuild(build);
+        project.addCompileSourceRoot(srcDir.getPath());
+
+        final CompilerConfiguration configuration = mock(CompilerConfiguration.class);
+        when(configuration.getLog()).thenReturn(mock(Log.class));
+        when(configuration.getProject()).thenReturn(project);
+        when(configuration.getIncludes()).thenReturn(Collections.singleton("**/*.java"));
+        when(configuration.getExcludes()).thenReturn(new HashSet<>());
+        when(configuration.getFlushPolicy()).thenReturn("directed");
+        when(configuration.resolveInstrumentationDatabase()).thenReturn(new File(baseDir, "target/clover/clover.db").getPath());
+        when(configuration.isUseFullyQualifiedJavaLang()).thenReturn(true);
+        when(configuration.getMethodContexts()).thenReturn(new HashMap<>());
+        when(configuration.getStatementContexts()).thenReturn(new HashMap<>());
+        when(configuration.getMethodWithMetricsContexts()).thenReturn(new HashSet<>());
+        when(configuration.getCopyStrategy()).thenReturn("copy");
+        when(configuration.getStaleness()).thenReturn(staleness);
+        when(configuration.getChangedFileSet()).thenReturn(changedFiles);
+        when(configuration.getSourceScanCache()).thenReturn(new SourceScanCache(SourceScanCache.SCANNER_ANT, false));
+        return configuration;
+    }
+
+    private static void write(final File file, final String content) throws IOException {
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String read(final File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,80 @@
+package com.atlassian.maven.plugin.clover.internal.instrumentation;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SourceFileCopierTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File srcDir;
+    private File targetDir;
+    private Map<String, String[]> files;
+
+    @Before
+    public void setUp() throws IOException {
+        srcDir = temp.newFolder("src");
+        targetDir = temp.newFolder("target");
+        assertTrue(new File(srcDir, "a").mkdirs());
+        Files.write(new File(srcDir, "a/A.groovy").toPath(), "class A {}".getBytes(StandardCharsets.UTF_8));
+        files = Collections.singletonMap(srcDir.getPath(), new String[] { "a/A.groovy" });
+    }
+
+    @Test
+    public void testCopyStrategy() throws IOException {
+        new SourceFileCopier(SourceFileCopier.STRATEGY_COPY, new SystemStreamLog()).copyFiles(files, targetDir.getPath());
+
+        final File target = new File(targetDir, "a/A.groovy");
+        assertThat(read(target), equalTo("class A {}"));
+        assertFalse(Files.isSameFile(new File(srcDir, "a/A.groovy").toPath(), target.toPath()));
+    }
+
+    @Test
+    public void testLinkStrategy() throws IOException {
+        new SourceFileCopier(SourceFileCopier.STRATEGY_LINK, new SystemStreamLog()).copyFiles(files, targetDir.getPath());
+
+        final File target = new File(targetDir, "a/A.groovy");
+        assertThat(read(target), equalTo("class A {}"));
+        assertTrue(Files.isSameFile(new File(srcDir, "a/A.groovy").toPath(), target.toPath()));
+    }
+
+    @Test
+    public void testUnchangedFilesAreSkipped() throws IOException {
+        final File target = new File(targetDir, "a/A.groovy");
+        assertTrue(target.getParentFile().mkdirs());
+        Files.write(target.toPath(), "class A {}".getBytes(StandardCharsets.UTF_8));
+        assertTrue(target.setLastModified(1000000000000L));
+
+        new SourceFileCopier(SourceFileCopier.STRATEGY_COPY, new SystemStreamLog()).copyFiles(files, targetDir.getPath());
+        assertThat(target.lastModified(), equalTo(1000000000000L));
+
+        Files.write(new File(srcDir, "a/A.groovy").toPath(), "class A { }".getBytes(StandardCharsets.UTF_8));
+        new SourceFileCopier(SourceFileCopier.STRATEGY_COPY, new SystemStreamLog()).copyFiles(files, targetDir.getPath());
+        assertThat(read(target), equalTo("class A { }"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownStrategy() {
+        new SourceFileCopier("symlink", new SystemStreamLog());
+    }
+
+    private static String read(final File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+}
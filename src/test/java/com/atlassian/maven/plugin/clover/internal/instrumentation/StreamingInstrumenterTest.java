@@ -0,0 +1,81 @@
+package com.atlassian.maven.plugin.clover.internal.instrumentation;
+
+import com.atlassian.clover.CloverInstr;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingInstrumenterTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    @Test
+    public void testSameOutputAsCloverInstr() throws IOException {
+        final File srcDir = temp.newFolder("src");
+        final List<String> names = new ArrayList<>();
+        final List<String> sources = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            final String name = "p" + (i % 2) + File.separator + "C" + i + ".java";
+            final File file = new File(srcDir, name);
+            assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+            Files.write(file.toPath(), ("package p" + (i % 2) + ";\npublic class C" + i + " {\n"
+                    + "    int m(int a) { if (a > " + i + ") { return a; } return " + i + "; }\n}\n")
+                    .getBytes(StandardCharsets.UTF_8));
+            names.add(name);
+            sources.add(file.getAbsolutePath());
+        }
+
+        // both runs must use the same database path as it's embedded in the instrumented code
+        final File db = new File(temp.getRoot(), "clover.db");
+        final File serialOut = temp.newFolder("serial");
+        final List<String> serialArgs = args(db, serialOut);
+        serialArgs.addAll(sources);
+        assertThat(CloverInstr.mainImpl(serialArgs.toArray(new String[0])), equalTo(0));
+        assertTrue(db.delete());
+
+        final File streamedOut = temp.newFolder("streamed");
+        final Map<String, String[]> files = new HashMap<>();
+        files.put(srcDir.getPath(), names.toArray(new String[0]));
+        assertThat(new StreamingInstrumenter().instrument(args(db, streamedOut), files), equalTo(0));
+        assertTrue(db.isFile());
+
+        for (String name : names) {
+            assertThat(name, normalize(new File(streamedOut, name)), equalTo(normalize(new File(serialOut, name))));
+        }
+    }
+
+    @Test
+    public void testMissingDestinationDirectoryFails() {
+        final Map<String, String[]> files = new HashMap<>();
+        assertThat(new StreamingInstrumenter().instrument(
+                Arrays.asList("-i", new File(temp.getRoot(), "clover.db").getAbsolutePath()), files), equalTo(1));
+    }
+
+    private static List<String> args(final File db, final File outDir) {
+        return new ArrayList<>(Arrays.asList("-i", db.getAbsolutePath(), "-d", outDir.getAbsolutePath(), "-e", "UTF-8"));
+    }
+
+    /**
+     * Registry version (a timestamp) and the recorder class name derived from it differ between runs.
+     */
+    private static String normalize(final File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8)
+                .replaceAll("__CLR[0-9A-Za-z_]+", "__CLR")
+                .replaceAll("\\d{10,}L", "0L");
+    }
+}
@@ -0,0 +1,118 @@
+package com.atlassian.maven.plugin.clover.internal.scanner;
+
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class ChangedFileSetTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private File root;
+    private File srcDir;
+    private Map<String, String[]> files;
+
+    @Before
+    public void setUp() throws IOException {
+        root = temp.newFolder("repo");
+        srcDir = new File(root, "module/src/main/java");
+        files = new HashMap<>();
+        files.put(srcDir.getPath(), new String[] { "A.java", path("b/B.java"), path("b/C.java") });
+        for (String fileName : files.get(srcDir.getPath())) {
+            write(new File(srcDir, fileName), "class X {}");
+        }
+    }
+
+    @Test
+    public void testFilesFromList() throws IOException {
+        final File list = new File(root, "changed.txt");
+        write(list, "# changed files\nmodule/src/main/java/b/B.java\n\n" + new File(srcDir, "A.java").getAbsolutePath() + "\n");
+        final ChangedFileSet changedFiles = new ChangedFileSet().addFromFile(list);
+
+        assertThat(changedFiles.size(), equalTo(2));
+        assertThat(set(changedFiles.selectChanged(files).get(srcDir.getPath())), equalTo(set("A.java", path("b/B.java"))));
+        assertThat(set(changedFiles.selectUnchanged(files).get(srcDir.getPath())), equalTo(set(path("b/C.java"))));
+    }
+
+    @Test
+    public void testFilesFromGit() throws IOException, InterruptedException {
+        Assume.assumeTrue(git("init", "-q"));
+        assertTrue(git("add", "."));
+        assertTrue(git("-c", "user.name=test", "-c", "user.email=test@example.com", "commit", "-q", "-m", "initial"));
+
+        write(new File(srcDir, "b/B.java"), "class B {}");
+        write(new File(srcDir, "b/D.java"), "class D {}");
+        files.put(srcDir.getPath(), new String[] { "A.java", path("b/B.java"), path("b/C.java"), path("b/D.java") });
+
+        final ChangedFileSet changedFiles = new ChangedFileSet().addFromGit(srcDir, "HEAD");
+        assertThat(set(changedFiles.selectChanged(files).get(srcDir.getPath())), equalTo(set(path("b/B.java"), path("b/D.java"))));
+    }
+
+    @Test
+    public void testChangesOnOtherBranchAreIgnored() throws IOException, InterruptedException {
+        Assume.assumeTrue(git("init", "-q"));
+        assertTrue(git("add", "."));
+        assertTrue(commit("initial"));
+        assertTrue(git("branch", "base"));
+
+        // a change on the current branch since it forked
+        write(new File(srcDir, "b/B.java"), "class B {}");
+        assertTrue(git("add", "."));
+        assertTrue(commit("change B"));
+
+        // a change made later on the base branch
+        assertTrue(git("checkout", "-q", "base"));
+        write(new File(srcDir, "b/C.java"), "class C {}");
+        assertTrue(git("add", "."));
+        assertTrue(commit("change C"));
+        assertTrue(git("checkout", "-q", "-"));
+
+        final ChangedFileSet changedFiles = new ChangedFileSet().addFromGit(srcDir, "base");
+        assertThat(set(changedFiles.selectChanged(files).get(srcDir.getPath())), equalTo(set(path("b/B.java"))));
+    }
+
+    private boolean commit(final String message) throws InterruptedException {
+        return git("-c", "user.name=test", "-c", "user.email=test@example.com", "commit", "-q", "-m", message);
+    }
+
+    private boolean git(final String... args) throws InterruptedException {
+        final String[] command = new String[args.length + 1];
+        command[0] = "git";
+        System.arraycopy(args, 0, command, 1, args.length);
+        try {
+            return new ProcessBuilder(command).directory(root).inheritIO().start().waitFor() == 0;
+        } catch (IOException e) {
+            return false; // git is not installed
+        }
+    }
+
+    private static void write(final File file, final String content) throws IOException {
+        assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String path(final String path) {
+        return path.replace('/', File.separatorChar);
+    }
+
+    private static Set<String> set(final String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+}
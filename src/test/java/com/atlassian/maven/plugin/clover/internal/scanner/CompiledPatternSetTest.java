@@ -0,0 +1,97 @@
+package com.atlassian.maven.plugin.clover.internal.scanner;
+
+import org.apache.tools.ant.DirectoryScanner;
+import org.apache.tools.ant.types.selectors.TokenizedPath;
+import org.apache.tools.ant.types.selectors.TokenizedPattern;
+import org.junit.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CompiledPatternSetTest {
+
+    private static final List<String> PATTERNS = Arrays.asList(
+            "**/*.java", "com/acme/A.java", "com/acme/gen/", "com/*/B?.java", "**/test/**/*Test.java",
+            "com/**/c/**", "*.txt", "a\\b/c.java", "com/acme", "**/x*y*z", "");
+
+    @Test
+    public void testMatchesLikeAnt() {
+        final Random random = new Random(4321);
+        final String[] tokens = { "com", "acme", "gen", "test", "c", "a", "b", "x", "A.java", "B1.java", "B12.java",
+                "c.java", "FooTest.java", "r.txt", "xayz", "xyz.java" };
+        final List<String> paths = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            final StringBuilder path = new StringBuilder(tokens[random.nextInt(tokens.length)]);
+            for (int depth = random.nextInt(5); depth > 0; depth--) {
+                path.append(File.separator).append(tokens[random.nextInt(tokens.length)]);
+            }
+            paths.add(path.toString());
+        }
+
+        for (String pattern : PATTERNS) {
+            final CompiledPatternSet compiled = CompiledPatternSet.compile(Arrays.asList(pattern));
+            final TokenizedPattern ant = antPattern(pattern);
+            for (String path : paths) {
+                assertThat(pattern + " vs " + path, compiled.matches(path),
+                        equalTo(ant.matchPath(new TokenizedPath(path), true)));
+                if (ant.matchStartOf(new TokenizedPath(path), true)) {
+                    assertTrue(pattern + " inside " + path, compiled.couldMatchInside(path));
+                }
+            }
+        }
+
+        final CompiledPatternSet all = CompiledPatternSet.compile(PATTERNS);
+        for (String path : paths) {
+            boolean expected = false;
+            for (String pattern : PATTERNS) {
+                expected |= antPattern(pattern).matchPath(new TokenizedPath(path), true);
+            }
+            assertThat(path, all.matches(path), equalTo(expected));
+        }
+    }
+
+    @Test
+    public void testManyLiteralPaths() {
+        final List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < 50000; i++) {
+            patterns.add("com/acme/p" + (i % 100) + "/C" + i + ".java");
+        }
+        patterns.addAll(Arrays.asList(DirectoryScanner.getDefaultExcludes()));
+        final CompiledPatternSet compiled = CompiledPatternSet.compile(patterns);
+
+        assertTrue(compiled.matches(path("com/acme/p7/C4207.java")));
+        assertTrue(compiled.matches(path("com/acme/.git/config")));
+        assertFalse(compiled.matches(path("com/acme/p7/C4208.java")));
+        assertTrue(compiled.couldMatchInside(path("com/acme/p7")));
+    }
+
+    @Test
+    public void testDirectoryPatterns() {
+        final CompiledPatternSet compiled = CompiledPatternSet.compileDirectoryPatterns(
+                Arrays.asList("**/excluded/**", "gen/", "**/*.java"));
+        assertTrue(compiled.matches(path("a/b/excluded")));
+        assertTrue(compiled.matches("gen"));
+        assertFalse(compiled.matches(path("a/gen")));
+        assertFalse(compiled.matches("A.java"));
+    }
+
+    private static TokenizedPattern antPattern(final String pattern) {
+        String normalized = path(pattern.replace('\\', '/'));
+        if (normalized.endsWith(File.separator)) {
+            normalized += "**";
+        }
+        return new TokenizedPattern(normalized);
+    }
+
+    private static String path(final String path) {
+        return path.replace('/', File.separatorChar);
+    }
+}
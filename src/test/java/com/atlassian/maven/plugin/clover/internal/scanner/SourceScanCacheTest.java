@@ -0,0 +1,131 @@
+package com.atlassian.maven.plugin.clover.internal.scanner;
+
+import org.apache.tools.ant.DirectoryScanner;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Stream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class SourceScanCacheTest {
+
+    @Rule
+    public TemporaryFolder temp = new TemporaryFolder();
+
+    private final Set<String> includes = set("**/*.java", "**/*.groovy");
+
+    private final Set<String> excludes = set("**/excluded/**", "**/*Skip.java");
+
+    @Test
+    public void testSinglePassGivesSameResultAsSeparateScans() throws IOException {
+        final File root = temp.newFolder("src");
+        for (String path : Arrays.asList("a/A.java", "a/B.groovy", "a/C.txt", "a/DSkip.java", "excluded/E.java",
+                ".svn/entries", "a/.gitignore", "b/CVS/Root", "F.java")) {
+            final File file = new File(root, path);
+            assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+            assertTrue(file.createNewFile());
+        }
+
+        final SourceScanCache.ScanResult result = new SourceScanCache(SourceScanCache.SCANNER_ANT, true)
+                .scan(root, includes, excludes);
+
+        // included files, as scanned by AbstractSourceScanner before
+        final DirectoryScanner includedScan = new DirectoryScanner();
+        includedScan.setBasedir(root);
+        includedScan.addExcludes(excludes.toArray(new String[0]));
+        includedScan.setIncludes(includes.toArray(new String[0]));
+        includedScan.addDefaultExcludes();
+        includedScan.scan();
+        assertThat(set(result.includedFiles), equalTo(set(includedScan.getIncludedFiles())));
+        assertThat(set(result.includedFiles), equalTo(set(path("a/A.java"), path("a/B.groovy"), "F.java")));
+
+        // excluded files, as scanned by AbstractSourceScanner before
+        final DirectoryScanner excludedScan = new DirectoryScanner();
+        excludedScan.setBasedir(root);
+        excludedScan.addExcludes(excludes.toArray(new String[0]));
+        final Set<String> excludedIncludes = new HashSet<>(includes);
+        excludedIncludes.addAll(Arrays.asList(DirectoryScanner.getDefaultExcludes()));
+        excludedScan.setIncludes(excludedIncludes.toArray(new String[0]));
+        excludedScan.addDefaultExcludes();
+        excludedScan.scan();
+        final Set<String> expectedExcluded = set(excludedScan.getExcludedFiles());
+        expectedExcluded.addAll(set(excludedScan.getNotIncludedFiles()));
+        assertThat(set(result.excludedFiles), equalTo(expectedExcluded));
+    }
+
+    @Test
+    public void testSourceRootIsScannedOnce() throws IOException {
+        final File root = temp.newFolder("src");
+        final SourceScanCache cache = new SourceScanCache(SourceScanCache.SCANNER_ANT, true);
+        final SourceScanCache.ScanResult first = cache.scan(root, includes, excludes);
+        assertThat(cache.scan(root, includes, excludes), sameInstance(first));
+
+        cache.invalidate(root.getPath());
+        assertTrue(new File(root, "G.java").createNewFile());
+        assertThat(set(cache.scan(root, includes, excludes).includedFiles), equalTo(set("G.java")));
+    }
+
+    @Test
+    public void testNioScannerGivesSameResultAsAnt() throws IOException {
+        final File root = temp.newFolder("src");
+        final Random random = new Random(1234);
+        final String[] dirs = { "a", "b", "excluded", "CVS", ".git", "gen", "deep" };
+        final String[] names = { "A.java", "BSkip.java", "C.groovy", "D.txt", ".gitignore", "E.java" };
+        for (int i = 0; i < 300; i++) {
+            final StringBuilder path = new StringBuilder();
+            for (int depth = random.nextInt(4); depth > 0; depth--) {
+                path.append(dirs[random.nextInt(dirs.length)]).append('/');
+            }
+            path.append(random.nextInt(10)).append(names[random.nextInt(names.length)]);
+            final File file = new File(root, path.toString());
+            assertTrue(file.getParentFile().isDirectory() || file.getParentFile().mkdirs());
+            file.createNewFile();
+        }
+
+        final Set<String> nioIncludes = set("**/*.java", "**/*.groovy", "gen/");
+        final Set<String> nioExcludes = set("**/excluded/**", "**/*Skip.java", "deep/**/a/**", "b\\gen/*");
+        final SourceScanCache.ScanResult ant = new SourceScanCache(SourceScanCache.SCANNER_ANT, true)
+                .scan(root, nioIncludes, nioExcludes);
+        final SourceScanCache.ScanResult nio = new SourceScanCache(SourceScanCache.SCANNER_NIO, true)
+                .scan(root, nioIncludes, nioExcludes);
+        assertThat(set(nio.includedFiles), equalTo(set(ant.includedFiles)));
+        assertThat(set(nio.excludedFiles), equalTo(set(ant.excludedFiles)));
+        assertThat(nio.includedFiles.length + nio.excludedFiles.length, equalTo(countFiles(root)));
+
+        // without excluded files, some directories are skipped, but included files must be the same
+        final SourceScanCache nioWithoutExcluded = new SourceScanCache(SourceScanCache.SCANNER_NIO, false);
+        final SourceScanCache.ScanResult pruned = nioWithoutExcluded.scan(root, nioIncludes, nioExcludes);
+        assertThat(set(pruned.includedFiles), equalTo(set(ant.includedFiles)));
+        assertThat(pruned.excludedFiles, nullValue());
+        assertThat(set(nioWithoutExcluded.scanWithExcludedFiles(root, nioIncludes, nioExcludes).excludedFiles),
+                equalTo(set(ant.excludedFiles)));
+    }
+
+    private static int countFiles(final File root) throws IOException {
+        try (Stream<Path> files = Files.walk(root.toPath())) {
+            return (int) files.filter(Files::isRegularFile).count();
+        }
+    }
+
+    private static String path(final String path) {
+        return path.replace('/', File.separatorChar);
+    }
+
+    private static Set<String> set(final String... values) {
+        return new HashSet<>(Arrays.asList(values));
+    }
+}